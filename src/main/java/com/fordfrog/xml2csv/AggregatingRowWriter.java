@@ -0,0 +1,602 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Row writer that aggregates rows by values of group columns instead of
+ * writing them. For each group it counts rows and sums values of sum columns.
+ * Aggregated rows are written to the target row writer once this writer is
+ * closed, ordered by group values. Header of aggregated rows contains group
+ * columns, <code>count</code> column and <code>sum(column)</code> column for
+ * each sum column.
+ *
+ * If estimated memory used by groups exceeds memory budget, partial
+ * aggregates are sorted and spilled to temporary file. Spilled partial
+ * aggregates are merged with the remaining groups when the writer is closed,
+ * at most {@link #MAX_MERGE_SPILLS} spill files at once so that the number of
+ * open files stays bounded. If there are more spill files, consecutive spill
+ * files are first merged into larger temporary spill files in as many passes
+ * as needed.
+ *
+ * @author fordfrog
+ */
+public class AggregatingRowWriter implements RowWriter {
+
+    /**
+     * Separator of group values in group key.
+     */
+    private static final char KEY_SEPARATOR = '\u0000';
+    /**
+     * Estimated memory used by single group excluding characters of the key.
+     */
+    private static final int GROUP_OVERHEAD = 96;
+    /**
+     * Maximum number of spill files that are merged at once.
+     */
+    static final int MAX_MERGE_SPILLS = 64;
+    /**
+     * Target row writer.
+     */
+    private final RowWriter target;
+    /**
+     * Names of group columns.
+     */
+    private final String[] groupColumns;
+    /**
+     * Names of sum columns.
+     */
+    private final String[] sumColumns;
+    /**
+     * Memory budget in bytes.
+     */
+    private final long memoryBudget;
+    /**
+     * Directory for spill files.
+     */
+    private final Path tempDirectory;
+    /**
+     * Indexes of group columns in rows.
+     */
+    private int[] groupIndexes;
+    /**
+     * Indexes of sum columns in rows.
+     */
+    private int[] sumIndexes;
+    /**
+     * Group indexes by group keys.
+     */
+    private final Map<String, Integer> groups = new HashMap<>(1_024);
+    /**
+     * Row counts by group index.
+     */
+    private long[] counts = new long[1_024];
+    /**
+     * Sums by group index multiplied by number of sum columns plus sum column
+     * index.
+     */
+    private double[] sums;
+    /**
+     * Estimated memory used by groups.
+     */
+    private long memoryUsed;
+    /**
+     * Spill files with sorted partial aggregates.
+     */
+    private final List<Path> spillFiles = new ArrayList<>(4);
+    /**
+     * Builder used to create group keys.
+     */
+    private final StringBuilder keyBuilder = new StringBuilder(64);
+
+    /**
+     * Creates new instance of AggregatingRowWriter.
+     *
+     * @param target        target row writer
+     * @param groupColumns  names of group columns
+     * @param sumColumns    names of sum columns
+     * @param memoryBudget  memory budget in bytes
+     * @param tempDirectory directory for spill files
+     */
+    public AggregatingRowWriter(final RowWriter target,
+            final String[] groupColumns, final String[] sumColumns,
+            final long memoryBudget, final Path tempDirectory) {
+        this.target = target;
+        this.groupColumns = groupColumns.clone();
+        this.sumColumns = sumColumns.clone();
+        this.memoryBudget = memoryBudget;
+        this.tempDirectory = tempDirectory;
+        sums = new double[counts.length * sumColumns.length];
+    }
+
+    @Override
+    public void writeHeader(final String[] columns) throws IOException {
+        groupIndexes = findIndexes(columns, groupColumns);
+        sumIndexes = findIndexes(columns, sumColumns);
+
+        final String[] header =
+                Arrays.copyOf(groupColumns, groupColumns.length + 1
+                        + sumColumns.length);
+        header[groupColumns.length] = "count";
+
+        for (int i = 0; i < sumColumns.length; i++) {
+            header[groupColumns.length + 1 + i] = "sum(" + sumColumns[i] + ")";
+        }
+
+        target.writeHeader(header);
+    }
+
+    @Override
+    public void writeRow(final String[] values) throws IOException {
+        keyBuilder.setLength(0);
+
+        for (int i = 0; i < groupIndexes.length; i++) {
+            if (i > 0) {
+                keyBuilder.append(KEY_SEPARATOR);
+            }
+
+            final String value = values[groupIndexes[i]];
+
+            if (value != null) {
+                keyBuilder.append(value);
+            }
+        }
+
+        final int group = getGroup(keyBuilder);
+        counts[group]++;
+
+        final int offset = group * sumIndexes.length;
+
+        for (int i = 0; i < sumIndexes.length; i++) {
+            final String value = values[sumIndexes[i]];
+
+            if (value != null) {
+                final double number = FilterExpression.parseNumber(value);
+
+                if (!Double.isNaN(number)) {
+                    sums[offset + i] += number;
+                }
+            }
+        }
+    }
+
+    /**
+     * Aggregated rows cannot be written before all rows are aggregated so
+     * this does nothing.
+     */
+    @Override
+    public void flush() {
+        // aggregated rows are written on close
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (spillFiles.isEmpty()) {
+                for (final String key : getSortedKeys()) {
+                    final int group = groups.get(key);
+                    writeAggregate(key, counts[group], sums,
+                            group * sumColumns.length);
+                }
+            } else {
+                if (!groups.isEmpty()) {
+                    spill();
+                }
+
+                merge();
+            }
+        } finally {
+            for (final Path spillFile : spillFiles) {
+                Files.deleteIfExists(spillFile);
+            }
+
+            target.close();
+        }
+    }
+
+    /**
+     * Returns group index for the key, creating new group if the key is not
+     * known yet. Groups are spilled to disk first if memory budget would be
+     * exceeded.
+     *
+     * @param key group key
+     *
+     * @return group index
+     *
+     * @throws IOException Thrown if problem occurred while spilling groups.
+     */
+    private int getGroup(final CharSequence key) throws IOException {
+        final String keyString = key.toString();
+        final Integer group = groups.get(keyString);
+
+        if (group != null) {
+            return group;
+        }
+
+        final long groupMemory = GROUP_OVERHEAD + 2L * keyString.length()
+                + 8L * (1 + sumColumns.length);
+
+        if (memoryUsed + groupMemory > memoryBudget && !groups.isEmpty()) {
+            spill();
+        }
+
+        final int newGroup = groups.size();
+
+        if (newGroup == counts.length) {
+            counts = Arrays.copyOf(counts, newGroup * 2);
+            sums = Arrays.copyOf(sums, newGroup * 2 * sumColumns.length);
+        }
+
+        groups.put(keyString, newGroup);
+        memoryUsed += groupMemory;
+
+        return newGroup;
+    }
+
+    /**
+     * Writes sorted partial aggregates to spill file and clears groups.
+     *
+     * @throws IOException Thrown if problem occurred while writing spill file.
+     */
+    private void spill() throws IOException {
+        final Path spillFile =
+                Files.createTempFile(tempDirectory, "xml2csv-agg-", ".tmp");
+        spillFiles.add(spillFile);
+
+        try (final DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(spillFile),
+                        65_536))) {
+            for (final String key : getSortedKeys()) {
+                final int group = groups.get(key);
+                writeRecord(output, key, counts[group], sums,
+                        group * sumColumns.length);
+            }
+        }
+
+        groups.clear();
+        Arrays.fill(counts, 0);
+        Arrays.fill(sums, 0);
+        memoryUsed = 0;
+    }
+
+    /**
+     * Merges spill files and writes aggregated rows. If there are more than
+     * {@link #MAX_MERGE_SPILLS} spill files, groups of consecutive spill files
+     * are merged into new spill files first.
+     *
+     * @throws IOException Thrown if problem occurred while reading or writing
+     *                     spill files or writing rows.
+     */
+    private void merge() throws IOException {
+        while (spillFiles.size() > MAX_MERGE_SPILLS) {
+            final List<Path> inputs = new ArrayList<>(spillFiles);
+
+            for (int start = 0; start < inputs.size();
+                    start += MAX_MERGE_SPILLS) {
+                final Path mergedFile = Files.createTempFile(tempDirectory,
+                        "xml2csv-agg-", ".tmp");
+                spillFiles.add(mergedFile);
+
+                try (final DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(
+                                        mergedFile), 65_536))) {
+                    mergeSpills(inputs.subList(start, Math.min(inputs.size(),
+                            start + MAX_MERGE_SPILLS)), output);
+                }
+            }
+
+            for (final Path spillFile : inputs) {
+                Files.deleteIfExists(spillFile);
+            }
+
+            spillFiles.subList(0, inputs.size()).clear();
+        }
+
+        mergeSpills(spillFiles, null);
+    }
+
+    /**
+     * Merges partial aggregates of spill files.
+     *
+     * @param files  spill files
+     * @param output output stream of merged spill file or null if aggregated
+     *               rows should be written to target row writer
+     *
+     * @throws IOException Thrown if problem occurred while reading spill files
+     *                     or writing rows.
+     */
+    private void mergeSpills(final List<Path> files,
+            final DataOutputStream output) throws IOException {
+        final PriorityQueue<SpillReader> queue =
+                new PriorityQueue<>(files.size());
+
+        try {
+            for (final Path spillFile : files) {
+                final SpillReader reader =
+                        new SpillReader(spillFile, sumColumns.length);
+
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+
+            final double[] mergedSums = new double[sumColumns.length];
+
+            while (!queue.isEmpty()) {
+                final String key = queue.peek().key;
+                long count = 0;
+                Arrays.fill(mergedSums, 0);
+
+                while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+                    final SpillReader reader = queue.poll();
+                    count += reader.count;
+
+                    for (int i = 0; i < mergedSums.length; i++) {
+                        mergedSums[i] += reader.sums[i];
+                    }
+
+                    if (reader.next()) {
+                        queue.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                }
+
+                if (output == null) {
+                    writeAggregate(key, count, mergedSums, 0);
+                } else {
+                    writeRecord(output, key, count, mergedSums, 0);
+                }
+            }
+        } finally {
+            for (final SpillReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Writes aggregated row to target row writer.
+     *
+     * @param key       group key
+     * @param count     number of rows in the group
+     * @param groupSums array containing sums of the group
+     * @param offset    offset of the sums in the array
+     *
+     * @throws IOException Thrown if problem occurred while writing the row.
+     */
+    private void writeAggregate(final String key, final long count,
+            final double[] groupSums, final int offset) throws IOException {
+        final String[] row =
+                new String[groupColumns.length + 1 + sumColumns.length];
+        int start = 0;
+
+        for (int i = 0; i < groupColumns.length; i++) {
+            int end = key.indexOf(KEY_SEPARATOR, start);
+
+            if (end == -1) {
+                end = key.length();
+            }
+
+            row[i] = key.substring(start, end);
+            start = end + 1;
+        }
+
+        row[groupColumns.length] = Long.toString(count);
+
+        for (int i = 0; i < sumColumns.length; i++) {
+            row[groupColumns.length + 1 + i] =
+                    formatNumber(groupSums[offset + i]);
+        }
+
+        target.writeRow(row);
+    }
+
+    /**
+     * Returns sorted keys of groups.
+     *
+     * @return sorted keys
+     */
+    private String[] getSortedKeys() {
+        final String[] keys =
+                groups.keySet().toArray(new String[groups.size()]);
+        Arrays.sort(keys);
+
+        return keys;
+    }
+
+    /**
+     * Formats number without fraction if the number is integral.
+     *
+     * @param number number
+     *
+     * @return formatted number
+     */
+    static String formatNumber(final double number) {
+        if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+            return Long.toString((long) number);
+        } else {
+            return Double.toString(number);
+        }
+    }
+
+    /**
+     * Finds indexes of columns in header.
+     *
+     * @param header  header columns
+     * @param columns searched columns
+     *
+     * @return array of indexes
+     */
+    private static int[] findIndexes(final String[] header,
+            final String[] columns) {
+        final int[] indexes = new int[columns.length];
+
+        for (int i = 0; i < columns.length; i++) {
+            indexes[i] = Arrays.asList(header).indexOf(columns[i]);
+
+            if (indexes[i] == -1) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Aggregated column {0} is not an output column",
+                        columns[i]));
+            }
+        }
+
+        return indexes;
+    }
+
+    /**
+     * Writes partial aggregate of a group to spill file.
+     *
+     * @param output    output stream
+     * @param key       group key
+     * @param count     number of rows in the group
+     * @param groupSums array containing sums of the group
+     * @param offset    offset of the sums in the array
+     *
+     * @throws IOException Thrown if problem occurred while writing.
+     */
+    private void writeRecord(final DataOutputStream output, final String key,
+            final long count, final double[] groupSums, final int offset)
+            throws IOException {
+        writeString(output, key);
+        output.writeLong(count);
+
+        for (int i = 0; i < sumColumns.length; i++) {
+            output.writeDouble(groupSums[offset + i]);
+        }
+    }
+
+    /**
+     * Writes string of any length.
+     *
+     * @param output output stream
+     * @param value  string
+     *
+     * @throws IOException Thrown if problem occurred while writing.
+     */
+    private static void writeString(final DataOutputStream output,
+            final String value) throws IOException {
+        output.writeInt(value.length());
+        output.writeChars(value);
+    }
+
+    /**
+     * Sequential reader of spill file.
+     */
+    private static class SpillReader implements Comparable<SpillReader> {
+
+        /**
+         * Input stream.
+         */
+        private final DataInputStream input;
+        /**
+         * Key of current record.
+         */
+        private String key;
+        /**
+         * Count of current record.
+         */
+        private long count;
+        /**
+         * Sums of current record.
+         */
+        private final double[] sums;
+
+        /**
+         * Creates new instance of SpillReader.
+         *
+         * @param file     spill file
+         * @param sumCount number of sum columns
+         *
+         * @throws IOException Thrown if problem occurred while opening file.
+         */
+        SpillReader(final Path file, final int sumCount) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file), 65_536));
+            sums = new double[sumCount];
+        }
+
+        /**
+         * Reads next record.
+         *
+         * @return true if record was read, false at end of file
+         *
+         * @throws IOException Thrown if problem occurred while reading.
+         */
+        boolean next() throws IOException {
+            final int length;
+
+            try {
+                length = input.readInt();
+            } catch (final EOFException ex) {
+                return false;
+            }
+
+            final char[] chars = new char[length];
+
+            for (int i = 0; i < length; i++) {
+                chars[i] = input.readChar();
+            }
+
+            key = new String(chars);
+            count = input.readLong();
+
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] = input.readDouble();
+            }
+
+            return true;
+        }
+
+        /**
+         * Closes the reader.
+         *
+         * @throws IOException Thrown if problem occurred while closing.
+         */
+        void close() throws IOException {
+            input.close();
+        }
+
+        @Override
+        public int compareTo(final SpillReader other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
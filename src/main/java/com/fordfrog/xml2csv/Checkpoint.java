@@ -0,0 +1,218 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/**
+ * Conversion checkpoint. Checkpoint is always recorded right after end of an
+ * item element so that the conversion can be resumed from that position.
+ *
+ * @author fordfrog
+ */
+public class Checkpoint {
+
+    /**
+     * Number of items processed so far, including filtered out items.
+     */
+    private long itemCount;
+    /**
+     * Offset in characters of the input right after the last processed item.
+     */
+    private long inputOffset;
+    /**
+     * Length of the output in bytes after all rows of processed items were
+     * flushed.
+     */
+    private long outputOffset;
+    /**
+     * Encoding of the input document.
+     */
+    private String encoding;
+    /**
+     * Start tags of the elements enclosing the last processed item, including
+     * namespace declarations.
+     */
+    private String openElements;
+
+    /**
+     * Getter for {@link #itemCount}.
+     *
+     * @return {@link #itemCount}
+     */
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Setter for {@link #itemCount}.
+     *
+     * @param itemCount {@link #itemCount}
+     */
+    public void setItemCount(final long itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    /**
+     * Getter for {@link #inputOffset}.
+     *
+     * @return {@link #inputOffset}
+     */
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * Setter for {@link #inputOffset}.
+     *
+     * @param inputOffset {@link #inputOffset}
+     */
+    public void setInputOffset(final long inputOffset) {
+        this.inputOffset = inputOffset;
+    }
+
+    /**
+     * Getter for {@link #outputOffset}.
+     *
+     * @return {@link #outputOffset}
+     */
+    public long getOutputOffset() {
+        return outputOffset;
+    }
+
+    /**
+     * Setter for {@link #outputOffset}.
+     *
+     * @param outputOffset {@link #outputOffset}
+     */
+    public void setOutputOffset(final long outputOffset) {
+        this.outputOffset = outputOffset;
+    }
+
+    /**
+     * Getter for {@link #encoding}.
+     *
+     * @return {@link #encoding}
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Setter for {@link #encoding}.
+     *
+     * @param encoding {@link #encoding}
+     */
+    public void setEncoding(final String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Getter for {@link #openElements}.
+     *
+     * @return {@link #openElements}
+     */
+    public String getOpenElements() {
+        return openElements;
+    }
+
+    /**
+     * Setter for {@link #openElements}.
+     *
+     * @param openElements {@link #openElements}
+     */
+    public void setOpenElements(final String openElements) {
+        this.openElements = openElements;
+    }
+
+    /**
+     * Loads checkpoint from file.
+     *
+     * @param file checkpoint file path
+     *
+     * @return loaded checkpoint
+     */
+    public static Checkpoint load(final Path file) {
+        final Properties properties = new Properties();
+
+        try (final InputStream inputStream = Files.newInputStream(file)) {
+            properties.load(inputStream);
+        } catch (final IOException ex) {
+            throw new RuntimeException("Failed to load checkpoint", ex);
+        }
+
+        final Checkpoint checkpoint = new Checkpoint();
+        checkpoint.setItemCount(Long.parseLong(
+                properties.getProperty("items")));
+        checkpoint.setInputOffset(Long.parseLong(
+                properties.getProperty("input.offset")));
+        checkpoint.setOutputOffset(Long.parseLong(
+                properties.getProperty("output.offset")));
+        checkpoint.setEncoding(properties.getProperty("encoding"));
+        checkpoint.setOpenElements(properties.getProperty("open.elements"));
+
+        return checkpoint;
+    }
+
+    /**
+     * Stores checkpoint to file. The checkpoint is first written to temporary
+     * file which is forced to disk and then replaces the original file so
+     * that the checkpoint file is never left half written, even after a
+     * system crash.
+     *
+     * @param file checkpoint file path
+     */
+    public void store(final Path file) {
+        final Properties properties = new Properties();
+        properties.setProperty("items", Long.toString(itemCount));
+        properties.setProperty("input.offset", Long.toString(inputOffset));
+        properties.setProperty("output.offset", Long.toString(outputOffset));
+        properties.setProperty("encoding", encoding);
+        properties.setProperty("open.elements", openElements);
+
+        final Path tempFile =
+                file.resolveSibling(file.getFileName().toString() + ".tmp");
+
+        try {
+            try (final FileChannel channel = FileChannel.open(tempFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                properties.store(Channels.newOutputStream(channel),
+                        "xml2csv checkpoint");
+                channel.force(true);
+            }
+
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException ex) {
+            throw new RuntimeException("Failed to store checkpoint", ex);
+        }
+    }
+}
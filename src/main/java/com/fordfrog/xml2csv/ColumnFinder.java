@@ -27,8 +27,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -56,7 +58,7 @@ public class ColumnFinder {
      * text in a given XML file. Additionally you can limit result to XML
      * elements which are children of given XML element.
      * <p>
-     * Usage: ColumnFinder input-xml [parent-xpath]
+     * Usage: ColumnFinder input-xml [parent-xpath [prefix=uri ...]]
      * <p>
      * For given XML:
      *
@@ -87,6 +89,9 @@ public class ColumnFinder {
      * value1,value2,value3
      * </pre>
      *
+     * Names of elements in namespaces bound using prefix=uri arguments are
+     * printed with the prefix.
+     *
      * @param args command array containing path to an XML file and name of a
      *             XML element
      *
@@ -98,7 +103,7 @@ public class ColumnFinder {
 
         if (args == null || args.length < 1) {
             System.err.println("Usage: " + ColumnFinder.class.getName()
-                    + " input-xml parent-xpath");
+                    + " input-xml [parent-xpath [prefix=uri ...]]");
 
             return;
         } else if (args.length == 1) {
@@ -107,10 +112,26 @@ public class ColumnFinder {
             itemName = args[1];
         }
 
+        final Map<String, String> namespaces = new HashMap<>(4);
+
+        for (int i = 2; i < args.length; i++) {
+            final int index = args[i].indexOf('=');
+
+            if (index == -1) {
+                System.err.println("Namespace must be specified as "
+                        + "prefix=uri");
+
+                return;
+            }
+
+            namespaces.put(args[i].substring(0, index),
+                    args[i].substring(index + 1));
+        }
+
         final Path inputFile = Paths.get(args[0]);
 
         System.out.println(toString(find(Files.newInputStream(inputFile),
-                itemName)));
+                itemName, namespaces)));
     }
 
     /**
@@ -147,7 +168,33 @@ public class ColumnFinder {
      */
     public static List<String> find(final InputStream inputStream,
             final String parentElement) {
-        final Set<String> elements = findElements(inputStream);
+        return find(inputStream, parentElement, null);
+    }
+
+    /**
+     * Returns XPath expressions for XML elements which contains text in a given
+     * XML document. Result is limited to XML elements which are children of
+     * given XML element. Names of elements in bound namespaces are prefixed
+     * with the namespace prefix.
+     *
+     * @param inputStream   {@link InputStream} containing XML document
+     * @param parentElement XPath which refers to parent XML element
+     * @param namespaces    namespace URIs by prefixes, can be null
+     *
+     * @return list of XPath expressions for elements which contains text
+     */
+    public static List<String> find(final InputStream inputStream,
+            final String parentElement, final Map<String, String> namespaces) {
+        final Map<String, String> prefixes = new HashMap<>(4);
+
+        if (namespaces != null) {
+            for (final Map.Entry<String, String> entry
+                    : namespaces.entrySet()) {
+                prefixes.put(entry.getValue(), entry.getKey() + ':');
+            }
+        }
+
+        final Set<String> elements = findElements(inputStream, prefixes);
         final List<String> result = new ArrayList<>(elements.size() * 20);
 
         for (final String element : elements) {
@@ -164,11 +211,13 @@ public class ColumnFinder {
      * Returns XPath expressions for all XML elements in a given XML document.
      *
      * @param inputStream {@link InputStream} containing XML document
+     * @param prefixes    element name prefixes by namespace URIs
      *
      * @return list of XPath expressions for all XML elements which contains
      *         text
      */
-    private static Set<String> findElements(final InputStream inputStream) {
+    private static Set<String> findElements(final InputStream inputStream,
+            final Map<String, String> prefixes) {
         final Set<String> elementNames = new LinkedHashSet<>(10);
         final XMLInputFactory xMLInputFactory = XMLInputFactory.newInstance();
 
@@ -176,7 +225,7 @@ public class ColumnFinder {
             final XMLStreamReader reader = xMLInputFactory
                     .createXMLStreamReader(inputStream);
 
-            find(elementNames, reader, "");
+            find(elementNames, reader, "", prefixes);
         } catch (final XMLStreamException ex) {
             throw new RuntimeException("XML stream exception", ex);
         }
@@ -191,20 +240,24 @@ public class ColumnFinder {
      * @param elementNames   set with XPath expressions
      * @param reader         XML stream reader
      * @param currentElement current XML element
+     * @param prefixes       element name prefixes by namespace URIs
      *
      * @throws XMLStreamException if unexpected XML processing error occurs
      */
     private static void find(final Set<String> elementNames,
-            final XMLStreamReader reader, final String currentElement)
-            throws XMLStreamException {
+            final XMLStreamReader reader, final String currentElement,
+            final Map<String, String> prefixes) throws XMLStreamException {
         boolean hasText = false;
 
         while (reader.hasNext()) {
             switch (reader.next()) {
                 case XMLStreamReader.START_ELEMENT:
-                    final String currentName = currentElement + "/" + reader.
-                            getLocalName();
-                    find(elementNames, reader, currentName);
+                    final String prefix = reader.getNamespaceURI() == null
+                            ? null : prefixes.get(reader.getNamespaceURI());
+                    final String currentName = currentElement + "/"
+                            + (prefix == null ? "" : prefix)
+                            + reader.getLocalName();
+                    find(elementNames, reader, currentName, prefixes);
 
                     break;
                 case XMLStreamReader.CHARACTERS:
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Value of single column within current item. Values of elements are combined
+ * according to the column strategy as they are read, joined values are
+ * appended directly to a buffer that is reused for all items.
+ *
+ * @author fordfrog
+ */
+class ColumnValue {
+
+    /**
+     * Column name.
+     */
+    private final String column;
+    /**
+     * Column strategy.
+     */
+    private final ValueStrategy strategy;
+    /**
+     * Buffer of combined value for strategies that build the value.
+     */
+    private final StringBuilder buffer = new StringBuilder(64);
+    /**
+     * Distinct values for {@link ValueStrategy.Type#DISTINCT}.
+     */
+    private final Set<String> distinctValues;
+    /**
+     * All values for {@link ValueStrategy.Type#EXPLODE}.
+     */
+    private final List<String> values;
+    /**
+     * Number of values in current item.
+     */
+    private int count;
+    /**
+     * First value in current item. It is kept only if the value is needed by
+     * the strategy or if values are added as strings.
+     */
+    private String firstValue;
+
+    /**
+     * Creates new instance of ColumnValue.
+     *
+     * @param column   column name
+     * @param strategy column strategy
+     */
+    ColumnValue(final String column, final ValueStrategy strategy) {
+        this.column = column;
+        this.strategy = strategy;
+        distinctValues = strategy.getType() == ValueStrategy.Type.DISTINCT
+                ? new HashSet<String>(16) : null;
+        values = strategy.getType() == ValueStrategy.Type.EXPLODE
+                ? new ArrayList<String>(16) : null;
+    }
+
+    /**
+     * Getter for {@link #column}.
+     *
+     * @return {@link #column}
+     */
+    String getColumn() {
+        return column;
+    }
+
+    /**
+     * Getter for {@link #strategy}.
+     *
+     * @return {@link #strategy}
+     */
+    ValueStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Getter for {@link #count}.
+     *
+     * @return {@link #count}
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Getter for {@link #firstValue}.
+     *
+     * @return {@link #firstValue}
+     */
+    String getFirstValue() {
+        return firstValue;
+    }
+
+    /**
+     * Getter for {@link #values}.
+     *
+     * @return {@link #values}
+     */
+    List<String> getValues() {
+        return values;
+    }
+
+    /**
+     * Checks whether the final value of the column is equal to the first
+     * value.
+     *
+     * @return true if the value is the first value, otherwise false
+     */
+    boolean isFirstValue() {
+        return strategy.getType() == ValueStrategy.Type.FIRST
+                || count == 1 && strategy.getType() != ValueStrategy.Type.COUNT;
+    }
+
+    /**
+     * Clears the value for new item.
+     */
+    void reset() {
+        count = 0;
+        firstValue = null;
+        buffer.setLength(0);
+
+        if (distinctValues != null) {
+            distinctValues.clear();
+        }
+
+        if (values != null) {
+            values.clear();
+        }
+    }
+
+    /**
+     * Adds value of single element.
+     *
+     * @param chars characters containing the value
+     * @param start start index of the value (inclusive)
+     * @param end   end index of the value (exclusive)
+     */
+    void add(final CharSequence chars, final int start, final int end) {
+        switch (strategy.getType()) {
+            case FIRST:
+                if (count == 0) {
+                    firstValue = chars.subSequence(start, end).toString();
+                }
+
+                break;
+            case LAST:
+                buffer.setLength(0);
+                buffer.append(chars, start, end);
+
+                break;
+            case JOIN:
+                if (count > 0) {
+                    buffer.append(strategy.getDelimiter());
+                }
+
+                buffer.append(chars, start, end);
+
+                break;
+            case COUNT:
+                break;
+            default:
+                add(chars.subSequence(start, end).toString());
+
+                return;
+        }
+
+        count++;
+    }
+
+    /**
+     * Adds value of single element.
+     *
+     * @param value value
+     */
+    void add(final String value) {
+        if (count == 0) {
+            firstValue = value;
+        }
+
+        switch (strategy.getType()) {
+            case FIRST:
+            case COUNT:
+                break;
+            case LAST:
+                buffer.setLength(0);
+                buffer.append(value);
+
+                break;
+            case JOIN:
+                if (count > 0) {
+                    buffer.append(strategy.getDelimiter());
+                }
+
+                buffer.append(value);
+
+                break;
+            case DISTINCT:
+                if (distinctValues.add(value)) {
+                    if (distinctValues.size() > 1) {
+                        buffer.append(strategy.getDelimiter());
+                    }
+
+                    buffer.append(value);
+                }
+
+                break;
+            case EXPLODE:
+                values.add(value);
+
+                break;
+        }
+
+        count++;
+    }
+
+    /**
+     * Returns combined value of the column. For
+     * {@link ValueStrategy.Type#EXPLODE} the first value is returned.
+     *
+     * @return combined value or null if there is no value
+     */
+    String getValue() {
+        switch (strategy.getType()) {
+            case COUNT:
+                return Integer.toString(count);
+            case FIRST:
+            case EXPLODE:
+                return firstValue;
+            default:
+                return count == 0 ? null : buffer.toString();
+        }
+    }
+}
@@ -0,0 +1,775 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.MessageFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Column whose value is computed from values of other columns. Column is
+ * defined as <code>name=expression</code> where expression is one of:
+ *
+ * <pre>
+ * column                             value of other column
+ * 'text'                             string literal
+ * concat(expr, expr, ...)            concatenation of values
+ * substring(expr, start[, end])      substring (zero based, end exclusive)
+ * upper(expr), lower(expr), trim(expr)
+ * date(expr, 'inPattern', 'outPattern')
+ *                                    date reformatted using SimpleDateFormat
+ *                                    patterns
+ * number(expr, 'pattern')            number formatted using DecimalFormat
+ *                                    pattern
+ * </pre>
+ *
+ * Expression is compiled once into a tree of terms that is evaluated for each
+ * row. Missing values are treated as empty strings by concat, other functions
+ * return null (empty value) if their argument is missing or cannot be parsed.
+ *
+ * @author fordfrog
+ */
+public class ComputedColumn {
+
+    /**
+     * Column name.
+     */
+    private final String name;
+    /**
+     * Compiled expression.
+     */
+    private final Term term;
+    /**
+     * Columns the expression refers to.
+     */
+    private final Set<String> columns = new HashSet<>(4);
+
+    /**
+     * Creates new instance of ComputedColumn.
+     *
+     * @param definition column definition in format
+     *                   <code>name=expression</code>
+     */
+    public ComputedColumn(final String definition) {
+        final int index = definition.indexOf('=');
+
+        if (index < 1) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Invalid computed column \"{0}\": expected name=expression",
+                    definition));
+        }
+
+        name = definition.substring(0, index).trim();
+        term = new Parser(definition, definition.substring(index + 1),
+                columns).parse();
+    }
+
+    /**
+     * Checks whether the column definition is a computed column. Element
+     * names cannot contain equals sign so it is used to distinguish computed
+     * columns.
+     *
+     * @param definition column definition
+     *
+     * @return true if the column is computed, otherwise false
+     */
+    public static boolean isComputed(final String definition) {
+        return definition.indexOf('=') != -1;
+    }
+
+    /**
+     * Returns name of the column defined by the definition.
+     *
+     * @param definition column definition
+     *
+     * @return column name
+     */
+    public static String getName(final String definition) {
+        return isComputed(definition)
+                ? definition.substring(0, definition.indexOf('=')).trim()
+                : definition;
+    }
+
+    /**
+     * Splits comma separated list of columns. Commas within parentheses and
+     * quoted strings of computed columns do not separate columns.
+     *
+     * @param columns comma separated list of columns
+     *
+     * @return array of columns
+     */
+    public static String[] splitColumns(final String columns) {
+        final List<String> result = new ArrayList<>(16);
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+
+        for (int i = 0; i < columns.length(); i++) {
+            final char chr = columns.charAt(i);
+
+            if (quote != 0) {
+                if (chr == quote) {
+                    quote = 0;
+                }
+            } else if (chr == '\'' || chr == '"') {
+                quote = chr;
+            } else if (chr == '(') {
+                depth++;
+            } else if (chr == ')') {
+                depth--;
+            } else if (chr == ',' && depth == 0) {
+                result.add(columns.substring(start, i));
+                start = i + 1;
+            }
+        }
+
+        result.add(columns.substring(start));
+
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Getter for {@link #name}.
+     *
+     * @return {@link #name}
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter for {@link #columns}.
+     *
+     * @return {@link #columns}
+     */
+    public Set<String> getColumns() {
+        return Collections.unmodifiableSet(columns);
+    }
+
+    /**
+     * Computes value of the column.
+     *
+     * @param values map of row columns and values
+     *
+     * @return computed value or null
+     */
+    public String evaluate(final Map<String, String> values) {
+        return term.evaluate(values);
+    }
+
+    /**
+     * Compiled part of expression.
+     */
+    private interface Term {
+
+        /**
+         * Evaluates the term.
+         *
+         * @param values map of row columns and values
+         *
+         * @return value or null
+         */
+        String evaluate(Map<String, String> values);
+    }
+
+    /**
+     * String literal.
+     */
+    private static class Literal implements Term {
+
+        /**
+         * Literal value.
+         */
+        private final String value;
+
+        /**
+         * Creates new instance of Literal.
+         *
+         * @param value literal value
+         */
+        Literal(final String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String evaluate(final Map<String, String> values) {
+            return value;
+        }
+    }
+
+    /**
+     * Value of other column.
+     */
+    private static class ColumnReference implements Term {
+
+        /**
+         * Column name.
+         */
+        private final String column;
+
+        /**
+         * Creates new instance of ColumnReference.
+         *
+         * @param column column name
+         */
+        ColumnReference(final String column) {
+            this.column = column;
+        }
+
+        @Override
+        public String evaluate(final Map<String, String> values) {
+            return values.get(column);
+        }
+    }
+
+    /**
+     * Concatenation of values.
+     */
+    private static class Concat implements Term {
+
+        /**
+         * Concatenated terms.
+         */
+        private final Term[] terms;
+
+        /**
+         * Creates new instance of Concat.
+         *
+         * @param terms concatenated terms
+         */
+        Concat(final List<Term> terms) {
+            this.terms = terms.toArray(new Term[terms.size()]);
+        }
+
+        @Override
+        public String evaluate(final Map<String, String> values) {
+            final StringBuilder sb = new StringBuilder(64);
+
+            for (final Term term : terms) {
+                final String value = term.evaluate(values);
+
+                if (value != null) {
+                    sb.append(value);
+                }
+            }
+
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Substring of value.
+     */
+    private static class Substring implements Term {
+
+        /**
+         * Term providing the value.
+         */
+        private final Term term;
+        /**
+         * Start index (inclusive).
+         */
+        private final int start;
+        /**
+         * End index (exclusive) or -1 for end of value.
+         */
+        private final int end;
+
+        /**
+         * Creates new instance of Substring.
+         *
+         * @param term  term providing the value
+         * @param start start index (inclusive)
+         * @param end   end index (exclusive) or -1 for end of value
+         */
+        Substring(final Term term, final int start, final int end) {
+            this.term = term;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String evaluate(final Map<String, String> values) {
+            final String value = term.evaluate(values);
+
+            if (value == null) {
+                return null;
+            }
+
+            final int length = value.length();
+            final int endIndex = end == -1 ? length : Math.min(end, length);
+            final int startIndex = Math.min(start, endIndex);
+
+            return value.substring(startIndex, endIndex);
+        }
+    }
+
+    /**
+     * Case conversion or trimming of value.
+     */
+    private static class Transform implements Term {
+
+        /**
+         * Term providing the value.
+         */
+        private final Term term;
+        /**
+         * Function name (upper, lower or trim).
+         */
+        private final String function;
+
+        /**
+         * Creates new instance of Transform.
+         *
+         * @param term     term providing the value
+         * @param function function name (upper, lower or trim)
+         */
+        Transform(final Term term, final String function) {
+            this.term = term;
+            this.function = function;
+        }
+
+        @Override
+        public String evaluate(final Map<String, String> values) {
+            final String value = term.evaluate(values);
+
+            if (value == null) {
+                return null;
+            }
+
+            switch (function) {
+                case "upper":
+                    return value.toUpperCase(Locale.ENGLISH);
+                case "lower":
+                    return value.toLowerCase(Locale.ENGLISH);
+                default:
+                    return value.trim();
+            }
+        }
+    }
+
+    /**
+     * Reformatting of date. Formats are not thread safe so they are kept per
+     * thread.
+     */
+    private static class FormatDate implements Term {
+
+        /**
+         * Term providing the value.
+         */
+        private final Term term;
+        /**
+         * Formats used for parsing and formatting the value.
+         */
+        private final ThreadLocal<SimpleDateFormat[]> formats;
+
+        /**
+         * Creates new instance of FormatDate.
+         *
+         * @param term          term providing the value
+         * @param inputPattern  pattern of input values
+         * @param outputPattern pattern of output values
+         */
+        FormatDate(final Term term, final String inputPattern,
+                final String outputPattern) {
+            this.term = term;
+
+            final SimpleDateFormat input =
+                    new SimpleDateFormat(inputPattern, Locale.ENGLISH);
+            input.setLenient(false);
+
+            final SimpleDateFormat output =
+                    new SimpleDateFormat(outputPattern, Locale.ENGLISH);
+
+            formats = new ThreadLocal<SimpleDateFormat[]>() {
+                @Override
+                protected SimpleDateFormat[] initialValue() {
+                    return new SimpleDateFormat[]{
+                        (SimpleDateFormat) input.clone(),
+                        (SimpleDateFormat) output.clone()};
+                }
+            };
+        }
+
+        @Override
+        public String evaluate(final Map<String, String> values) {
+            final String value = term.evaluate(values);
+
+            if (value == null) {
+                return null;
+            }
+
+            final SimpleDateFormat[] dateFormats = formats.get();
+
+            try {
+                return dateFormats[1].format(dateFormats[0].parse(value));
+            } catch (final ParseException ex) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Formatting of number. Formats are not thread safe so they are kept per
+     * thread.
+     */
+    private static class FormatNumber implements Term {
+
+        /**
+         * Term providing the value.
+         */
+        private final Term term;
+        /**
+         * Format used for formatting the value.
+         */
+        private final ThreadLocal<DecimalFormat> format;
+
+        /**
+         * Creates new instance of FormatNumber.
+         *
+         * @param term    term providing the value
+         * @param pattern pattern of output values
+         */
+        FormatNumber(final Term term, final String pattern) {
+            this.term = term;
+
+            final DecimalFormat decimalFormat = new DecimalFormat(pattern,
+                    DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+
+            format = new ThreadLocal<DecimalFormat>() {
+                @Override
+                protected DecimalFormat initialValue() {
+                    return (DecimalFormat) decimalFormat.clone();
+                }
+            };
+        }
+
+        @Override
+        public String evaluate(final Map<String, String> values) {
+            final String value = term.evaluate(values);
+
+            if (value == null) {
+                return null;
+            }
+
+            final double number = FilterExpression.parseNumber(value);
+
+            return Double.isNaN(number) ? null : format.get().format(number);
+        }
+    }
+
+    /**
+     * Parser of computed column expressions.
+     */
+    private static class Parser {
+
+        /**
+         * Column definition used in error messages.
+         */
+        private final String definition;
+        /**
+         * Expression string.
+         */
+        private final String expression;
+        /**
+         * Set to which names of referenced columns are added.
+         */
+        private final Set<String> columns;
+        /**
+         * Current position in the expression.
+         */
+        private int pos;
+
+        /**
+         * Creates new instance of Parser.
+         *
+         * @param definition column definition used in error messages
+         * @param expression expression string
+         * @param columns    set to which names of referenced columns are
+         *                   added
+         */
+        Parser(final String definition, final String expression,
+                final Set<String> columns) {
+            this.definition = definition;
+            this.expression = expression;
+            this.columns = columns;
+        }
+
+        /**
+         * Parses the expression.
+         *
+         * @return compiled expression
+         */
+        Term parse() {
+            final Term term = parseTerm();
+            skipWhitespace();
+
+            if (pos < expression.length()) {
+                throw error("unexpected character "
+                        + expression.charAt(pos));
+            }
+
+            return term;
+        }
+
+        /**
+         * Parses single term.
+         *
+         * @return compiled term
+         */
+        private Term parseTerm() {
+            skipWhitespace();
+
+            if (pos >= expression.length()) {
+                throw error("unexpected end of expression");
+            }
+
+            final char chr = expression.charAt(pos);
+
+            if (chr == '\'' || chr == '"') {
+                return new Literal(parseString());
+            }
+
+            final String identifier = parseIdentifier();
+            skipWhitespace();
+
+            if (pos >= expression.length() || expression.charAt(pos) != '(') {
+                columns.add(identifier);
+
+                return new ColumnReference(identifier);
+            }
+
+            pos++;
+
+            final List<Term> arguments = new ArrayList<>(4);
+            final List<String> literals = new ArrayList<>(4);
+            skipWhitespace();
+
+            if (pos < expression.length() && expression.charAt(pos) == ')') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    final int start = pos;
+                    final Term argument = parseTerm();
+                    arguments.add(argument);
+                    literals.add(argument instanceof Literal
+                            ? argument.evaluate(null)
+                            : expression.substring(start, pos).trim());
+                    skipWhitespace();
+
+                    if (pos < expression.length()
+                            && expression.charAt(pos) == ',') {
+                        pos++;
+                    } else {
+                        expect(')');
+
+                        break;
+                    }
+                }
+            }
+
+            return createFunction(identifier.toLowerCase(Locale.ENGLISH),
+                    arguments, literals);
+        }
+
+        /**
+         * Creates function term.
+         *
+         * @param function  function name
+         * @param arguments function arguments
+         * @param literals  string form of arguments used for constant
+         *                  arguments
+         *
+         * @return compiled term
+         */
+        private Term createFunction(final String function,
+                final List<Term> arguments, final List<String> literals) {
+            switch (function) {
+                case "concat":
+                    return new Concat(arguments);
+                case "substring":
+                    checkArguments(function, arguments, 2, 3);
+
+                    return new Substring(arguments.get(0),
+                            parseIndex(literals.get(1)),
+                            arguments.size() == 3
+                                    ? parseIndex(literals.get(2)) : -1);
+                case "upper":
+                case "lower":
+                case "trim":
+                    checkArguments(function, arguments, 1, 1);
+
+                    return new Transform(arguments.get(0), function);
+                case "date":
+                    checkArguments(function, arguments, 3, 3);
+
+                    try {
+                        return new FormatDate(arguments.get(0),
+                                literals.get(1), literals.get(2));
+                    } catch (final IllegalArgumentException ex) {
+                        throw error(ex.getMessage());
+                    }
+                case "number":
+                    checkArguments(function, arguments, 2, 2);
+
+                    try {
+                        return new FormatNumber(arguments.get(0),
+                                literals.get(1));
+                    } catch (final IllegalArgumentException ex) {
+                        throw error(ex.getMessage());
+                    }
+                default:
+                    throw error("unsupported function " + function);
+            }
+        }
+
+        /**
+         * Checks number of function arguments.
+         *
+         * @param function  function name
+         * @param arguments function arguments
+         * @param min       minimum number of arguments
+         * @param max       maximum number of arguments
+         */
+        private void checkArguments(final String function,
+                final List<Term> arguments, final int min, final int max) {
+            if (arguments.size() < min || arguments.size() > max) {
+                throw error("invalid number of arguments of " + function);
+            }
+        }
+
+        /**
+         * Parses non-negative index.
+         *
+         * @param value index string
+         *
+         * @return index
+         */
+        private int parseIndex(final String value) {
+            try {
+                final int index = Integer.parseInt(value);
+
+                if (index >= 0) {
+                    return index;
+                }
+            } catch (final NumberFormatException ex) {
+                // reported below
+            }
+
+            throw error("invalid index " + value);
+        }
+
+        /**
+         * Parses quoted string. Quotes are escaped by doubling them.
+         *
+         * @return string value
+         */
+        private String parseString() {
+            final char quote = expression.charAt(pos++);
+            final StringBuilder sb = new StringBuilder(16);
+
+            while (pos < expression.length()) {
+                final char chr = expression.charAt(pos++);
+
+                if (chr != quote) {
+                    sb.append(chr);
+                } else if (pos < expression.length()
+                        && expression.charAt(pos) == quote) {
+                    sb.append(quote);
+                    pos++;
+                } else {
+                    return sb.toString();
+                }
+            }
+
+            throw error("unterminated string");
+        }
+
+        /**
+         * Parses column name, function name or number.
+         *
+         * @return identifier
+         */
+        private String parseIdentifier() {
+            final int start = pos;
+
+            while (pos < expression.length()
+                    && !Character.isWhitespace(expression.charAt(pos))
+                    && "(),'\"".indexOf(expression.charAt(pos)) == -1) {
+                pos++;
+            }
+
+            if (pos == start) {
+                throw error("unexpected character "
+                        + expression.charAt(pos));
+            }
+
+            return expression.substring(start, pos);
+        }
+
+        /**
+         * Consumes expected character.
+         *
+         * @param chr expected character
+         */
+        private void expect(final char chr) {
+            if (pos >= expression.length() || expression.charAt(pos) != chr) {
+                throw error("expected " + chr);
+            }
+
+            pos++;
+        }
+
+        /**
+         * Skips whitespace characters.
+         */
+        private void skipWhitespace() {
+            while (pos < expression.length()
+                    && Character.isWhitespace(expression.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        /**
+         * Creates exception describing parse error.
+         *
+         * @param message error message
+         *
+         * @return exception
+         */
+        private IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException(MessageFormat.format(
+                    "Invalid computed column \"{0}\": {1}", definition,
+                    message));
+        }
+    }
+}
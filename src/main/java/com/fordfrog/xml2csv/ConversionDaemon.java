@@ -0,0 +1,266 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Daemon serving conversion requests over HTTP on loopback interface, so that
+ * many small conversions do not pay for JVM startup and warmup. Request is
+ * POST to /convert with command line arguments in the body, one argument per
+ * line. Response status is 200 if the conversion succeeded, 400 or 500 with
+ * error message if it failed, and 503 if all workers are busy and the queue
+ * of waiting requests is full. GET /status returns numbers of active, queued
+ * and completed conversions. Filter values, substring matchers compiled from
+ * them and remapping maps loaded from files are kept in memory and shared by
+ * all requests.
+ *
+ * @author fordfrog
+ */
+public class ConversionDaemon {
+
+    /**
+     * Charset of request and response bodies.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * HTTP server.
+     */
+    private final HttpServer server;
+    /**
+     * Executor receiving HTTP exchanges.
+     */
+    private final ExecutorService receiver;
+    /**
+     * Workers performing conversions.
+     */
+    private final ThreadPoolExecutor workers;
+    /**
+     * Dictionaries shared by conversions.
+     */
+    private final DictionaryCache dictionaries = new DictionaryCache();
+
+    /**
+     * Creates new instance of ConversionDaemon. The daemon is not started.
+     *
+     * @param port      port to listen on, 0 chooses free port
+     * @param threads   number of conversions running concurrently
+     * @param queueSize number of requests that can wait for free worker
+     *
+     * @throws IOException Thrown if the port could not be bound.
+     */
+    public ConversionDaemon(final int port, final int threads,
+            final int queueSize) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), 0);
+        receiver = Executors.newCachedThreadPool(
+                createThreadFactory("xml2csv-daemon-http"));
+        workers = new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                createThreadFactory("xml2csv-daemon-worker"));
+        server.setExecutor(receiver);
+        server.createContext("/convert", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange)
+                    throws IOException {
+                handleConvert(exchange);
+            }
+        });
+        server.createContext("/status", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange)
+                    throws IOException {
+                respond(exchange, 200, "active=" + workers.getActiveCount()
+                        + "\nqueued=" + workers.getQueue().size()
+                        + "\ncompleted=" + workers.getCompletedTaskCount()
+                        + '\n');
+            }
+        });
+    }
+
+    /**
+     * Starts the daemon.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the daemon. Running conversions are finished first.
+     */
+    public void stop() {
+        server.stop(0);
+        workers.shutdown();
+        receiver.shutdown();
+    }
+
+    /**
+     * Returns port the daemon listens on.
+     *
+     * @return port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Handles conversion request.
+     *
+     * @param exchange HTTP exchange
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private void handleConvert(final HttpExchange exchange)
+            throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "Use POST\n");
+
+            return;
+        }
+
+        final List<String> args = new ArrayList<>(16);
+
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), UTF_8))) {
+            String line = reader.readLine();
+
+            while (line != null) {
+                if (!line.isEmpty()) {
+                    args.add(line);
+                }
+
+                line = reader.readLine();
+            }
+        }
+
+        if (args.isEmpty()) {
+            respond(exchange, 400, "No arguments\n");
+
+            return;
+        }
+
+        final Future<?> future;
+
+        try {
+            future = workers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Main.run(args.toArray(new String[args.size()]),
+                            dictionaries);
+                }
+            });
+        } catch (final RejectedExecutionException ex) {
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            respond(exchange, 503, "All workers are busy\n");
+
+            return;
+        }
+
+        try {
+            future.get();
+            respond(exchange, 200, "OK\n");
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            respond(exchange, 500, "Interrupted\n");
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            final boolean clientError =
+                    cause instanceof IllegalArgumentException
+                    || cause instanceof NullPointerException;
+
+            // details of server errors are logged, not sent to the client
+            if (!clientError) {
+                cause.printStackTrace();
+            }
+
+            respond(exchange, clientError ? 400 : 500,
+                    (cause.getMessage() == null ? cause.getClass().getName()
+                            : cause.getMessage()) + '\n');
+        }
+    }
+
+    /**
+     * Sends response.
+     *
+     * @param exchange HTTP exchange
+     * @param status   response status
+     * @param body     response body
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private static void respond(final HttpExchange exchange, final int status,
+            final String body) throws IOException {
+        final byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (final OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Creates factory of daemon threads.
+     *
+     * @param name prefix of thread names
+     *
+     * @return thread factory
+     */
+    private static ThreadFactory createThreadFactory(final String name) {
+        final AtomicInteger counter = new AtomicInteger();
+
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread =
+                        new Thread(r, name + '-' + counter.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        };
+    }
+}
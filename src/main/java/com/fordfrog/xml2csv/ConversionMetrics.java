@@ -0,0 +1,410 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.text.MessageFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of a conversion. Counters are updated by the converting
+ * thread and can be read from any thread, either directly or through JMX
+ * once {@link #register(java.lang.String)} is called.
+ *
+ * @author fordfrog
+ */
+public class ConversionMetrics implements ConversionMetricsMXBean {
+
+    /**
+     * Number of items read from the input.
+     */
+    private final AtomicLong itemsRead = new AtomicLong();
+    /**
+     * Number of rows written to the output.
+     */
+    private final AtomicLong rowsWritten = new AtomicLong();
+    /**
+     * Number of items excluded by filters.
+     */
+    private final AtomicLong rowsFiltered = new AtomicLong();
+    /**
+     * Number of bytes read from the input.
+     */
+    private final AtomicLong bytesRead = new AtomicLong();
+    /**
+     * Number of bytes written to the output.
+     */
+    private final AtomicLong bytesWritten = new AtomicLong();
+    /**
+     * Time spent by preparing values, filtering and remapping in nanoseconds.
+     */
+    private final AtomicLong transformNanos = new AtomicLong();
+    /**
+     * Time spent by writing rows in nanoseconds.
+     */
+    private final AtomicLong writeNanos = new AtomicLong();
+    /**
+     * Number of items excluded by each filter.
+     */
+    private final ConcurrentMap<Filter, AtomicLong> filterRejections =
+            new ConcurrentHashMap<>(10);
+    /**
+     * Number of values replaced by each remapping.
+     */
+    private final ConcurrentMap<Remapping, AtomicLong> remapHits =
+            new ConcurrentHashMap<>(10);
+    /**
+     * Time when conversion started, as returned by {@link System#nanoTime()}.
+     */
+    private volatile long startNanos = System.nanoTime();
+    /**
+     * Time when conversion finished or zero if it is still running.
+     */
+    private volatile long finishNanos;
+    /**
+     * Name under which the metrics are registered in platform MBean server.
+     */
+    private ObjectName objectName;
+
+    /**
+     * Marks start of the conversion.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+        finishNanos = 0;
+    }
+
+    /**
+     * Marks end of the conversion.
+     */
+    public void finish() {
+        finishNanos = System.nanoTime();
+    }
+
+    /**
+     * Records that an item was read.
+     */
+    public void itemRead() {
+        itemsRead.incrementAndGet();
+    }
+
+    /**
+     * Records that a row was written.
+     */
+    public void rowWritten() {
+        rowsWritten.incrementAndGet();
+    }
+
+    /**
+     * Records that an item was excluded by filter.
+     *
+     * @param filter filter that excluded the item
+     */
+    public void rowFiltered(final Filter filter) {
+        rowsFiltered.incrementAndGet();
+        getCounter(filterRejections, filter).incrementAndGet();
+    }
+
+    /**
+     * Records that value was replaced by remapping.
+     *
+     * @param remapping remapping that replaced the value
+     */
+    public void remapHit(final Remapping remapping) {
+        getCounter(remapHits, remapping).incrementAndGet();
+    }
+
+    /**
+     * Records time spent by preparing values, filtering and remapping.
+     *
+     * @param nanos time in nanoseconds
+     */
+    public void addTransformTime(final long nanos) {
+        transformNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records time spent by writing rows.
+     *
+     * @param nanos time in nanoseconds
+     */
+    public void addWriteTime(final long nanos) {
+        writeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Wraps input stream so that read bytes are counted.
+     *
+     * @param inputStream input stream
+     *
+     * @return wrapped input stream
+     */
+    public InputStream countInput(final InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                final int result = super.read();
+
+                if (result != -1) {
+                    bytesRead.incrementAndGet();
+                }
+
+                return result;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len)
+                    throws IOException {
+                final int result = super.read(b, off, len);
+
+                if (result > 0) {
+                    bytesRead.addAndGet(result);
+                }
+
+                return result;
+            }
+
+            @Override
+            public long skip(final long n) throws IOException {
+                final long result = super.skip(n);
+                bytesRead.addAndGet(result);
+
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Wraps output stream so that written bytes are counted.
+     *
+     * @param outputStream output stream
+     *
+     * @return wrapped output stream
+     */
+    public OutputStream countOutput(final OutputStream outputStream) {
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(final int b) throws IOException {
+                out.write(b);
+                bytesWritten.incrementAndGet();
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len)
+                    throws IOException {
+                out.write(b, off, len);
+                bytesWritten.addAndGet(len);
+            }
+        };
+    }
+
+    @Override
+    public long getItemsRead() {
+        return itemsRead.get();
+    }
+
+    @Override
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    @Override
+    public long getRowsFiltered() {
+        return rowsFiltered.get();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        final long endNanos =
+                finishNanos == 0 ? System.nanoTime() : finishNanos;
+
+        return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+    }
+
+    @Override
+    public long getParseMillis() {
+        return Math.max(0, getElapsedMillis() - getTransformMillis()
+                - getWriteMillis());
+    }
+
+    @Override
+    public long getTransformMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(transformNanos.get());
+    }
+
+    @Override
+    public long getWriteMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(writeNanos.get());
+    }
+
+    @Override
+    public double getItemsPerSecond() {
+        final long elapsed = getElapsedMillis();
+
+        return elapsed == 0 ? 0 : getItemsRead() * 1_000.0 / elapsed;
+    }
+
+    @Override
+    public Map<String, Long> getFilterRejections() {
+        final Map<String, Long> result =
+                new LinkedHashMap<>(filterRejections.size());
+
+        for (final Map.Entry<Filter, AtomicLong> entry
+                : filterRejections.entrySet()) {
+            final Filter filter = entry.getKey();
+            putUnique(result, filter.getColumn() == null ? filter.toString()
+                    : filter.getColumn(), entry.getValue().get());
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getRemapHits() {
+        final Map<String, Long> result = new LinkedHashMap<>(remapHits.size());
+
+        for (final Map.Entry<Remapping, AtomicLong> entry
+                : remapHits.entrySet()) {
+            putUnique(result, entry.getKey().getColumn(),
+                    entry.getValue().get());
+        }
+
+        return result;
+    }
+
+    /**
+     * Registers metrics in platform MBean server.
+     *
+     * @param name name of the conversion used in object name
+     */
+    public synchronized void register(final String name) {
+        try {
+            objectName = new ObjectName(
+                    "com.fordfrog.xml2csv:type=ConversionMetrics,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    this, objectName);
+        } catch (final JMException ex) {
+            throw new RuntimeException("Failed to register metrics", ex);
+        }
+    }
+
+    /**
+     * Unregisters metrics from platform MBean server if they were registered.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    objectName);
+        } catch (final JMException ex) {
+            throw new RuntimeException("Failed to unregister metrics", ex);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    /**
+     * Formats single line with progress information.
+     *
+     * @return progress line
+     */
+    public String toProgressString() {
+        return MessageFormat.format("items: {0,number,#}, rows: {1,number,#}, "
+                + "filtered: {2,number,#}, read: {3,number,#} MB, "
+                + "written: {4,number,#} MB, rate: {5,number,#} items/s, "
+                + "parse/transform/write: {6,number,#}/{7,number,#}/"
+                + "{8,number,#} ms", getItemsRead(), getRowsWritten(),
+                getRowsFiltered(), getBytesRead() / (1_024 * 1_024),
+                getBytesWritten() / (1_024 * 1_024), getItemsPerSecond(),
+                getParseMillis(), getTransformMillis(), getWriteMillis());
+    }
+
+    /**
+     * Returns counter for given key, creating it if it does not exist yet.
+     *
+     * @param <K>      key type
+     * @param counters map of counters
+     * @param key      key
+     *
+     * @return counter
+     */
+    private static <K> AtomicLong getCounter(
+            final ConcurrentMap<K, AtomicLong> counters, final K key) {
+        AtomicLong counter = counters.get(key);
+
+        if (counter == null) {
+            final AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent(key, newCounter);
+
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+
+        return counter;
+    }
+
+    /**
+     * Puts value into the map. If the key is already used, sequence number is
+     * appended to it.
+     *
+     * @param map   map
+     * @param key   key
+     * @param value value
+     */
+    private static void putUnique(final Map<String, Long> map,
+            final String key, final Long value) {
+        String uniqueKey = key;
+
+        for (int i = 2; map.containsKey(uniqueKey); i++) {
+            uniqueKey = key + "#" + i;
+        }
+
+        map.put(uniqueKey, value);
+    }
+}
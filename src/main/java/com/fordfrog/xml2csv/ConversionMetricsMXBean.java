@@ -0,0 +1,120 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link ConversionMetrics}.
+ *
+ * @author fordfrog
+ */
+public interface ConversionMetricsMXBean {
+
+    /**
+     * Returns number of items read from the input.
+     *
+     * @return number of items
+     */
+    long getItemsRead();
+
+    /**
+     * Returns number of rows written to the output.
+     *
+     * @return number of rows
+     */
+    long getRowsWritten();
+
+    /**
+     * Returns number of items that were excluded by filters.
+     *
+     * @return number of items
+     */
+    long getRowsFiltered();
+
+    /**
+     * Returns number of bytes read from the input.
+     *
+     * @return number of bytes
+     */
+    long getBytesRead();
+
+    /**
+     * Returns number of bytes written to the output. Bytes are counted only if
+     * the convertor writes the output file itself.
+     *
+     * @return number of bytes
+     */
+    long getBytesWritten();
+
+    /**
+     * Returns time elapsed since start of the conversion.
+     *
+     * @return time in milliseconds
+     */
+    long getElapsedMillis();
+
+    /**
+     * Returns time spent by parsing the input. It is the elapsed time minus
+     * transform and write time.
+     *
+     * @return time in milliseconds
+     */
+    long getParseMillis();
+
+    /**
+     * Returns time spent by preparing values, filtering and remapping.
+     *
+     * @return time in milliseconds
+     */
+    long getTransformMillis();
+
+    /**
+     * Returns time spent by writing rows.
+     *
+     * @return time in milliseconds
+     */
+    long getWriteMillis();
+
+    /**
+     * Returns average number of items read per second.
+     *
+     * @return number of items per second
+     */
+    double getItemsPerSecond();
+
+    /**
+     * Returns number of items excluded by each filter. Keys are filter column
+     * names, or the expression for filter expressions on several columns.
+     *
+     * @return map of filter columns and number of excluded items
+     */
+    Map<String, Long> getFilterRejections();
+
+    /**
+     * Returns number of values replaced by each remapping. Keys are remapping
+     * column names.
+     *
+     * @return map of remapping columns and number of replaced values
+     */
+    Map<String, Long> getRemapHits();
+}
@@ -21,18 +21,44 @@
  */
 package com.fordfrog.xml2csv;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackReader;
+import java.io.Reader;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Pattern;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -44,6 +70,134 @@ import javax.xml.stream.XMLStreamReader;
  */
 public class Convertor {
 
+    /**
+     * Conversion settings.
+     */
+    private final ConvertorSettings settings;
+    /**
+     * Row writer.
+     */
+    private final RowWriter rowWriter;
+    /**
+     * Row writer passing rows of sampled items to the row writer, or null if
+     * items are not sampled.
+     */
+    private final SamplingRowWriter sampler;
+    /**
+     * Maximum number of rows to write.
+     */
+    private final long limit;
+    /**
+     * Number of rows written.
+     */
+    private long rowCount;
+    /**
+     * Conversion metrics or null if metrics are not collected.
+     */
+    private final ConversionMetrics metrics;
+    /**
+     * Output file path used for recording checkpoints, null if checkpoints are
+     * not recorded.
+     */
+    private final Path outputFile;
+    /**
+     * Names of output columns.
+     */
+    private final String[] columnNames;
+    /**
+     * Computed columns in order of definition, null if there are no computed
+     * columns.
+     */
+    private final ComputedColumn[] computedColumns;
+    /**
+     * Strategy of columns without explicit strategy.
+     */
+    private final ValueStrategy defaultStrategy;
+    /**
+     * Columns with {@link ValueStrategy.Type#COUNT} strategy. Their value is
+     * 0 if the item contains no element of the column.
+     */
+    private final List<String> countColumns = new ArrayList<>(0);
+    /**
+     * Values of columns by column names. Instances are reused for all items.
+     */
+    private final Map<String, ColumnValue> columnValues = new HashMap<>(16);
+    /**
+     * Values of columns that occurred in current item.
+     */
+    private final List<ColumnValue> itemValues = new ArrayList<>(16);
+    /**
+     * Matcher of item element path.
+     */
+    private final PathMatcher itemMatcher;
+    /**
+     * Matcher of paths within item. Paths of {@link #matcherColumns} are
+     * followed by paths of {@link #matcherGroups}.
+     */
+    private final PathMatcher columnMatcher;
+    /**
+     * Columns whose values are needed for output, filters, remappings or
+     * computed columns. Text of other elements is not collected at all.
+     */
+    private final String[] matcherColumns;
+    /**
+     * Exploded groups in order of their paths in {@link #columnMatcher}.
+     */
+    private final ExplodeGroup[] matcherGroups;
+    /**
+     * Exploded groups by their paths, null if there are no exploded groups.
+     */
+    private final Map<String, ExplodeGroup> explodeGroups;
+    /**
+     * Start tags of the elements enclosing current element. It is maintained
+     * only if checkpoints are recorded.
+     */
+    private final List<String> openElements = new ArrayList<>(10);
+    /**
+     * Value caches by column names, null if no values are cached.
+     */
+    private final Map<String, ValueCache> caches;
+    /**
+     * Cache entries of first values of cached columns of current item.
+     */
+    private final Map<String, ValueCache.Entry> itemEntries;
+    /**
+     * Defined filters, null if there are no filters.
+     */
+    private final Filter[] filters;
+    /**
+     * Indexes of {@link #filters} by filter column names.
+     */
+    private final Map<String, int[]> filterIndexes;
+    /**
+     * Flags of {@link #filters} that current item was already found to match.
+     */
+    private final boolean[] passedFilters;
+    /**
+     * Filter that excluded current item, or null if current item was not
+     * excluded yet.
+     */
+    private Filter rejectingFilter;
+    /**
+     * Number of items processed so far, including filtered out items.
+     */
+    private long itemCount;
+    /**
+     * Offset in characters of the original input at the position of
+     * {@link #lastCharacterOffset}.
+     */
+    private long inputOffset;
+    /**
+     * Character offset last reported by the XML stream reader. The reader
+     * reports offsets as int so they overflow for large inputs, the difference
+     * from this value is used to advance {@link #inputOffset} instead.
+     */
+    private int lastCharacterOffset;
+    /**
+     * Encoding of the input document.
+     */
+    private String encoding;
+
     /**
      * Converts input XML file to output CSV file.
      *
@@ -62,14 +216,8 @@ public class Convertor {
             final String[] columns, final Filters filters,
             final Remappings remappings, final char separator,
             final boolean trim, final boolean join, final String itemName) {
-        try (final InputStream inputStream = Files.newInputStream(inputFile);
-                final Writer writer = Files.newBufferedWriter(
-                        outputFile, Charset.forName("UtF-8"))) {
-            convert(inputStream, writer, columns, filters, remappings, separator,
-                    trim, join, itemName);
-        } catch (final IOException ex) {
-            throw new RuntimeException("IO operation failed", ex);
-        }
+        convert(inputFile, outputFile, createSettings(columns, filters,
+                remappings, separator, trim, join, itemName));
     }
 
     /**
@@ -91,32 +239,121 @@ public class Convertor {
             final String[] columns, final Filters filters,
             final Remappings remappings, final char separator,
             final boolean trim, final boolean join, final String itemName) {
-        final XMLInputFactory xMLInputFactory = XMLInputFactory.newInstance();
-        final String itemXPath = itemName;
+        convert(inputStream, new CsvRowWriter(writer, separator),
+                createSettings(columns, filters, remappings, separator, trim,
+                        join, itemName));
+    }
 
-        if (itemName.trim().isEmpty()) {
-            throw new IllegalArgumentException("itemName is an empty string. ");
-        }
+    /**
+     * Converts input XML file to rows written to row writer. Row writer is not
+     * closed.
+     *
+     * @param inputFile  input file path
+     * @param rowWriter  row writer
+     * @param columns    array of column names
+     * @param filters    optional filters
+     * @param remappings optional remappings
+     * @param trim       whether to trim values or not
+     * @param join       whether to join multiple values or not
+     * @param itemName   XPath which refers to XML element which will be
+     *                   converted to a row
+     */
+    public static void convert(final Path inputFile, final RowWriter rowWriter,
+            final String[] columns, final Filters filters,
+            final Remappings remappings, final boolean trim,
+            final boolean join, final String itemName) {
+        convert(inputFile, rowWriter, createSettings(columns, filters,
+                remappings, ',', trim, join, itemName));
+    }
 
-        if (itemName.trim().length() != 1 && itemName.endsWith("/")) {
-            throw new IllegalArgumentException(
-                    "itemName cannot end with a shash (/).");
+    /**
+     * Converts input stream with XML to rows written to row writer. Row writer
+     * is not closed.
+     *
+     * @param inputStream input stream
+     * @param rowWriter   row writer
+     * @param columns     array of column names
+     * @param filters     optional filters
+     * @param remappings  optional remappings
+     * @param trim        whether to trim values or not
+     * @param join        whether to join multiple values or not
+     * @param itemName    XPath which refers to XML element which will be
+     *                    converted to a row
+     */
+    public static void convert(final InputStream inputStream,
+            final RowWriter rowWriter,
+            final String[] columns, final Filters filters,
+            final Remappings remappings, final boolean trim,
+            final boolean join, final String itemName) {
+        convert(inputStream, rowWriter, createSettings(columns, filters,
+                remappings, ',', trim, join, itemName));
+    }
+
+    /**
+     * Converts input XML file to output CSV file. If checkpoint file is set,
+     * checkpoints are recorded during the conversion and the conversion can be
+     * resumed from the last checkpoint. Checkpoint file is deleted once the
+     * conversion finishes.
+     *
+     * @param inputFile  input file path
+     * @param outputFile output file path
+     * @param settings   conversion settings
+     */
+    public static void convert(final Path inputFile, final Path outputFile,
+            final ConvertorSettings settings) {
+        if (settings.getIndexFile() != null) {
+            try (final Writer writer = openOutput(outputFile, settings,
+                    false)) {
+                convertIndexed(inputFile, new CsvRowWriter(writer,
+                        CsvFormat.forSettings(settings)), settings);
+            } catch (final IOException ex) {
+                throw new RuntimeException("IO operation failed", ex);
+            }
+
+            return;
         }
 
-        try {
-            final XMLStreamReader reader = xMLInputFactory.
-                    createXMLStreamReader(inputStream);
+        final Path checkpointFile = settings.getCheckpointFile();
+        final Checkpoint checkpoint = checkpointFile != null
+                && settings.isResume() && Files.exists(checkpointFile)
+                ? Checkpoint.load(checkpointFile) : null;
 
-            writeHeader(writer, columns, separator);
+        try {
+            if (checkpoint == null) {
+                try (final InputStream inputStream =
+                        openInput(inputFile, settings);
+                        final Writer writer = openOutput(outputFile, settings,
+                                false)) {
+                    final Convertor convertor = new Convertor(settings,
+                            new CsvRowWriter(writer,
+                                    CsvFormat.forSettings(settings)),
+                            checkpointFile == null ? null : outputFile);
+                    convertor.convert(XMLInputFactory.newInstance().
+                            createXMLStreamReader(inputStream), true);
+                }
+            } else {
+                truncate(outputFile, checkpoint.getOutputOffset());
 
-            while (reader.hasNext()) {
-                switch (reader.next()) {
-                    case XMLStreamReader.START_ELEMENT:
-                        processRoot(reader, writer, columns, filters, remappings,
-                                separator, trim, join, getParentName(null,
-                                        reader.getLocalName()), itemXPath);
+                try (final Reader inputReader = openAtCheckpoint(inputFile,
+                        settings, checkpoint);
+                        final Writer writer = openOutput(outputFile, settings,
+                                true)) {
+                    final Convertor convertor = new Convertor(settings,
+                            new CsvRowWriter(writer,
+                                    CsvFormat.forSettings(settings)),
+                            outputFile);
+                    convertor.itemCount = checkpoint.getItemCount();
+                    convertor.encoding = checkpoint.getEncoding();
+                    convertor.inputOffset = checkpoint.getInputOffset()
+                            - checkpoint.getOpenElements().length();
+                    convertor.convert(XMLInputFactory.newInstance().
+                            createXMLStreamReader(inputReader), false);
                 }
             }
+
+            if (checkpointFile != null) {
+                Files.deleteIfExists(checkpointFile);
+            }
         } catch (final IOException ex) {
             throw new RuntimeException("IO operation failed", ex);
         } catch (final XMLStreamException ex) {
@@ -125,244 +362,1631 @@ public class Convertor {
     }
 
     /**
-     * Writes CVS header.
+     * Converts input XML file to rows written to row writer. Row writer is not
+     * closed.
      *
-     * @param writer    writer
-     * @param columns   array of columns
-     * @param separator field separator
-     *
-     * @throws IOException Thrown if problem occurred while writing to output
-     *                     file.
+     * @param inputFile input file path
+     * @param rowWriter row writer
+     * @param settings  conversion settings
      */
-    private static void writeHeader(final Writer writer, final String[] columns,
-            final char separator) throws IOException {
-        for (int i = 0; i < columns.length; i++) {
-            if (i > 0) {
-                writer.append(separator);
-            }
+    public static void convert(final Path inputFile, final RowWriter rowWriter,
+            final ConvertorSettings settings) {
+        if (settings.getIndexFile() != null) {
+            convertIndexed(inputFile, rowWriter, settings);
 
-            writer.append(CsvUtils.quoteString(columns[i]));
+            return;
         }
 
-        writer.append('\n');
+        try (final InputStream inputStream = openInput(inputFile, settings)) {
+            convert(inputStream, rowWriter, settings);
+        } catch (final IOException ex) {
+            throw new RuntimeException("IO operation failed", ex);
+        }
     }
 
     /**
-     * Processes root element and its subelements.
+     * Converts input stream with XML to rows written to row writer. Row writer
+     * is not closed.
      *
-     * @param reader        XML stream reader
-     * @param writer        CSV file writer
-     * @param columns       array of columns
-     * @param filters       optional filters
-     * @param remappings    optional remappings
-     * @param separator     field separator
-     * @param trim          whether to trim values or not
-     * @param join          whether to join multiple values or not
-     * @param parentElement XPath which refers to parent element
-     * @param itemName      XPath which refers to XML element which will be
-     *                      converted to a row
+     * @param inputStream input stream
+     * @param rowWriter   row writer
+     * @param settings    conversion settings
+     */
+    public static void convert(final InputStream inputStream,
+            final RowWriter rowWriter, final ConvertorSettings settings) {
+        if (settings.getCheckpointFile() != null) {
+            throw new IllegalArgumentException(
+                    "Checkpoints are supported only when converting file to "
+                    + "file.");
+        }
+
+        final InputStream countedStream = settings.getMetrics() == null
+                ? inputStream : settings.getMetrics().countInput(inputStream);
+
+        try {
+            new Convertor(settings, rowWriter, null).convert(XMLInputFactory.
+                    newInstance().createXMLStreamReader(countedStream), true);
+        } catch (final IOException ex) {
+            throw new RuntimeException("IO operation failed", ex);
+        } catch (final XMLStreamException ex) {
+            throw new RuntimeException("XML stream exception", ex);
+        }
+    }
+
+    /**
+     * Converts stream of concatenated XML documents in UTF-8 encoding, such
+     * as unbounded feed read from standard input, to rows written to row
+     * writer. Rows of all documents are written after single header row. Each
+     * item is converted as soon as its end tag is read, rows are flushed
+     * according to the row writer. Row writer is not closed.
      *
-     * @throws XMLStreamException Thrown if problem occurred while reading XML
-     *                            stream.
-     * @throws IOException        Thrown if IO problem occurred.
+     * @param inputStream input stream
+     * @param rowWriter   row writer
+     * @param settings    conversion settings
      */
-    private static void processRoot(final XMLStreamReader reader,
-            final Writer writer, final String[] columns, final Filters filters,
-            final Remappings remappings, final char separator,
-            final boolean trim, final boolean join, final String parentElement,
-            final String itemName) throws XMLStreamException,
-            IOException {
-        while (reader.hasNext()) {
-            switch (reader.next()) {
-                case XMLStreamReader.START_ELEMENT:
-                    final String currentElementPath = getParentName(
-                            parentElement, reader.getLocalName());
-
-                    if ((currentElementPath).compareTo(itemName) == 0) {
-                        final Map<String, List<String>> values = new HashMap<>(
-                                columns.length);
-                        processItem(reader, writer, columns, filters, remappings,
-                                separator, trim, join, currentElementPath,
-                                values, itemName);
-                    } else {
-                        processRoot(reader, writer, columns, filters, remappings,
-                                separator, trim, join, currentElementPath,
-                                itemName);
-                    }
+    public static void convertDocuments(final InputStream inputStream,
+            final RowWriter rowWriter, final ConvertorSettings settings) {
+        if (settings.getCheckpointFile() != null
+                || settings.getIndexFile() != null) {
+            throw new IllegalArgumentException("Checkpoints and item index "
+                    + "are not supported when converting stream of "
+                    + "documents.");
+        }
 
-                    break;
-                case XMLStreamReader.END_ELEMENT:
-                    return;
+        final DocumentReader documentReader = new DocumentReader(
+                new InputStreamReader(settings.getMetrics() == null
+                        ? inputStream
+                        : settings.getMetrics().countInput(inputStream),
+                        Charset.forName("UTF-8")));
+        final Convertor convertor = new Convertor(settings, rowWriter, null);
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+        if (convertor.metrics != null) {
+            convertor.metrics.start();
+        }
+
+        try {
+            rowWriter.writeHeader(convertor.columnNames);
+
+            while (convertor.rowCount < convertor.limit
+                    && documentReader.nextDocument()) {
+                final XMLStreamReader reader =
+                        factory.createXMLStreamReader(documentReader);
+
+                try {
+                    convertor.convertDocument(reader);
+                } finally {
+                    reader.close();
+                }
+            }
+
+            if (convertor.sampler != null) {
+                convertor.sampler.finish();
+            }
+        } catch (final IOException ex) {
+            throw new RuntimeException("IO operation failed", ex);
+        } catch (final XMLStreamException ex) {
+            throw new RuntimeException("XML stream exception", ex);
+        } finally {
+            if (convertor.metrics != null) {
+                convertor.metrics.finish();
             }
         }
     }
 
     /**
-     * Processes item element.
-     *
-     * @param reader        XML stream reader
-     * @param writer        CSV file writer
-     * @param columns       array of columns
-     * @param filters       optional filters
-     * @param remappings    optional remappings
-     * @param separator     field separator
-     * @param trim          whether to trim values or not
-     * @param join          whether to join multiple values or not
-     * @param parentElement XPath which refers to parent element
-     * @param values        values of XML element for current row
-     * @param itemName      element name which will be converted to row
+     * Converts range of items of input XML file using item index. Range is
+     * split into partitions converted in parallel by
+     * {@link ConvertorSettings#getThreads()} threads. The first partition is
+     * converted in the calling thread directly to the row writer, rows of
+     * other partitions are stored in temporary files next to the index file
+     * and written to the row writer in order once the first partition is
+     * converted, so the rows are written in the same order as by sequential
+     * conversion. Row writer is not closed.
      *
-     * @throws XMLStreamException Thrown if problem occurred while reading XML
-     *                            stream.
-     * @throws IOException        Thrown if IO problem occurred.
+     * @param inputFile input file path
+     * @param rowWriter row writer
+     * @param settings  conversion settings
      */
-    private static void processItem(final XMLStreamReader reader,
-            final Writer writer, final String[] columns, final Filters filters,
-            final Remappings remappings, final char separator,
-            final boolean trim, final boolean join, final String parentElement,
-            final Map<String, List<String>> values, final String itemName)
-            throws XMLStreamException,
-            IOException {
-        final StringBuilder sb = new StringBuilder(1_024);
+    private static void convertIndexed(final Path inputFile,
+            final RowWriter rowWriter, final ConvertorSettings settings) {
+        if (settings.getCheckpointFile() != null) {
+            throw new IllegalArgumentException(
+                    "Checkpoints cannot be combined with item index.");
+        }
 
-        while (reader.hasNext()) {
-            switch (reader.next()) {
-                case XMLStreamReader.START_ELEMENT:
-                    final String currentElementPath = getParentName(
-                            parentElement, reader.getLocalName());
-                    processItem(reader, writer, columns, filters, remappings,
-                            separator, trim, join, currentElementPath, values,
-                            itemName);
+        if (settings.getLimit() != Long.MAX_VALUE
+                || settings.getSampleRate() != 1
+                || settings.getSampleSize() != 0) {
+            throw new IllegalArgumentException("Limit and sampling cannot be "
+                    + "combined with item index.");
+        }
 
-                    break;
-                case XMLStreamReader.CHARACTERS:
-                    sb.append(reader.getText());
+        final List<Path> runFiles = new ArrayList<>(0);
 
-                    break;
-                case XMLStreamReader.END_ELEMENT:
-                    if ((parentElement).compareTo(itemName) == 0) {
-                        final Map<String, String> singleValues = new HashMap<>(
-                                columns.length);
-
-                        for (Entry<String, List<String>> mapEntry : values.
-                                entrySet()) {
-                            singleValues.put(mapEntry.getKey(), prepareValue(
-                                    mapEntry.getValue(), ", ", trim, join));
-                        }
+        try (final ItemIndex index = ItemIndex.open(settings.getIndexFile(),
+                inputFile, settings)) {
+            final long itemCount = index.getItemCount();
+            final long start =
+                    Math.min(settings.getItemRangeStart(), itemCount);
+            final long end = Math.min(settings.getItemRangeEnd(), itemCount);
+
+            if (start >= end) {
+                rowWriter.writeHeader(
+                        new Convertor(settings, rowWriter, null).columnNames);
+
+                return;
+            }
+
+            final int partitionCount =
+                    (int) Math.min(Math.max(1, settings.getThreads()),
+                            end - start);
+            final List<Future<?>> futures = new ArrayList<>(partitionCount);
+            final ExecutorService executor = partitionCount == 1 ? null
+                    : Executors.newFixedThreadPool(partitionCount - 1,
+                            new ThreadFactory() {
+                                @Override
+                                public Thread newThread(final Runnable r) {
+                                    final Thread thread = new Thread(r,
+                                            "xml2csv-partition");
+                                    thread.setDaemon(true);
+
+                                    return thread;
+                                }
+                            });
+
+            try {
+                for (int i = 1; i < partitionCount; i++) {
+                    final Path runFile = Files.createTempFile(
+                            settings.getIndexFile().toAbsolutePath().
+                                    getParent(), "xml2csv-part", ".tmp");
+                    runFiles.add(runFile);
 
-                        if (filters == null || filters.matchesFilters(
-                                singleValues)) {
-                            if (remappings != null) {
-                                remappings.replaceValues(singleValues);
+                    final InputStream inputStream = index.openItems(inputFile,
+                            getPartitionStart(start, end, partitionCount, i),
+                            getPartitionStart(start, end, partitionCount,
+                                    i + 1));
+                    futures.add(executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            try (final InputStream partitionStream =
+                                    inputStream;
+                                    final RunRowWriter runWriter =
+                                            new RunRowWriter(runFile)) {
+                                convertPartition(partitionStream, runWriter,
+                                        settings, false);
                             }
 
-                            writeRow(writer, columns, singleValues, separator);
+                            return null;
                         }
-                    } else {
-                        processValue(parentElement.replaceFirst(Pattern.quote(
-                                itemName + "/"), ""), sb.toString(), values);
-                    }
-                    return;
+                    }));
+                }
+
+                try (final InputStream inputStream = index.openItems(
+                        inputFile, start,
+                        getPartitionStart(start, end, partitionCount, 1))) {
+                    convertPartition(inputStream, rowWriter, settings, true);
+                }
+
+                for (int i = 0; i < futures.size(); i++) {
+                    await(futures.get(i));
+                    RunRowWriter.copy(runFiles.get(i), rowWriter);
+                }
+            } finally {
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
+            }
+
+            if (settings.getMetrics() != null) {
+                settings.getMetrics().finish();
+            }
+        } catch (final IOException ex) {
+            throw new RuntimeException("IO operation failed", ex);
+        } catch (final XMLStreamException ex) {
+            throw new RuntimeException("XML stream exception", ex);
+        } finally {
+            for (final Path runFile : runFiles) {
+                try {
+                    Files.deleteIfExists(runFile);
+                } catch (final IOException ex) {
+                    // temporary file is left behind
+                }
             }
         }
     }
 
     /**
-     * Writes XML item to CSV as CSV row.
+     * Converts XML document containing partition of items.
      *
-     * @param writer    CSV file writer
-     * @param columns   array of columns
-     * @param values    map of values
-     * @param separator field separator
+     * @param inputStream input stream
+     * @param rowWriter   row writer
+     * @param settings    conversion settings
+     * @param writeHeader whether header row should be written
      *
-     * @throws IOException Thrown if problem occurred while writing to output
-     *                     file.
+     * @throws IOException        Thrown if IO problem occurred.
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
      */
-    private static void writeRow(final Writer writer, final String[] columns,
-            final Map<String, String> values, final char separator)
-            throws IOException {
-        for (int i = 0; i < columns.length; i++) {
-            if (i > 0) {
-                writer.append(separator);
-            }
-
-            writer.append(CsvUtils.quoteString(values.get(columns[i])));
-        }
+    private static void convertPartition(final InputStream inputStream,
+            final RowWriter rowWriter, final ConvertorSettings settings,
+            final boolean writeHeader) throws IOException, XMLStreamException {
+        new Convertor(settings, rowWriter, null).convert(XMLInputFactory.
+                newInstance().createXMLStreamReader(
+                        settings.getMetrics() == null ? inputStream
+                                : settings.getMetrics().countInput(
+                                        inputStream)), writeHeader);
+    }
 
-        writer.append('\n');
+    /**
+     * Returns index of the first item of the partition.
+     *
+     * @param start          index of the first item of the range
+     * @param end            index of the item after the range
+     * @param partitionCount number of partitions
+     * @param partition      partition number
+     *
+     * @return index of the first item
+     */
+    private static long getPartitionStart(final long start, final long end,
+            final int partitionCount, final int partition) {
+        return start + (end - start) * partition / partitionCount;
     }
 
     /**
-     * Joins elements from the list using given separator or return first
-     * element from the list. Use trim=<code>true</code> to trim values.
+     * Waits for conversion of partition to finish.
      *
-     * @param values         list of values
-     * @param valueSeparator string used to separate values
-     * @param trim           whether to trim values or not
-     * @param join           whether to join multiple values or not
+     * @param future task future
      *
-     * @return String containing separated values from the list or first element
-     *         from the list.
+     * @throws IOException        Thrown if IO problem occurred or waiting was
+     *                            interrupted.
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
      */
-    private static String prepareValue(List<String> values,
-            final String valueSeparator, final boolean trim, final boolean join) {
-        if (values.isEmpty()) {
-            return null;
+    private static void await(final Future<?> future)
+            throws IOException, XMLStreamException {
+        try {
+            future.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while converting partitions",
+                    ex);
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else if (ex.getCause() instanceof XMLStreamException) {
+                throw (XMLStreamException) ex.getCause();
+            } else if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+
+            throw new IOException("Failed to convert partition",
+                    ex.getCause());
         }
-        if (join) {
-            final StringBuilder sb = new StringBuilder(1_024);
+    }
 
-            for (int i = 0; i < values.size(); i++) {
-                final String value = trim ? values.get(i).trim() : values.get(i);
+    /**
+     * Creates conversion settings from legacy arguments.
+     *
+     * @param columns    array of column names
+     * @param filters    optional filters
+     * @param remappings optional remappings
+     * @param separator  field separator
+     * @param trim       whether to trim values or not
+     * @param join       whether to join multiple values or not
+     * @param itemName   XPath which refers to XML element which will be
+     *                   converted to a row
+     *
+     * @return conversion settings
+     */
+    private static ConvertorSettings createSettings(final String[] columns,
+            final Filters filters, final Remappings remappings,
+            final char separator, final boolean trim, final boolean join,
+            final String itemName) {
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(columns);
+        settings.setFilters(filters);
+        settings.setRemappings(remappings);
+        settings.setSeparator(separator);
+        settings.setTrim(trim);
+        settings.setJoin(join);
+        settings.setItemName(itemName);
 
-                sb.append(value);
+        return settings;
+    }
 
-                if (i < values.size() - 1) {
-                    sb.append(valueSeparator);
-                }
+    /**
+     * Truncates output file to the length recorded in checkpoint, discarding
+     * rows written after the checkpoint.
+     *
+     * @param outputFile output file path
+     * @param length     length of the output file in bytes
+     *
+     * @throws IOException Thrown if the file could not be truncated.
+     */
+    private static void truncate(final Path outputFile, final long length)
+            throws IOException {
+        try (final FileChannel channel = FileChannel.open(outputFile,
+                StandardOpenOption.WRITE)) {
+            if (channel.size() < length) {
+                throw new IOException(MessageFormat.format(
+                        "Output file {0} is shorter than recorded in "
+                        + "checkpoint", outputFile));
             }
 
-            return sb.toString();
-        } else {
-            final String value = values.get(0);
-
-            return trim ? value.trim() : value;
+            channel.truncate(length);
         }
     }
 
     /**
-     * Prepare path to the current element.
+     * Opens input file. If metrics are set, read bytes are counted.
+     *
+     * @param inputFile input file path
+     * @param settings  conversion settings
      *
-     * @param parentName     path to parent element
-     * @param currentElement XML element name
+     * @return input stream
      *
-     * @return path to the current element
+     * @throws IOException Thrown if the file could not be opened.
      */
-    private static String getParentName(final String parentName,
-            final String currentElement) {
-        return (parentName == null ? "" : parentName) + "/" + currentElement;
+    private static InputStream openInput(final Path inputFile,
+            final ConvertorSettings settings) throws IOException {
+        final InputStream inputStream = Files.newInputStream(inputFile);
+
+        return settings.getMetrics() == null ? inputStream
+                : settings.getMetrics().countInput(inputStream);
     }
 
     /**
-     * Adds a single value of XML item. Only columns contains in array are
-     * added to the values map.
+     * Opens output file for writing in UTF-8 encoding. If metrics are set,
+     * written bytes are counted.
+     *
+     * @param outputFile output file path
+     * @param settings   conversion settings
+     * @param append     whether to append to the file or truncate it
+     *
+     * @return output writer
      *
-     * @param elementName name of XML element
-     * @param value       value to be added
-     * @param values      map for storing values
+     * @throws IOException Thrown if the file could not be opened.
      */
-    private static void processValue(String elementName, String value,
-            Map<String, List<String>> values) {
-        if (!values.containsKey(elementName)) {
-            values.put(elementName, new ArrayList<String>(10));
-        }
+    private static Writer openOutput(final Path outputFile,
+            final ConvertorSettings settings, final boolean append)
+            throws IOException {
+        final OutputStream outputStream = append
+                ? Files.newOutputStream(outputFile, StandardOpenOption.APPEND)
+                : Files.newOutputStream(outputFile);
 
-        values.get(elementName).add(value);
+        return new BufferedWriter(new OutputStreamWriter(
+                settings.getMetrics() == null ? outputStream
+                        : settings.getMetrics().countOutput(outputStream),
+                Charset.forName("UTF-8")));
     }
 
     /**
-     * Creates new instance of Convertor.
-     */
-    private Convertor() {
+     * Opens input file at position recorded in checkpoint. Start tags of the
+     * elements that enclosed the last processed item are prepended to the
+     * remaining input so that it is well formed again.
+     *
+     * @param inputFile  input file path
+     * @param settings   conversion settings
+     * @param checkpoint checkpoint
+     *
+     * @return input reader
+     *
+     * @throws IOException Thrown if the file could not be opened.
+     */
+    private static Reader openAtCheckpoint(final Path inputFile,
+            final ConvertorSettings settings, final Checkpoint checkpoint)
+            throws IOException {
+        final Reader reader = new BufferedReader(new InputStreamReader(
+                openInput(inputFile, settings),
+                Charset.forName(checkpoint.getEncoding())));
+
+        try {
+            long remaining = checkpoint.getInputOffset();
+
+            while (remaining > 0) {
+                final long skipped = reader.skip(remaining);
+
+                if (skipped <= 0) {
+                    throw new IOException(MessageFormat.format(
+                            "Input file {0} is shorter than recorded in "
+                            + "checkpoint", inputFile));
+                }
+
+                remaining -= skipped;
+            }
+
+            final char[] openElements =
+                    checkpoint.getOpenElements().toCharArray();
+            final PushbackReader pushbackReader = new PushbackReader(reader,
+                    Math.max(1, openElements.length));
+            pushbackReader.unread(openElements);
+
+            return pushbackReader;
+        } catch (final IOException ex) {
+            reader.close();
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Creates new instance of Convertor.
+     *
+     * @param settings   conversion settings
+     * @param rowWriter  row writer
+     * @param outputFile output file path if checkpoints should be recorded,
+     *                   otherwise null
+     */
+    private Convertor(final ConvertorSettings settings,
+            final RowWriter rowWriter, final Path outputFile) {
+        this.settings = settings;
+        this.outputFile = outputFile;
+        metrics = settings.getMetrics();
+        limit = settings.getLimit();
+
+        if (settings.getSampleRate() != 1 || settings.getSampleSize() != 0) {
+            if (settings.getSampleSize() > 0 && limit != Long.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        "Limit cannot be combined with reservoir sampling.");
+            }
+
+            if (settings.getSampleSize() > 0 && outputFile != null) {
+                throw new IllegalArgumentException("Checkpoints cannot be "
+                        + "combined with reservoir sampling.");
+            }
+
+            sampler = new SamplingRowWriter(rowWriter,
+                    settings.getSampleRate(), settings.getSampleSize(),
+                    settings.getSampleSeed() == null ? new Random()
+                            : new Random(settings.getSampleSeed()));
+            this.rowWriter = sampler;
+        } else {
+            sampler = null;
+            this.rowWriter = rowWriter;
+        }
+
+        final String itemName = settings.getItemName();
+
+        if (itemName.trim().isEmpty()) {
+            throw new IllegalArgumentException("itemName is an empty string. ");
+        }
+
+        if (itemName.trim().length() != 1 && itemName.endsWith("/")) {
+            throw new IllegalArgumentException(
+                    "itemName cannot end with a shash (/).");
+        }
+
+        columnNames = new String[settings.getColumns().length];
+
+        final List<ComputedColumn> computed = new ArrayList<>(0);
+
+        for (int i = 0; i < columnNames.length; i++) {
+            final String column = settings.getColumns()[i];
+
+            if (ComputedColumn.isComputed(column)) {
+                final ComputedColumn computedColumn =
+                        new ComputedColumn(column);
+                computed.add(computedColumn);
+                columnNames[i] = computedColumn.getName();
+            } else {
+                columnNames[i] = column;
+            }
+        }
+
+        computedColumns = computed.isEmpty() ? null
+                : computed.toArray(new ComputedColumn[computed.size()]);
+        defaultStrategy = settings.isJoin() ? new ValueStrategy(
+                ValueStrategy.Type.JOIN, settings.getJoinDelimiter())
+                : ValueStrategy.FIRST;
+
+        if (settings.getExplodeGroups() == null
+                || settings.getExplodeGroups().length == 0) {
+            explodeGroups = null;
+        } else {
+            explodeGroups =
+                    new LinkedHashMap<>(settings.getExplodeGroups().length);
+
+            for (final String path : settings.getExplodeGroups()) {
+                explodeGroups.put(path, new ExplodeGroup(path));
+            }
+        }
+
+        final Set<String> neededColumns =
+                findNeededColumns(settings, columnNames, computedColumns);
+        matcherColumns = neededColumns.toArray(
+                new String[neededColumns.size()]);
+        matcherGroups = explodeGroups == null ? new ExplodeGroup[0]
+                : explodeGroups.values().toArray(
+                        new ExplodeGroup[explodeGroups.size()]);
+
+        final String[] paths = Arrays.copyOf(matcherColumns,
+                matcherColumns.length + matcherGroups.length);
+
+        for (int i = 0; i < matcherGroups.length; i++) {
+            paths[matcherColumns.length + i] = matcherGroups[i].getPath();
+        }
+
+        columnMatcher = new PathMatcher(paths, settings.getNamespaces());
+        itemMatcher = new PathMatcher(new String[]{settings.getItemName()},
+                settings.getNamespaces());
+
+        if (settings.getValueStrategies() != null) {
+            for (final Entry<String, ValueStrategy> entry
+                    : settings.getValueStrategies().entrySet()) {
+                if (entry.getValue().getType() == ValueStrategy.Type.COUNT) {
+                    countColumns.add(entry.getKey());
+                }
+            }
+        }
+
+        if (settings.getFilters() == null
+                || settings.getFilters().getFilters().isEmpty()) {
+            filters = null;
+            filterIndexes = null;
+            passedFilters = null;
+        } else {
+            filters = settings.getFilters().getFilters().toArray(
+                    new Filter[0]);
+            filterIndexes = new HashMap<>(filters.length);
+            passedFilters = new boolean[filters.length];
+
+            for (int i = 0; i < filters.length; i++) {
+                // values of exploded groups differ by row so they cannot be
+                // filtered before the rows are produced
+                if (filters[i].getColumn() != null
+                        && isGroupColumn(filters[i].getColumn())) {
+                    continue;
+                }
+
+                final int[] indexes = filterIndexes.get(filters[i].getColumn());
+
+                if (indexes == null) {
+                    filterIndexes.put(filters[i].getColumn(), new int[]{i});
+                } else {
+                    final int[] newIndexes =
+                            Arrays.copyOf(indexes, indexes.length + 1);
+                    newIndexes[indexes.length] = i;
+                    filterIndexes.put(filters[i].getColumn(), newIndexes);
+                }
+            }
+        }
+
+        if (settings.getInternColumns() == null
+                || settings.getInternColumns().length == 0) {
+            caches = null;
+            itemEntries = null;
+        } else {
+            caches = new HashMap<>(settings.getInternColumns().length);
+            itemEntries = new HashMap<>(settings.getInternColumns().length);
+
+            for (final String column : settings.getInternColumns()) {
+                caches.put(column, new ValueCache(column,
+                        settings.getInternCacheSize(), settings.getFilters(),
+                        settings.getRemappings()));
+            }
+        }
+    }
+
+    /**
+     * Converts XML document to rows.
+     *
+     * @param reader      XML stream reader
+     * @param writeHeader whether header row should be written
+     *
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
+     * @throws IOException        Thrown if IO problem occurred.
+     */
+    private void convert(final XMLStreamReader reader,
+            final boolean writeHeader) throws XMLStreamException,
+            IOException {
+        if (encoding == null) {
+            encoding = reader.getEncoding() == null ? "UTF-8"
+                    : reader.getEncoding();
+        }
+
+        if (metrics != null) {
+            metrics.start();
+        }
+
+        try {
+            if (writeHeader) {
+                rowWriter.writeHeader(columnNames);
+            }
+
+            convertDocument(reader);
+
+            if (sampler != null) {
+                sampler.finish();
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.finish();
+            }
+        }
+    }
+
+    /**
+     * Converts items of XML document. Conversion stops once {@link #limit}
+     * rows are written.
+     *
+     * @param reader XML stream reader
+     *
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
+     * @throws IOException        Thrown if IO problem occurred.
+     */
+    private void convertDocument(final XMLStreamReader reader)
+            throws XMLStreamException, IOException {
+        while (rowCount < limit && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamReader.START_ELEMENT:
+                    pushOpenElement(reader);
+                    processRoot(reader, itemMatcher.getNextState(
+                            itemMatcher.getStartState(), reader));
+                    popOpenElement();
+            }
+        }
+    }
+
+    /**
+     * Processes element outside of items and its subelements.
+     *
+     * @param reader XML stream reader
+     * @param state  state of {@link #itemMatcher} for the element
+     *
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
+     * @throws IOException        Thrown if IO problem occurred.
+     */
+    private void processRoot(final XMLStreamReader reader,
+            final PathMatcher.State state) throws XMLStreamException,
+            IOException {
+        while (rowCount < limit && reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamReader.START_ELEMENT:
+                    final PathMatcher.State childState =
+                            itemMatcher.getNextState(state, reader);
+
+                    if (childState.getMatches().length > 0) {
+                        startItem();
+
+                        // unsampled item is skipped without collecting any
+                        // of its values
+                        if (sampler != null && !sampler.startItem()) {
+                            skipElement(reader);
+                            finishItem(reader, false);
+
+                            break;
+                        }
+
+                        // filter values can be replaced during conversion so
+                        // this is checked for each item
+                        final Filter rejectAllFilter = filters == null ? null
+                                : findRejectAllFilter(filters);
+
+                        if (rejectAllFilter != null) {
+                            rejectingFilter = rejectAllFilter;
+                            skipElement(reader);
+                            finishItem(reader, true);
+                        } else {
+                            processItem(reader, columnMatcher.getStartState(),
+                                    true);
+                        }
+                    } else if (childState.isDead()) {
+                        skipElement(reader);
+                    } else {
+                        pushOpenElement(reader);
+                        processRoot(reader, childState);
+                        popOpenElement();
+                    }
+
+                    break;
+                case XMLStreamReader.END_ELEMENT:
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Processes item element or element within item.
+     *
+     * @param reader XML stream reader
+     * @param state  state of {@link #columnMatcher} for the element
+     * @param item   whether the element is the item element
+     *
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
+     * @throws IOException        Thrown if IO problem occurred.
+     */
+    private void processItem(final XMLStreamReader reader,
+            final PathMatcher.State state, final boolean item)
+            throws XMLStreamException, IOException {
+        final int[] matches = state.getMatches();
+        boolean collect = false;
+        int maxLength = 0;
+
+        for (final int match : matches) {
+            if (match < matcherColumns.length) {
+                collect = true;
+                maxLength = Math.max(maxLength,
+                        getMaxLength(matcherColumns[match]));
+            } else {
+                matcherGroups[match - matcherColumns.length].startRecord();
+            }
+        }
+
+        StringBuilder sb = null;
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamReader.START_ELEMENT:
+                    final PathMatcher.State childState =
+                            columnMatcher.getNextState(state, reader);
+
+                    if (childState.isDead()) {
+                        skipElement(reader);
+                    } else {
+                        processItem(reader, childState, false);
+                    }
+
+                    if (rejectingFilter != null) {
+                        skipElement(reader);
+
+                        if (item) {
+                            finishItem(reader, true);
+                        }
+
+                        return;
+                    }
+
+                    break;
+                case XMLStreamReader.CHARACTERS:
+                case XMLStreamReader.CDATA:
+                    if (collect) {
+                        sb = appendText(reader, sb, maxLength);
+                    }
+
+                    break;
+                case XMLStreamReader.END_ELEMENT:
+                    if (item) {
+                        finishItem(reader, true);
+                    } else if (collect) {
+                        final CharSequence text = sb == null ? "" : sb;
+
+                        for (final int match : matches) {
+                            if (match < matcherColumns.length) {
+                                processColumn(matcherColumns[match], text);
+                            }
+                        }
+                    }
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Processes text of element that is value of the column.
+     *
+     * @param column column name
+     * @param text   element text
+     */
+    private void processColumn(final String column, final CharSequence text) {
+        final int maxLength = getMaxLength(column);
+        final CharSequence chars = text.length() > maxLength
+                ? text.subSequence(0, maxLength) : text;
+        final ColumnValue value = getColumnValue(column);
+        processValue(column, value, chars);
+
+        if (explodeGroups != null) {
+            addGroupValue(column, chars);
+        }
+
+        if (filterIndexes != null && value.getCount() == 1
+                && value.getStrategy().getType() == ValueStrategy.Type.FIRST) {
+            applyFilters(column, value.getFirstValue());
+        }
+    }
+
+    /**
+     * Resets state of filtering and caching for new item.
+     */
+    private void startItem() {
+        rejectingFilter = null;
+
+        for (final ColumnValue value : itemValues) {
+            value.reset();
+        }
+
+        itemValues.clear();
+
+        if (explodeGroups != null) {
+            for (final ExplodeGroup group : explodeGroups.values()) {
+                group.reset();
+            }
+        }
+
+        if (passedFilters != null) {
+            Arrays.fill(passedFilters, false);
+        }
+
+        if (itemEntries != null) {
+            itemEntries.clear();
+        }
+    }
+
+    /**
+     * Applies filters of the column as soon as the column value is known. If
+     * the item is excluded, {@link #rejectingFilter} is set, otherwise the
+     * filters are marked as passed so they are not evaluated again at the end
+     * of the item.
+     *
+     * @param column column name
+     * @param value  column value
+     */
+    private void applyFilters(final String column, final String value) {
+        final int[] indexes = filterIndexes.get(column);
+
+        if (indexes == null) {
+            return;
+        }
+
+        final ValueCache.Entry entry =
+                itemEntries == null ? null : itemEntries.get(column);
+
+        if (entry != null) {
+            rejectingFilter = entry.getRejectingFilter();
+        } else {
+            final Map<String, String> values =
+                    Collections.singletonMap(column, value);
+
+            for (final int index : indexes) {
+                if (!filters[index].matchesFilter(values)) {
+                    rejectingFilter = filters[index];
+
+                    break;
+                }
+            }
+        }
+
+        if (rejectingFilter == null) {
+            for (final int index : indexes) {
+                passedFilters[index] = true;
+            }
+        }
+    }
+
+    /**
+     * Skips rest of current element without processing its content.
+     *
+     * @param reader XML stream reader
+     *
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
+     */
+    static void skipElement(final XMLStreamReader reader)
+            throws XMLStreamException {
+        int depth = 0;
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamReader.START_ELEMENT:
+                    depth++;
+
+                    break;
+                case XMLStreamReader.END_ELEMENT:
+                    if (depth == 0) {
+                        return;
+                    }
+
+                    depth--;
+
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Finds filter that excludes all items regardless of their values.
+     *
+     * @param filters array of filters
+     *
+     * @return filter or null if there is no such filter
+     */
+    private static Filter findRejectAllFilter(final Filter[] filters) {
+        for (final Filter filter : filters) {
+            if (filter.rejectsAll()) {
+                return filter;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Finds columns whose values are needed for output, filters, remappings
+     * or computed columns.
+     *
+     * @param settings        conversion settings
+     * @param columnNames     names of output columns
+     * @param computedColumns computed columns or null
+     *
+     * @return set of needed columns
+     */
+    private static Set<String> findNeededColumns(
+            final ConvertorSettings settings, final String[] columnNames,
+            final ComputedColumn[] computedColumns) {
+        final Set<String> columns = new HashSet<>(columnNames.length * 2);
+        columns.addAll(Arrays.asList(columnNames));
+
+        if (computedColumns != null) {
+            for (final ComputedColumn computedColumn : computedColumns) {
+                columns.addAll(computedColumn.getColumns());
+            }
+        }
+
+        if (settings.getFilters() != null) {
+            for (final Filter filter : settings.getFilters().getFilters()) {
+                if (filter instanceof ExpressionFilter) {
+                    columns.addAll(((ExpressionFilter) filter).getExpression()
+                            .getColumns());
+                } else {
+                    columns.add(filter.getColumn());
+                }
+            }
+        }
+
+        if (settings.getRemappings() != null) {
+            for (final Remapping remapping
+                    : settings.getRemappings().getRemappings()) {
+                columns.add(remapping.getColumn());
+            }
+        }
+
+        return columns;
+    }
+
+    /**
+     * Converts values of the item to a row and writes the row if it matches
+     * filters.
+     *
+     * @param reader  XML stream reader positioned at the end of the item
+     * @param convert whether the item should be converted, false if the item
+     *                was not sampled
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private void finishItem(final XMLStreamReader reader,
+            final boolean convert) throws IOException {
+        if (metrics != null) {
+            metrics.itemRead();
+        }
+
+        if (rejectingFilter != null) {
+            if (metrics != null) {
+                metrics.rowFiltered(rejectingFilter);
+            }
+        } else if (convert) {
+            convertItem();
+        }
+
+        if (sampler != null) {
+            sampler.endItem();
+        }
+
+        itemCount++;
+
+        if (outputFile != null
+                && itemCount % settings.getCheckpointInterval() == 0) {
+            recordCheckpoint(reader);
+        }
+    }
+
+    /**
+     * Converts values of the item to rows. Item produces single row unless
+     * some columns use {@link ValueStrategy.Type#EXPLODE} strategy or there
+     * are exploded groups. Then a row is produced for each combination of
+     * exploded values and group occurrences, or for each index of exploded
+     * values and group occurrences if they are zipped.
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private void convertItem() throws IOException {
+        final long startNanos = metrics == null ? 0 : System.nanoTime();
+        final Map<String, String> singleValues =
+                new HashMap<>(columnNames.length);
+        List<List<Map<String, String>>> dimensions = null;
+
+        for (final ColumnValue value : itemValues) {
+            if (value.getStrategy().getType() == ValueStrategy.Type.EXPLODE) {
+                if (dimensions == null) {
+                    dimensions = new ArrayList<>(2);
+                }
+
+                final List<Map<String, String>> records =
+                        new ArrayList<>(value.getCount());
+
+                for (final String explodedValue : value.getValues()) {
+                    records.add(Collections.singletonMap(value.getColumn(),
+                            explodedValue));
+                }
+
+                dimensions.add(records);
+            } else {
+                singleValues.put(value.getColumn(), value.getValue());
+            }
+        }
+
+        for (final String column : countColumns) {
+            if (!singleValues.containsKey(column)) {
+                singleValues.put(column, "0");
+            }
+        }
+
+        if (explodeGroups != null) {
+            if (dimensions == null) {
+                dimensions = new ArrayList<>(explodeGroups.size());
+            }
+
+            for (final ExplodeGroup group : explodeGroups.values()) {
+                final Iterator<String> iterator =
+                        singleValues.keySet().iterator();
+
+                while (iterator.hasNext()) {
+                    if (group.contains(iterator.next())) {
+                        iterator.remove();
+                    }
+                }
+
+                dimensions.add(group.getRecords().isEmpty()
+                        ? Collections.singletonList(
+                                Collections.<String, String>emptyMap())
+                        : group.getRecords());
+            }
+        }
+
+        if (dimensions == null) {
+            convertRow(singleValues, startNanos);
+        } else if (settings.isExplodeZip()) {
+            int rows = 0;
+
+            for (final List<Map<String, String>> records : dimensions) {
+                rows = Math.max(rows, records.size());
+            }
+
+            for (int i = 0; i < rows; i++) {
+                final Map<String, String> rowValues =
+                        new HashMap<>(singleValues);
+
+                for (final List<Map<String, String>> records : dimensions) {
+                    if (i < records.size()) {
+                        rowValues.putAll(records.get(i));
+                    }
+                }
+
+                convertRow(rowValues, i == 0 || metrics == null ? startNanos
+                        : System.nanoTime());
+            }
+        } else {
+            final int[] indexes = new int[dimensions.size()];
+            long rowStartNanos = startNanos;
+
+            while (true) {
+                final Map<String, String> rowValues =
+                        new HashMap<>(singleValues);
+
+                for (int i = 0; i < indexes.length; i++) {
+                    rowValues.putAll(dimensions.get(i).get(indexes[i]));
+                }
+
+                convertRow(rowValues, rowStartNanos);
+
+                int i = indexes.length - 1;
+
+                while (i >= 0
+                        && ++indexes[i] == dimensions.get(i).size()) {
+                    indexes[i] = 0;
+                    i--;
+                }
+
+                if (i < 0) {
+                    return;
+                }
+
+                rowStartNanos = metrics == null ? 0 : System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Appends text of current event to the string builder. If values are
+     * trimmed, leading white space is not appended. Characters exceeding
+     * maximum length are not appended either so that long texts are never
+     * held in memory as a whole.
+     *
+     * @param reader    XML stream reader
+     * @param sb        string builder or null if no text was appended yet
+     * @param maxLength maximum length of the text
+     *
+     * @return string builder with appended text, or null if no text was
+     *         appended yet
+     */
+    private StringBuilder appendText(final XMLStreamReader reader,
+            final StringBuilder sb, final int maxLength) {
+        final char[] chars = reader.getTextCharacters();
+        final int end = reader.getTextStart() + reader.getTextLength();
+        int start = reader.getTextStart();
+
+        if (settings.isTrim() && (sb == null || sb.length() == 0)) {
+            while (start < end && chars[start] <= ' ') {
+                start++;
+            }
+        }
+
+        final int length = Math.min(end - start,
+                maxLength - (sb == null ? 0 : sb.length()));
+
+        if (length <= 0) {
+            return sb;
+        }
+
+        final StringBuilder result =
+                sb == null ? new StringBuilder(Math.max(length, 16)) : sb;
+        result.append(chars, start, length);
+
+        return result;
+    }
+
+    /**
+     * Returns maximum length of values of the column.
+     *
+     * @param column column name
+     *
+     * @return maximum length of values
+     */
+    private int getMaxLength(final String column) {
+        final Integer columnMaxLength = settings.getMaxValueLengths() == null
+                ? null : settings.getMaxValueLengths().get(column);
+        final int maxLength = columnMaxLength == null
+                ? settings.getMaxValueLength() : columnMaxLength;
+
+        return maxLength > 0 ? maxLength : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether the column is nested in some exploded group.
+     *
+     * @param column column name
+     *
+     * @return true if the column is nested in exploded group, otherwise false
+     */
+    private boolean isGroupColumn(final String column) {
+        if (explodeGroups != null) {
+            for (final ExplodeGroup group : explodeGroups.values()) {
+                if (group.contains(column)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds value of the column to groups the column is nested in.
+     *
+     * @param column column name
+     * @param chars  value characters
+     */
+    private void addGroupValue(final String column, final CharSequence chars) {
+        for (final ExplodeGroup group : explodeGroups.values()) {
+            if (group.contains(column)) {
+                group.addValue(column, settings.isTrim()
+                        ? chars.toString().trim() : chars.toString());
+            }
+        }
+    }
+
+    /**
+     * Writes the row if it matches all filters.
+     *
+     * @param singleValues map of row columns and values
+     * @param startNanos   time when conversion of the row started, used for
+     *                     metrics
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private void convertRow(final Map<String, String> singleValues,
+            final long startNanos) throws IOException {
+        // exploded item can produce more rows than the limit allows
+        if (rowCount >= limit) {
+            return;
+        }
+
+        final Remappings remappings = settings.getRemappings();
+
+        if (matchesFilters(singleValues)) {
+            if (remappings != null) {
+                replaceValues(remappings, singleValues);
+            }
+
+            if (computedColumns != null) {
+                for (final ComputedColumn computedColumn : computedColumns) {
+                    singleValues.put(computedColumn.getName(),
+                            computedColumn.evaluate(singleValues));
+                }
+            }
+
+            if (metrics == null) {
+                writeRow(columnNames, singleValues);
+            } else {
+                final long writeNanos = System.nanoTime();
+                metrics.addTransformTime(writeNanos - startNanos);
+                writeRow(columnNames, singleValues);
+                metrics.addWriteTime(System.nanoTime() - writeNanos);
+                metrics.rowWritten();
+            }
+        } else if (metrics != null) {
+            metrics.addTransformTime(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Checks whether item matches all filters that were not evaluated yet.
+     * Filters on cached columns are resolved using precomputed results from
+     * the cache entries.
+     *
+     * @param singleValues map of item columns and prepared values
+     *
+     * @return true if item matches all filters, otherwise false
+     */
+    private boolean matchesFilters(final Map<String, String> singleValues) {
+        if (filters == null) {
+            return true;
+        }
+
+        for (int i = 0; i < filters.length; i++) {
+            if (passedFilters[i]) {
+                continue;
+            }
+
+            final Filter filter = filters[i];
+            final ValueCache.Entry entry = caches == null ? null
+                    : getResolvedEntry(filter.getColumn());
+            final Filter excludedBy;
+
+            if (entry != null) {
+                excludedBy = entry.getRejectingFilter();
+            } else if (!filter.matchesFilter(singleValues)) {
+                excludedBy = filter;
+            } else {
+                excludedBy = null;
+            }
+
+            if (excludedBy != null) {
+                if (metrics != null) {
+                    metrics.rowFiltered(excludedBy);
+                }
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces values in item using all remappings. Values of cached columns
+     * are replaced using precomputed results from the cache entries.
+     *
+     * @param remappings   remappings
+     * @param singleValues map of item columns and prepared values
+     */
+    private void replaceValues(final Remappings remappings,
+            final Map<String, String> singleValues) {
+        if (caches == null) {
+            remappings.replaceValues(singleValues, metrics);
+
+            return;
+        }
+
+        for (final Remapping remapping : remappings.getRemappings()) {
+            if (getResolvedEntry(remapping.getColumn()) == null
+                    && remapping.replaceValues(singleValues)
+                    && metrics != null) {
+                metrics.remapHit(remapping);
+            }
+        }
+
+        for (final Entry<String, ValueCache.Entry> mapEntry
+                : itemEntries.entrySet()) {
+            final ValueCache.Entry entry = getResolvedEntry(mapEntry.getKey());
+
+            if (entry != null && entry.getRemappedValue() != null) {
+                singleValues.put(mapEntry.getKey(), entry.getRemappedValue());
+
+                if (metrics != null) {
+                    for (final Remapping remapping : entry.getRemapHits()) {
+                        metrics.remapHit(remapping);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns cache entry of the column if the prepared value of the column is
+     * the cached value. It is not the case if the column strategy combines
+     * multiple values.
+     *
+     * @param column column name
+     *
+     * @return cache entry or null
+     */
+    private ValueCache.Entry getResolvedEntry(final String column) {
+        final ValueCache.Entry entry = itemEntries.get(column);
+
+        if (entry == null || !columnValues.get(column).isFirstValue()
+                || isGroupColumn(column)) {
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Returns value of the column in current item. Value is registered as
+     * value of current item before its first element value is added.
+     *
+     * @param column column name
+     *
+     * @return column value
+     */
+    private ColumnValue getColumnValue(final String column) {
+        ColumnValue value = columnValues.get(column);
+
+        if (value == null) {
+            final ValueStrategy strategy =
+                    settings.getValueStrategies() == null ? null
+                            : settings.getValueStrategies().get(column);
+            value = new ColumnValue(column,
+                    strategy == null ? defaultStrategy : strategy);
+            columnValues.put(column, value);
+        }
+
+        if (value.getCount() == 0) {
+            itemValues.add(value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Adds value of single element to the column value. If values are
+     * trimmed, only trimmed part of the characters is added. Values of cached
+     * columns are looked up in the cache so that no new string is created if
+     * the value is already cached.
+     *
+     * @param column column name
+     * @param value  column value
+     * @param chars  value characters
+     */
+    private void processValue(final String column, final ColumnValue value,
+            final CharSequence chars) {
+        int start = 0;
+        int end = chars.length();
+
+        if (settings.isTrim()) {
+            while (start < end && chars.charAt(start) <= ' ') {
+                start++;
+            }
+
+            while (end > start && chars.charAt(end - 1) <= ' ') {
+                end--;
+            }
+        }
+
+        final ValueCache cache = caches == null ? null : caches.get(column);
+
+        if (cache == null) {
+            value.add(chars, start, end);
+        } else {
+            final ValueCache.Entry entry = cache.get(chars, start, end);
+
+            if (value.getCount() == 0) {
+                itemEntries.put(column, entry);
+            }
+
+            value.add(entry.getValue());
+        }
+    }
+
+    /**
+     * Writes XML item as a row.
+     *
+     * @param columns array of columns
+     * @param values  map of values
+     *
+     * @throws IOException Thrown if problem occurred while writing the row.
+     */
+    private void writeRow(final String[] columns,
+            final Map<String, String> values) throws IOException {
+        final String[] row = new String[columns.length];
+
+        for (int i = 0; i < columns.length; i++) {
+            row[i] = values.get(columns[i]);
+        }
+
+        rowWriter.writeRow(row);
+        rowCount++;
+    }
+
+    /**
+     * Records checkpoint at the end of current item. All rows written so far
+     * are flushed to the output file and the output file is forced to disk
+     * first, so the checkpoint never refers to rows that could be lost.
+     *
+     * @param reader XML stream reader positioned at the end of an item
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private void recordCheckpoint(final XMLStreamReader reader)
+            throws IOException {
+        rowWriter.flush();
+
+        final StringBuilder sb = new StringBuilder(256);
+
+        for (final String openElement : openElements) {
+            sb.append(openElement);
+        }
+
+        final int characterOffset = reader.getLocation().getCharacterOffset();
+        inputOffset += (characterOffset - lastCharacterOffset) & 0xFFFFFFFFL;
+        lastCharacterOffset = characterOffset;
+
+        final long outputOffset;
+
+        try (final FileChannel channel =
+                FileChannel.open(outputFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+            outputOffset = channel.size();
+        }
+
+        final Checkpoint checkpoint = new Checkpoint();
+        checkpoint.setItemCount(itemCount);
+        checkpoint.setInputOffset(inputOffset);
+        checkpoint.setOutputOffset(outputOffset);
+        checkpoint.setEncoding(encoding);
+        checkpoint.setOpenElements(sb.toString());
+        checkpoint.store(settings.getCheckpointFile());
+    }
+
+    /**
+     * Records start tag of current element including its namespace
+     * declarations if checkpoints are recorded.
+     *
+     * @param reader XML stream reader positioned at start of an element
+     */
+    private void pushOpenElement(final XMLStreamReader reader) {
+        if (outputFile != null) {
+            openElements.add(getStartTag(reader));
+        }
+    }
+
+    /**
+     * Formats start tag of current element including its namespace
+     * declarations. Attributes are not included.
+     *
+     * @param reader XML stream reader positioned at start of an element
+     *
+     * @return start tag
+     */
+    static String getStartTag(final XMLStreamReader reader) {
+        final StringBuilder sb = new StringBuilder(64);
+        sb.append('<');
+
+        if (reader.getPrefix() != null && !reader.getPrefix().isEmpty()) {
+            sb.append(reader.getPrefix());
+            sb.append(':');
+        }
+
+        sb.append(reader.getLocalName());
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            final String prefix = reader.getNamespacePrefix(i);
+            sb.append(" xmlns");
+
+            if (prefix != null && !prefix.isEmpty()) {
+                sb.append(':');
+                sb.append(prefix);
+            }
+
+            sb.append("=\"");
+            sb.append(reader.getNamespaceURI(i).replace("&", "&amp;").
+                    replace("<", "&lt;").replace("\"", "&quot;"));
+            sb.append('"');
+        }
+
+        sb.append('>');
+
+        return sb.toString();
+    }
+
+    /**
+     * Removes start tag of the element that was just closed if checkpoints are
+     * recorded.
+     */
+    private void popOpenElement() {
+        if (outputFile != null) {
+            openElements.remove(openElements.size() - 1);
+        }
+    }
+
+    /**
+     * Row writer storing rows of partition in temporary file.
+     */
+    private static class RunRowWriter implements RowWriter {
+
+        /**
+         * Output of the file.
+         */
+        private final DataOutputStream output;
+
+        /**
+         * Creates new instance of RunRowWriter.
+         *
+         * @param file temporary file
+         *
+         * @throws IOException Thrown if the file could not be opened.
+         */
+        RunRowWriter(final Path file) throws IOException {
+            output = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(file), 65_536));
+        }
+
+        /**
+         * Writes rows stored in the file to the row writer.
+         *
+         * @param file      temporary file
+         * @param rowWriter row writer
+         *
+         * @throws IOException Thrown if problem occurred while reading or
+         *                     writing rows.
+         */
+        static void copy(final Path file, final RowWriter rowWriter)
+                throws IOException {
+            try (final DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file),
+                            65_536))) {
+                String[] row = RunFile.readRow(input);
+
+                while (row != null) {
+                    rowWriter.writeRow(row);
+                    row = RunFile.readRow(input);
+                }
+            }
+        }
+
+        @Override
+        public void writeHeader(final String[] columns) {
+            // header is written by the first partition
+        }
+
+        @Override
+        public void writeRow(final String[] values) throws IOException {
+            RunFile.writeRow(output, values);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
     }
 }
@@ -0,0 +1,718 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Conversion settings.
+ *
+ * @author fordfrog
+ */
+public class ConvertorSettings {
+
+    /**
+     * Array of column names. Column can also be a computed column defined as
+     * <code>name=expression</code>, see {@link ComputedColumn}.
+     */
+    private String[] columns;
+    /**
+     * Optional filters.
+     */
+    private Filters filters;
+    /**
+     * Optional remappings.
+     */
+    private Remappings remappings;
+    /**
+     * Field separator.
+     */
+    private char separator = ',';
+    /**
+     * Quoting policy of output values.
+     */
+    private CsvFormat.Quoting quoting = CsvFormat.Quoting.ALWAYS;
+    /**
+     * Escape character used if values are never quoted.
+     */
+    private char escapeChar = '\\';
+    /**
+     * Whether to trim values or not.
+     */
+    private boolean trim;
+    /**
+     * Whether to join multiple values or not.
+     */
+    private boolean join;
+    /**
+     * XPath which refers to XML element which will be converted to a row.
+     */
+    private String itemName;
+    /**
+     * Path to checkpoint file or null if checkpoints should not be recorded.
+     * Checkpoints are supported only when converting file to file.
+     */
+    private Path checkpointFile;
+    /**
+     * Number of items after which checkpoint is recorded.
+     */
+    private long checkpointInterval = 100_000;
+    /**
+     * Whether conversion should be resumed from the last checkpoint, if there
+     * is any.
+     */
+    private boolean resume;
+    /**
+     * Optional conversion metrics.
+     */
+    private ConversionMetrics metrics;
+    /**
+     * Optional array of columns whose values should be cached. Suitable for
+     * columns with low number of distinct values.
+     */
+    private String[] internColumns;
+    /**
+     * Maximum number of cached values per column.
+     */
+    private int internCacheSize = 1_024;
+    /**
+     * Delimiter of values joined when {@link #join} is set.
+     */
+    private String joinDelimiter = ", ";
+    /**
+     * Optional strategies of combining multiple values by column names.
+     * Columns without strategy use {@link #join} setting.
+     */
+    private Map<String, ValueStrategy> valueStrategies;
+    /**
+     * Optional paths of repeating elements relative to item element whose
+     * occurrences should be converted to separate rows.
+     */
+    private String[] explodeGroups;
+    /**
+     * Whether rows of exploded groups and columns should be zipped
+     * (occurrences with the same index form single row) instead of producing
+     * cross-product of occurrences.
+     */
+    private boolean explodeZip;
+    /**
+     * Maximum length of values, longer values are truncated. Zero means
+     * values are not truncated.
+     */
+    private int maxValueLength;
+    /**
+     * Optional maximum lengths of values by column names overriding
+     * {@link #maxValueLength}.
+     */
+    private Map<String, Integer> maxValueLengths;
+    /**
+     * Optional namespace URIs by prefixes used in item name and column
+     * paths.
+     */
+    private Map<String, String> namespaces;
+    /**
+     * Path to item index file or null if items should be read sequentially.
+     * If the index file does not exist or is outdated, it is built first.
+     */
+    private Path indexFile;
+    /**
+     * Index of the first item to convert. Used only with {@link #indexFile}.
+     */
+    private long itemRangeStart;
+    /**
+     * Index of the item after the last item to convert. Used only with
+     * {@link #indexFile}.
+     */
+    private long itemRangeEnd = Long.MAX_VALUE;
+    /**
+     * Number of threads converting partitions of items. Used only with
+     * {@link #indexFile}.
+     */
+    private int threads = 1;
+    /**
+     * Maximum number of rows to produce. Conversion stops reading the input
+     * once the limit is reached.
+     */
+    private long limit = Long.MAX_VALUE;
+    /**
+     * Probability of sampling an item, items that are not sampled are
+     * skipped.
+     */
+    private double sampleRate = 1;
+    /**
+     * Number of items kept by reservoir sampling, or 0 if reservoir sampling
+     * is not used.
+     */
+    private int sampleSize;
+    /**
+     * Seed of random sampling, or null to use random seed.
+     */
+    private Long sampleSeed;
+
+    /**
+     * Getter for {@link #columns}.
+     *
+     * @return {@link #columns}
+     */
+    public String[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * Setter for {@link #columns}.
+     *
+     * @param columns {@link #columns}
+     */
+    @SuppressWarnings("AssignmentToCollectionOrArrayFieldFromParameter")
+    public void setColumns(final String[] columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Getter for {@link #filters}.
+     *
+     * @return {@link #filters}
+     */
+    public Filters getFilters() {
+        return filters;
+    }
+
+    /**
+     * Setter for {@link #filters}.
+     *
+     * @param filters {@link #filters}
+     */
+    public void setFilters(final Filters filters) {
+        this.filters = filters;
+    }
+
+    /**
+     * Getter for {@link #remappings}.
+     *
+     * @return {@link #remappings}
+     */
+    public Remappings getRemappings() {
+        return remappings;
+    }
+
+    /**
+     * Setter for {@link #remappings}.
+     *
+     * @param remappings {@link #remappings}
+     */
+    public void setRemappings(final Remappings remappings) {
+        this.remappings = remappings;
+    }
+
+    /**
+     * Getter for {@link #separator}.
+     *
+     * @return {@link #separator}
+     */
+    public char getSeparator() {
+        return separator;
+    }
+
+    /**
+     * Setter for {@link #separator}.
+     *
+     * @param separator {@link #separator}
+     */
+    public void setSeparator(final char separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * Getter for {@link #quoting}.
+     *
+     * @return {@link #quoting}
+     */
+    public CsvFormat.Quoting getQuoting() {
+        return quoting;
+    }
+
+    /**
+     * Setter for {@link #quoting}.
+     *
+     * @param quoting {@link #quoting}
+     */
+    public void setQuoting(final CsvFormat.Quoting quoting) {
+        this.quoting = quoting;
+    }
+
+    /**
+     * Getter for {@link #escapeChar}.
+     *
+     * @return {@link #escapeChar}
+     */
+    public char getEscapeChar() {
+        return escapeChar;
+    }
+
+    /**
+     * Setter for {@link #escapeChar}.
+     *
+     * @param escapeChar {@link #escapeChar}
+     */
+    public void setEscapeChar(final char escapeChar) {
+        this.escapeChar = escapeChar;
+    }
+
+    /**
+     * Getter for {@link #trim}.
+     *
+     * @return {@link #trim}
+     */
+    public boolean isTrim() {
+        return trim;
+    }
+
+    /**
+     * Setter for {@link #trim}.
+     *
+     * @param trim {@link #trim}
+     */
+    public void setTrim(final boolean trim) {
+        this.trim = trim;
+    }
+
+    /**
+     * Getter for {@link #join}.
+     *
+     * @return {@link #join}
+     */
+    public boolean isJoin() {
+        return join;
+    }
+
+    /**
+     * Setter for {@link #join}.
+     *
+     * @param join {@link #join}
+     */
+    public void setJoin(final boolean join) {
+        this.join = join;
+    }
+
+    /**
+     * Getter for {@link #itemName}.
+     *
+     * @return {@link #itemName}
+     */
+    public String getItemName() {
+        return itemName;
+    }
+
+    /**
+     * Setter for {@link #itemName}.
+     *
+     * @param itemName {@link #itemName}
+     */
+    public void setItemName(final String itemName) {
+        this.itemName = itemName;
+    }
+
+    /**
+     * Getter for {@link #checkpointFile}.
+     *
+     * @return {@link #checkpointFile}
+     */
+    public Path getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Setter for {@link #checkpointFile}.
+     *
+     * @param checkpointFile {@link #checkpointFile}
+     */
+    public void setCheckpointFile(final Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Getter for {@link #checkpointInterval}.
+     *
+     * @return {@link #checkpointInterval}
+     */
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Setter for {@link #checkpointInterval}.
+     *
+     * @param checkpointInterval {@link #checkpointInterval}
+     */
+    public void setCheckpointInterval(final long checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Getter for {@link #resume}.
+     *
+     * @return {@link #resume}
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * Setter for {@link #resume}.
+     *
+     * @param resume {@link #resume}
+     */
+    public void setResume(final boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * Getter for {@link #metrics}.
+     *
+     * @return {@link #metrics}
+     */
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Setter for {@link #metrics}.
+     *
+     * @param metrics {@link #metrics}
+     */
+    public void setMetrics(final ConversionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Getter for {@link #internColumns}.
+     *
+     * @return {@link #internColumns}
+     */
+    public String[] getInternColumns() {
+        return internColumns;
+    }
+
+    /**
+     * Setter for {@link #internColumns}.
+     *
+     * @param internColumns {@link #internColumns}
+     */
+    @SuppressWarnings("AssignmentToCollectionOrArrayFieldFromParameter")
+    public void setInternColumns(final String[] internColumns) {
+        this.internColumns = internColumns;
+    }
+
+    /**
+     * Getter for {@link #internCacheSize}.
+     *
+     * @return {@link #internCacheSize}
+     */
+    public int getInternCacheSize() {
+        return internCacheSize;
+    }
+
+    /**
+     * Setter for {@link #internCacheSize}.
+     *
+     * @param internCacheSize {@link #internCacheSize}
+     */
+    public void setInternCacheSize(final int internCacheSize) {
+        this.internCacheSize = internCacheSize;
+    }
+
+    /**
+     * Getter for {@link #joinDelimiter}.
+     *
+     * @return {@link #joinDelimiter}
+     */
+    public String getJoinDelimiter() {
+        return joinDelimiter;
+    }
+
+    /**
+     * Setter for {@link #joinDelimiter}.
+     *
+     * @param joinDelimiter {@link #joinDelimiter}
+     */
+    public void setJoinDelimiter(final String joinDelimiter) {
+        this.joinDelimiter = joinDelimiter;
+    }
+
+    /**
+     * Getter for {@link #valueStrategies}.
+     *
+     * @return {@link #valueStrategies}
+     */
+    public Map<String, ValueStrategy> getValueStrategies() {
+        return valueStrategies;
+    }
+
+    /**
+     * Setter for {@link #valueStrategies}.
+     *
+     * @param valueStrategies {@link #valueStrategies}
+     */
+    @SuppressWarnings("AssignmentToCollectionOrArrayFieldFromParameter")
+    public void setValueStrategies(
+            final Map<String, ValueStrategy> valueStrategies) {
+        this.valueStrategies = valueStrategies;
+    }
+
+    /**
+     * Getter for {@link #explodeGroups}.
+     *
+     * @return {@link #explodeGroups}
+     */
+    public String[] getExplodeGroups() {
+        return explodeGroups;
+    }
+
+    /**
+     * Setter for {@link #explodeGroups}.
+     *
+     * @param explodeGroups {@link #explodeGroups}
+     */
+    @SuppressWarnings("AssignmentToCollectionOrArrayFieldFromParameter")
+    public void setExplodeGroups(final String[] explodeGroups) {
+        this.explodeGroups = explodeGroups;
+    }
+
+    /**
+     * Getter for {@link #explodeZip}.
+     *
+     * @return {@link #explodeZip}
+     */
+    public boolean isExplodeZip() {
+        return explodeZip;
+    }
+
+    /**
+     * Setter for {@link #explodeZip}.
+     *
+     * @param explodeZip {@link #explodeZip}
+     */
+    public void setExplodeZip(final boolean explodeZip) {
+        this.explodeZip = explodeZip;
+    }
+
+    /**
+     * Getter for {@link #maxValueLength}.
+     *
+     * @return {@link #maxValueLength}
+     */
+    public int getMaxValueLength() {
+        return maxValueLength;
+    }
+
+    /**
+     * Setter for {@link #maxValueLength}.
+     *
+     * @param maxValueLength {@link #maxValueLength}
+     */
+    public void setMaxValueLength(final int maxValueLength) {
+        this.maxValueLength = maxValueLength;
+    }
+
+    /**
+     * Getter for {@link #maxValueLengths}.
+     *
+     * @return {@link #maxValueLengths}
+     */
+    public Map<String, Integer> getMaxValueLengths() {
+        return maxValueLengths;
+    }
+
+    /**
+     * Setter for {@link #maxValueLengths}.
+     *
+     * @param maxValueLengths {@link #maxValueLengths}
+     */
+    @SuppressWarnings("AssignmentToCollectionOrArrayFieldFromParameter")
+    public void setMaxValueLengths(final Map<String, Integer> maxValueLengths) {
+        this.maxValueLengths = maxValueLengths;
+    }
+
+    /**
+     * Getter for {@link #namespaces}.
+     *
+     * @return {@link #namespaces}
+     */
+    public Map<String, String> getNamespaces() {
+        return namespaces;
+    }
+
+    /**
+     * Setter for {@link #namespaces}.
+     *
+     * @param namespaces {@link #namespaces}
+     */
+    @SuppressWarnings("AssignmentToCollectionOrArrayFieldFromParameter")
+    public void setNamespaces(final Map<String, String> namespaces) {
+        this.namespaces = namespaces;
+    }
+
+    /**
+     * Getter for {@link #indexFile}.
+     *
+     * @return {@link #indexFile}
+     */
+    public Path getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Setter for {@link #indexFile}.
+     *
+     * @param indexFile {@link #indexFile}
+     */
+    public void setIndexFile(final Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Getter for {@link #itemRangeStart}.
+     *
+     * @return {@link #itemRangeStart}
+     */
+    public long getItemRangeStart() {
+        return itemRangeStart;
+    }
+
+    /**
+     * Setter for {@link #itemRangeStart}.
+     *
+     * @param itemRangeStart {@link #itemRangeStart}
+     */
+    public void setItemRangeStart(final long itemRangeStart) {
+        this.itemRangeStart = itemRangeStart;
+    }
+
+    /**
+     * Getter for {@link #itemRangeEnd}.
+     *
+     * @return {@link #itemRangeEnd}
+     */
+    public long getItemRangeEnd() {
+        return itemRangeEnd;
+    }
+
+    /**
+     * Setter for {@link #itemRangeEnd}.
+     *
+     * @param itemRangeEnd {@link #itemRangeEnd}
+     */
+    public void setItemRangeEnd(final long itemRangeEnd) {
+        this.itemRangeEnd = itemRangeEnd;
+    }
+
+    /**
+     * Getter for {@link #threads}.
+     *
+     * @return {@link #threads}
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Setter for {@link #threads}.
+     *
+     * @param threads {@link #threads}
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Getter for {@link #limit}.
+     *
+     * @return {@link #limit}
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Setter for {@link #limit}.
+     *
+     * @param limit {@link #limit}
+     */
+    public void setLimit(final long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Getter for {@link #sampleRate}.
+     *
+     * @return {@link #sampleRate}
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Setter for {@link #sampleRate}.
+     *
+     * @param sampleRate {@link #sampleRate}
+     */
+    public void setSampleRate(final double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Getter for {@link #sampleSize}.
+     *
+     * @return {@link #sampleSize}
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Setter for {@link #sampleSize}.
+     *
+     * @param sampleSize {@link #sampleSize}
+     */
+    public void setSampleSize(final int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Getter for {@link #sampleSeed}.
+     *
+     * @return {@link #sampleSeed}
+     */
+    public Long getSampleSeed() {
+        return sampleSeed;
+    }
+
+    /**
+     * Setter for {@link #sampleSeed}.
+     *
+     * @param sampleSeed {@link #sampleSeed}
+     */
+    public void setSampleSeed(final Long sampleSeed) {
+        this.sampleSeed = sampleSeed;
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.Locale;
+
+/**
+ * CSV output format, that is field separator and policy of quoting values.
+ *
+ * @author fordfrog
+ */
+public class CsvFormat {
+
+    /**
+     * Quoting policies.
+     */
+    public enum Quoting {
+
+        /**
+         * All non-empty values are quoted.
+         */
+        ALWAYS,
+        /**
+         * Only values containing separator, quote or line break are quoted
+         * (RFC 4180).
+         */
+        MINIMAL,
+        /**
+         * Values are never quoted, separator, escape character and line breaks
+         * are preceded with escape character (line feed and carriage return
+         * are written as escaped <code>n</code> and <code>r</code>).
+         */
+        NEVER;
+
+        /**
+         * Parses quoting policy name (case insensitive).
+         *
+         * @param name policy name
+         *
+         * @return quoting policy
+         */
+        public static Quoting parse(final String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+            } catch (final IllegalArgumentException ex) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Unsupported quoting {0}", name), ex);
+            }
+        }
+    }
+
+    /**
+     * Field separator.
+     */
+    private final char separator;
+    /**
+     * Quoting policy.
+     */
+    private final Quoting quoting;
+    /**
+     * Escape character used by {@link Quoting#NEVER}.
+     */
+    private final char escapeChar;
+    /**
+     * Bit mask of special characters with codes 0 to 63.
+     */
+    private final long lowSpecials;
+    /**
+     * Bit mask of special characters with codes 64 to 127.
+     */
+    private final long highSpecials;
+
+    /**
+     * Creates new instance of CsvFormat that quotes all values.
+     *
+     * @param separator field separator
+     */
+    public CsvFormat(final char separator) {
+        this(separator, Quoting.ALWAYS, '\\');
+    }
+
+    /**
+     * Creates new instance of CsvFormat.
+     *
+     * @param separator  field separator
+     * @param quoting    quoting policy
+     * @param escapeChar escape character used by {@link Quoting#NEVER}
+     */
+    public CsvFormat(final char separator, final Quoting quoting,
+            final char escapeChar) {
+        if (separator >= 128 || escapeChar >= 128) {
+            throw new IllegalArgumentException(
+                    "Separator and escape character must be ASCII characters.");
+        }
+
+        this.separator = separator;
+        this.quoting = quoting;
+        this.escapeChar = escapeChar;
+
+        final char[] specials = {separator, '\n', '\r',
+            quoting == Quoting.NEVER ? escapeChar : '"'};
+        long low = 0;
+        long high = 0;
+
+        for (final char special : specials) {
+            if (special < 64) {
+                low |= 1L << special;
+            } else {
+                high |= 1L << special - 64;
+            }
+        }
+
+        lowSpecials = low;
+        highSpecials = high;
+    }
+
+    /**
+     * Creates format from the conversion settings.
+     *
+     * @param settings conversion settings
+     *
+     * @return CSV format
+     */
+    public static CsvFormat forSettings(final ConvertorSettings settings) {
+        return new CsvFormat(settings.getSeparator(), settings.getQuoting(),
+                settings.getEscapeChar());
+    }
+
+    /**
+     * Getter for {@link #separator}.
+     *
+     * @return {@link #separator}
+     */
+    public char getSeparator() {
+        return separator;
+    }
+
+    /**
+     * Getter for {@link #quoting}.
+     *
+     * @return {@link #quoting}
+     */
+    public Quoting getQuoting() {
+        return quoting;
+    }
+
+    /**
+     * Getter for {@link #escapeChar}.
+     *
+     * @return {@link #escapeChar}
+     */
+    public char getEscapeChar() {
+        return escapeChar;
+    }
+
+    /**
+     * Writes row including the trailing new line.
+     *
+     * @param writer writer
+     * @param values array of row values
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    public void writeRow(final Writer writer, final String[] values)
+            throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(separator);
+            }
+
+            write(writer, values[i]);
+        }
+
+        writer.write('\n');
+    }
+
+    /**
+     * Appends row to the string builder including the trailing new line.
+     *
+     * @param sb     string builder
+     * @param values array of row values
+     */
+    public void appendRow(final StringBuilder sb, final String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(separator);
+            }
+
+            append(sb, values[i]);
+        }
+
+        sb.append('\n');
+    }
+
+    /**
+     * Writes value quoted or escaped according to {@link #quoting}.
+     *
+     * @param writer writer
+     * @param value  value
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    public void write(final Writer writer, final String value)
+            throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+
+        switch (quoting) {
+            case ALWAYS:
+                CsvUtils.writeQuoted(writer, value);
+
+                break;
+            case MINIMAL:
+                if (findSpecial(value, 0) == -1) {
+                    writer.write(value);
+                } else {
+                    CsvUtils.writeQuoted(writer, value);
+                }
+
+                break;
+            case NEVER:
+                int start = 0;
+                int special = findSpecial(value, 0);
+
+                while (special != -1) {
+                    writer.write(value, start, special - start);
+                    writer.write(escapeChar);
+                    writer.write(escaped(value.charAt(special)));
+                    start = special + 1;
+                    special = findSpecial(value, start);
+                }
+
+                writer.write(value, start, value.length() - start);
+
+                break;
+            default:
+                throw new IllegalStateException(
+                        "Unsupported quoting " + quoting);
+        }
+    }
+
+    /**
+     * Appends value quoted or escaped according to {@link #quoting}.
+     *
+     * @param sb    string builder
+     * @param value value
+     */
+    public void append(final StringBuilder sb, final String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+
+        switch (quoting) {
+            case ALWAYS:
+                CsvUtils.appendQuoted(sb, value);
+
+                break;
+            case MINIMAL:
+                if (findSpecial(value, 0) == -1) {
+                    sb.append(value);
+                } else {
+                    CsvUtils.appendQuoted(sb, value);
+                }
+
+                break;
+            case NEVER:
+                int start = 0;
+                int special = findSpecial(value, 0);
+
+                while (special != -1) {
+                    sb.append(value, start, special).append(escapeChar).
+                            append(escaped(value.charAt(special)));
+                    start = special + 1;
+                    special = findSpecial(value, start);
+                }
+
+                sb.append(value, start, value.length());
+
+                break;
+            default:
+                throw new IllegalStateException(
+                        "Unsupported quoting " + quoting);
+        }
+    }
+
+    /**
+     * Finds first special character in the value. Each character is checked
+     * against bit mask of special characters, which needs just one comparison
+     * and bit test per character.
+     *
+     * @param value value
+     * @param start index to start at
+     *
+     * @return index of the special character or -1 if there is none
+     */
+    private int findSpecial(final String value, final int start) {
+        for (int i = start; i < value.length(); i++) {
+            final char chr = value.charAt(i);
+
+            if (chr < 64 ? (lowSpecials & 1L << chr) != 0
+                    : chr < 128 && (highSpecials & 1L << chr - 64) != 0) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns character written after escape character for the special
+     * character.
+     *
+     * @param chr special character
+     *
+     * @return escaped character
+     */
+    private static char escaped(final char chr) {
+        switch (chr) {
+            case '\n':
+                return 'n';
+            case '\r':
+                return 'r';
+            default:
+                return chr;
+        }
+    }
+}
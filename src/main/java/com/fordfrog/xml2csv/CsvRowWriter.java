@@ -0,0 +1,96 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Row writer that writes rows in CSV format to a writer.
+ *
+ * @author fordfrog
+ */
+public class CsvRowWriter implements RowWriter {
+
+    /**
+     * Output writer.
+     */
+    private final Writer writer;
+    /**
+     * Output format.
+     */
+    private final CsvFormat format;
+
+    /**
+     * Creates new instance of CsvRowWriter that quotes all values.
+     *
+     * @param writer    output writer
+     * @param separator field separator
+     */
+    public CsvRowWriter(final Writer writer, final char separator) {
+        this(writer, new CsvFormat(separator));
+    }
+
+    /**
+     * Creates new instance of CsvRowWriter.
+     *
+     * @param writer output writer
+     * @param format output format
+     */
+    public CsvRowWriter(final Writer writer, final CsvFormat format) {
+        this.writer = writer;
+        this.format = format;
+    }
+
+    @Override
+    public void writeHeader(final String[] columns) throws IOException {
+        writeRow(columns);
+    }
+
+    @Override
+    public void writeRow(final String[] values) throws IOException {
+        format.writeRow(writer, values);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Formats row in CSV format with all values quoted and appends it to the
+     * string builder including the trailing new line.
+     *
+     * @param sb        string builder
+     * @param values    array of row values
+     * @param separator field separator
+     */
+    public static void appendRow(final StringBuilder sb, final String[] values,
+            final char separator) {
+        new CsvFormat(separator).appendRow(sb, values);
+    }
+}
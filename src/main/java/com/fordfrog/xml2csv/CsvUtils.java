@@ -21,6 +21,8 @@
  */
 package com.fordfrog.xml2csv;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -44,7 +46,69 @@ public class CsvUtils {
             return "";
         }
 
-        return '"' + string.replace("\"", "\"\"") + '"';
+        final StringBuilder sb = new StringBuilder(string.length() + 2);
+        appendQuoted(sb, string);
+
+        return sb.toString();
+    }
+
+    /**
+     * Quotes and escapes string and writes it to the writer. Unlike
+     * {@link #quoteString(java.lang.String)}, the escaped string is not
+     * created so even long strings are written without copying them.
+     *
+     * @param writer writer
+     * @param string string
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    public static void writeQuoted(final Writer writer, final String string)
+            throws IOException {
+        if (string == null || string.isEmpty()) {
+            return;
+        }
+
+        writer.write('"');
+
+        int start = 0;
+        int quote = string.indexOf('"');
+
+        while (quote != -1) {
+            // the quote is written twice, once with the preceding part
+            writer.write(string, start, quote + 1 - start);
+            writer.write('"');
+            start = quote + 1;
+            quote = string.indexOf('"', start);
+        }
+
+        writer.write(string, start, string.length() - start);
+        writer.write('"');
+    }
+
+    /**
+     * Quotes and escapes string and appends it to the string builder.
+     *
+     * @param sb     string builder
+     * @param string string
+     */
+    public static void appendQuoted(final StringBuilder sb,
+            final String string) {
+        if (string == null || string.isEmpty()) {
+            return;
+        }
+
+        sb.append('"');
+
+        int start = 0;
+        int quote = string.indexOf('"');
+
+        while (quote != -1) {
+            sb.append(string, start, quote + 1).append('"');
+            start = quote + 1;
+            quote = string.indexOf('"', start);
+        }
+
+        sb.append(string, start, string.length()).append('"');
     }
 
     /**
@@ -58,7 +122,7 @@ public class CsvUtils {
         final List<String> values = new ArrayList<>(2);
         int pos = 0;
 
-        while (pos + 1 < line.length()) {
+        while (pos < line.length()) {
             final boolean quoted = line.charAt(pos) == '"' || line.charAt(pos)
                     == '\'';
 
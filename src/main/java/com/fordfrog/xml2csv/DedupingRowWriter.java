@@ -0,0 +1,459 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Row writer that drops rows whose key columns were already seen and passes
+ * other rows to the target row writer. Rows are identified by 64-bit hash of
+ * values of the key columns.
+ *
+ * In exact mode the hashes are stored in open addressing hash set. If the set
+ * exceeds memory budget, its hashes are sorted and spilled to a run file that
+ * is then searched using binary search over memory mapped file. Runs are
+ * merged once there are too many of them so number of searched files stays
+ * small.
+ *
+ * In probabilistic mode the hashes are stored in Bloom filter that uses whole
+ * memory budget and never spills. Some distinct rows may then be dropped as
+ * duplicates; the probability grows with number of rows per byte of budget
+ * (about 2% for one row per byte).
+ *
+ * @author fordfrog
+ */
+public class DedupingRowWriter implements RowWriter {
+
+    /**
+     * Marker of free slot in {@link #table}. Hash equal to this value is
+     * replaced with {@link #ZERO_REPLACEMENT}.
+     */
+    private static final long FREE = 0;
+    /**
+     * Value stored instead of hash that equals to {@link #FREE}.
+     */
+    private static final long ZERO_REPLACEMENT = 0x9E3779B97F4A7C15L;
+    /**
+     * Maximum number of run files before they are merged.
+     */
+    private static final int MAX_RUNS = 8;
+    /**
+     * Number of hash functions of Bloom filter.
+     */
+    private static final int BLOOM_HASHES = 6;
+    /**
+     * Target row writer.
+     */
+    private final RowWriter target;
+    /**
+     * Names of key columns.
+     */
+    private final String[] keyColumns;
+    /**
+     * Whether probabilistic mode is used.
+     */
+    private final boolean probabilistic;
+    /**
+     * Directory for run files.
+     */
+    private final Path tempDirectory;
+    /**
+     * Maximum number of hashes in {@link #table} before it is spilled.
+     */
+    private final int maxSize;
+    /**
+     * Indexes of key columns in rows.
+     */
+    private int[] keyIndexes;
+    /**
+     * Open addressing hash set of row hashes in exact mode.
+     */
+    private long[] table;
+    /**
+     * Number of hashes in {@link #table}.
+     */
+    private int size;
+    /**
+     * Bits of Bloom filter in probabilistic mode.
+     */
+    private long[] bloom;
+    /**
+     * Run files with sorted hashes.
+     */
+    private final List<Path> runFiles = new ArrayList<>(MAX_RUNS);
+    /**
+     * Memory mapped contents of {@link #runFiles}.
+     */
+    private final List<LongBuffer> runs = new ArrayList<>(MAX_RUNS);
+    /**
+     * Number of dropped rows.
+     */
+    private long droppedRows;
+
+    /**
+     * Creates new instance of DedupingRowWriter.
+     *
+     * @param target        target row writer
+     * @param keyColumns    names of key columns
+     * @param memoryBudget  memory budget in bytes
+     * @param probabilistic whether probabilistic mode should be used
+     * @param tempDirectory directory for run files
+     */
+    public DedupingRowWriter(final RowWriter target, final String[] keyColumns,
+            final long memoryBudget, final boolean probabilistic,
+            final Path tempDirectory) {
+        this.target = target;
+        this.keyColumns = keyColumns.clone();
+        this.probabilistic = probabilistic;
+        this.tempDirectory = tempDirectory;
+
+        if (probabilistic) {
+            bloom = new long[(int) Math.min(Integer.MAX_VALUE - 8,
+                    Math.max(1, memoryBudget / 8))];
+            maxSize = 0;
+        } else {
+            int capacity = 16;
+
+            while (capacity * 2L * 8 <= memoryBudget
+                    && capacity < 1 << 29) {
+                capacity <<= 1;
+            }
+
+            table = new long[capacity];
+            maxSize = capacity / 2;
+        }
+    }
+
+    /**
+     * Getter for {@link #droppedRows}.
+     *
+     * @return {@link #droppedRows}
+     */
+    public long getDroppedRows() {
+        return droppedRows;
+    }
+
+    @Override
+    public void writeHeader(final String[] columns) throws IOException {
+        keyIndexes = new int[keyColumns.length];
+
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyIndexes[i] = Arrays.asList(columns).indexOf(keyColumns[i]);
+
+            if (keyIndexes[i] == -1) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Dedupe column {0} is not an output column",
+                        keyColumns[i]));
+            }
+        }
+
+        target.writeHeader(columns);
+    }
+
+    @Override
+    public void writeRow(final String[] values) throws IOException {
+        final long hash = hash(values, keyIndexes);
+
+        if (probabilistic ? addToBloom(hash) : addToSet(hash)) {
+            target.writeRow(values);
+        } else {
+            droppedRows++;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            target.close();
+        } finally {
+            runs.clear();
+
+            for (final Path runFile : runFiles) {
+                Files.deleteIfExists(runFile);
+            }
+        }
+    }
+
+    /**
+     * Computes 64-bit hash of key column values.
+     *
+     * @param values     row values
+     * @param keyIndexes indexes of key columns
+     *
+     * @return hash
+     */
+    static long hash(final String[] values, final int[] keyIndexes) {
+        long hash = 0xCBF29CE484222325L;
+
+        for (final int index : keyIndexes) {
+            final String value = values[index];
+
+            if (value == null) {
+                hash = (hash ^ 0x10000) * 0x100000001B3L;
+            } else {
+                for (int i = 0; i < value.length(); i++) {
+                    hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+                }
+            }
+
+            hash = (hash ^ 0x10001) * 0x100000001B3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    /**
+     * Adds hash to Bloom filter.
+     *
+     * @param hash row hash
+     *
+     * @return true if the hash was not present, otherwise false
+     */
+    private boolean addToBloom(final long hash) {
+        final long bits = bloom.length * 64L;
+        final long hash1 = hash & 0xFFFFFFFFL;
+        final long hash2 = hash >>> 32;
+        boolean added = false;
+
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            final long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % bits;
+            final int word = (int) (bit >>> 6);
+            final long mask = 1L << bit;
+
+            if ((bloom[word] & mask) == 0) {
+                bloom[word] |= mask;
+                added = true;
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Adds hash to hash set, spilling the set to run file if it is full.
+     *
+     * @param rowHash row hash
+     *
+     * @return true if the hash was not present, otherwise false
+     *
+     * @throws IOException Thrown if problem occurred while spilling.
+     */
+    private boolean addToSet(final long rowHash) throws IOException {
+        final long hash = rowHash == FREE ? ZERO_REPLACEMENT : rowHash;
+        final int mask = table.length - 1;
+        int slot = (int) hash & mask;
+
+        while (table[slot] != FREE) {
+            if (table[slot] == hash) {
+                return false;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        for (final LongBuffer run : runs) {
+            if (contains(run, hash)) {
+                return false;
+            }
+        }
+
+        table[slot] = hash;
+        size++;
+
+        if (size >= maxSize) {
+            spill();
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes sorted hashes from the set to a run file and clears the set.
+     * Runs are merged if there are too many of them.
+     *
+     * @throws IOException Thrown if problem occurred while writing run file.
+     */
+    private void spill() throws IOException {
+        final long[] hashes = new long[size];
+        int count = 0;
+
+        for (final long hash : table) {
+            if (hash != FREE) {
+                hashes[count++] = hash;
+            }
+        }
+
+        Arrays.sort(hashes);
+        Arrays.fill(table, FREE);
+        size = 0;
+
+        final Path runFile =
+                Files.createTempFile(tempDirectory, "xml2csv-dedupe-", ".tmp");
+
+        try (final DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(runFile),
+                        65_536))) {
+            for (final long hash : hashes) {
+                output.writeLong(hash);
+            }
+        }
+
+        addRun(runFile);
+
+        if (runFiles.size() > MAX_RUNS) {
+            mergeRuns();
+        }
+    }
+
+    /**
+     * Merges all run files into single run file.
+     *
+     * @throws IOException Thrown if problem occurred while merging runs.
+     */
+    private void mergeRuns() throws IOException {
+        final Path mergedFile =
+                Files.createTempFile(tempDirectory, "xml2csv-dedupe-", ".tmp");
+        final DataInputStream[] inputs = new DataInputStream[runFiles.size()];
+        final long[] heads = new long[inputs.length];
+        final long[] remaining = new long[inputs.length];
+
+        try (final DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(mergedFile),
+                        65_536))) {
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = new DataInputStream(new BufferedInputStream(
+                        Files.newInputStream(runFiles.get(i)), 65_536));
+                remaining[i] = Files.size(runFiles.get(i)) / 8;
+
+                if (remaining[i] > 0) {
+                    heads[i] = inputs[i].readLong();
+                }
+            }
+
+            while (true) {
+                int min = -1;
+
+                for (int i = 0; i < inputs.length; i++) {
+                    if (remaining[i] > 0
+                            && (min == -1 || heads[i] < heads[min])) {
+                        min = i;
+                    }
+                }
+
+                if (min == -1) {
+                    break;
+                }
+
+                output.writeLong(heads[min]);
+                remaining[min]--;
+
+                if (remaining[min] > 0) {
+                    heads[min] = inputs[min].readLong();
+                }
+            }
+        } finally {
+            for (final DataInputStream input : inputs) {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+
+        runs.clear();
+
+        for (final Path runFile : runFiles) {
+            Files.deleteIfExists(runFile);
+        }
+
+        runFiles.clear();
+        addRun(mergedFile);
+    }
+
+    /**
+     * Maps run file to memory and adds it to the runs.
+     *
+     * @param runFile run file
+     *
+     * @throws IOException Thrown if problem occurred while mapping the file.
+     */
+    private void addRun(final Path runFile) throws IOException {
+        runFiles.add(runFile);
+
+        try (final FileChannel channel =
+                FileChannel.open(runFile, StandardOpenOption.READ)) {
+            runs.add(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size()).asLongBuffer());
+        }
+    }
+
+    /**
+     * Checks whether sorted run contains the hash.
+     *
+     * @param run  sorted run
+     * @param hash hash
+     *
+     * @return true if the run contains the hash, otherwise false
+     */
+    private static boolean contains(final LongBuffer run, final long hash) {
+        int low = 0;
+        int high = run.limit() - 1;
+
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final long value = run.get(middle);
+
+            if (value < hash) {
+                low = middle + 1;
+            } else if (value > hash) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
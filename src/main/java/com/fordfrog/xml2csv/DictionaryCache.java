@@ -0,0 +1,182 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of filter values, substring matchers compiled from them and remapping
+ * maps loaded from files, shared by conversions running in the same process. Dictionary is loaded again once
+ * modification time or size of its file changes. Cached dictionaries must
+ * not be modified.
+ *
+ * @author fordfrog
+ */
+class DictionaryCache {
+
+    /**
+     * Cached filter values by absolute file paths.
+     */
+    private final ConcurrentMap<Path, Entry<Collection<String>>> values =
+            new ConcurrentHashMap<>(16);
+    /**
+     * Cached substring matchers of filter values by absolute file paths.
+     */
+    private final ConcurrentMap<Path, Entry<SubstringMatcher>> matchers =
+            new ConcurrentHashMap<>(16);
+    /**
+     * Cached remapping maps by absolute file paths.
+     */
+    private final ConcurrentMap<Path, Entry<Map<String, String>>> maps =
+            new ConcurrentHashMap<>(16);
+
+    /**
+     * Returns filter values loaded from the file.
+     *
+     * @param file file path
+     *
+     * @return collection of values
+     */
+    Collection<String> getValues(final Path file) {
+        final Path key = file.toAbsolutePath().normalize();
+        final long[] version = getVersion(key);
+        final Entry<Collection<String>> entry = values.get(key);
+
+        if (entry != null && entry.isCurrent(version)) {
+            return entry.dictionary;
+        }
+
+        final Collection<String> dictionary = Main.loadValues(key);
+        values.put(key, new Entry<>(version, dictionary));
+
+        return dictionary;
+    }
+
+    /**
+     * Returns substring matcher compiled from filter values loaded from the
+     * file.
+     *
+     * @param file file path
+     *
+     * @return substring matcher
+     */
+    SubstringMatcher getMatcher(final Path file) {
+        final Path key = file.toAbsolutePath().normalize();
+        final long[] version = getVersion(key);
+        final Entry<SubstringMatcher> entry = matchers.get(key);
+
+        if (entry != null && entry.isCurrent(version)) {
+            return entry.dictionary;
+        }
+
+        final SubstringMatcher matcher = new SubstringMatcher(getValues(key));
+        matchers.put(key, new Entry<>(version, matcher));
+
+        return matcher;
+    }
+
+    /**
+     * Returns remapping map loaded from the file.
+     *
+     * @param file file path
+     *
+     * @return map of original and new values
+     */
+    Map<String, String> getMap(final Path file) {
+        final Path key = file.toAbsolutePath().normalize();
+        final long[] version = getVersion(key);
+        final Entry<Map<String, String>> entry = maps.get(key);
+
+        if (entry != null && entry.isCurrent(version)) {
+            return entry.dictionary;
+        }
+
+        final Map<String, String> dictionary = Main.loadMap(key);
+        maps.put(key, new Entry<>(version, dictionary));
+
+        return dictionary;
+    }
+
+    /**
+     * Returns modification time and size of the file.
+     *
+     * @param file file path
+     *
+     * @return array containing modification time and size
+     */
+    private static long[] getVersion(final Path file) {
+        try {
+            return new long[]{Files.getLastModifiedTime(file).toMillis(),
+                Files.size(file)};
+        } catch (final IOException ex) {
+            throw new RuntimeException("IO operation failed", ex);
+        }
+    }
+
+    /**
+     * Cached dictionary.
+     *
+     * @param <T> type of dictionary
+     */
+    private static class Entry<T> {
+
+        /**
+         * Modification time and size of the file the dictionary was loaded
+         * from.
+         */
+        private final long[] version;
+        /**
+         * Dictionary.
+         */
+        private final T dictionary;
+
+        /**
+         * Creates new instance of Entry.
+         *
+         * @param version    modification time and size of the file
+         * @param dictionary dictionary
+         */
+        Entry(final long[] version, final T dictionary) {
+            this.version = version;
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * Checks whether the dictionary was loaded from current version of
+         * the file.
+         *
+         * @param currentVersion modification time and size of the file
+         *
+         * @return true if the dictionary is current, otherwise false
+         */
+        boolean isCurrent(final long[] currentVersion) {
+            return version[0] == currentVersion[0]
+                    && version[1] == currentVersion[1];
+        }
+    }
+}
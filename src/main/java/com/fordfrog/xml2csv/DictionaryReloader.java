@@ -0,0 +1,221 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads filter values and remapping maps once their files change, so that
+ * long running conversions pick up new dictionaries without restart. Files
+ * are checked periodically by background thread, changed dictionary is
+ * loaded on that thread and then published to the filter or remapping at
+ * once, so the conversion threads are never blocked and each value is
+ * filtered or remapped using either the old or the new dictionary, never a
+ * mix of both. Files should be replaced atomically (written to temporary
+ * file and moved), otherwise partially written file could be loaded.
+ *
+ * @author fordfrog
+ */
+public class DictionaryReloader implements Closeable {
+
+    /**
+     * Interval between checks of the files in milliseconds.
+     */
+    private final long intervalMillis;
+    /**
+     * Watched files.
+     */
+    private final List<Watch> watches = new ArrayList<>(4);
+    /**
+     * Executor of the background thread, or null if it is not started.
+     */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates new instance of DictionaryReloader.
+     *
+     * @param intervalMillis interval between checks of the files in
+     *                       milliseconds
+     */
+    public DictionaryReloader(final long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException(
+                    "Reload interval must be greater than zero.");
+        }
+
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Watches file with filter values. Current values of the filter are
+     * expected to be loaded from current version of the file. Files must be
+     * watched before the reloader is started.
+     *
+     * @param filter filter
+     * @param file   file path
+     */
+    public void watch(final Filter filter, final Path file) {
+        watches.add(new Watch(file) {
+            @Override
+            void load() {
+                filter.setValues(Main.loadValues(file));
+            }
+        });
+    }
+
+    /**
+     * Watches file with remapping map. Current map of the remapping is
+     * expected to be loaded from current version of the file. Files must be
+     * watched before the reloader is started.
+     *
+     * @param remapping remapping
+     * @param file      file path
+     */
+    public void watch(final Remapping remapping, final Path file) {
+        watches.add(new Watch(file) {
+            @Override
+            void load() {
+                remapping.setMap(Main.loadMap(file));
+            }
+        });
+    }
+
+    /**
+     * Starts background thread that periodically checks the files.
+     */
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable,
+                                "xml2csv-reload");
+                        thread.setDaemon(true);
+
+                        return thread;
+                    }
+                });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reload();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks all the files and reloads dictionaries of files that changed
+     * since they were loaded. If dictionary cannot be loaded, the previous
+     * dictionary is kept and loading is retried on the next check.
+     *
+     * @return number of reloaded dictionaries
+     */
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public int reload() {
+        int reloaded = 0;
+
+        for (final Watch watch : watches) {
+            try {
+                final long[] version = getVersion(watch.file);
+
+                if (version[0] != watch.version[0]
+                        || version[1] != watch.version[1]) {
+                    watch.load();
+                    watch.version = version;
+                    reloaded++;
+                }
+            } catch (final RuntimeException ex) {
+                System.err.println(MessageFormat.format(
+                        "Failed to reload {0}: {1}", watch.file, ex));
+            }
+        }
+
+        return reloaded;
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns modification time and size of the file.
+     *
+     * @param file file path
+     *
+     * @return array containing modification time and size
+     */
+    private static long[] getVersion(final Path file) {
+        try {
+            return new long[]{Files.getLastModifiedTime(file).toMillis(),
+                Files.size(file)};
+        } catch (final IOException ex) {
+            throw new RuntimeException("IO operation failed", ex);
+        }
+    }
+
+    /**
+     * Watched file.
+     */
+    private abstract static class Watch {
+
+        /**
+         * File path.
+         */
+        private final Path file;
+        /**
+         * Modification time and size of the file the current dictionary was
+         * loaded from.
+         */
+        private long[] version;
+
+        /**
+         * Creates new instance of Watch.
+         *
+         * @param file file path
+         */
+        Watch(final Path file) {
+            this.file = file;
+            version = getVersion(file);
+        }
+
+        /**
+         * Loads the dictionary from the file and publishes it.
+         */
+        abstract void load();
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader of stream of concatenated XML documents. The reader reports end of
+ * input once root element of current document ends, {@link #nextDocument()}
+ * then starts reading of the next document. Characters are passed as soon as
+ * they are read from the underlying reader so that items of unbounded
+ * document can be converted once they arrive.
+ *
+ * @author fordfrog
+ */
+class DocumentReader extends Reader {
+
+    /**
+     * Underlying reader.
+     */
+    private final Reader reader;
+    /**
+     * Scanner of tags.
+     */
+    private final TagScanner scanner = new TagScanner();
+    /**
+     * Buffer of characters read from the underlying reader.
+     */
+    private final char[] buffer = new char[8_192];
+    /**
+     * Position of the next character in {@link #buffer}.
+     */
+    private int position;
+    /**
+     * Number of characters in {@link #buffer}.
+     */
+    private int limit;
+    /**
+     * Depth of current element.
+     */
+    private int depth;
+    /**
+     * Whether current document ended.
+     */
+    private boolean ended = true;
+    /**
+     * Whether end of the underlying reader was reached.
+     */
+    private boolean eof;
+
+    /**
+     * Creates new instance of DocumentReader.
+     *
+     * @param reader underlying reader
+     */
+    DocumentReader(final Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Starts reading of the next document. Whitespace and byte order marks
+     * before the document are skipped.
+     *
+     * @return true if there is next document, otherwise false
+     *
+     * @throws IOException Thrown if problem occurred while reading.
+     */
+    boolean nextDocument() throws IOException {
+        while (fill()) {
+            final char chr = buffer[position];
+
+            if (!Character.isWhitespace(chr) && chr != '\uFEFF') {
+                ended = false;
+
+                return true;
+            }
+
+            position++;
+        }
+
+        return false;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len)
+            throws IOException {
+        if (ended || !fill()) {
+            return -1;
+        }
+
+        int count = 0;
+
+        while (count < len && position < limit) {
+            final char chr = buffer[position++];
+            cbuf[off + count] = chr;
+            count++;
+
+            switch (scanner.scan(chr)) {
+                case TagScanner.START:
+                    depth++;
+
+                    break;
+                case TagScanner.END:
+                    depth--;
+
+                    if (depth == 0) {
+                        ended = true;
+
+                        return count;
+                    }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Does nothing, XML stream reader should not close the underlying reader
+     * as next document can follow.
+     */
+    @Override
+    public void close() {
+        // underlying reader is closed by the caller
+    }
+
+    /**
+     * Fills the buffer if it is empty. Only characters that are available
+     * are read.
+     *
+     * @return true if the buffer contains characters, false if end of the
+     *         underlying reader was reached
+     *
+     * @throws IOException Thrown if problem occurred while reading.
+     */
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+
+        if (eof) {
+            return false;
+        }
+
+        final int count = reader.read(buffer, 0, buffer.length);
+
+        if (count == -1) {
+            eof = true;
+
+            return false;
+        }
+
+        position = 0;
+        limit = count;
+
+        return true;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * Row writer that appends columns looked up in reference file by value of key
+ * column and passes the rows to the target row writer. Rows without matching
+ * reference row are passed with empty looked up columns.
+ *
+ * @author fordfrog
+ */
+public class EnrichingRowWriter implements RowWriter {
+
+    /**
+     * Target row writer.
+     */
+    private final RowWriter target;
+    /**
+     * Index of the reference file.
+     */
+    private final LookupIndex index;
+    /**
+     * Name of the key column.
+     */
+    private final String keyColumn;
+    /**
+     * Number of looked up columns.
+     */
+    private final int columnCount;
+    /**
+     * Index of the key column in rows.
+     */
+    private int keyIndex;
+    /**
+     * Number of rows that have no matching reference row.
+     */
+    private long missedRows;
+
+    /**
+     * Creates new instance of EnrichingRowWriter.
+     *
+     * @param target    target row writer
+     * @param index     index of the reference file
+     * @param keyColumn name of output column whose values are looked up
+     */
+    public EnrichingRowWriter(final RowWriter target, final LookupIndex index,
+            final String keyColumn) {
+        this.target = target;
+        this.index = index;
+        this.keyColumn = keyColumn;
+        columnCount = index.getColumns().length;
+    }
+
+    /**
+     * Getter for {@link #missedRows}.
+     *
+     * @return {@link #missedRows}
+     */
+    public long getMissedRows() {
+        return missedRows;
+    }
+
+    @Override
+    public void writeHeader(final String[] columns) throws IOException {
+        keyIndex = Arrays.asList(columns).indexOf(keyColumn);
+
+        if (keyIndex == -1) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Lookup key column {0} is not an output column",
+                    keyColumn));
+        }
+
+        target.writeHeader(concat(columns, index.getColumns()));
+    }
+
+    @Override
+    public void writeRow(final String[] values) throws IOException {
+        String[] lookedUp = index.lookup(values[keyIndex]);
+
+        if (lookedUp == null) {
+            lookedUp = new String[columnCount];
+            missedRows++;
+        }
+
+        target.writeRow(concat(values, lookedUp));
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        target.close();
+    }
+
+    /**
+     * Concatenates two arrays.
+     *
+     * @param first  first array
+     * @param second second array
+     *
+     * @return new array
+     */
+    private static String[] concat(final String[] first,
+            final String[] second) {
+        final String[] result =
+                Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repeating element within item whose occurrences are converted to separate
+ * rows. Each occurrence produces a record of values of columns nested in the
+ * element. If a column occurs several times within single occurrence, the
+ * first value is used.
+ *
+ * @author fordfrog
+ */
+class ExplodeGroup {
+
+    /**
+     * Path of the repeating element relative to the item element.
+     */
+    private final String path;
+    /**
+     * Prefix of columns nested in the repeating element.
+     */
+    private final String prefix;
+    /**
+     * Records of occurrences in current item.
+     */
+    private final List<Map<String, String>> records = new ArrayList<>(16);
+    /**
+     * Record of current occurrence, null if no occurrence was started yet.
+     */
+    private Map<String, String> currentRecord;
+
+    /**
+     * Creates new instance of ExplodeGroup.
+     *
+     * @param path path of the repeating element relative to the item element
+     */
+    ExplodeGroup(final String path) {
+        this.path = path;
+        prefix = path + "/";
+    }
+
+    /**
+     * Getter for {@link #path}.
+     *
+     * @return {@link #path}
+     */
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * Getter for {@link #records}.
+     *
+     * @return {@link #records}
+     */
+    List<Map<String, String>> getRecords() {
+        return records;
+    }
+
+    /**
+     * Checks whether the column is nested in the repeating element.
+     *
+     * @param column column name
+     *
+     * @return true if the column is nested in the element, otherwise false
+     */
+    boolean contains(final String column) {
+        return column.startsWith(prefix);
+    }
+
+    /**
+     * Clears records for new item.
+     */
+    void reset() {
+        records.clear();
+        currentRecord = null;
+    }
+
+    /**
+     * Starts record of new occurrence of the repeating element.
+     */
+    void startRecord() {
+        currentRecord = new HashMap<>(8);
+        records.add(currentRecord);
+    }
+
+    /**
+     * Adds value of nested column to current record.
+     *
+     * @param column column name
+     * @param value  column value
+     */
+    void addValue(final String column, final String value) {
+        if (currentRecord != null && !currentRecord.containsKey(column)) {
+            currentRecord.put(column, value);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Filter that matches items using {@link FilterExpression}. If the expression
+ * refers to single column only, the filter column is set to that column so
+ * that the filter can be evaluated as soon as the column value is read.
+ *
+ * @author fordfrog
+ */
+public class ExpressionFilter extends Filter {
+
+    /**
+     * Source of the expression.
+     */
+    private final String source;
+    /**
+     * Compiled expression.
+     */
+    private final FilterExpression expression;
+
+    /**
+     * Creates new instance of ExpressionFilter.
+     *
+     * @param source filter expression
+     */
+    public ExpressionFilter(final String source) {
+        this.source = source;
+        expression = FilterExpression.compile(source);
+
+        final Set<String> columns = expression.getColumns();
+
+        if (columns.size() == 1) {
+            setColumn(columns.iterator().next());
+        }
+    }
+
+    /**
+     * Getter for {@link #source}.
+     *
+     * @return {@link #source}
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Getter for {@link #expression}.
+     *
+     * @return {@link #expression}
+     */
+    public FilterExpression getExpression() {
+        return expression;
+    }
+
+    @Override
+    public boolean rejectsAll() {
+        return false;
+    }
+
+    @Override
+    public boolean matchesFilter(final Map<String, String> itemValues) {
+        return expression.evaluate(itemValues) != isExclude();
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -37,14 +37,22 @@ public class Filter {
      */
     private String column;
     /**
-     * Filter values.
+     * Filter values together with compiled matcher. The snapshot is immutable
+     * and it is replaced as a whole when the values change, so the values can
+     * be swapped while other threads are filtering items and each check sees
+     * consistent values without any locking.
      */
-    private Collection<String> values;
+    private volatile Snapshot snapshot = new Snapshot(null, null, 0);
     /**
      * If true then items with specified values are excluded, if true then only
      * items with specified values are included.
      */
     private boolean exclude;
+    /**
+     * If true then item value matches if it contains one of the values, if
+     * false then item value matches if it equals to one of the values.
+     */
+    private boolean substring;
 
     /**
      * Getter for {@link #column}.
@@ -65,22 +73,50 @@ public class Filter {
     }
 
     /**
-     * Getter for {@link #values}.
+     * Returns filter values.
      *
-     * @return {@link #values}
+     * @return filter values or null if no values are set
      */
     public Collection<String> getValues() {
-        return Collections.unmodifiableCollection(values);
+        final Collection<String> values = snapshot.values;
+
+        return values == null ? null
+                : Collections.unmodifiableCollection(values);
     }
 
     /**
-     * Setter for {@link #values}.
+     * Sets filter values. The values can be replaced while the filter is in
+     * use, the new values are prepared first and then published at once. The
+     * collection must not be modified after it is passed to the filter.
      *
-     * @param values {@link #values}
+     * @param values filter values
      */
-    @SuppressWarnings("AssignmentToCollectionOrArrayFieldFromParameter")
     public void setValues(final Collection<String> values) {
-        this.values = values;
+        updateSnapshot(values, null);
+    }
+
+    /**
+     * Sets filter values together with substring matcher compiled from them,
+     * so that matcher shared by several filters does not have to be compiled
+     * again. The matcher is used only if {@link #substring} is set.
+     *
+     * @param values           filter values
+     * @param substringMatcher substring matcher compiled from the values
+     */
+    public void setValues(final Collection<String> values,
+            final SubstringMatcher substringMatcher) {
+        updateSnapshot(values, substringMatcher);
+    }
+
+    /**
+     * Returns version of filter values. The version is incremented every time
+     * the values are replaced, so results computed from previous values can be
+     * detected.
+     *
+     * @return version of filter values
+     */
+    public int getVersion() {
+        return snapshot.version;
     }
 
     /**
@@ -101,6 +137,37 @@ public class Filter {
         this.exclude = exclude;
     }
 
+    /**
+     * Getter for {@link #substring}.
+     *
+     * @return {@link #substring}
+     */
+    public boolean isSubstring() {
+        return substring;
+    }
+
+    /**
+     * Setter for {@link #substring}.
+     *
+     * @param substring {@link #substring}
+     */
+    public void setSubstring(final boolean substring) {
+        this.substring = substring;
+        updateSnapshot(snapshot.values, null);
+    }
+
+    /**
+     * Checks whether the filter excludes all items regardless of their values.
+     * It is an include filter with no values.
+     *
+     * @return true if the filter excludes all items, otherwise false
+     */
+    public boolean rejectsAll() {
+        final Collection<String> values = snapshot.values;
+
+        return !exclude && (values == null || values.isEmpty());
+    }
+
     /**
      * Checks whether the item matches the filter.
      *
@@ -110,7 +177,9 @@ public class Filter {
      *         does not match filter and should be excluded
      */
     public boolean matchesFilter(final Map<String, String> itemValues) {
-        if (values == null) {
+        final Snapshot current = snapshot;
+
+        if (current.values == null) {
             return exclude;
         }
 
@@ -118,10 +187,69 @@ public class Filter {
 
         if (itemValue == null) {
             return exclude;
-        } else if (values.contains(itemValue)) {
+        } else if (current.substringMatcher == null
+                ? current.values.contains(itemValue)
+                : current.substringMatcher.matches(itemValue)) {
             return !exclude;
         } else {
             return exclude;
         }
     }
+
+    /**
+     * Compiles the values to substring matcher if {@link #substring} is set and
+     * no compiled matcher is passed, and publishes them as new
+     * {@link #snapshot}.
+     *
+     * @param values           filter values
+     * @param substringMatcher substring matcher compiled from the values or
+     *                         null
+     */
+    private synchronized void updateSnapshot(final Collection<String> values,
+            final SubstringMatcher substringMatcher) {
+        final SubstringMatcher matcher;
+
+        if (!substring || values == null) {
+            matcher = null;
+        } else if (substringMatcher == null) {
+            matcher = new SubstringMatcher(values);
+        } else {
+            matcher = substringMatcher;
+        }
+
+        snapshot = new Snapshot(values, matcher, snapshot.version + 1);
+    }
+
+    /**
+     * Immutable filter values.
+     */
+    private static class Snapshot {
+
+        /**
+         * Filter values.
+         */
+        private final Collection<String> values;
+        /**
+         * Matcher of {@link #values} used if the filter matches substrings.
+         */
+        private final SubstringMatcher substringMatcher;
+        /**
+         * Version of the values.
+         */
+        private final int version;
+
+        /**
+         * Creates new instance of Snapshot.
+         *
+         * @param values           filter values
+         * @param substringMatcher substring matcher or null
+         * @param version          version of the values
+         */
+        Snapshot(final Collection<String> values,
+                final SubstringMatcher substringMatcher, final int version) {
+            this.values = values;
+            this.substringMatcher = substringMatcher;
+            this.version = version;
+        }
+    }
 }
@@ -0,0 +1,1240 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled filter expression. Expression is parsed once into a tree of
+ * predicates that is then evaluated for each item. Supported syntax:
+ *
+ * <pre>
+ * column = 'value'
+ * column != 'value'
+ * column in ('value1', 'value2', ...)
+ * column &lt; 10, column &lt;= 10, column &gt; 10, column &gt;= 10
+ * column between 10 and 20
+ * column &gt;= date '2020-01-01', column between date '2020-01-01' and
+ *     date '2020-12-31T12:00:00'
+ * column starts with 'prefix'
+ * column starts with ('prefix1', 'prefix2', ...)
+ * column matches 'regular expression'
+ * not expression, expression and expression, expression or expression,
+ *     (expression)
+ * </pre>
+ *
+ * Values that are missing or cannot be parsed as number or date never match
+ * the predicate, not even <code>column != 'value'</code>, while
+ * <code>not column = 'value'</code> matches missing values. Operands of
+ * <code>and</code> and <code>or</code> are reordered during evaluation so
+ * that the operands that are cheap and most often decide the result are
+ * evaluated first. Statistics used for the
+ * reordering are not synchronized so they are only approximate if the
+ * expression is evaluated from several threads.
+ *
+ * @author fordfrog
+ */
+public abstract class FilterExpression {
+
+    /**
+     * Number of evaluations of this expression.
+     */
+    private long evaluations;
+    /**
+     * Number of evaluations of this expression that returned true.
+     */
+    private long matches;
+
+    /**
+     * Compiles filter expression.
+     *
+     * @param expression expression string
+     *
+     * @return compiled expression
+     */
+    public static FilterExpression compile(final String expression) {
+        return new Parser(expression).parse();
+    }
+
+    /**
+     * Evaluates the expression for the item and records the result for
+     * reordering of operands.
+     *
+     * @param itemValues map of item columns and corresponding values
+     *
+     * @return true if the item matches the expression, otherwise false
+     */
+    public final boolean evaluate(final Map<String, String> itemValues) {
+        final boolean result = matches(itemValues);
+        evaluations++;
+
+        if (result) {
+            matches++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns columns the expression refers to.
+     *
+     * @return set of column names
+     */
+    public Set<String> getColumns() {
+        final Set<String> columns = new HashSet<>(4);
+        collectColumns(columns);
+
+        return columns;
+    }
+
+    /**
+     * Checks whether the item matches the expression.
+     *
+     * @param itemValues map of item columns and corresponding values
+     *
+     * @return true if the item matches the expression, otherwise false
+     */
+    protected abstract boolean matches(Map<String, String> itemValues);
+
+    /**
+     * Returns estimated relative cost of single evaluation.
+     *
+     * @return cost
+     */
+    protected abstract int getCost();
+
+    /**
+     * Adds columns the expression refers to to the set.
+     *
+     * @param columns set of column names
+     */
+    protected abstract void collectColumns(Set<String> columns);
+
+    /**
+     * Returns ratio of evaluations that returned true, or 0.5 if there is not
+     * enough evaluations yet.
+     *
+     * @return ratio of evaluations that returned true
+     */
+    private double getMatchRatio() {
+        final long count = evaluations;
+
+        return count < 16 ? 0.5 : (double) matches / count;
+    }
+
+    /**
+     * Expression that compares value of single column.
+     */
+    private abstract static class ColumnExpression extends FilterExpression {
+
+        /**
+         * Column name.
+         */
+        private final String column;
+
+        /**
+         * Creates new instance of ColumnExpression.
+         *
+         * @param column column name
+         */
+        ColumnExpression(final String column) {
+            this.column = column;
+        }
+
+        @Override
+        protected boolean matches(final Map<String, String> itemValues) {
+            final String value = itemValues.get(column);
+
+            return value != null && matchesValue(value);
+        }
+
+        @Override
+        protected void collectColumns(final Set<String> columns) {
+            columns.add(column);
+        }
+
+        /**
+         * Checks whether the column value matches the expression.
+         *
+         * @param value column value
+         *
+         * @return true if the value matches, otherwise false
+         */
+        protected abstract boolean matchesValue(String value);
+    }
+
+    /**
+     * Value is one of given values.
+     */
+    private static class InExpression extends ColumnExpression {
+
+        /**
+         * Set of values.
+         */
+        private final Set<String> values;
+        /**
+         * Whether value must not be one of the values.
+         */
+        private final boolean negated;
+
+        /**
+         * Creates new instance of InExpression.
+         *
+         * @param column  column name
+         * @param values  collection of values
+         * @param negated whether value must not be one of the values
+         */
+        InExpression(final String column, final Collection<String> values,
+                final boolean negated) {
+            super(column);
+            this.values = new HashSet<>(values);
+            this.negated = negated;
+        }
+
+        @Override
+        protected boolean matchesValue(final String value) {
+            return values.contains(value) != negated;
+        }
+
+        @Override
+        protected int getCost() {
+            return 2;
+        }
+    }
+
+    /**
+     * Numeric value is within range.
+     */
+    private static class NumberRangeExpression extends ColumnExpression {
+
+        /**
+         * Lower bound.
+         */
+        private final double lower;
+        /**
+         * Whether lower bound is inclusive.
+         */
+        private final boolean lowerInclusive;
+        /**
+         * Upper bound.
+         */
+        private final double upper;
+        /**
+         * Whether upper bound is inclusive.
+         */
+        private final boolean upperInclusive;
+
+        /**
+         * Creates new instance of NumberRangeExpression.
+         *
+         * @param column         column name
+         * @param lower          lower bound
+         * @param lowerInclusive whether lower bound is inclusive
+         * @param upper          upper bound
+         * @param upperInclusive whether upper bound is inclusive
+         */
+        NumberRangeExpression(final String column, final double lower,
+                final boolean lowerInclusive, final double upper,
+                final boolean upperInclusive) {
+            super(column);
+            this.lower = lower;
+            this.lowerInclusive = lowerInclusive;
+            this.upper = upper;
+            this.upperInclusive = upperInclusive;
+        }
+
+        @Override
+        protected boolean matchesValue(final String value) {
+            final double number = parseNumber(value);
+
+            return !Double.isNaN(number)
+                    && (lowerInclusive ? number >= lower : number > lower)
+                    && (upperInclusive ? number <= upper : number < upper);
+        }
+
+        @Override
+        protected int getCost() {
+            return 3;
+        }
+    }
+
+    /**
+     * Date value is within range.
+     */
+    private static class DateRangeExpression extends ColumnExpression {
+
+        /**
+         * Lower bound.
+         */
+        private final long lower;
+        /**
+         * Whether lower bound is inclusive.
+         */
+        private final boolean lowerInclusive;
+        /**
+         * Upper bound.
+         */
+        private final long upper;
+        /**
+         * Whether upper bound is inclusive.
+         */
+        private final boolean upperInclusive;
+
+        /**
+         * Creates new instance of DateRangeExpression.
+         *
+         * @param column         column name
+         * @param lower          lower bound
+         * @param lowerInclusive whether lower bound is inclusive
+         * @param upper          upper bound
+         * @param upperInclusive whether upper bound is inclusive
+         */
+        DateRangeExpression(final String column, final long lower,
+                final boolean lowerInclusive, final long upper,
+                final boolean upperInclusive) {
+            super(column);
+            this.lower = lower;
+            this.lowerInclusive = lowerInclusive;
+            this.upper = upper;
+            this.upperInclusive = upperInclusive;
+        }
+
+        @Override
+        protected boolean matchesValue(final String value) {
+            final long date = parseDate(value);
+
+            return date != -1
+                    && (lowerInclusive ? date >= lower : date > lower)
+                    && (upperInclusive ? date <= upper : date < upper);
+        }
+
+        @Override
+        protected int getCost() {
+            return 4;
+        }
+    }
+
+    /**
+     * Value starts with one of given prefixes.
+     */
+    private static class PrefixExpression extends ColumnExpression {
+
+        /**
+         * Root node of prefix trie.
+         */
+        private final TrieNode root = new TrieNode();
+
+        /**
+         * Creates new instance of PrefixExpression.
+         *
+         * @param column   column name
+         * @param prefixes collection of prefixes
+         */
+        PrefixExpression(final String column,
+                final Collection<String> prefixes) {
+            super(column);
+
+            for (final String prefix : prefixes) {
+                TrieNode node = root;
+
+                for (int i = 0; i < prefix.length(); i++) {
+                    node = node.getOrCreateChild(prefix.charAt(i));
+                }
+
+                node.terminal = true;
+            }
+        }
+
+        @Override
+        protected boolean matchesValue(final String value) {
+            TrieNode node = root;
+
+            for (int i = 0; !node.terminal; i++) {
+                if (i == value.length()) {
+                    return false;
+                }
+
+                node = node.getChild(value.charAt(i));
+
+                if (node == null) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        protected int getCost() {
+            return 3;
+        }
+    }
+
+    /**
+     * Node of prefix trie. Children are kept in sorted array and looked up
+     * using binary search.
+     */
+    private static class TrieNode {
+
+        /**
+         * Sorted characters of child nodes.
+         */
+        private char[] keys = new char[0];
+        /**
+         * Child nodes in order of {@link #keys}.
+         */
+        private TrieNode[] children = new TrieNode[0];
+        /**
+         * Whether a prefix ends in this node.
+         */
+        private boolean terminal;
+
+        /**
+         * Returns child node for the character.
+         *
+         * @param chr character
+         *
+         * @return child node or null
+         */
+        TrieNode getChild(final char chr) {
+            final int index = Arrays.binarySearch(keys, chr);
+
+            return index < 0 ? null : children[index];
+        }
+
+        /**
+         * Returns child node for the character, creating it if it does not
+         * exist yet.
+         *
+         * @param chr character
+         *
+         * @return child node
+         */
+        TrieNode getOrCreateChild(final char chr) {
+            final int index = Arrays.binarySearch(keys, chr);
+
+            if (index >= 0) {
+                return children[index];
+            }
+
+            final int insertAt = -index - 1;
+            final TrieNode child = new TrieNode();
+            final char[] newKeys = new char[keys.length + 1];
+            final TrieNode[] newChildren = new TrieNode[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newKeys[insertAt] = chr;
+            newChildren[insertAt] = child;
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1,
+                    keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1,
+                    children.length - insertAt);
+            keys = newKeys;
+            children = newChildren;
+
+            return child;
+        }
+    }
+
+    /**
+     * Value matches regular expression.
+     */
+    private static class RegexExpression extends ColumnExpression {
+
+        /**
+         * Compiled regular expression.
+         */
+        private final Pattern pattern;
+
+        /**
+         * Creates new instance of RegexExpression.
+         *
+         * @param column column name
+         * @param regex  regular expression
+         */
+        RegexExpression(final String column, final String regex) {
+            super(column);
+            pattern = Pattern.compile(regex);
+        }
+
+        @Override
+        protected boolean matchesValue(final String value) {
+            return pattern.matcher(value).matches();
+        }
+
+        @Override
+        protected int getCost() {
+            return 20;
+        }
+    }
+
+    /**
+     * Negation of expression.
+     */
+    private static class NotExpression extends FilterExpression {
+
+        /**
+         * Negated expression.
+         */
+        private final FilterExpression expression;
+
+        /**
+         * Creates new instance of NotExpression.
+         *
+         * @param expression negated expression
+         */
+        NotExpression(final FilterExpression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        protected boolean matches(final Map<String, String> itemValues) {
+            return !expression.evaluate(itemValues);
+        }
+
+        @Override
+        protected int getCost() {
+            return expression.getCost();
+        }
+
+        @Override
+        protected void collectColumns(final Set<String> columns) {
+            expression.collectColumns(columns);
+        }
+    }
+
+    /**
+     * Conjunction or disjunction of expressions. Operands are periodically
+     * reordered so that operands with lowest cost per decided evaluation are
+     * evaluated first.
+     */
+    private static class JunctionExpression extends FilterExpression {
+
+        /**
+         * Number of evaluations after which operands are reordered.
+         */
+        private static final int REORDER_INTERVAL = 1_024;
+        /**
+         * Whether this is conjunction (and) or disjunction (or).
+         */
+        private final boolean conjunction;
+        /**
+         * Operands in order of evaluation.
+         */
+        private volatile FilterExpression[] operands;
+        /**
+         * Number of evaluations until next reordering.
+         */
+        private int untilReorder = REORDER_INTERVAL;
+
+        /**
+         * Creates new instance of JunctionExpression.
+         *
+         * @param conjunction whether this is conjunction or disjunction
+         * @param operands    list of operands
+         */
+        JunctionExpression(final boolean conjunction,
+                final List<FilterExpression> operands) {
+            this.conjunction = conjunction;
+            this.operands =
+                    operands.toArray(new FilterExpression[operands.size()]);
+        }
+
+        @Override
+        protected boolean matches(final Map<String, String> itemValues) {
+            if (--untilReorder <= 0) {
+                untilReorder = REORDER_INTERVAL;
+                reorder();
+            }
+
+            for (final FilterExpression operand : operands) {
+                if (operand.evaluate(itemValues) != conjunction) {
+                    return !conjunction;
+                }
+            }
+
+            return conjunction;
+        }
+
+        @Override
+        protected int getCost() {
+            int cost = 0;
+
+            for (final FilterExpression operand : operands) {
+                cost += operand.getCost();
+            }
+
+            return cost;
+        }
+
+        @Override
+        protected void collectColumns(final Set<String> columns) {
+            for (final FilterExpression operand : operands) {
+                operand.collectColumns(columns);
+            }
+        }
+
+        /**
+         * Reorders operands by their cost divided by probability that the
+         * operand decides the result.
+         */
+        private void reorder() {
+            final FilterExpression[] sorted = operands.clone();
+            final Map<FilterExpression, Double> ranks =
+                    new HashMap<>(sorted.length);
+
+            for (final FilterExpression operand : sorted) {
+                final double matchRatio = operand.getMatchRatio();
+                final double decideRatio =
+                        conjunction ? 1 - matchRatio : matchRatio;
+                ranks.put(operand,
+                        operand.getCost() / Math.max(decideRatio, 0.001));
+            }
+
+            Arrays.sort(sorted, new Comparator<FilterExpression>() {
+                @Override
+                public int compare(final FilterExpression o1,
+                        final FilterExpression o2) {
+                    return Double.compare(ranks.get(o1), ranks.get(o2));
+                }
+            });
+
+            operands = sorted;
+        }
+    }
+
+    /**
+     * Parses number from the string. Plain decimal numbers are parsed
+     * directly, other formats fall back to {@link Double#parseDouble}.
+     *
+     * @param value string value
+     *
+     * @return parsed number or NaN if the value is not a number
+     */
+    static double parseNumber(final String value) {
+        int start = 0;
+        int end = value.length();
+
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int pos = start;
+        boolean negative = false;
+
+        if (pos < end && (value.charAt(pos) == '-'
+                || value.charAt(pos) == '+')) {
+            negative = value.charAt(pos) == '-';
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+
+        for (; pos < end; pos++) {
+            final char chr = value.charAt(pos);
+
+            if (chr >= '0' && chr <= '9') {
+                mantissa = mantissa * 10 + (chr - '0');
+                digits++;
+
+                if (fraction) {
+                    scale++;
+                }
+            } else if (chr == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+
+        if (pos == end && digits > 0 && digits <= 18) {
+            final double number = scale == 0 ? mantissa
+                    : mantissa / Math.pow(10, scale);
+
+            return negative ? -number : number;
+        } else if (digits == 0 && pos == end) {
+            return Double.NaN;
+        }
+
+        try {
+            return Double.parseDouble(value.substring(start, end));
+        } catch (final NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Parses date in format yyyy-MM-dd optionally followed by time in format
+     * HH:mm or HH:mm:ss separated by letter T or space. Date is returned as
+     * number yyyyMMddHHmmss so that dates can be compared as numbers.
+     *
+     * @param value string value
+     *
+     * @return parsed date or -1 if the value is not a date
+     */
+    static long parseDate(final String value) {
+        final String trimmed = value.trim();
+        final int length = trimmed.length();
+
+        if (length != 10 && length != 16 && length != 19
+                || trimmed.charAt(4) != '-' || trimmed.charAt(7) != '-') {
+            return -1;
+        }
+
+        final int year = parseDigits(trimmed, 0, 4);
+        final int month = parseDigits(trimmed, 5, 7);
+        final int day = parseDigits(trimmed, 8, 10);
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+
+        if (length > 10) {
+            final char separator = trimmed.charAt(10);
+
+            if (separator != 'T' && separator != ' '
+                    || trimmed.charAt(13) != ':') {
+                return -1;
+            }
+
+            hour = parseDigits(trimmed, 11, 13);
+            minute = parseDigits(trimmed, 14, 16);
+
+            if (length == 19) {
+                if (trimmed.charAt(16) != ':') {
+                    return -1;
+                }
+
+                second = parseDigits(trimmed, 17, 19);
+            }
+        }
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59
+                || second < 0 || second > 59
+                || day > 28 && !isValidDay(year, month, day)) {
+            return -1;
+        }
+
+        return ((((year * 100L + month) * 100 + day) * 100 + hour) * 100
+                + minute) * 100 + second;
+    }
+
+    /**
+     * Checks whether the day exists in given month using non-lenient
+     * calendar.
+     *
+     * @param year  year
+     * @param month month (1-12)
+     * @param day   day of month
+     *
+     * @return true if the day exists, otherwise false
+     */
+    private static boolean isValidDay(final int year, final int month,
+            final int day) {
+        final Calendar calendar =
+                new GregorianCalendar(TimeZone.getTimeZone("UTC"), Locale.ROOT);
+        calendar.setLenient(false);
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+
+        try {
+            calendar.getTimeInMillis();
+        } catch (final IllegalArgumentException ex) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses decimal digits.
+     *
+     * @param value string value
+     * @param start start index (inclusive)
+     * @param end   end index (exclusive)
+     *
+     * @return parsed number or -1 if there is other character than digit
+     */
+    private static int parseDigits(final String value, final int start,
+            final int end) {
+        int result = 0;
+
+        for (int i = start; i < end; i++) {
+            final char chr = value.charAt(i);
+
+            if (chr < '0' || chr > '9') {
+                return -1;
+            }
+
+            result = result * 10 + (chr - '0');
+        }
+
+        return result;
+    }
+
+    /**
+     * Parser of filter expressions.
+     */
+    private static class Parser {
+
+        /**
+         * Expression string.
+         */
+        private final String expression;
+        /**
+         * Tokens of the expression.
+         */
+        private final List<String> tokens = new ArrayList<>(16);
+        /**
+         * Whether token at the same index is quoted string.
+         */
+        private final List<Boolean> quoted = new ArrayList<>(16);
+        /**
+         * Index of current token.
+         */
+        private int pos;
+
+        /**
+         * Creates new instance of Parser.
+         *
+         * @param expression expression string
+         */
+        Parser(final String expression) {
+            this.expression = expression;
+            tokenize();
+        }
+
+        /**
+         * Parses the expression.
+         *
+         * @return compiled expression
+         */
+        FilterExpression parse() {
+            final FilterExpression result = parseOr();
+
+            if (pos < tokens.size()) {
+                throw error("Unexpected token " + tokens.get(pos));
+            }
+
+            return result;
+        }
+
+        /**
+         * Parses disjunction.
+         *
+         * @return compiled expression
+         */
+        private FilterExpression parseOr() {
+            final List<FilterExpression> operands = new ArrayList<>(2);
+            operands.add(parseAnd());
+
+            while (acceptKeyword("or")) {
+                operands.add(parseAnd());
+            }
+
+            return operands.size() == 1 ? operands.get(0)
+                    : new JunctionExpression(false, operands);
+        }
+
+        /**
+         * Parses conjunction.
+         *
+         * @return compiled expression
+         */
+        private FilterExpression parseAnd() {
+            final List<FilterExpression> operands = new ArrayList<>(2);
+            operands.add(parseUnary());
+
+            while (acceptKeyword("and")) {
+                operands.add(parseUnary());
+            }
+
+            return operands.size() == 1 ? operands.get(0)
+                    : new JunctionExpression(true, operands);
+        }
+
+        /**
+         * Parses negation, parenthesized expression or predicate.
+         *
+         * @return compiled expression
+         */
+        private FilterExpression parseUnary() {
+            if (acceptKeyword("not")) {
+                return new NotExpression(parseUnary());
+            } else if (accept("(")) {
+                final FilterExpression result = parseOr();
+                expect(")");
+
+                return result;
+            } else {
+                return parsePredicate();
+            }
+        }
+
+        /**
+         * Parses predicate on single column.
+         *
+         * @return compiled expression
+         */
+        private FilterExpression parsePredicate() {
+            final String column = next("column name");
+
+            if (accept("=")) {
+                return new InExpression(column, Arrays.asList(nextValue()),
+                        false);
+            } else if (accept("!=")) {
+                return new InExpression(column, Arrays.asList(nextValue()),
+                        true);
+            } else if (acceptKeyword("in")) {
+                return new InExpression(column, parseValueList(), false);
+            } else if (acceptKeyword("matches")) {
+                return new RegexExpression(column, nextValue());
+            } else if (acceptKeyword("starts")) {
+                expectKeyword("with");
+
+                return new PrefixExpression(column, accept("(")
+                        ? parseValueListRest() : Arrays.asList(nextValue()));
+            } else if (acceptKeyword("between")) {
+                final boolean date = acceptKeyword("date");
+                final String lower = nextValue();
+                expectKeyword("and");
+
+                if (date) {
+                    expectKeyword("date");
+                }
+
+                final String upper = nextValue();
+
+                return createRange(column, date, lower, true, upper, true);
+            }
+
+            final String operator = next("operator");
+            final boolean date = acceptKeyword("date");
+            final String bound = nextValue();
+
+            switch (operator) {
+                case "<":
+                    return createRange(column, date, null, false, bound, false);
+                case "<=":
+                    return createRange(column, date, null, false, bound, true);
+                case ">":
+                    return createRange(column, date, bound, false, null, false);
+                case ">=":
+                    return createRange(column, date, bound, true, null, false);
+                default:
+                    throw error("Unsupported operator " + operator);
+            }
+        }
+
+        /**
+         * Creates number or date range expression.
+         *
+         * @param column         column name
+         * @param date           whether the bounds are dates
+         * @param lower          lower bound or null
+         * @param lowerInclusive whether lower bound is inclusive
+         * @param upper          upper bound or null
+         * @param upperInclusive whether upper bound is inclusive
+         *
+         * @return compiled expression
+         */
+        private FilterExpression createRange(final String column,
+                final boolean date, final String lower,
+                final boolean lowerInclusive, final String upper,
+                final boolean upperInclusive) {
+            if (date) {
+                return new DateRangeExpression(column,
+                        lower == null ? Long.MIN_VALUE : toDate(lower),
+                        lowerInclusive,
+                        upper == null ? Long.MAX_VALUE : toDate(upper),
+                        upperInclusive);
+            } else {
+                return new NumberRangeExpression(column,
+                        lower == null ? Double.NEGATIVE_INFINITY
+                                : toNumber(lower), lowerInclusive,
+                        upper == null ? Double.POSITIVE_INFINITY
+                                : toNumber(upper), upperInclusive);
+            }
+        }
+
+        /**
+         * Parses parenthesized list of values.
+         *
+         * @return list of values
+         */
+        private List<String> parseValueList() {
+            expect("(");
+
+            return parseValueListRest();
+        }
+
+        /**
+         * Parses list of values after opening parenthesis.
+         *
+         * @return list of values
+         */
+        private List<String> parseValueListRest() {
+            final List<String> values = new ArrayList<>(4);
+            values.add(nextValue());
+
+            while (accept(",")) {
+                values.add(nextValue());
+            }
+
+            expect(")");
+
+            return values;
+        }
+
+        /**
+         * Converts bound to number.
+         *
+         * @param value bound string
+         *
+         * @return number
+         */
+        private double toNumber(final String value) {
+            final double number = parseNumber(value);
+
+            if (Double.isNaN(number)) {
+                throw error("Invalid number " + value);
+            }
+
+            return number;
+        }
+
+        /**
+         * Converts bound to date.
+         *
+         * @param value bound string
+         *
+         * @return date
+         */
+        private long toDate(final String value) {
+            final long date = parseDate(value);
+
+            if (date == -1) {
+                throw error("Invalid date " + value);
+            }
+
+            return date;
+        }
+
+        /**
+         * Returns next token that is a value (quoted string or number).
+         *
+         * @return value
+         */
+        private String nextValue() {
+            final String token = next("value");
+
+            if (!quoted.get(pos - 1) && (token.length() == 1
+                    && "(),=<>".contains(token) || token.startsWith("!")
+                    || token.startsWith("<") || token.startsWith(">"))) {
+                throw error("Expected value but found " + token);
+            }
+
+            return token;
+        }
+
+        /**
+         * Returns next token.
+         *
+         * @param description description of expected token for error message
+         *
+         * @return token
+         */
+        private String next(final String description) {
+            if (pos >= tokens.size()) {
+                throw error("Expected " + description
+                        + " but found end of expression");
+            }
+
+            return tokens.get(pos++);
+        }
+
+        /**
+         * Consumes next token if it equals to given symbol.
+         *
+         * @param symbol symbol
+         *
+         * @return true if the token was consumed, otherwise false
+         */
+        private boolean accept(final String symbol) {
+            if (pos < tokens.size() && !quoted.get(pos)
+                    && tokens.get(pos).equals(symbol)) {
+                pos++;
+
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Consumes next token if it equals to given keyword ignoring case.
+         *
+         * @param keyword keyword
+         *
+         * @return true if the token was consumed, otherwise false
+         */
+        private boolean acceptKeyword(final String keyword) {
+            if (pos < tokens.size() && !quoted.get(pos)
+                    && tokens.get(pos).toLowerCase(Locale.ENGLISH).equals(
+                            keyword)) {
+                pos++;
+
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Consumes next token that must equal to given symbol.
+         *
+         * @param symbol symbol
+         */
+        private void expect(final String symbol) {
+            if (!accept(symbol)) {
+                throw error("Expected " + symbol);
+            }
+        }
+
+        /**
+         * Consumes next token that must equal to given keyword.
+         *
+         * @param keyword keyword
+         */
+        private void expectKeyword(final String keyword) {
+            if (!acceptKeyword(keyword)) {
+                throw error("Expected " + keyword);
+            }
+        }
+
+        /**
+         * Creates exception describing parse error.
+         *
+         * @param message error message
+         *
+         * @return exception
+         */
+        private IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException(MessageFormat.format(
+                    "Invalid filter expression \"{0}\": {1}", expression,
+                    message));
+        }
+
+        /**
+         * Splits expression to tokens.
+         */
+        @SuppressWarnings("AssignmentToForLoopParameter")
+        private void tokenize() {
+            for (int i = 0; i < expression.length(); i++) {
+                final char chr = expression.charAt(i);
+
+                if (Character.isWhitespace(chr)) {
+                    continue;
+                } else if (chr == '\'' || chr == '"') {
+                    final StringBuilder sb = new StringBuilder(16);
+                    boolean closed = false;
+
+                    for (i++; i < expression.length(); i++) {
+                        if (expression.charAt(i) != chr) {
+                            sb.append(expression.charAt(i));
+                        } else if (i + 1 < expression.length()
+                                && expression.charAt(i + 1) == chr) {
+                            sb.append(chr);
+                            i++;
+                        } else {
+                            closed = true;
+
+                            break;
+                        }
+                    }
+
+                    if (!closed) {
+                        throw error("Unterminated string");
+                    }
+
+                    addToken(sb.toString(), true);
+                } else if (chr == '(' || chr == ')' || chr == ','
+                        || chr == '=') {
+                    addToken(String.valueOf(chr), false);
+                } else if (chr == '<' || chr == '>' || chr == '!') {
+                    if (i + 1 < expression.length()
+                            && expression.charAt(i + 1) == '=') {
+                        addToken(expression.substring(i, i + 2), false);
+                        i++;
+                    } else if (chr == '!') {
+                        throw error("Expected != operator");
+                    } else {
+                        addToken(String.valueOf(chr), false);
+                    }
+                } else {
+                    final int start = i;
+
+                    while (i + 1 < expression.length()
+                            && !Character.isWhitespace(expression.charAt(i + 1))
+                            && "()',=<>!\"".indexOf(expression.charAt(i + 1))
+                            == -1) {
+                        i++;
+                    }
+
+                    addToken(expression.substring(start, i + 1), false);
+                }
+            }
+        }
+
+        /**
+         * Adds token.
+         *
+         * @param token    token
+         * @param isQuoted whether the token is quoted string
+         */
+        private void addToken(final String token, final boolean isQuoted) {
+            tokens.add(token);
+            quoted.add(isQuoted);
+        }
+    }
+}
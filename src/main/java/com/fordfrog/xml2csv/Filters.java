@@ -23,6 +23,7 @@ package com.fordfrog.xml2csv;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -46,6 +47,15 @@ public class Filters {
         filters.add(filter);
     }
 
+    /**
+     * Getter for {@link #filters}.
+     *
+     * @return {@link #filters}
+     */
+    public Collection<Filter> getFilters() {
+        return Collections.unmodifiableCollection(filters);
+    }
+
     /**
      * Checks whether item matches all defined filters.
      *
@@ -55,8 +65,27 @@ public class Filters {
      *         least one filter
      */
     public boolean matchesFilters(final Map<String, String> itemValues) {
+        return matchesFilters(itemValues, null);
+    }
+
+    /**
+     * Checks whether item matches all defined filters. Filter that excluded
+     * the item is recorded in metrics.
+     *
+     * @param itemValues map of item columns and corresponding values
+     * @param metrics    optional conversion metrics
+     *
+     * @return true if item matches all filters, false if item does not match at
+     *         least one filter
+     */
+    public boolean matchesFilters(final Map<String, String> itemValues,
+            final ConversionMetrics metrics) {
         for (final Filter filter : filters) {
             if (!filter.matchesFilter(itemValues)) {
+                if (metrics != null) {
+                    metrics.rowFiltered(filter);
+                }
+
                 return false;
             }
         }
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row writer that flushes rows to the target row writer once specified
+ * number of rows is pending or the oldest pending row waits for specified
+ * time, so that rows of unbounded input are visible downstream without
+ * flushing every single row. Pending rows are flushed by background thread
+ * if no other row arrives.
+ *
+ * @author fordfrog
+ */
+public class FlushingRowWriter implements RowWriter {
+
+    /**
+     * Target row writer.
+     */
+    private final RowWriter target;
+    /**
+     * Maximum number of pending rows or 0 if it is not limited.
+     */
+    private final long maxRows;
+    /**
+     * Maximum time in nanoseconds rows can be pending or 0 if it is not
+     * limited.
+     */
+    private final long maxLatencyNanos;
+    /**
+     * Timer flushing pending rows, or null if latency is not limited.
+     */
+    private final ScheduledExecutorService timer;
+    /**
+     * Number of rows written since the last flush.
+     */
+    private long pendingRows;
+    /**
+     * Time when the oldest pending row was written.
+     */
+    private long pendingSince;
+    /**
+     * Exception thrown while flushing rows by the timer.
+     */
+    private IOException timerException;
+
+    /**
+     * Creates new instance of FlushingRowWriter.
+     *
+     * @param target           target row writer
+     * @param maxRows          maximum number of pending rows or 0 if it is
+     *                         not limited
+     * @param maxLatencyMillis maximum time in milliseconds rows can be
+     *                         pending or 0 if it is not limited
+     */
+    public FlushingRowWriter(final RowWriter target, final long maxRows,
+            final long maxLatencyMillis) {
+        this.target = target;
+        this.maxRows = maxRows;
+        maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+
+        if (maxLatencyMillis > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread =
+                                    new Thread(r, "xml2csv-flush");
+                            thread.setDaemon(true);
+
+                            return thread;
+                        }
+                    });
+
+            final long period = Math.max(1, maxLatencyNanos / 4);
+            timer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flushExpired();
+                }
+            }, period, period, TimeUnit.NANOSECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    @Override
+    public synchronized void writeHeader(final String[] columns)
+            throws IOException {
+        target.writeHeader(columns);
+        rowWritten();
+    }
+
+    @Override
+    public synchronized void writeRow(final String[] values)
+            throws IOException {
+        target.writeRow(values);
+        rowWritten();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        checkTimer();
+        target.flush();
+        pendingRows = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+
+        synchronized (this) {
+            checkTimer();
+            target.close();
+        }
+    }
+
+    /**
+     * Records written row and flushes pending rows if there are too many.
+     *
+     * @throws IOException Thrown if problem occurred while flushing.
+     */
+    private void rowWritten() throws IOException {
+        checkTimer();
+
+        if (pendingRows == 0) {
+            pendingSince = System.nanoTime();
+        }
+
+        pendingRows++;
+
+        if (maxRows > 0 && pendingRows >= maxRows) {
+            flush();
+        }
+    }
+
+    /**
+     * Flushes pending rows if the oldest of them waits too long. Called by
+     * the timer.
+     */
+    private synchronized void flushExpired() {
+        if (pendingRows > 0 && timerException == null
+                && System.nanoTime() - pendingSince >= maxLatencyNanos) {
+            try {
+                target.flush();
+                pendingRows = 0;
+            } catch (final IOException ex) {
+                timerException = ex;
+            }
+        }
+    }
+
+    /**
+     * Throws exception thrown while flushing rows by the timer, if any.
+     *
+     * @throws IOException Thrown if flushing by the timer failed.
+     */
+    private void checkTimer() throws IOException {
+        if (timerException != null) {
+            throw new IOException("Failed to flush rows", timerException);
+        }
+    }
+}
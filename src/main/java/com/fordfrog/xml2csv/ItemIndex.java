@@ -0,0 +1,936 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Index of item elements of XML file stored in sidecar file. Index records
+ * byte offset and length of each item element and start tags of the elements
+ * enclosing it, so any range of items can be parsed without reading the
+ * document from the beginning.
+ * <p>
+ * Index file starts with header containing size and modification time of the
+ * input file, item name and encoding of the input file. Items follow in blocks
+ * of {@link #BLOCK_SIZE} entries, each entry stored as variable length numbers
+ * of offset relative to end of previous item in the block, length and id of
+ * enclosing elements. Trailer contains number of items, positions of blocks
+ * and enclosing elements, and the file ends with position of the trailer.
+ * <p>
+ * Only UTF-8 and single byte encodings of the input file are supported. Items
+ * cannot use entities declared in document type declaration as it is not
+ * part of parsed ranges. Index is not thread safe.
+ *
+ * @author fordfrog
+ */
+public class ItemIndex implements Closeable {
+
+    /**
+     * Magic number at start of index file.
+     */
+    private static final int MAGIC = 0x58324349;
+    /**
+     * Version of index file format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Number of entries in block.
+     */
+    private static final int BLOCK_SIZE = 1_024;
+    /**
+     * Index file.
+     */
+    private final RandomAccessFile file;
+    /**
+     * Size of the input file when the index was built.
+     */
+    private final long inputSize;
+    /**
+     * Modification time of the input file when the index was built.
+     */
+    private final long inputModified;
+    /**
+     * Item name and namespace bindings the index was built for.
+     */
+    private final String itemPattern;
+    /**
+     * Encoding of the input file.
+     */
+    private final String encoding;
+    /**
+     * Number of items.
+     */
+    private final long itemCount;
+    /**
+     * Positions of blocks in index file followed by position of trailer.
+     */
+    private final long[] blockPositions;
+    /**
+     * Start tags of elements enclosing items by ids.
+     */
+    private final String[] openElements;
+    /**
+     * End tags of elements enclosing items by ids.
+     */
+    private final String[] closeElements;
+    /**
+     * Number of currently loaded block or -1.
+     */
+    private long loadedBlock = -1;
+    /**
+     * Start offsets of items of loaded block.
+     */
+    private final long[] blockStarts = new long[BLOCK_SIZE];
+    /**
+     * End offsets of items of loaded block.
+     */
+    private final long[] blockEnds = new long[BLOCK_SIZE];
+    /**
+     * Ids of enclosing elements of items of loaded block.
+     */
+    private final int[] blockContexts = new int[BLOCK_SIZE];
+
+    /**
+     * Creates new instance of ItemIndex.
+     *
+     * @param indexFile index file
+     *
+     * @throws IOException Thrown if problem occurred while reading the file.
+     */
+    private ItemIndex(final Path indexFile) throws IOException {
+        file = new RandomAccessFile(indexFile.toFile(), "r");
+
+        try {
+            if (file.readInt() != MAGIC || file.readInt() != VERSION) {
+                throw new IOException(MessageFormat.format(
+                        "File {0} is not item index", indexFile));
+            }
+
+            inputSize = file.readLong();
+            inputModified = file.readLong();
+            itemPattern = file.readUTF();
+            encoding = file.readUTF();
+
+            file.seek(file.length() - 8);
+
+            final long trailerPosition = file.readLong();
+            file.seek(trailerPosition);
+            itemCount = file.readLong();
+            blockPositions = new long[file.readInt() + 1];
+
+            for (int i = 0; i < blockPositions.length - 1; i++) {
+                blockPositions[i] = file.readLong();
+            }
+
+            blockPositions[blockPositions.length - 1] = trailerPosition;
+            openElements = new String[file.readInt()];
+            closeElements = new String[openElements.length];
+
+            for (int i = 0; i < openElements.length; i++) {
+                openElements[i] = file.readUTF();
+                closeElements[i] = file.readUTF();
+            }
+        } catch (final IOException ex) {
+            file.close();
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Opens item index of the input file. If the index file does not exist or
+     * it was built for different item name or different input file content,
+     * it is built first.
+     *
+     * @param indexFile index file
+     * @param inputFile input file
+     * @param settings  conversion settings
+     *
+     * @return item index
+     *
+     * @throws IOException        Thrown if IO problem occurred.
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
+     */
+    public static ItemIndex open(final Path indexFile, final Path inputFile,
+            final ConvertorSettings settings)
+            throws IOException, XMLStreamException {
+        if (Files.exists(indexFile)) {
+            final ItemIndex index = new ItemIndex(indexFile);
+
+            if (index.inputSize == Files.size(inputFile)
+                    && index.inputModified == Files.getLastModifiedTime(
+                            inputFile).toMillis()
+                    && index.itemPattern.equals(getItemPattern(settings))) {
+                return index;
+            }
+
+            index.close();
+        }
+
+        build(indexFile, inputFile, settings);
+
+        return new ItemIndex(indexFile);
+    }
+
+    /**
+     * Builds item index of the input file.
+     *
+     * @param indexFile index file
+     * @param inputFile input file
+     * @param settings  conversion settings
+     *
+     * @throws IOException        Thrown if IO problem occurred.
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
+     */
+    public static void build(final Path indexFile, final Path inputFile,
+            final ConvertorSettings settings)
+            throws IOException, XMLStreamException {
+        final long inputSize = Files.size(inputFile);
+        final long inputModified =
+                Files.getLastModifiedTime(inputFile).toMillis();
+        final Charset charset = Charset.forName(detectEncoding(inputFile));
+        final boolean utf8 = "UTF-8".equals(charset.name());
+
+        if (!utf8 && charset.newEncoder().maxBytesPerChar() != 1.0f) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Item index does not support encoding {0}",
+                    charset.name()));
+        }
+
+        final Path tempFile = indexFile.resolveSibling(
+                indexFile.getFileName().toString() + ".tmp");
+
+        try (final InputStream inputStream = new BufferedInputStream(
+                Files.newInputStream(inputFile), 65_536);
+                final DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(
+                                Files.newOutputStream(tempFile), 65_536))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(inputSize);
+            output.writeLong(inputModified);
+            output.writeUTF(getItemPattern(settings));
+            output.writeUTF(charset.name());
+
+            final TagReader reader = new TagReader(new InputStreamReader(
+                    inputStream, charset), utf8, skipBom(inputStream, utf8));
+            final Builder builder = new Builder(XMLInputFactory.newInstance().
+                    createXMLStreamReader(reader), reader, output,
+                    new PathMatcher(new String[]{settings.getItemName()},
+                            settings.getNamespaces()));
+            builder.build();
+        }
+
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Getter for {@link #itemCount}.
+     *
+     * @return {@link #itemCount}
+     */
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Opens stream of XML document containing range of items of the input
+     * file, enclosed in the same elements as in the input file.
+     *
+     * @param inputFile input file
+     * @param start     index of the first item
+     * @param end       index of the item after the last item
+     *
+     * @return input stream
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    public InputStream openItems(final Path inputFile, final long start,
+            final long end) throws IOException {
+        if (start < 0 || end > itemCount || start >= end) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Invalid range of items {0}-{1}", start, end));
+        }
+
+        final int first = loadEntry(start);
+        final long startOffset = blockStarts[first];
+        final String prefix = "<?xml version=\"1.0\" encoding=\"" + encoding
+                + "\"?>" + openElements[blockContexts[first]];
+        final int last = loadEntry(end - 1);
+        final long endOffset = blockEnds[last];
+        final String suffix = closeElements[blockContexts[last]];
+
+        final FileChannel channel =
+                FileChannel.open(inputFile, StandardOpenOption.READ);
+        channel.position(startOffset);
+
+        final Charset charset = Charset.forName(encoding);
+
+        return new RangeInputStream(Arrays.asList(
+                new ByteArrayInputStream(prefix.getBytes(charset)),
+                new BufferedInputStream(Channels.newInputStream(channel),
+                        65_536),
+                new ByteArrayInputStream(suffix.getBytes(charset))),
+                endOffset - startOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Loads block containing the item.
+     *
+     * @param item index of the item
+     *
+     * @return index of the item in the block
+     *
+     * @throws IOException Thrown if problem occurred while reading the file.
+     */
+    private int loadEntry(final long item) throws IOException {
+        final long block = item / BLOCK_SIZE;
+
+        if (block != loadedBlock) {
+            final int blockIndex = (int) block;
+            final byte[] bytes = new byte[(int) (blockPositions[blockIndex + 1]
+                    - blockPositions[blockIndex])];
+            file.seek(blockPositions[blockIndex]);
+            file.readFully(bytes);
+
+            final int count =
+                    (int) Math.min(BLOCK_SIZE, itemCount - block * BLOCK_SIZE);
+            final int[] position = new int[1];
+            long previousEnd = 0;
+
+            for (int i = 0; i < count; i++) {
+                blockStarts[i] = previousEnd + readVarLong(bytes, position);
+                blockEnds[i] = blockStarts[i] + readVarLong(bytes, position);
+                blockContexts[i] = (int) readVarLong(bytes, position);
+                previousEnd = blockEnds[i];
+            }
+
+            loadedBlock = block;
+        }
+
+        return (int) (item % BLOCK_SIZE);
+    }
+
+    /**
+     * Returns string identifying item name and namespace bindings used to
+     * match items.
+     *
+     * @param settings conversion settings
+     *
+     * @return item pattern
+     */
+    private static String getItemPattern(final ConvertorSettings settings) {
+        return settings.getNamespaces() == null
+                || settings.getNamespaces().isEmpty() ? settings.getItemName()
+                : settings.getItemName() + ' '
+                + new TreeMap<>(settings.getNamespaces());
+    }
+
+    /**
+     * Detects encoding of the input file.
+     *
+     * @param inputFile input file
+     *
+     * @return encoding
+     *
+     * @throws IOException        Thrown if IO problem occurred.
+     * @throws XMLStreamException Thrown if problem occurred while reading XML
+     *                            stream.
+     */
+    private static String detectEncoding(final Path inputFile)
+            throws IOException, XMLStreamException {
+        try (final InputStream inputStream = Files.newInputStream(inputFile)) {
+            final XMLStreamReader reader = XMLInputFactory.newInstance().
+                    createXMLStreamReader(inputStream);
+
+            try {
+                return reader.getEncoding() == null ? "UTF-8"
+                        : reader.getEncoding();
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Skips UTF-8 byte order mark if present.
+     *
+     * @param inputStream input stream supporting marks
+     * @param utf8        whether the input is in UTF-8
+     *
+     * @return number of skipped bytes
+     *
+     * @throws IOException Thrown if problem occurred while reading.
+     */
+    private static int skipBom(final InputStream inputStream,
+            final boolean utf8) throws IOException {
+        if (!utf8) {
+            return 0;
+        }
+
+        inputStream.mark(3);
+
+        if (inputStream.read() == 0xEF && inputStream.read() == 0xBB
+                && inputStream.read() == 0xBF) {
+            return 3;
+        }
+
+        inputStream.reset();
+
+        return 0;
+    }
+
+    /**
+     * Writes variable length number.
+     *
+     * @param output output stream
+     * @param value  non-negative value
+     *
+     * @return number of written bytes
+     *
+     * @throws IOException Thrown if problem occurred while writing.
+     */
+    private static int writeVarLong(final DataOutputStream output,
+            final long value) throws IOException {
+        long remaining = value;
+        int count = 1;
+
+        while ((remaining & ~0x7FL) != 0) {
+            output.write((int) (remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+            count++;
+        }
+
+        output.write((int) remaining);
+
+        return count;
+    }
+
+    /**
+     * Reads variable length number.
+     *
+     * @param bytes    bytes
+     * @param position position in the bytes, it is advanced past the number
+     *
+     * @return value
+     */
+    private static long readVarLong(final byte[] bytes, final int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte current;
+
+        do {
+            current = bytes[position[0]++];
+            value |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+
+        return value;
+    }
+
+    /**
+     * Builder of index file.
+     */
+    private static class Builder {
+
+        /**
+         * XML stream reader.
+         */
+        private final XMLStreamReader reader;
+        /**
+         * Reader of the input recording offsets of tags.
+         */
+        private final TagReader tagReader;
+        /**
+         * Index file output.
+         */
+        private final DataOutputStream output;
+        /**
+         * Matcher of item path.
+         */
+        private final PathMatcher matcher;
+        /**
+         * Start tags of elements enclosing current element.
+         */
+        private final List<String> openTags = new ArrayList<>(8);
+        /**
+         * End tags of elements enclosing current element.
+         */
+        private final List<String> closeTags = new ArrayList<>(8);
+        /**
+         * Ids of enclosing elements by their start tags.
+         */
+        private final Map<String, Integer> contextIds = new HashMap<>(4);
+        /**
+         * Enclosing elements by ids, start tags followed by end tags.
+         */
+        private final List<String[]> contexts = new ArrayList<>(4);
+        /**
+         * Positions of blocks.
+         */
+        private final List<Long> blockPositions = new ArrayList<>(1_024);
+        /**
+         * Id of elements enclosing current element or -1 if it is not known
+         * yet.
+         */
+        private int contextId = -1;
+        /**
+         * Current position in index file.
+         */
+        private long position;
+        /**
+         * Number of items.
+         */
+        private long itemCount;
+        /**
+         * End offset of previous item in current block.
+         */
+        private long previousEnd;
+
+        /**
+         * Creates new instance of Builder.
+         *
+         * @param reader    XML stream reader
+         * @param tagReader reader of the input recording offsets of tags
+         * @param output    index file output positioned after header
+         * @param matcher   matcher of item path
+         */
+        Builder(final XMLStreamReader reader, final TagReader tagReader,
+                final DataOutputStream output, final PathMatcher matcher) {
+            this.reader = reader;
+            this.tagReader = tagReader;
+            this.output = output;
+            this.matcher = matcher;
+            position = output.size();
+        }
+
+        /**
+         * Builds the index.
+         *
+         * @throws IOException        Thrown if IO problem occurred.
+         * @throws XMLStreamException Thrown if problem occurred while reading
+         *                            XML stream.
+         */
+        void build() throws IOException, XMLStreamException {
+            processElement(matcher.getStartState());
+
+            final long trailerPosition = position;
+            output.writeLong(itemCount);
+            output.writeInt(blockPositions.size());
+
+            for (final long blockPosition : blockPositions) {
+                output.writeLong(blockPosition);
+            }
+
+            output.writeInt(contexts.size());
+
+            for (final String[] context : contexts) {
+                output.writeUTF(context[0]);
+                output.writeUTF(context[1]);
+            }
+
+            output.writeLong(trailerPosition);
+        }
+
+        /**
+         * Processes content of element outside of items.
+         *
+         * @param state state of the matcher for the element
+         *
+         * @throws IOException        Thrown if IO problem occurred.
+         * @throws XMLStreamException Thrown if problem occurred while reading
+         *                            XML stream.
+         */
+        private void processElement(final PathMatcher.State state)
+                throws IOException, XMLStreamException {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamReader.START_ELEMENT:
+                        final long start = tagReader.nextTag();
+                        final PathMatcher.State childState =
+                                matcher.getNextState(state, reader);
+
+                        if (childState.getMatches().length > 0) {
+                            addItem(start, skipElement());
+                        } else if (childState.isDead()) {
+                            skipElement();
+                        } else {
+                            openTags.add(Convertor.getStartTag(reader));
+                            closeTags.add("</" + getQualifiedName() + '>');
+                            contextId = -1;
+                            processElement(childState);
+                            openTags.remove(openTags.size() - 1);
+                            closeTags.remove(closeTags.size() - 1);
+                            contextId = -1;
+                        }
+
+                        break;
+                    case XMLStreamReader.END_ELEMENT:
+                        tagReader.nextTag();
+
+                        return;
+                }
+            }
+        }
+
+        /**
+         * Skips current element including its subelements.
+         *
+         * @return byte offset after end tag of the element
+         *
+         * @throws IOException        Thrown if IO problem occurred.
+         * @throws XMLStreamException Thrown if problem occurred while reading
+         *                            XML stream.
+         */
+        private long skipElement() throws IOException, XMLStreamException {
+            int depth = 0;
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamReader.START_ELEMENT:
+                        tagReader.nextTag();
+                        depth++;
+
+                        break;
+                    case XMLStreamReader.END_ELEMENT:
+                        final long end = tagReader.nextTag();
+
+                        if (depth == 0) {
+                            return end;
+                        }
+
+                        depth--;
+                }
+            }
+
+            throw new IOException("Unexpected end of document");
+        }
+
+        /**
+         * Adds item to the index.
+         *
+         * @param start byte offset of the item
+         * @param end   byte offset after the item
+         *
+         * @throws IOException Thrown if problem occurred while writing.
+         */
+        private void addItem(final long start, final long end)
+                throws IOException {
+            if (itemCount % BLOCK_SIZE == 0) {
+                blockPositions.add(position);
+                previousEnd = 0;
+            }
+
+            position += writeVarLong(output, start - previousEnd);
+            position += writeVarLong(output, end - start);
+            position += writeVarLong(output, getContextId());
+            previousEnd = end;
+            itemCount++;
+        }
+
+        /**
+         * Returns id of elements enclosing current element.
+         *
+         * @return id of enclosing elements
+         */
+        private int getContextId() {
+            if (contextId == -1) {
+                final StringBuilder openSb = new StringBuilder(256);
+                final StringBuilder closeSb = new StringBuilder(64);
+
+                for (int i = 0; i < openTags.size(); i++) {
+                    openSb.append(openTags.get(i));
+                    closeSb.append(closeTags.get(closeTags.size() - i - 1));
+                }
+
+                final String open = openSb.toString();
+                final Integer id = contextIds.get(open);
+
+                if (id == null) {
+                    contextId = contexts.size();
+                    contextIds.put(open, contextId);
+                    contexts.add(new String[]{open, closeSb.toString()});
+                } else {
+                    contextId = id;
+                }
+            }
+
+            return contextId;
+        }
+
+        /**
+         * Returns qualified name of current element.
+         *
+         * @return qualified name
+         */
+        private String getQualifiedName() {
+            return reader.getPrefix() == null || reader.getPrefix().isEmpty()
+                    ? reader.getLocalName()
+                    : reader.getPrefix() + ':' + reader.getLocalName();
+        }
+    }
+
+    /**
+     * Reader that scans read characters for element tags and records their
+     * byte offsets, in the same order as XML stream reader reports start and
+     * end of elements. Character offsets reported by XML stream reader cannot
+     * be used as they are not accurate after CDATA sections. Start tag is
+     * recorded by offset of its first byte, end tag and empty element tag by
+     * offset after their last byte, so empty element tag is recorded both as
+     * start and end.
+     */
+    private static class TagReader extends Reader {
+
+        /**
+         * Underlying reader.
+         */
+        private final Reader reader;
+        /**
+         * Whether the input is in UTF-8, otherwise it uses single byte
+         * encoding.
+         */
+        private final boolean utf8;
+        /**
+         * Scanner of tags.
+         */
+        private final TagScanner scanner = new TagScanner();
+        /**
+         * Queue of recorded tag offsets.
+         */
+        private long[] tags = new long[64];
+        /**
+         * Index of the first queued tag offset.
+         */
+        private int head;
+        /**
+         * Index after the last queued tag offset.
+         */
+        private int tail;
+        /**
+         * Byte offset of the next character.
+         */
+        private long byteOffset;
+        /**
+         * Byte offset of the previous character.
+         */
+        private long previousOffset;
+
+        /**
+         * Creates new instance of TagReader.
+         *
+         * @param reader     underlying reader
+         * @param utf8       whether the input is in UTF-8
+         * @param byteOffset byte offset of the first character
+         */
+        TagReader(final Reader reader, final boolean utf8,
+                final long byteOffset) {
+            this.reader = reader;
+            this.utf8 = utf8;
+            this.byteOffset = byteOffset;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len)
+                throws IOException {
+            final int count = reader.read(cbuf, off, len);
+
+            for (int i = off; i < off + count; i++) {
+                scan(cbuf[i]);
+            }
+
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        /**
+         * Returns offset of the next tag.
+         *
+         * @return byte offset
+         *
+         * @throws IOException Thrown if there is no recorded tag.
+         */
+        long nextTag() throws IOException {
+            if (head == tail) {
+                throw new IOException(
+                        "Tags do not match elements read by XML parser");
+            }
+
+            return tags[head++];
+        }
+
+        /**
+         * Scans next character.
+         *
+         * @param chr character
+         */
+        private void scan(final char chr) {
+            final long charOffset = byteOffset;
+
+            if (!utf8 || chr < 0x80) {
+                byteOffset++;
+            } else if (chr < 0x800) {
+                byteOffset += 2;
+            } else if (Character.isHighSurrogate(chr)) {
+                // low surrogate adds nothing, pair takes four bytes
+                byteOffset += 4;
+            } else if (!Character.isLowSurrogate(chr)) {
+                byteOffset += 3;
+            }
+
+            switch (scanner.scan(chr)) {
+                case TagScanner.START:
+                    addTag(previousOffset);
+
+                    break;
+                case TagScanner.END:
+                    addTag(byteOffset);
+            }
+
+            previousOffset = charOffset;
+        }
+
+        /**
+         * Adds tag offset to the queue.
+         *
+         * @param offset byte offset
+         */
+        private void addTag(final long offset) {
+            if (tail == tags.length) {
+                if (head <= tags.length / 2) {
+                    tags = Arrays.copyOf(tags, tags.length * 2);
+                }
+
+                System.arraycopy(tags, head, tags, 0, tail - head);
+                tail -= head;
+                head = 0;
+            }
+
+            tags[tail++] = offset;
+        }
+    }
+
+    /**
+     * Input stream concatenating prefix, limited part of the input file and
+     * suffix.
+     */
+    private static class RangeInputStream extends InputStream {
+
+        /**
+         * Prefix stream, input file stream and suffix stream.
+         */
+        private final List<InputStream> streams;
+        /**
+         * Index of current stream.
+         */
+        private int current;
+        /**
+         * Remaining number of bytes of the input file part.
+         */
+        private long remaining;
+
+        /**
+         * Creates new instance of RangeInputStream.
+         *
+         * @param streams prefix stream, input file stream and suffix stream
+         * @param length  number of bytes of the input file part
+         */
+        RangeInputStream(final List<InputStream> streams, final long length) {
+            this.streams = streams;
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] bytes = new byte[1];
+
+            return read(bytes, 0, 1) == -1 ? -1 : bytes[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+            while (current < streams.size()) {
+                final int maxLength = current == 1
+                        ? (int) Math.min(len, remaining) : len;
+                final int count = maxLength == 0 ? -1
+                        : streams.get(current).read(b, off, maxLength);
+
+                if (count != -1) {
+                    if (current == 1) {
+                        remaining -= count;
+                    }
+
+                    return count;
+                }
+
+                current++;
+            }
+
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (final InputStream stream : streams) {
+                stream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * Index of reference CSV file used to look up several columns by key. The
+ * file is mapped to memory and the index holds only hash of the key and
+ * offset of the row for each reference row, packed in single long in open
+ * addressing hash table, so it takes about 16 to 32 bytes per row regardless
+ * of row length. Rows are parsed only when they are looked up.
+ * <p>
+ * The reference file must be UTF-8 encoded, its first row must contain column
+ * names and each row must be on single line. Values are separated with comma
+ * and can be quoted the same way as in remapping files. If more rows have the
+ * same key, the first one is used. The file must not be modified while the
+ * index is in use. Instances are thread-safe.
+ *
+ * @author fordfrog
+ */
+public class LookupIndex {
+
+    /**
+     * UTF-8 charset.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Marker of free slot in {@link #table}.
+     */
+    private static final long FREE = 0;
+    /**
+     * Memory mapped reference file.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * Index of the key column in reference rows.
+     */
+    private final int keyIndex;
+    /**
+     * Names of looked up columns.
+     */
+    private final String[] columns;
+    /**
+     * Indexes of {@link #columns} in reference rows.
+     */
+    private final int[] columnIndexes;
+    /**
+     * Open addressing hash table. Each slot contains hash of the key in upper
+     * 32 bits and offset of the row plus one in lower 32 bits.
+     */
+    private long[] table = new long[1_024];
+    /**
+     * Number of rows in {@link #table}.
+     */
+    private int size;
+
+    /**
+     * Creates new instance of LookupIndex and indexes the reference file.
+     *
+     * @param file      reference file path
+     * @param keyColumn name of the key column in the reference file
+     * @param columns   names of looked up columns or null to look up all
+     *                  columns except the key column
+     *
+     * @throws IOException Thrown if problem occurred while reading the file.
+     */
+    public LookupIndex(final Path file, final String keyColumn,
+            final String[] columns) throws IOException {
+        try (final FileChannel channel =
+                FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() >= Integer.MAX_VALUE) {
+                throw new IOException(MessageFormat.format(
+                        "Reference file {0} is larger than 2GB", file));
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+
+        int start = buffer.limit() >= 3 && buffer.get(0) == (byte) 0xEF
+                && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF
+                ? 3 : 0;
+
+        if (start >= buffer.limit()) {
+            throw new IOException(MessageFormat.format(
+                    "Reference file {0} does not contain header", file));
+        }
+
+        final String[] header = CsvUtils.parseValues(readLine(start));
+        keyIndex = Arrays.asList(header).indexOf(keyColumn);
+
+        if (keyIndex == -1) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Key column {0} is not present in reference file {1}",
+                    keyColumn, file));
+        }
+
+        if (columns == null) {
+            this.columns = new String[header.length - 1];
+            columnIndexes = new int[header.length - 1];
+
+            for (int i = 0, j = 0; i < header.length; i++) {
+                if (i != keyIndex) {
+                    this.columns[j] = header[i];
+                    columnIndexes[j] = i;
+                    j++;
+                }
+            }
+        } else {
+            this.columns = columns.clone();
+            columnIndexes = new int[columns.length];
+
+            for (int i = 0; i < columns.length; i++) {
+                columnIndexes[i] = Arrays.asList(header).indexOf(columns[i]);
+
+                if (columnIndexes[i] == -1) {
+                    throw new IllegalArgumentException(MessageFormat.format(
+                            "Column {0} is not present in reference file {1}",
+                            columns[i], file));
+                }
+            }
+        }
+
+        start = findLineEnd(start) + 1;
+
+        while (start < buffer.limit()) {
+            final String line = readLine(start);
+
+            if (!line.isEmpty()) {
+                final String[] values = CsvUtils.parseValues(line);
+
+                if (keyIndex < values.length) {
+                    add(values[keyIndex], start);
+                }
+            }
+
+            start = findLineEnd(start) + 1;
+        }
+    }
+
+    /**
+     * Returns names of looked up columns.
+     *
+     * @return array of column names
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Getter for {@link #size}.
+     *
+     * @return {@link #size}
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Looks up values of the columns for the key.
+     *
+     * @param key key value
+     *
+     * @return values of the columns in the same order as
+     *         {@link #getColumns()}, missing values are null, or null if there
+     *         is no row with the key
+     */
+    public String[] lookup(final String key) {
+        if (key == null) {
+            return null;
+        }
+
+        final String[] values = findRow(key);
+
+        if (values == null) {
+            return null;
+        }
+
+        final String[] result = new String[columnIndexes.length];
+
+        for (int i = 0; i < columnIndexes.length; i++) {
+            if (columnIndexes[i] < values.length) {
+                result[i] = values[columnIndexes[i]];
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds row to the index unless row with the same key is already present.
+     *
+     * @param key    key value
+     * @param offset offset of the row in the file
+     */
+    private void add(final String key, final int offset) {
+        if (findRow(key) != null) {
+            return;
+        }
+
+        if (size >= table.length / 2) {
+            resize();
+        }
+
+        final int hash = hash(key);
+        int index = hash & (table.length - 1);
+
+        while (table[index] != FREE) {
+            index = (index + 1) & (table.length - 1);
+        }
+
+        table[index] = (long) hash << 32 | offset + 1L;
+        size++;
+    }
+
+    /**
+     * Finds row with the key.
+     *
+     * @param key key value
+     *
+     * @return parsed row values or null if there is no row with the key
+     */
+    private String[] findRow(final String key) {
+        final int hash = hash(key);
+        final long[] slots = table;
+        int index = hash & (slots.length - 1);
+
+        while (slots[index] != FREE) {
+            if ((int) (slots[index] >>> 32) == hash) {
+                final String[] values = CsvUtils.parseValues(
+                        readLine((int) slots[index] - 1));
+
+                if (key.equals(values[keyIndex])) {
+                    return values;
+                }
+            }
+
+            index = (index + 1) & (slots.length - 1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Doubles size of {@link #table}.
+     */
+    private void resize() {
+        final long[] newTable = new long[table.length * 2];
+
+        for (final long slot : table) {
+            if (slot != FREE) {
+                int index = (int) (slot >>> 32) & (newTable.length - 1);
+
+                while (newTable[index] != FREE) {
+                    index = (index + 1) & (newTable.length - 1);
+                }
+
+                newTable[index] = slot;
+            }
+        }
+
+        table = newTable;
+    }
+
+    /**
+     * Finds end of line starting at the offset.
+     *
+     * @param offset offset of the line
+     *
+     * @return offset of the line feed or end of the file
+     */
+    private int findLineEnd(final int offset) {
+        int end = offset;
+
+        while (end < buffer.limit() && buffer.get(end) != '\n') {
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * Reads line starting at the offset without line terminator.
+     *
+     * @param offset offset of the line
+     *
+     * @return line
+     */
+    private String readLine(final int offset) {
+        int end = findLineEnd(offset);
+
+        if (end > offset && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+
+        // duplicate has its own position so lines can be read concurrently
+        final ByteBuffer line = buffer.duplicate();
+        line.limit(end).position(offset);
+
+        return UTF_8.decode(line).toString();
+    }
+
+    /**
+     * Computes hash of the key.
+     *
+     * @param key key value
+     *
+     * @return hash
+     */
+    private static int hash(final String key) {
+        final int hash = key.hashCode() * 0x9E3779B1;
+
+        return hash ^ (hash >>> 16);
+    }
+}
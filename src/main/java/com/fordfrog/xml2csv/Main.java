@@ -22,19 +22,29 @@
 package com.fordfrog.xml2csv;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
 
 /**
  * Main class.
@@ -48,31 +58,149 @@ public class Main {
      *
      * @param args
      */
-    @SuppressWarnings("AssignmentToForLoopParameter")
     public static void main(final String[] args) {
+        run(args, null);
+    }
+
+    /**
+     * Runs conversion specified by command line arguments, or starts daemon.
+     *
+     * @param args         command line arguments
+     * @param dictionaries cache of filter values and remapping maps if the
+     *                     conversion is requested from daemon, otherwise null
+     */
+    @SuppressWarnings("AssignmentToForLoopParameter")
+    static void run(final String[] args, final DictionaryCache dictionaries) {
         if (args == null || args.length == 0) {
             printUsage();
 
             return;
         }
 
+        final ConvertorSettings settings = new ConvertorSettings();
         final Filters filters = new Filters();
         final Remappings remappings = new Remappings();
-        String[] columns = null;
+        final Map<String, ValueStrategy> valueStrategies = new HashMap<>(4);
+        final Map<String, Integer> maxValueLengths = new HashMap<>(4);
+        final Map<String, String> namespaces = new HashMap<>(4);
+        final Map<Filter, Path> filterFiles = new HashMap<>(4);
+        final Map<Remapping, Path> remappingFiles = new HashMap<>(4);
         Path inputFile = null;
         Path outputFile = null;
         Filter filter = null;
         Remapping remapping = null;
-        char separator = ',';
-        boolean trimValues = false;
-        boolean join = false;
-        String itemName = null;
+        long maxRowsPerFile = 0;
+        long maxBytesPerFile = 0;
+        String partitionColumn = null;
+        int partitions = 0;
+        boolean jmx = false;
+        long progressInterval = 0;
+        String[] groupColumns = null;
+        String[] sumColumns = new String[0];
+        long aggregateMemory = 64L * 1_024L * 1_024L;
+        String[] dedupeColumns = null;
+        long dedupeMemory = 64L * 1_024L * 1_024L;
+        Path cacheDirectory = null;
+        long cacheSize = 1_024L * 1_024L * 1_024L;
+        int daemonPort = -1;
+        int daemonThreads = Runtime.getRuntime().availableProcessors();
+        int daemonQueue = 16;
+        long flushInterval = 0;
+        long flushRows = 0;
+        long reloadInterval = 0;
+        Path lookupFile = null;
+        String lookupKey = null;
+        String lookupReferenceKey = null;
+        String[] lookupColumns = null;
+        Path buildIndexFile = null;
+        boolean dedupeProbabilistic = false;
+        String[] sortColumns = null;
+        long sortMemory = 256L * 1_024L * 1_024L;
 
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
+                case "--aggregate-memory":
+                    i++;
+                    aggregateMemory = parseSize(args[i]);
+
+                    break;
+                case "--build-index":
+                    i++;
+                    buildIndexFile = Paths.get(args[i]);
+
+                    break;
+                case "--cache-dir":
+                    i++;
+                    cacheDirectory = Paths.get(args[i]);
+
+                    break;
+                case "--cache-size":
+                    i++;
+                    cacheSize = parseSize(args[i]);
+
+                    break;
+                case "--checkpoint":
+                    i++;
+                    settings.setCheckpointFile(Paths.get(args[i]));
+
+                    break;
+                case "--checkpoint-interval":
+                    i++;
+                    settings.setCheckpointInterval(Long.parseLong(args[i]));
+
+                    break;
                 case "--columns":
                     i++;
-                    columns = args[i].split(",");
+                    settings.setColumns(ComputedColumn.splitColumns(args[i]));
+
+                    break;
+                case "--daemon":
+                    i++;
+                    daemonPort = Integer.parseInt(args[i]);
+
+                    break;
+                case "--daemon-queue":
+                    i++;
+                    daemonQueue = Integer.parseInt(args[i]);
+
+                    break;
+                case "--daemon-threads":
+                    i++;
+                    daemonThreads = Integer.parseInt(args[i]);
+
+                    break;
+                case "--dedupe-columns":
+                    i++;
+                    dedupeColumns = args[i].split(",");
+
+                    break;
+                case "--dedupe-memory":
+                    i++;
+                    dedupeMemory = parseSize(args[i]);
+
+                    break;
+                case "--dedupe-probabilistic":
+                    dedupeProbabilistic = true;
+
+                    break;
+                case "--escape-char":
+                    i++;
+
+                    if (args[i].length() == 1) {
+                        settings.setEscapeChar(args[i].charAt(0));
+                    } else {
+                        throw new IllegalArgumentException(
+                                "Escape character must be a character.");
+                    }
+
+                    break;
+                case "--explode-group":
+                    i++;
+                    settings.setExplodeGroups(args[i].split(","));
+
+                    break;
+                case "--explode-zip":
+                    settings.setExplodeZip(true);
 
                     break;
                 case "--filter-column":
@@ -83,20 +211,37 @@ public class Main {
 
                     filter.setColumn(args[i]);
 
+                    break;
+                case "--filter-contains":
+                    if (filter == null || filter instanceof ExpressionFilter) {
+                        throw new IllegalArgumentException(
+                                "--filter-column must be specified first");
+                    }
+
+                    filter.setSubstring(true);
+
                     break;
                 case "--filter-exclude":
                     if (filter == null) {
-                        throw new RuntimeException(
-                                "--filter-column must be specified first");
+                        throw new IllegalArgumentException(
+                                "--filter-column or --filter-expression "
+                                + "must be specified first");
                     }
 
                     filter.setExclude(true);
 
+                    break;
+                case "--filter-expression":
+                    i++;
+                    filter = new ExpressionFilter(args[i]);
+                    filters.addFilter(filter);
+
                     break;
                 case "--filter-include":
                     if (filter == null) {
-                        throw new RuntimeException(
-                                "--filter-column must be specified first");
+                        throw new IllegalArgumentException(
+                                "--filter-column or --filter-expression "
+                                + "must be specified first");
                     }
 
                     filter.setExclude(false);
@@ -105,28 +250,180 @@ public class Main {
                 case "--filter-values":
                     i++;
 
-                    if (filter == null) {
-                        throw new RuntimeException(
+                    if (filter == null || filter instanceof ExpressionFilter) {
+                        throw new IllegalArgumentException(
                                 "--filter-column must be specified first");
                     }
 
-                    filter.setValues(loadValues(Paths.get(args[i])));
+                    // values of daemon requests are taken from dictionary
+                    // cache once all arguments are parsed
+                    if (dictionaries == null) {
+                        filter.setValues(loadValues(Paths.get(args[i])));
+                    }
+
+                    filterFiles.put(filter, Paths.get(args[i]));
+
+                    break;
+                case "--flush-interval":
+                    i++;
+                    flushInterval = Long.parseLong(args[i]);
+
+                    break;
+                case "--flush-rows":
+                    i++;
+                    flushRows = Long.parseLong(args[i]);
+
+                    break;
+                case "--group-by":
+                    i++;
+                    groupColumns = args[i].split(",");
+
+                    break;
+                case "--index":
+                    i++;
+                    settings.setIndexFile(Paths.get(args[i]));
 
                     break;
                 case "--input":
                     i++;
                     inputFile = Paths.get(args[i]);
 
+                    break;
+                case "--intern-cache-size":
+                    i++;
+                    settings.setInternCacheSize(Integer.parseInt(args[i]));
+
+                    break;
+                case "--intern-columns":
+                    i++;
+                    settings.setInternColumns(args[i].split(","));
+
                     break;
                 case "--item-name":
                     i++;
-                    itemName = args[i];
+                    settings.setItemName(args[i]);
+
+                    break;
+                case "--item-range":
+                    i++;
+                    final int rangeIndex = args[i].indexOf(':');
+
+                    if (rangeIndex == -1) {
+                        throw new IllegalArgumentException("--item-range "
+                                + "must be specified as start:end");
+                    }
+
+                    settings.setItemRangeStart(
+                            Long.parseLong(args[i].substring(0, rangeIndex)));
+
+                    if (rangeIndex < args[i].length() - 1) {
+                        settings.setItemRangeEnd(Long.parseLong(
+                                args[i].substring(rangeIndex + 1)));
+                    }
+
+                    break;
+                case "--jmx":
+                    jmx = true;
+
+                    break;
+                case "--join-delimiter":
+                    i++;
+                    settings.setJoinDelimiter(args[i]);
+
+                    break;
+                case "--limit":
+                    i++;
+                    settings.setLimit(Long.parseLong(args[i]));
+
+                    break;
+                case "--lookup":
+                    i++;
+                    lookupFile = Paths.get(args[i]);
+
+                    break;
+                case "--lookup-columns":
+                    i++;
+                    lookupColumns = args[i].split(",");
+
+                    break;
+                case "--lookup-key":
+                    i++;
+                    final int keyIndex = args[i].indexOf('=');
+
+                    if (keyIndex == -1) {
+                        lookupKey = args[i];
+                        lookupReferenceKey = args[i];
+                    } else {
+                        lookupKey = args[i].substring(0, keyIndex);
+                        lookupReferenceKey = args[i].substring(keyIndex + 1);
+                    }
+
+                    break;
+                case "--max-bytes-per-file":
+                    i++;
+                    maxBytesPerFile = parseSize(args[i]);
+
+                    break;
+                case "--max-rows-per-file":
+                    i++;
+                    maxRowsPerFile = Long.parseLong(args[i]);
+
+                    break;
+                case "--max-value-length":
+                    i++;
+                    final int lengthIndex = args[i].indexOf('=');
+
+                    if (lengthIndex == -1) {
+                        settings.setMaxValueLength(Integer.parseInt(args[i]));
+                    } else {
+                        maxValueLengths.put(args[i].substring(0, lengthIndex),
+                                Integer.parseInt(
+                                        args[i].substring(lengthIndex + 1)));
+                    }
+
+                    break;
+                case "--namespace":
+                    i++;
+                    final int prefixIndex = args[i].indexOf('=');
+
+                    if (prefixIndex == -1) {
+                        throw new IllegalArgumentException("--namespace "
+                                + "must be specified as prefix=uri");
+                    }
+
+                    namespaces.put(args[i].substring(0, prefixIndex),
+                            args[i].substring(prefixIndex + 1));
 
                     break;
                 case "--output":
                     i++;
                     outputFile = Paths.get(args[i]);
 
+                    break;
+                case "--partition-column":
+                    i++;
+                    partitionColumn = args[i];
+
+                    break;
+                case "--partitions":
+                    i++;
+                    partitions = Integer.parseInt(args[i]);
+
+                    break;
+                case "--progress":
+                    i++;
+                    progressInterval = Long.parseLong(args[i]);
+
+                    break;
+                case "--reload-interval":
+                    i++;
+                    reloadInterval = Long.parseLong(args[i]);
+
+                    break;
+                case "--quoting":
+                    i++;
+                    settings.setQuoting(CsvFormat.Quoting.parse(args[i]));
+
                     break;
                 case "--remap-column":
                     remapping = new Remapping();
@@ -139,52 +436,486 @@ public class Main {
                     break;
                 case "--remap-map":
                     if (remapping == null) {
-                        throw new RuntimeException(
+                        throw new IllegalArgumentException(
                                 "--remap-column must be specified first");
                     }
 
                     i++;
-                    remapping.setMap(loadMap(Paths.get(args[i])));
+                    remapping.setMap(dictionaries == null
+                            ? loadMap(Paths.get(args[i]))
+                            : dictionaries.getMap(Paths.get(args[i])));
+                    remappingFiles.put(remapping, Paths.get(args[i]));
+
+                    break;
+                case "--resume":
+                    settings.setResume(true);
+
+                    break;
+                case "--sample-rate":
+                    i++;
+                    settings.setSampleRate(Double.parseDouble(args[i]));
+
+                    break;
+                case "--sample-seed":
+                    i++;
+                    settings.setSampleSeed(Long.parseLong(args[i]));
+
+                    break;
+                case "--sample-size":
+                    i++;
+                    settings.setSampleSize(Integer.parseInt(args[i]));
 
                     break;
                 case "--separator":
                     i++;
 
                     if (args[i].length() == 1) {
-                        separator = args[i].charAt(0);
+                        settings.setSeparator(args[i].charAt(0));
                     } else {
-                        throw new RuntimeException(
+                        throw new IllegalArgumentException(
                                 "Separator must be a character.");
                     }
 
+                    break;
+                case "--sort-columns":
+                    i++;
+                    sortColumns = args[i].split(",");
+
+                    break;
+                case "--sort-memory":
+                    i++;
+                    sortMemory = parseSize(args[i]);
+
+                    break;
+                case "--sum":
+                    i++;
+                    sumColumns = args[i].split(",");
+
+                    break;
+                case "--threads":
+                    i++;
+                    settings.setThreads(Integer.parseInt(args[i]));
+
                     break;
                 case "--trim":
-                    trimValues = true;
+                    settings.setTrim(true);
 
                     break;
                 case "--join":
-                    join = true;
+                    settings.setJoin(true);
+
+                    break;
+                case "--value-strategy":
+                    i++;
+                    final int index = args[i].indexOf('=');
+
+                    if (index == -1) {
+                        throw new IllegalArgumentException("--value-strategy "
+                                + "must be specified as column=strategy");
+                    }
+
+                    valueStrategies.put(args[i].substring(0, index),
+                            ValueStrategy.parse(args[i].substring(index + 1)));
 
                     break;
                 default:
-                    throw new RuntimeException(MessageFormat.format(
+                    throw new IllegalArgumentException(MessageFormat.format(
                             "Unsupported command line argument: {0}", args[i]));
             }
         }
 
-        Objects.requireNonNull(columns, "--columns argument must be specified, "
-                + "example: --columns COL1,COL2");
+        if (daemonPort != -1) {
+            if (dictionaries != null) {
+                throw new IllegalArgumentException(
+                        "--daemon cannot be requested from daemon");
+            }
+
+            try {
+                final ConversionDaemon daemon = new ConversionDaemon(
+                        daemonPort, daemonThreads, daemonQueue);
+                daemon.start();
+                System.err.println("Listening on port " + daemon.getPort());
+            } catch (final IOException ex) {
+                throw new RuntimeException("IO operation failed", ex);
+            }
+
+            return;
+        }
+
+        if (buildIndexFile != null) {
+            Objects.requireNonNull(inputFile, "--input argument must be "
+                    + "specified, example: --input input_file_path");
+            Objects.requireNonNull(settings.getItemName(), "--item-name "
+                    + "argument must be specified, example: --item-name "
+                    + "/root/item");
+            settings.setNamespaces(namespaces);
+
+            try {
+                ItemIndex.build(buildIndexFile, inputFile, settings);
+            } catch (final IOException ex) {
+                throw new RuntimeException("IO operation failed", ex);
+            } catch (final XMLStreamException ex) {
+                throw new RuntimeException("XML stream exception", ex);
+            }
+
+            return;
+        }
+
+        if ((settings.getItemRangeStart() != 0
+                || settings.getItemRangeEnd() != Long.MAX_VALUE
+                || settings.getThreads() != 1)
+                && settings.getIndexFile() == null) {
+            throw new IllegalArgumentException(
+                    "--item-range and --threads require --index");
+        }
+
+        Objects.requireNonNull(settings.getColumns(), "--columns argument must "
+                + "be specified, example: --columns COL1,COL2");
         Objects.requireNonNull(inputFile, "--input argument must be specified, "
                 + "example: --input input_file_path");
         Objects.requireNonNull(outputFile, "--output argument must be "
                 + "specified, example: --output output_file_path");
-        Objects.requireNonNull(columns, "--output argument must be specified, "
-                + "example: --output output_file_path");
-        Objects.requireNonNull(itemName, "--item-name argument must be "
-                + "specified, example: --item-name /root/item");
+        Objects.requireNonNull(settings.getItemName(), "--item-name argument "
+                + "must be specified, example: --item-name /root/item");
+
+        if (lookupFile != null && lookupKey == null) {
+            throw new IllegalArgumentException("--lookup-key argument must be "
+                    + "specified together with --lookup");
+        }
+
+        if (settings.getLimit() != Long.MAX_VALUE && (dedupeColumns != null
+                || groupColumns != null || sortColumns != null)) {
+            throw new IllegalArgumentException("--limit cannot be used when "
+                    + "deduplicating, aggregating or sorting rows");
+        }
+
+        if (dictionaries != null) {
+            for (final Map.Entry<Filter, Path> entry
+                    : filterFiles.entrySet()) {
+                final Filter filterWithValues = entry.getKey();
+                final Path file = entry.getValue();
+                filterWithValues.setValues(dictionaries.getValues(file),
+                        filterWithValues.isSubstring()
+                                ? dictionaries.getMatcher(file) : null);
+            }
+        }
+
+        settings.setFilters(filters);
+        settings.setRemappings(remappings);
+        settings.setValueStrategies(valueStrategies);
+        settings.setMaxValueLengths(maxValueLengths);
+        settings.setNamespaces(namespaces);
+
+        final boolean sharded = maxRowsPerFile > 0 || maxBytesPerFile > 0
+                || partitionColumn != null;
+        final boolean standardInput = "-".equals(inputFile.toString());
+        final boolean standardOutput = "-".equals(outputFile.toString());
+
+        if (dictionaries != null && (standardInput || standardOutput)) {
+            throw new IllegalArgumentException("Standard input and output "
+                    + "cannot be used in daemon requests");
+        }
+
+        if (standardOutput && sharded) {
+            throw new IllegalArgumentException(
+                    "Standard output cannot be used when splitting output");
+        }
+
+        if (standardOutput && flushRows == 0 && flushInterval == 0) {
+            flushInterval = 10;
+        }
+
+        final ResultCache cache;
+        final String cacheKey;
+
+        if (cacheDirectory == null) {
+            cache = null;
+            cacheKey = null;
+        } else {
+            if (sharded || standardInput || standardOutput) {
+                throw new IllegalArgumentException("--cache-dir cannot be "
+                        + "used when splitting output or with standard input "
+                        + "or output");
+            }
+
+            if (reloadInterval > 0) {
+                throw new IllegalArgumentException("--cache-dir cannot be "
+                        + "used with --reload-interval");
+            }
+
+            try {
+                cache = new ResultCache(cacheDirectory, cacheSize);
+                cacheKey = ResultCache.computeKey(inputFile, settings,
+                        "sort=" + Arrays.toString(sortColumns)
+                        + ";group=" + Arrays.toString(groupColumns)
+                        + ";sum=" + Arrays.toString(sumColumns)
+                        + ";dedupe=" + Arrays.toString(dedupeColumns)
+                        + (dedupeProbabilistic
+                                ? ";bloom=" + dedupeMemory : "")
+                        + (lookupFile == null ? "" : ";lookup="
+                                + lookupFile.toAbsolutePath() + "@"
+                                + Files.size(lookupFile) + "@"
+                                + Files.getLastModifiedTime(lookupFile)
+                                        .toMillis()
+                                + ";key=" + lookupKey + "="
+                                + lookupReferenceKey + ";columns="
+                                + Arrays.toString(lookupColumns)));
+
+                if (cache.fetch(cacheKey, outputFile)) {
+                    return;
+                }
+            } catch (final IOException ex) {
+                throw new RuntimeException("IO operation failed", ex);
+            }
+        }
+
+        final ConversionMetrics metrics = jmx || progressInterval > 0
+                ? new ConversionMetrics() : null;
+        final ScheduledExecutorService progressPrinter =
+                progressInterval > 0 ? startProgressPrinter(metrics,
+                                progressInterval) : null;
+        settings.setMetrics(metrics);
+
+        if (jmx) {
+            metrics.register(outputFile.getFileName().toString());
+        }
+
+        final DictionaryReloader reloader;
+
+        if (reloadInterval > 0
+                && (!filterFiles.isEmpty() || !remappingFiles.isEmpty())) {
+            reloader = new DictionaryReloader(reloadInterval * 1_000L);
+
+            for (final Map.Entry<Filter, Path> entry
+                    : filterFiles.entrySet()) {
+                reloader.watch(entry.getKey(), entry.getValue());
+            }
+
+            for (final Map.Entry<Remapping, Path> entry
+                    : remappingFiles.entrySet()) {
+                reloader.watch(entry.getKey(), entry.getValue());
+            }
+
+            reloader.start();
+        } else {
+            reloader = null;
+        }
+
+        try {
+            if (sharded || groupColumns != null || dedupeColumns != null
+                    || sortColumns != null || standardInput
+                    || standardOutput || flushRows > 0 || flushInterval > 0
+                    || lookupFile != null) {
+                if (settings.getCheckpointFile() != null) {
+                    throw new IllegalArgumentException("--checkpoint cannot "
+                            + "be used when splitting, aggregating, "
+                            + "deduplicating, sorting, enriching or flushing "
+                            + "output or with standard input or output");
+                }
+
+                final Path tempDirectory =
+                        outputFile.toAbsolutePath().getParent();
+
+                try {
+                    RowWriter rowWriter = standardOutput
+                            ? new CsvRowWriter(new BufferedWriter(
+                                    new OutputStreamWriter(metrics == null
+                                            ? System.out
+                                            : metrics.countOutput(System.out),
+                                            Charset.forName("UTF-8"))),
+                                    CsvFormat.forSettings(settings))
+                            : openOutputWriter(outputFile,
+                                    CsvFormat.forSettings(settings),
+                                    maxRowsPerFile,
+                                    maxBytesPerFile, partitionColumn,
+                                    partitions, metrics);
+
+                    if (flushRows > 0 || flushInterval > 0) {
+                        rowWriter = new FlushingRowWriter(rowWriter,
+                                flushRows, flushInterval);
+                    }
+
+                    if (sortColumns != null) {
+                        rowWriter = new SortingRowWriter(rowWriter,
+                                sortColumns, sortMemory, tempDirectory);
+                    }
+
+                    if (groupColumns != null) {
+                        rowWriter = new AggregatingRowWriter(rowWriter,
+                                groupColumns, sumColumns, aggregateMemory,
+                                tempDirectory);
+                    }
+
+                    if (dedupeColumns != null) {
+                        rowWriter = new DedupingRowWriter(rowWriter,
+                                dedupeColumns, dedupeMemory,
+                                dedupeProbabilistic, tempDirectory);
+                    }
+
+                    if (lookupFile != null) {
+                        rowWriter = new EnrichingRowWriter(rowWriter,
+                                new LookupIndex(lookupFile, lookupReferenceKey,
+                                        lookupColumns), lookupKey);
+                    }
+
+                    try (final RowWriter outputWriter = rowWriter) {
+                        if (standardInput) {
+                            Convertor.convertDocuments(System.in,
+                                    outputWriter, settings);
+                        } else {
+                            Convertor.convert(inputFile, outputWriter,
+                                    settings);
+                        }
+                    }
+                } catch (final IOException ex) {
+                    throw new RuntimeException("IO operation failed", ex);
+                }
+            } else {
+                Convertor.convert(inputFile, outputFile, settings);
+            }
+
+            if (cache != null) {
+                try {
+                    cache.store(cacheKey, outputFile);
+                } catch (final IOException ex) {
+                    throw new RuntimeException("IO operation failed", ex);
+                }
+            }
+        } finally {
+            if (reloader != null) {
+                reloader.close();
+            }
+
+            if (progressPrinter != null) {
+                progressPrinter.shutdownNow();
+                printProgress(metrics);
+            }
+
+            if (jmx) {
+                metrics.unregister();
+            }
+        }
+    }
+
+    /**
+     * Opens row writer writing the output file, or several output files if
+     * output should be split.
+     *
+     * @param outputFile      output file path
+     * @param format          output format
+     * @param maxRowsPerFile  maximum number of rows per file or 0
+     * @param maxBytesPerFile maximum number of bytes per file or 0
+     * @param partitionColumn partition column or null
+     * @param partitions      number of hash partitions or 0
+     * @param metrics         metrics that written bytes are counted to or
+     *                        null
+     *
+     * @return row writer
+     *
+     * @throws IOException Thrown if the output file could not be opened.
+     */
+    private static RowWriter openOutputWriter(final Path outputFile,
+            final CsvFormat format, final long maxRowsPerFile,
+            final long maxBytesPerFile, final String partitionColumn,
+            final int partitions, final ConversionMetrics metrics)
+            throws IOException {
+        if (maxRowsPerFile > 0 || maxBytesPerFile > 0
+                || partitionColumn != null) {
+            final int threads = partitionColumn == null ? 1 : Math.max(1,
+                    Runtime.getRuntime().availableProcessors() - 1);
+            final ShardedRowWriter rowWriter = new ShardedRowWriter(
+                    outputFile, format, maxRowsPerFile, maxBytesPerFile,
+                    partitionColumn, partitions, threads);
+            rowWriter.setMetrics(metrics);
+
+            return rowWriter;
+        } else {
+            final OutputStream outputStream =
+                    Files.newOutputStream(outputFile);
+
+            return new CsvRowWriter(new BufferedWriter(new OutputStreamWriter(
+                    metrics == null ? outputStream
+                            : metrics.countOutput(outputStream),
+                    Charset.forName("UTF-8"))), format);
+        }
+    }
+
+    /**
+     * Starts thread that periodically prints conversion progress to standard
+     * error output.
+     *
+     * @param metrics  conversion metrics
+     * @param interval interval in seconds
+     *
+     * @return executor of the thread
+     */
+    private static ScheduledExecutorService startProgressPrinter(
+            final ConversionMetrics metrics, final long interval) {
+        final ScheduledExecutorService executor =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable,
+                                "xml2csv-progress");
+                        thread.setDaemon(true);
+
+                        return thread;
+                    }
+                });
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                printProgress(metrics);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+
+        return executor;
+    }
+
+    /**
+     * Prints conversion progress to standard error output.
+     *
+     * @param metrics conversion metrics
+     */
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    private static void printProgress(final ConversionMetrics metrics) {
+        System.err.println(metrics.toProgressString());
+    }
+
+    /**
+     * Parses size in bytes. Size can be followed by one of K, M or G suffixes
+     * (case insensitive) to specify kilobytes, megabytes or gigabytes.
+     *
+     * @param size size string
+     *
+     * @return size in bytes
+     */
+    private static long parseSize(final String size) {
+        final String trimmed = size.trim().toUpperCase(Locale.ENGLISH);
+        final long multiplier;
+
+        final char suffix =
+                trimmed.isEmpty() ? ' ' : trimmed.charAt(trimmed.length() - 1);
+
+        switch (suffix) {
+            case 'K':
+                multiplier = 1_024L;
+
+                break;
+            case 'M':
+                multiplier = 1_024L * 1_024L;
+
+                break;
+            case 'G':
+                multiplier = 1_024L * 1_024L * 1_024L;
+
+                break;
+            default:
+                return Long.parseLong(trimmed);
+        }
 
-        Convertor.convert(inputFile, outputFile, columns, filters, remappings,
-                separator, trimValues, join, itemName);
+        return Long.parseLong(trimmed.substring(0, trimmed.length() - 1))
+                * multiplier;
     }
 
     /**
@@ -215,7 +946,7 @@ public class Main {
      *
      * @return collection of loaded values
      */
-    private static Collection<String> loadValues(final Path file) {
+    static Collection<String> loadValues(final Path file) {
         @SuppressWarnings("CollectionWithoutInitialCapacity")
         final Collection<String> values = new HashSet<>();
 
@@ -242,7 +973,7 @@ public class Main {
      *
      * @return map of loaded key value pairs
      */
-    private static Map<String, String> loadMap(final Path file) {
+    static Map<String, String> loadMap(final Path file) {
         @SuppressWarnings("CollectionWithoutInitialCapacity")
         final Map<String, String> map = new HashMap<>();
 
@@ -0,0 +1,392 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Matcher of element paths. Paths are compiled into steps identified by
+ * integer ids of namespace URIs and local names, and the steps are evaluated
+ * incrementally as elements are opened, so matching an element is a lookup of
+ * its names followed by integer comparisons. States of the matcher are created
+ * lazily from sets of steps that can match next (subset construction of
+ * deterministic automaton) and transitions are cached in the states.
+ * <p>
+ * Path consists of element names separated by slash (/), leading slash is
+ * ignored. Element name can be prefixed with namespace prefix (prefix:name)
+ * bound to namespace URI, then it matches only elements in that namespace.
+ * Element name without prefix matches elements in any namespace. Asterisk
+ * (*) matches element of any name (prefix:* any element in the namespace).
+ * Double slash (//) before element name matches the element at any depth,
+ * e.g. //item matches item elements anywhere and a//b matches b elements
+ * anywhere below a elements.
+ * <p>
+ * Matcher is not thread safe.
+ *
+ * @author fordfrog
+ */
+class PathMatcher {
+
+    /**
+     * Id of any namespace or local name (wildcard), or of unknown namespace or
+     * local name.
+     */
+    private static final int ANY = -1;
+    /**
+     * Ids of namespace URIs used in paths.
+     */
+    private final Map<String, Integer> namespaceIds = new HashMap<>(4);
+    /**
+     * Ids of local names used in paths.
+     */
+    private final Map<String, Integer> localNameIds = new HashMap<>(16);
+    /**
+     * Namespace ids of steps.
+     */
+    private final int[] stepNamespaces;
+    /**
+     * Local name ids of steps.
+     */
+    private final int[] stepLocalNames;
+    /**
+     * Index of path whose last step it is, or -1 if it is not the last step.
+     */
+    private final int[] stepPaths;
+    /**
+     * Whether steps can match at any depth (are preceded by double slash).
+     */
+    private final boolean[] stepDescendants;
+    /**
+     * States by their steps.
+     */
+    private final Map<List<Integer>, State> states = new HashMap<>(32);
+    /**
+     * Start state matching no element yet.
+     */
+    private final State startState;
+    /**
+     * State matching neither the element nor its descendants.
+     */
+    private final State deadState;
+
+    /**
+     * Creates new instance of PathMatcher.
+     *
+     * @param paths      paths to match
+     * @param namespaces namespace URIs by prefixes, can be null
+     */
+    PathMatcher(final String[] paths, final Map<String, String> namespaces) {
+        final List<int[]> steps = new ArrayList<>(paths.length * 2);
+        final Set<Integer> firstSteps = new TreeSet<>();
+
+        for (int i = 0; i < paths.length; i++) {
+            if (paths[i].endsWith("/")) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Path \"{0}\" cannot end with slash", paths[i]));
+            }
+
+            final String[] names = (paths[i].startsWith("/")
+                    ? paths[i].substring(1) : paths[i]).split("/");
+            boolean descendant = false;
+            firstSteps.add(steps.size());
+
+            for (int j = 0; j < names.length; j++) {
+                if (names[j].isEmpty()) {
+                    if (descendant || j == names.length - 1) {
+                        throw new IllegalArgumentException(
+                                MessageFormat.format("Empty element name in "
+                                        + "path \"{0}\"", paths[i]));
+                    }
+
+                    descendant = true;
+
+                    continue;
+                }
+
+                final String localName =
+                        names[j].substring(names[j].indexOf(':') + 1);
+                steps.add(new int[]{
+                    getNamespaceId(paths[i], names[j], namespaces),
+                    "*".equals(localName) ? ANY
+                    : getId(localNameIds, localName),
+                    j == names.length - 1 ? i : -1,
+                    descendant ? 1 : 0});
+                descendant = false;
+            }
+        }
+
+        stepNamespaces = new int[steps.size()];
+        stepLocalNames = new int[steps.size()];
+        stepPaths = new int[steps.size()];
+        stepDescendants = new boolean[steps.size()];
+
+        for (int i = 0; i < stepPaths.length; i++) {
+            stepNamespaces[i] = steps.get(i)[0];
+            stepLocalNames[i] = steps.get(i)[1];
+            stepPaths[i] = steps.get(i)[2];
+            stepDescendants[i] = steps.get(i)[3] == 1;
+        }
+
+        startState = getState(firstSteps, new TreeSet<Integer>());
+        deadState = getState(new TreeSet<Integer>(), new TreeSet<Integer>());
+    }
+
+    /**
+     * Getter for {@link #startState}.
+     *
+     * @return {@link #startState}
+     */
+    State getStartState() {
+        return startState;
+    }
+
+    /**
+     * Returns state after opening element the reader is positioned at.
+     *
+     * @param state  current state
+     * @param reader XML stream reader positioned at start of element
+     *
+     * @return next state
+     */
+    State getNextState(final State state, final XMLStreamReader reader) {
+        if (state.steps.length == 0) {
+            return deadState;
+        }
+
+        final Integer localNameId = localNameIds.get(reader.getLocalName());
+        final int namespaceId;
+
+        if (namespaceIds.isEmpty()) {
+            namespaceId = ANY;
+        } else {
+            final String namespace = reader.getNamespaceURI();
+            final Integer id = namespaceIds.get(
+                    namespace == null ? "" : namespace);
+            namespaceId = id == null ? ANY : id;
+        }
+
+        final int index = (localNameId == null ? 0 : localNameId + 1)
+                * (namespaceIds.size() + 1) + namespaceId + 1;
+
+        if (state.transitions == null) {
+            state.transitions = new State[(localNameIds.size() + 1)
+                    * (namespaceIds.size() + 1)];
+        }
+
+        State nextState = state.transitions[index];
+
+        if (nextState == null) {
+            nextState = createNextState(state,
+                    localNameId == null ? ANY : localNameId, namespaceId);
+            state.transitions[index] = nextState;
+        }
+
+        return nextState;
+    }
+
+    /**
+     * Creates state after opening element with specified names.
+     *
+     * @param state       current state
+     * @param localNameId local name id
+     * @param namespaceId namespace id
+     *
+     * @return next state
+     */
+    private State createNextState(final State state, final int localNameId,
+            final int namespaceId) {
+        final Set<Integer> steps = new TreeSet<>();
+        final Set<Integer> matches = new TreeSet<>();
+
+        for (final int step : state.steps) {
+            // descendant step keeps waiting for matching element at any depth
+            if (stepDescendants[step]) {
+                steps.add(step);
+            }
+
+            if (stepLocalNames[step] != ANY
+                    && stepLocalNames[step] != localNameId
+                    || stepNamespaces[step] != ANY
+                    && stepNamespaces[step] != namespaceId) {
+                continue;
+            }
+
+            if (stepPaths[step] == -1) {
+                steps.add(step + 1);
+            } else {
+                matches.add(stepPaths[step]);
+            }
+        }
+
+        return getState(steps, matches);
+    }
+
+    /**
+     * Returns existing state or creates new state.
+     *
+     * @param steps   sorted steps that can match next
+     * @param matches sorted indexes of matched paths
+     *
+     * @return state
+     */
+    private State getState(final Set<Integer> steps,
+            final Set<Integer> matches) {
+        final List<Integer> key = new ArrayList<>(steps.size() + 1
+                + matches.size());
+        key.addAll(steps);
+        key.add(-1);
+        key.addAll(matches);
+
+        State state = states.get(key);
+
+        if (state == null) {
+            state = new State(toArray(steps), toArray(matches));
+            states.put(key, state);
+        }
+
+        return state;
+    }
+
+    /**
+     * Converts set of integers to array.
+     *
+     * @param set set of integers
+     *
+     * @return array of integers
+     */
+    private static int[] toArray(final Set<Integer> set) {
+        final int[] array = new int[set.size()];
+        int i = 0;
+
+        for (final int value : set) {
+            array[i++] = value;
+        }
+
+        return array;
+    }
+
+    /**
+     * Returns id of namespace of the element name.
+     *
+     * @param path       path used in error message
+     * @param name       element name
+     * @param namespaces namespace URIs by prefixes, can be null
+     *
+     * @return namespace id or {@link #ANY} if name has no prefix
+     */
+    private int getNamespaceId(final String path, final String name,
+            final Map<String, String> namespaces) {
+        final int index = name.indexOf(':');
+
+        if (index == -1) {
+            return ANY;
+        }
+
+        final String prefix = name.substring(0, index);
+        final String namespace =
+                namespaces == null ? null : namespaces.get(prefix);
+
+        if (namespace == null) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Unbound namespace prefix \"{0}\" in path \"{1}\"",
+                    prefix, path));
+        }
+
+        return getId(namespaceIds, namespace);
+    }
+
+    /**
+     * Returns id of the name, new id is assigned if the name has none yet.
+     *
+     * @param ids  ids by names
+     * @param name name
+     *
+     * @return id of the name
+     */
+    private static int getId(final Map<String, Integer> ids,
+            final String name) {
+        Integer id = ids.get(name);
+
+        if (id == null) {
+            id = ids.size();
+            ids.put(name, id);
+        }
+
+        return id;
+    }
+
+    /**
+     * State of the matcher after opening element.
+     */
+    static class State {
+
+        /**
+         * Steps that can match child elements.
+         */
+        private final int[] steps;
+        /**
+         * Indexes of paths matched by the element.
+         */
+        private final int[] matches;
+        /**
+         * Cached next states by ids of local names and namespaces.
+         */
+        private State[] transitions;
+
+        /**
+         * Creates new instance of State.
+         *
+         * @param steps   steps that can match child elements
+         * @param matches indexes of paths matched by the element
+         */
+        State(final int[] steps, final int[] matches) {
+            this.steps = steps;
+            this.matches = matches;
+        }
+
+        /**
+         * Getter for {@link #matches}.
+         *
+         * @return {@link #matches}
+         */
+        int[] getMatches() {
+            return matches;
+        }
+
+        /**
+         * Checks whether neither the element nor its descendants can match
+         * any path.
+         *
+         * @return true if nothing can match, otherwise false
+         */
+        boolean isDead() {
+            return steps.length == 0 && matches.length == 0;
+        }
+    }
+}
@@ -36,9 +36,15 @@ public class Remapping {
      */
     private String column;
     /**
-     * Map of original values and new values.
+     * Map of original values and new values. The map is replaced as a whole
+     * when it changes, so it can be swapped while other threads are remapping
+     * values without any locking.
      */
-    private Map<String, String> map;
+    private volatile Map<String, String> map;
+    /**
+     * Version of {@link #map}, incremented every time the map is replaced.
+     */
+    private volatile int version;
 
     /**
      * Getter for {@link #column}.
@@ -68,13 +74,27 @@ public class Remapping {
     }
 
     /**
-     * Setter for {@link #map}.
+     * Setter for {@link #map}. The map can be replaced while the remapping is
+     * in use. The map must not be modified after it is passed to the
+     * remapping.
      *
      * @param map {@link #map}
      */
     @SuppressWarnings("AssignmentToCollectionOrArrayFieldFromParameter")
-    public void setMap(final Map<String, String> map) {
+    public synchronized void setMap(final Map<String, String> map) {
         this.map = map;
+        // the version is published after the map so reader that sees the new
+        // version sees the new map too
+        version++;
+    }
+
+    /**
+     * Getter for {@link #version}.
+     *
+     * @return {@link #version}
+     */
+    public int getVersion() {
+        return version;
     }
 
     /**
@@ -82,18 +102,24 @@ public class Remapping {
      * current value is present in {@link #map} as key.
      *
      * @param itemValues item values
+     *
+     * @return true if the value was replaced, otherwise false
      */
-    public void replaceValues(final Map<String, String> itemValues) {
+    public boolean replaceValues(final Map<String, String> itemValues) {
         final String itemValue = itemValues.get(column);
 
         if (itemValue == null) {
-            return;
+            return false;
         }
 
         final String newValue = map.get(itemValue);
 
         if (newValue != null) {
             itemValues.put(column, newValue);
+
+            return true;
         }
+
+        return false;
     }
 }
@@ -23,6 +23,7 @@ package com.fordfrog.xml2csv;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -46,14 +47,37 @@ public class Remappings {
         remappings.add(remapping);
     }
 
+    /**
+     * Getter for {@link #remappings}.
+     *
+     * @return {@link #remappings}
+     */
+    public Collection<Remapping> getRemappings() {
+        return Collections.unmodifiableCollection(remappings);
+    }
+
     /**
      * Replaces values in item using all specified remappings.
      *
      * @param itemValues item values
      */
     public void replaceValues(final Map<String, String> itemValues) {
+        replaceValues(itemValues, null);
+    }
+
+    /**
+     * Replaces values in item using all specified remappings. Replaced values
+     * are recorded in metrics.
+     *
+     * @param itemValues item values
+     * @param metrics    optional conversion metrics
+     */
+    public void replaceValues(final Map<String, String> itemValues,
+            final ConversionMetrics metrics) {
         for (final Remapping remapping : remappings) {
-            remapping.replaceValues(itemValues);
+            if (remapping.replaceValues(itemValues) && metrics != null) {
+                metrics.remapHit(remapping);
+            }
         }
     }
 }
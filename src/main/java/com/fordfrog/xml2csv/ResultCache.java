@@ -0,0 +1,368 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Cache of conversion results stored in local directory. Results are keyed by
+ * hash of the input file content and of all settings that affect the output,
+ * so repeated identical conversion copies the previous output instead of
+ * converting the input again. Least recently used results are evicted once
+ * total size of the cache exceeds its limit.
+ *
+ * @author fordfrog
+ */
+public class ResultCache {
+
+    /**
+     * Version of cache keys. It must be changed whenever output of the same
+     * conversion can change so that outdated results are not used.
+     */
+    private static final String KEY_VERSION = "xml2csv-1";
+    /**
+     * Suffix of cached result files.
+     */
+    private static final String SUFFIX = ".csv";
+    /**
+     * Cache directory.
+     */
+    private final Path directory;
+    /**
+     * Maximum total size of cached results in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * Creates new instance of ResultCache.
+     *
+     * @param directory cache directory, it is created if it does not exist
+     * @param maxSize   maximum total size of cached results in bytes
+     *
+     * @throws IOException Thrown if the directory could not be created.
+     */
+    public ResultCache(final Path directory, final long maxSize)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Computes cache key of conversion.
+     *
+     * @param inputFile input file path
+     * @param settings  conversion settings
+     * @param options   description of other options affecting the output,
+     *                  such as sorting or deduplication of rows
+     *
+     * @return cache key
+     *
+     * @throws IOException Thrown if the input file could not be read.
+     */
+    public static String computeKey(final Path inputFile,
+            final ConvertorSettings settings, final String options)
+            throws IOException {
+        final MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+
+        try (final InputStream inputStream = Files.newInputStream(inputFile)) {
+            final byte[] buffer = new byte[65_536];
+            int count;
+
+            while ((count = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder(1_024);
+        append(sb, KEY_VERSION);
+        appendSettings(sb, settings);
+        append(sb, options);
+        digest.update(sb.toString().getBytes(Charset.forName("UTF-8")));
+
+        final StringBuilder key = new StringBuilder(64);
+
+        for (final byte value : digest.digest()) {
+            key.append(Character.forDigit((value >> 4) & 0xF, 16));
+            key.append(Character.forDigit(value & 0xF, 16));
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Copies cached result to the output file and marks it as recently used.
+     *
+     * @param key        cache key
+     * @param outputFile output file path
+     *
+     * @return true if the result was found in the cache, otherwise false
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    public boolean fetch(final String key, final Path outputFile)
+            throws IOException {
+        final Path file = directory.resolve(key + SUFFIX);
+
+        try {
+            Files.setLastModifiedTime(file,
+                    FileTime.fromMillis(System.currentTimeMillis()));
+            Files.copy(file, outputFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final NoSuchFileException ex) {
+            // result is not cached or it was just evicted
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Stores copy of the output file in the cache and evicts least recently
+     * used results if the cache exceeds its maximum size. Output that is
+     * larger than the maximum size is not stored.
+     *
+     * @param key        cache key
+     * @param outputFile output file path
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    public void store(final String key, final Path outputFile)
+            throws IOException {
+        if (Files.size(outputFile) > maxSize) {
+            return;
+        }
+
+        final Path tempFile = Files.createTempFile(directory, key, ".tmp");
+
+        try {
+            Files.copy(outputFile, tempFile,
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, directory.resolve(key + SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        evict();
+    }
+
+    /**
+     * Deletes least recently used results until total size of the cache does
+     * not exceed its maximum size.
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private void evict() throws IOException {
+        final List<Path> files = new ArrayList<>(16);
+        final Map<Path, FileTime> times = new TreeMap<>();
+        long totalSize = 0;
+
+        try (final DirectoryStream<Path> stream =
+                Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (final Path file : stream) {
+                try {
+                    times.put(file, Files.getLastModifiedTime(file));
+                    totalSize += Files.size(file);
+                    files.add(file);
+                } catch (final NoSuchFileException ex) {
+                    // file was evicted by other conversion
+                }
+            }
+        }
+
+        Collections.sort(files, new Comparator<Path>() {
+            @Override
+            public int compare(final Path o1, final Path o2) {
+                return times.get(o1).compareTo(times.get(o2));
+            }
+        });
+
+        for (int i = 0; i < files.size() && totalSize > maxSize; i++) {
+            try {
+                totalSize -= Files.size(files.get(i));
+                Files.delete(files.get(i));
+            } catch (final NoSuchFileException ex) {
+                // file was evicted by other conversion
+            }
+        }
+    }
+
+    /**
+     * Appends canonical description of all settings affecting the output.
+     *
+     * @param sb       string builder
+     * @param settings conversion settings
+     */
+    private static void appendSettings(final StringBuilder sb,
+            final ConvertorSettings settings) {
+        append(sb, settings.getItemName());
+        append(sb, settings.getColumns());
+        append(sb, String.valueOf(settings.getSeparator()));
+        append(sb, settings.getQuoting().name());
+        append(sb, String.valueOf(settings.getEscapeChar()));
+        append(sb, String.valueOf(settings.getLimit()));
+        append(sb, String.valueOf(settings.getSampleRate()));
+        append(sb, String.valueOf(settings.getSampleSize()));
+        append(sb, String.valueOf(settings.getSampleSeed()));
+        append(sb, String.valueOf(settings.isTrim()));
+        append(sb, String.valueOf(settings.isJoin()));
+        append(sb, settings.getJoinDelimiter());
+        append(sb, settings.getExplodeGroups());
+        append(sb, String.valueOf(settings.isExplodeZip()));
+        append(sb, String.valueOf(settings.getMaxValueLength()));
+        append(sb, settings.getMaxValueLengths());
+        append(sb, settings.getNamespaces());
+
+        if (settings.getIndexFile() != null) {
+            append(sb, settings.getItemRangeStart() + ":"
+                    + settings.getItemRangeEnd());
+        }
+
+        if (settings.getValueStrategies() != null) {
+            for (final Map.Entry<String, ValueStrategy> entry
+                    : new TreeMap<>(settings.getValueStrategies()).
+                    entrySet()) {
+                append(sb, entry.getKey());
+                append(sb, entry.getValue().getType().name());
+                append(sb, entry.getValue().getDelimiter());
+            }
+        }
+
+        if (settings.getFilters() != null) {
+            for (final Filter filter : settings.getFilters().getFilters()) {
+                if (filter instanceof ExpressionFilter) {
+                    // expression filter is fully described by its source
+                    append(sb, "expression:"
+                            + ((ExpressionFilter) filter).getSource());
+                    append(sb, String.valueOf(filter.isExclude()));
+
+                    continue;
+                }
+
+                append(sb, filter.getColumn());
+                append(sb, String.valueOf(filter.isExclude()));
+                append(sb, String.valueOf(filter.isSubstring()));
+                append(sb, filter.getValues() == null ? null
+                        : new TreeSet<>(filter.getValues()));
+            }
+        }
+
+        if (settings.getRemappings() != null) {
+            for (final Remapping remapping
+                    : settings.getRemappings().getRemappings()) {
+                append(sb, remapping.getColumn());
+                append(sb, remapping.getMap());
+            }
+        }
+    }
+
+    /**
+     * Appends value prefixed with its length so that different settings
+     * cannot produce the same description.
+     *
+     * @param sb    string builder
+     * @param value value, can be null
+     */
+    private static void append(final StringBuilder sb, final String value) {
+        if (value == null) {
+            sb.append("-1;");
+        } else {
+            sb.append(value.length()).append(':').append(value);
+        }
+    }
+
+    /**
+     * Appends values.
+     *
+     * @param sb     string builder
+     * @param values values, can be null
+     */
+    private static void append(final StringBuilder sb,
+            final String[] values) {
+        if (values == null) {
+            sb.append("-1;");
+        } else {
+            sb.append(values.length).append(';');
+
+            for (final String value : values) {
+                append(sb, value);
+            }
+        }
+    }
+
+    /**
+     * Appends values.
+     *
+     * @param sb     string builder
+     * @param values values, can be null
+     */
+    private static void append(final StringBuilder sb,
+            final Collection<String> values) {
+        append(sb, values == null ? null
+                : values.toArray(new String[values.size()]));
+    }
+
+    /**
+     * Appends map entries ordered by keys.
+     *
+     * @param sb  string builder
+     * @param map map, can be null
+     */
+    private static void append(final StringBuilder sb,
+            final Map<String, ?> map) {
+        if (map == null) {
+            sb.append("-1;");
+        } else {
+            sb.append(map.size()).append(';');
+
+            for (final Map.Entry<String, ?> entry
+                    : new TreeMap<>(map).entrySet()) {
+                append(sb, entry.getKey());
+                append(sb, String.valueOf(entry.getValue()));
+            }
+        }
+    }
+}
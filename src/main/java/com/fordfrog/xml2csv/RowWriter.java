@@ -0,0 +1,59 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of converted rows. Values are passed in the same order as the
+ * columns were passed to {@link #writeHeader(java.lang.String[])}.
+ *
+ * @author fordfrog
+ */
+public interface RowWriter extends Closeable {
+
+    /**
+     * Writes header row. It is called once before any row is written.
+     *
+     * @param columns array of column names
+     *
+     * @throws IOException Thrown if problem occurred while writing the header.
+     */
+    void writeHeader(String[] columns) throws IOException;
+
+    /**
+     * Writes single row.
+     *
+     * @param values array of row values, values can be null
+     *
+     * @throws IOException Thrown if problem occurred while writing the row.
+     */
+    void writeRow(String[] values) throws IOException;
+
+    /**
+     * Flushes all rows written so far to the underlying output.
+     *
+     * @throws IOException Thrown if problem occurred while flushing the rows.
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Binary format of temporary files with rows. Row is stored as number of
+ * values followed by values, each stored as number of characters (-1 for null)
+ * followed by the characters.
+ *
+ * @author fordfrog
+ */
+final class RunFile {
+
+    /**
+     * Writes row to run file.
+     *
+     * @param output output stream
+     * @param row    row values
+     *
+     * @throws IOException Thrown if problem occurred while writing.
+     */
+    static void writeRow(final DataOutputStream output, final String[] row)
+            throws IOException {
+        output.writeInt(row.length);
+
+        for (final String value : row) {
+            if (value == null) {
+                output.writeInt(-1);
+            } else {
+                output.writeInt(value.length());
+                output.writeChars(value);
+            }
+        }
+    }
+
+    /**
+     * Reads row from run file.
+     *
+     * @param input input stream
+     *
+     * @return row values or null at end of file
+     *
+     * @throws IOException Thrown if problem occurred while reading.
+     */
+    static String[] readRow(final DataInputStream input) throws IOException {
+        final int length;
+
+        try {
+            length = input.readInt();
+        } catch (final EOFException ex) {
+            return null;
+        }
+
+        final String[] row = new String[length];
+
+        for (int i = 0; i < length; i++) {
+            final int valueLength = input.readInt();
+
+            if (valueLength != -1) {
+                final char[] chars = new char[valueLength];
+
+                for (int j = 0; j < valueLength; j++) {
+                    chars[j] = input.readChar();
+                }
+
+                row[i] = new String(chars);
+            }
+        }
+
+        return row;
+    }
+
+    /**
+     * Creates new instance of RunFile.
+     */
+    private RunFile() {
+    }
+}
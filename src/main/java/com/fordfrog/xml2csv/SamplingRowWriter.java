@@ -0,0 +1,206 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Row writer that passes rows of sampled items only. Items are sampled either
+ * randomly with given probability, or using reservoir sampling that keeps
+ * uniform random sample of fixed number of items. Convertor asks it whether
+ * to sample each item by probability before the item is read, so unsampled
+ * items are skipped without collecting their values. Reservoir is offered
+ * only items that produced rows, that is items that passed the filters, once
+ * the item is finished. It keeps rows of sampled items in memory and writes
+ * them in input order once {@link #finish()} is called. Both methods can be
+ * combined, reservoir is then filled from the randomly sampled items.
+ *
+ * @author fordfrog
+ */
+class SamplingRowWriter implements RowWriter {
+
+    /**
+     * Target row writer.
+     */
+    private final RowWriter target;
+    /**
+     * Probability of sampling an item.
+     */
+    private final double rate;
+    /**
+     * Number of items in the reservoir, or 0 if reservoir is not used.
+     */
+    private final int size;
+    /**
+     * Random number generator.
+     */
+    private final Random random;
+    /**
+     * Rows of items in the reservoir.
+     */
+    private final List<List<String[]>> slots;
+    /**
+     * Sequence numbers of items in {@link #slots}.
+     */
+    private final long[] sequences;
+    /**
+     * Rows of current item that was not offered to the reservoir yet.
+     */
+    private List<String[]> pending = new ArrayList<>(1);
+    /**
+     * Number of items offered to the reservoir.
+     */
+    private long offered;
+
+    /**
+     * Creates new instance of SamplingRowWriter.
+     *
+     * @param target target row writer
+     * @param rate   probability of sampling an item
+     * @param size   number of items in the reservoir, or 0 if reservoir
+     *               should not be used
+     * @param random random number generator
+     */
+    SamplingRowWriter(final RowWriter target, final double rate,
+            final int size, final Random random) {
+        if (rate <= 0 || rate > 1) {
+            throw new IllegalArgumentException(
+                    "Sample rate must be greater than 0 and at most 1.");
+        }
+
+        if (size < 0) {
+            throw new IllegalArgumentException(
+                    "Sample size cannot be negative.");
+        }
+
+        this.target = target;
+        this.rate = rate;
+        this.size = size;
+        this.random = random;
+        slots = new ArrayList<>(Math.min(size, 1_024));
+        sequences = new long[size];
+    }
+
+    /**
+     * Decides whether next item is sampled by probability. Rows written until
+     * {@link #endItem()} is called belong to the item.
+     *
+     * @return true if the item is sampled, otherwise false
+     */
+    boolean startItem() {
+        return rate == 1 || random.nextDouble() < rate;
+    }
+
+    /**
+     * Offers rows of current item to the reservoir. Items without rows are
+     * not offered so that items rejected by filters do not occupy the
+     * reservoir.
+     */
+    void endItem() {
+        if (size == 0 || pending.isEmpty()) {
+            return;
+        }
+
+        offered++;
+
+        final int slot;
+
+        if (slots.size() < size) {
+            slot = slots.size();
+            slots.add(pending);
+        } else {
+            // item replaces random item of the reservoir with probability
+            // size / offered
+            final long index = (long) (random.nextDouble() * offered);
+
+            if (index >= size) {
+                pending.clear();
+
+                return;
+            }
+
+            slot = (int) index;
+            slots.set(slot, pending);
+        }
+
+        sequences[slot] = offered;
+        pending = new ArrayList<>(1);
+    }
+
+    /**
+     * Writes rows of the items in the reservoir to the target row writer in
+     * input order.
+     *
+     * @throws IOException Thrown if problem occurred while writing the rows.
+     */
+    void finish() throws IOException {
+        final Integer[] order = new Integer[slots.size()];
+
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer first, final Integer second) {
+                return Long.compare(sequences[first], sequences[second]);
+            }
+        });
+
+        for (final Integer slot : order) {
+            for (final String[] row : slots.get(slot)) {
+                target.writeRow(row);
+            }
+        }
+
+        slots.clear();
+    }
+
+    @Override
+    public void writeHeader(final String[] columns) throws IOException {
+        target.writeHeader(columns);
+    }
+
+    @Override
+    public void writeRow(final String[] values) throws IOException {
+        if (size == 0) {
+            target.writeRow(values);
+        } else {
+            pending.add(values);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        target.close();
+    }
+}
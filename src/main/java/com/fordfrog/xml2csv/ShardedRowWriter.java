@@ -0,0 +1,750 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row writer that splits output into several CSV files (shards). New shard is
+ * started once the current one reaches maximum number of rows or maximum
+ * number of bytes. Rows can be also partitioned by value of a column, either
+ * into fixed number of partitions using hash of the value, or into one
+ * partition per distinct value. Each shard starts with the header row.
+ * <p>
+ * Rows are formatted on the calling thread while encoding and writing to the
+ * files is done on background threads. Rows of one partition are always
+ * written by the same thread so their order is preserved. At most
+ * {@link #MAX_OPEN_PARTITIONS} partitions keep their file open and rows
+ * buffered, the least recently written partition is closed when another one
+ * needs to be opened and its file is reopened for appending once it gets
+ * new rows, so columns with many distinct values do not exhaust file
+ * descriptors or memory.
+ *
+ * @author fordfrog
+ */
+public class ShardedRowWriter implements RowWriter {
+
+    /**
+     * Number of characters that are collected before they are handed over to
+     * background thread.
+     */
+    private static final int BATCH_SIZE = 64 * 1_024;
+    /**
+     * Maximum number of batches waiting for single background thread.
+     */
+    private static final int MAX_PENDING_BATCHES = 8;
+    /**
+     * Maximum number of partitions with open file.
+     */
+    static final int MAX_OPEN_PARTITIONS = 128;
+    /**
+     * Path to the output file, shard file names are derived from it.
+     */
+    private final Path outputFile;
+    /**
+     * Output format.
+     */
+    private final CsvFormat format;
+    /**
+     * Maximum number of rows per shard, excluding the header row. Zero means
+     * no limit.
+     */
+    private final long maxRows;
+    /**
+     * Maximum number of bytes per shard. Zero means no limit. Shard always
+     * contains at least one row even if the row is longer than the limit.
+     */
+    private final long maxBytes;
+    /**
+     * Name of the column used for partitioning or null if rows are not
+     * partitioned.
+     */
+    private final String partitionColumn;
+    /**
+     * Number of hash partitions. Zero means that each distinct value of
+     * {@link #partitionColumn} has its own partition.
+     */
+    private final int partitionCount;
+    /**
+     * Background threads, each of them owns subset of partitions.
+     */
+    private final ExecutorService[] workers;
+    /**
+     * Limits number of batches waiting for each of {@link #workers}.
+     */
+    private final Semaphore[] workerPermits;
+    /**
+     * Partitions by their keys.
+     */
+    private final Map<String, Partition> partitions = new HashMap<>(16);
+    /**
+     * Partitions with open file in order of their last use.
+     */
+    private final Map<Partition, Boolean> openPartitions =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Hash partitions by their indexes.
+     */
+    private final Partition[] hashPartitions;
+    /**
+     * File name parts already used by partitions.
+     */
+    private final Set<String> usedNames = new HashSet<>(16);
+    /**
+     * Buffer used for formatting of rows.
+     */
+    private final StringBuilder rowBuffer = new StringBuilder(1_024);
+    /**
+     * Formatted header row.
+     */
+    private String header;
+    /**
+     * Length of {@link #header} in bytes.
+     */
+    private long headerBytes;
+    /**
+     * Index of {@link #partitionColumn} in the row.
+     */
+    private int partitionIndex = -1;
+    /**
+     * First failure that occurred on background thread.
+     */
+    private volatile IOException failure;
+    /**
+     * Metrics that written bytes are counted to or null.
+     */
+    private ConversionMetrics metrics;
+
+    /**
+     * Creates new instance of ShardedRowWriter that quotes all values.
+     *
+     * @param outputFile      path to the output file, shard file names are
+     *                        derived from it
+     * @param separator       field separator
+     * @param maxRows         maximum number of rows per shard, zero means no
+     *                        limit
+     * @param maxBytes        maximum number of bytes per shard, zero means no
+     *                        limit
+     * @param partitionColumn name of the column used for partitioning or null
+     * @param partitionCount  number of hash partitions, zero means one
+     *                        partition per distinct value
+     * @param threads         number of background threads
+     */
+    public ShardedRowWriter(final Path outputFile, final char separator,
+            final long maxRows, final long maxBytes,
+            final String partitionColumn, final int partitionCount,
+            final int threads) {
+        this(outputFile, new CsvFormat(separator), maxRows, maxBytes,
+                partitionColumn, partitionCount, threads);
+    }
+
+    /**
+     * Creates new instance of ShardedRowWriter.
+     *
+     * @param outputFile      path to the output file, shard file names are
+     *                        derived from it
+     * @param format          output format
+     * @param maxRows         maximum number of rows per shard, zero means no
+     *                        limit
+     * @param maxBytes        maximum number of bytes per shard, zero means no
+     *                        limit
+     * @param partitionColumn name of the column used for partitioning or null
+     * @param partitionCount  number of hash partitions, zero means one
+     *                        partition per distinct value
+     * @param threads         number of background threads
+     */
+    public ShardedRowWriter(final Path outputFile, final CsvFormat format,
+            final long maxRows, final long maxBytes,
+            final String partitionColumn, final int partitionCount,
+            final int threads) {
+        if (maxRows < 0 || maxBytes < 0 || partitionCount < 0) {
+            throw new IllegalArgumentException(
+                    "Shard limits and partition count cannot be negative.");
+        }
+
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    "At least one writer thread is required.");
+        }
+
+        this.outputFile = outputFile;
+        this.format = format;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.partitionColumn = partitionColumn;
+        this.partitionCount = partitionCount;
+        hashPartitions = new Partition[partitionCount];
+
+        final int workerCount = partitionColumn == null ? 1 : threads;
+        workers = new ExecutorService[workerCount];
+        workerPermits = new Semaphore[workerCount];
+
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = Executors.newSingleThreadExecutor();
+            workerPermits[i] = new Semaphore(MAX_PENDING_BATCHES);
+        }
+    }
+
+    /**
+     * Setter for {@link #metrics}. Must be called before any rows are
+     * written.
+     *
+     * @param metrics {@link #metrics}
+     */
+    public void setMetrics(final ConversionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void writeHeader(final String[] columns) throws IOException {
+        if (partitionColumn != null) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals(partitionColumn)) {
+                    partitionIndex = i;
+
+                    break;
+                }
+            }
+
+            if (partitionIndex == -1) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Partition column {0} is not one of output columns.",
+                        partitionColumn));
+            }
+        }
+
+        rowBuffer.setLength(0);
+        format.appendRow(rowBuffer, columns);
+        header = rowBuffer.toString();
+        headerBytes = utf8Length(header);
+
+        if (partitionColumn == null) {
+            getPartition(null).startShard();
+        }
+    }
+
+    @Override
+    public void writeRow(final String[] values) throws IOException {
+        checkFailure();
+
+        final Partition partition = getPartition(values);
+
+        rowBuffer.setLength(0);
+        format.appendRow(rowBuffer, values);
+
+        final long rowBytes = utf8Length(rowBuffer);
+
+        if (partition.pending == null) {
+            openPartition(partition);
+        } else {
+            openPartitions.put(partition, Boolean.TRUE);
+        }
+
+        if (partition.rows > 0 && (maxRows > 0 && partition.rows >= maxRows
+                || maxBytes > 0 && partition.bytes + rowBytes > maxBytes)) {
+            partition.submit(Completion.CLOSE_SHARD);
+            partition.shard++;
+            openPartition(partition);
+        }
+
+        partition.pending.append(rowBuffer);
+        partition.rows++;
+        partition.bytes += rowBytes;
+
+        if (partition.pending.length() >= BATCH_SIZE) {
+            partition.submit(Completion.KEEP_OPEN);
+        }
+    }
+
+    /**
+     * Flushes all rows written so far to the shard files and waits until they
+     * are written.
+     *
+     * @throws IOException Thrown if problem occurred while writing the rows.
+     */
+    @Override
+    public void flush() throws IOException {
+        final List<Future<?>> futures = new ArrayList<>(partitions.size());
+
+        for (final Partition partition : partitions.values()) {
+            if (partition.pending != null) {
+                futures.add(partition.submit(Completion.FLUSH));
+            }
+        }
+
+        for (final Future<?> future : futures) {
+            await(future);
+        }
+
+        checkFailure();
+    }
+
+    /**
+     * Writes remaining rows, closes all shard files and stops background
+     * threads.
+     *
+     * @throws IOException Thrown if problem occurred while writing the rows.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (final Partition partition : partitions.values()) {
+                if (partition.pending != null) {
+                    partition.submit(Completion.CLOSE_SHARD);
+                }
+            }
+        } finally {
+            for (final ExecutorService worker : workers) {
+                worker.shutdown();
+            }
+
+            for (final ExecutorService worker : workers) {
+                try {
+                    worker.awaitTermination(Long.MAX_VALUE,
+                            TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+
+                    throw new IOException("Interrupted while closing shards",
+                            ex);
+                }
+            }
+        }
+
+        checkFailure();
+    }
+
+    /**
+     * Returns partition for given row, creating it if it does not exist yet.
+     *
+     * @param values row values or null if rows are not partitioned
+     *
+     * @return partition
+     */
+    private Partition getPartition(final String[] values) {
+        final String key;
+
+        if (partitionIndex == -1) {
+            key = "";
+        } else {
+            final String value = values[partitionIndex] == null ? ""
+                    : values[partitionIndex];
+
+            if (partitionCount > 0) {
+                final int index =
+                        (value.hashCode() & Integer.MAX_VALUE) % partitionCount;
+
+                if (hashPartitions[index] == null) {
+                    hashPartitions[index] = createPartition(
+                            String.format("p%04d", index));
+                }
+
+                return hashPartitions[index];
+            } else {
+                key = value;
+            }
+        }
+
+        Partition partition = partitions.get(key);
+
+        if (partition == null) {
+            partition = createPartition(key);
+        }
+
+        return partition;
+    }
+
+    /**
+     * Starts new shard of the partition, or resumes current shard if the
+     * partition was closed because of too many open partitions. Closes the
+     * least recently used partition if there are too many open partitions.
+     *
+     * @param partition partition
+     *
+     * @throws IOException Thrown if waiting for the background thread was
+     *                     interrupted.
+     */
+    private void openPartition(final Partition partition) throws IOException {
+        if (partition.suspended) {
+            partition.pending = new StringBuilder(BATCH_SIZE + 1_024);
+            partition.suspended = false;
+        } else {
+            partition.startShard();
+        }
+
+        openPartitions.put(partition, Boolean.TRUE);
+
+        if (openPartitions.size() > MAX_OPEN_PARTITIONS) {
+            final Iterator<Partition> iterator =
+                    openPartitions.keySet().iterator();
+            final Partition eldest = iterator.next();
+            iterator.remove();
+            eldest.submit(Completion.CLOSE_FILE);
+            eldest.suspended = true;
+        }
+    }
+
+    /**
+     * Creates new partition and assigns it to one of background threads.
+     *
+     * @param key partition key
+     *
+     * @return partition
+     */
+    private Partition createPartition(final String key) {
+        final Partition partition = new Partition(partitionIndex == -1 ? null
+                : createName(key), partitions.size() % workers.length);
+        partitions.put(key, partition);
+
+        return partition;
+    }
+
+    /**
+     * Creates unique file name part from partition key. Characters that are
+     * not safe in file names are replaced with underscore.
+     *
+     * @param key partition key
+     *
+     * @return unique file name part
+     */
+    private String createName(final String key) {
+        final String safeName = key.isEmpty() ? "_"
+                : key.replaceAll("[^A-Za-z0-9._-]", "_");
+        String name = safeName;
+
+        for (int i = 1; usedNames.contains(name); i++) {
+            name = safeName + "~" + i;
+        }
+
+        usedNames.add(name);
+
+        return name;
+    }
+
+    /**
+     * Returns path of the shard file.
+     *
+     * @param name  partition name or null if rows are not partitioned
+     * @param shard shard number
+     *
+     * @return path of the shard file
+     */
+    private Path getShardPath(final String name, final int shard) {
+        final String fileName = outputFile.getFileName().toString();
+        final int dotPos = fileName.lastIndexOf('.');
+        final String baseName =
+                dotPos > 0 ? fileName.substring(0, dotPos) : fileName;
+        final String extension = dotPos > 0 ? fileName.substring(dotPos) : "";
+        final StringBuilder sb = new StringBuilder(fileName.length() + 32);
+        sb.append(baseName);
+
+        if (name != null) {
+            sb.append('-');
+            sb.append(name);
+        }
+
+        if (maxRows > 0 || maxBytes > 0) {
+            sb.append(String.format("-%05d", shard));
+        } else if (name == null) {
+            return outputFile;
+        }
+
+        sb.append(extension);
+
+        return outputFile.resolveSibling(sb.toString());
+    }
+
+    /**
+     * Throws failure that occurred on background thread, if any.
+     *
+     * @throws IOException Thrown if background thread failed.
+     */
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("Failed to write shard", failure);
+        }
+    }
+
+    /**
+     * Waits for the background task to finish.
+     *
+     * @param future task future
+     *
+     * @throws IOException Thrown if waiting was interrupted.
+     */
+    private static void await(final Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while waiting for shards", ex);
+        } catch (final ExecutionException ex) {
+            throw new IOException("Failed to write shard", ex.getCause());
+        }
+    }
+
+    /**
+     * Computes number of bytes the characters occupy in UTF-8 encoding.
+     *
+     * @param chars characters
+     *
+     * @return number of bytes
+     */
+    @SuppressWarnings("AssignmentToForLoopParameter")
+    static long utf8Length(final CharSequence chars) {
+        long length = 0;
+
+        for (int i = 0; i < chars.length(); i++) {
+            final char chr = chars.charAt(i);
+
+            if (chr < 0x80) {
+                length++;
+            } else if (chr < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(chr) && i + 1 < chars.length()
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Partition of output rows. Counters and pending rows are accessed only
+     * from the writing thread, the file writer only from the background
+     * thread.
+     */
+    private class Partition {
+
+        /**
+         * Partition name used in shard file names or null if rows are not
+         * partitioned.
+         */
+        private final String name;
+        /**
+         * Index of the background thread that writes this partition.
+         */
+        private final int worker;
+        /**
+         * Current shard number.
+         */
+        private int shard;
+        /**
+         * Number of rows in current shard.
+         */
+        private long rows;
+        /**
+         * Number of bytes in current shard.
+         */
+        private long bytes;
+        /**
+         * Rows of current shard that were not handed over to background thread
+         * yet, null if current shard was not started.
+         */
+        private StringBuilder pending;
+        /**
+         * Whether file of current shard was closed because of too many open
+         * partitions and rows should be appended to it.
+         */
+        private boolean suspended;
+        /**
+         * Writer of current shard file.
+         */
+        private Writer writer;
+        /**
+         * Whether current shard file was already created. Accessed only from
+         * the background thread.
+         */
+        private boolean created;
+
+        /**
+         * Creates new instance of Partition.
+         *
+         * @param name   partition name
+         * @param worker index of the background thread
+         */
+        Partition(final String name, final int worker) {
+            this.name = name;
+            this.worker = worker;
+        }
+
+        /**
+         * Starts new shard by writing header to it.
+         */
+        void startShard() {
+            pending = new StringBuilder(BATCH_SIZE + 1_024);
+            pending.append(header);
+            rows = 0;
+            bytes = headerBytes;
+        }
+
+        /**
+         * Hands over pending rows to the background thread.
+         *
+         * @param completion what should be done with the shard file after the
+         *                   rows are written
+         *
+         * @return future of the background task
+         *
+         * @throws IOException Thrown if waiting for the background thread was
+         *                     interrupted.
+         */
+        Future<?> submit(final Completion completion) throws IOException {
+            final String chunk = pending.toString();
+            final Path path = getShardPath(name, shard);
+            final Semaphore permits = workerPermits[worker];
+
+            if (completion == Completion.CLOSE_SHARD
+                    || completion == Completion.CLOSE_FILE) {
+                pending = null;
+            } else {
+                pending.setLength(0);
+            }
+
+            if (completion == Completion.CLOSE_SHARD) {
+                openPartitions.remove(this);
+            }
+
+            try {
+                permits.acquire();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+
+                throw new IOException("Interrupted while writing shards", ex);
+            }
+
+            return workers[worker].submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        write(path, chunk, completion);
+                    } catch (final IOException ex) {
+                        if (failure == null) {
+                            failure = ex;
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Writes chunk of rows to the shard file. Runs on background thread.
+         *
+         * @param path       shard file path
+         * @param chunk      rows
+         * @param completion what should be done with the shard file after the
+         *                   rows are written
+         *
+         * @throws IOException Thrown if problem occurred while writing the
+         *                     file.
+         */
+        private void write(final Path path, final String chunk,
+                final Completion completion) throws IOException {
+            if (writer == null) {
+                final OutputStream outputStream = created
+                        ? Files.newOutputStream(path, StandardOpenOption.APPEND)
+                        : Files.newOutputStream(path);
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        metrics == null ? outputStream
+                                : metrics.countOutput(outputStream),
+                        Charset.forName("UTF-8")));
+                created = true;
+            }
+
+            writer.write(chunk);
+
+            switch (completion) {
+                case CLOSE_SHARD:
+                    created = false;
+                    writer.close();
+                    writer = null;
+
+                    break;
+                case CLOSE_FILE:
+                    writer.close();
+                    writer = null;
+
+                    break;
+                case FLUSH:
+                    writer.flush();
+
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * What should be done with shard file after pending rows are written.
+     */
+    private enum Completion {
+
+        /**
+         * File is kept open.
+         */
+        KEEP_OPEN,
+        /**
+         * File is flushed.
+         */
+        FLUSH,
+        /**
+         * File is closed and reopened for appending once the partition gets
+         * new rows.
+         */
+        CLOSE_FILE,
+        /**
+         * File is closed and the shard is finished.
+         */
+        CLOSE_SHARD
+    }
+}
@@ -0,0 +1,503 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Row writer that sorts rows by sort columns and writes them to the target
+ * row writer once this writer is closed. Sort column can be followed by
+ * <code>:num</code> to compare values as numbers and by <code>:desc</code> to
+ * sort in descending order, e.g. <code>amount:num:desc</code>. In ascending
+ * order missing values are sorted first and values that are not numbers are
+ * sorted after numbers, descending order reverses this. Sort is stable so
+ * rows with equal sort values keep their order.
+ *
+ * Rows are collected in batches limited by half of the memory budget. Full
+ * batch is sorted and written to temporary run file on background thread
+ * while next batch is collected. Runs are merged when the writer is closed,
+ * at most {@link #MAX_MERGE_RUNS} at once so that the number of open files
+ * stays bounded. If there are more runs, consecutive runs are first merged
+ * into larger temporary runs in as many passes as needed.
+ * Values are stored in run files with their lengths so values containing
+ * separators, quotes or new lines are preserved exactly.
+ *
+ * @author fordfrog
+ */
+public class SortingRowWriter implements RowWriter {
+
+    /**
+     * Estimated memory used by single row excluding characters of values.
+     */
+    private static final int ROW_OVERHEAD = 48;
+    /**
+     * Estimated memory used by single value excluding its characters.
+     */
+    private static final int VALUE_OVERHEAD = 48;
+    /**
+     * Maximum number of run files that are merged at once.
+     */
+    static final int MAX_MERGE_RUNS = 64;
+    /**
+     * Target row writer.
+     */
+    private final RowWriter target;
+    /**
+     * Sort column definitions.
+     */
+    private final String[] sortColumns;
+    /**
+     * Memory budget of single batch in bytes.
+     */
+    private final long batchBudget;
+    /**
+     * Directory for run files.
+     */
+    private final Path tempDirectory;
+    /**
+     * Executor used to sort and spill batches.
+     */
+    private final ExecutorService executor;
+    /**
+     * Comparator of rows.
+     */
+    private Comparator<String[]> comparator;
+    /**
+     * Rows of current batch.
+     */
+    private List<String[]> batch = new ArrayList<>(1_024);
+    /**
+     * Estimated memory used by current batch.
+     */
+    private long batchMemory;
+    /**
+     * Run files in order of creation.
+     */
+    private final List<Path> runFiles = new ArrayList<>(8);
+    /**
+     * Result of last spill, null if no spill is running.
+     */
+    private Future<Void> pendingSpill;
+
+    /**
+     * Creates new instance of SortingRowWriter.
+     *
+     * @param target        target row writer
+     * @param sortColumns   sort column definitions
+     * @param memoryBudget  memory budget in bytes
+     * @param tempDirectory directory for run files
+     */
+    public SortingRowWriter(final RowWriter target, final String[] sortColumns,
+            final long memoryBudget, final Path tempDirectory) {
+        this.target = target;
+        this.sortColumns = sortColumns.clone();
+        this.tempDirectory = tempDirectory;
+        batchBudget = Math.max(1, memoryBudget / 2);
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "xml2csv-sort");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void writeHeader(final String[] columns) throws IOException {
+        comparator = createComparator(columns, sortColumns);
+        target.writeHeader(columns);
+    }
+
+    @Override
+    public void writeRow(final String[] values) throws IOException {
+        batch.add(values);
+        batchMemory += ROW_OVERHEAD;
+
+        for (final String value : values) {
+            batchMemory += value == null ? 8
+                    : VALUE_OVERHEAD + 2L * value.length();
+        }
+
+        if (batchMemory >= batchBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * Sorted rows cannot be written before all rows are collected so this
+     * does nothing.
+     */
+    @Override
+    public void flush() {
+        // sorted rows are written on close
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (runFiles.isEmpty()) {
+                Collections.sort(batch, comparator);
+
+                for (final String[] row : batch) {
+                    target.writeRow(row);
+                }
+            } else {
+                if (!batch.isEmpty()) {
+                    spill();
+                }
+
+                waitForSpill();
+                merge();
+            }
+        } finally {
+            executor.shutdownNow();
+            batch = null;
+
+            for (final Path runFile : runFiles) {
+                Files.deleteIfExists(runFile);
+            }
+
+            target.close();
+        }
+    }
+
+    /**
+     * Sorts current batch and writes it to run file on background thread.
+     * Waits for previous spill first so at most two batches are held in
+     * memory.
+     *
+     * @throws IOException Thrown if previous spill failed.
+     */
+    private void spill() throws IOException {
+        waitForSpill();
+
+        final List<String[]> rows = batch;
+        final Path runFile =
+                Files.createTempFile(tempDirectory, "xml2csv-sort-", ".tmp");
+        runFiles.add(runFile);
+        batch = new ArrayList<>(rows.size());
+        batchMemory = 0;
+
+        pendingSpill = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                Collections.sort(rows, comparator);
+
+                try (final DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(
+                                        runFile), 65_536))) {
+                    for (final String[] row : rows) {
+                        RunFile.writeRow(output, row);
+                    }
+                }
+
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Waits for running spill to finish.
+     *
+     * @throws IOException Thrown if the spill failed.
+     */
+    private void waitForSpill() throws IOException {
+        if (pendingSpill == null) {
+            return;
+        }
+
+        try {
+            pendingSpill.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while sorting rows", ex);
+        } catch (final ExecutionException ex) {
+            throw new IOException("Failed to sort rows", ex.getCause());
+        } finally {
+            pendingSpill = null;
+        }
+    }
+
+    /**
+     * Merges run files and writes rows to target row writer. If there are
+     * more than {@link #MAX_MERGE_RUNS} run files, groups of consecutive run
+     * files are merged into new run files first, so the order of runs and
+     * thus stability of the sort is preserved.
+     *
+     * @throws IOException Thrown if problem occurred while reading or writing
+     *                     run files or writing rows.
+     */
+    private void merge() throws IOException {
+        while (runFiles.size() > MAX_MERGE_RUNS) {
+            final List<Path> inputs = new ArrayList<>(runFiles);
+
+            for (int start = 0; start < inputs.size();
+                    start += MAX_MERGE_RUNS) {
+                final Path mergedFile = Files.createTempFile(tempDirectory,
+                        "xml2csv-sort-", ".tmp");
+                runFiles.add(mergedFile);
+
+                try (final DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(
+                                        mergedFile), 65_536))) {
+                    mergeRuns(inputs.subList(start, Math.min(inputs.size(),
+                            start + MAX_MERGE_RUNS)), output);
+                }
+            }
+
+            for (final Path runFile : inputs) {
+                Files.deleteIfExists(runFile);
+            }
+
+            runFiles.subList(0, inputs.size()).clear();
+        }
+
+        mergeRuns(runFiles, null);
+    }
+
+    /**
+     * Merges run files. Rows with equal sort values are taken from earlier
+     * runs first to keep the sort stable.
+     *
+     * @param files  run files in order of creation
+     * @param output output stream of merged run file or null if rows should
+     *               be written to target row writer
+     *
+     * @throws IOException Thrown if problem occurred while reading run files
+     *                     or writing rows.
+     */
+    private void mergeRuns(final List<Path> files,
+            final DataOutputStream output) throws IOException {
+        final PriorityQueue<RunReader> queue = new PriorityQueue<>(
+                files.size(), new Comparator<RunReader>() {
+                    @Override
+                    public int compare(final RunReader o1,
+                            final RunReader o2) {
+                        final int result = comparator.compare(o1.row, o2.row);
+
+                        return result != 0 ? result
+                                : Integer.compare(o1.index, o2.index);
+                    }
+                });
+
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                final RunReader reader = new RunReader(files.get(i), i);
+
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                final RunReader reader = queue.poll();
+
+                if (output == null) {
+                    target.writeRow(reader.row);
+                } else {
+                    RunFile.writeRow(output, reader.row);
+                }
+
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (final RunReader reader : queue) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Creates comparator of rows.
+     *
+     * @param header      header columns
+     * @param sortColumns sort column definitions
+     *
+     * @return comparator
+     */
+    private static Comparator<String[]> createComparator(
+            final String[] header, final String[] sortColumns) {
+        final int[] indexes = new int[sortColumns.length];
+        final boolean[] numeric = new boolean[sortColumns.length];
+        final boolean[] descending = new boolean[sortColumns.length];
+
+        for (int i = 0; i < sortColumns.length; i++) {
+            final String[] parts = sortColumns[i].split(":");
+
+            for (int j = 1; j < parts.length; j++) {
+                switch (parts[j].toLowerCase(Locale.ENGLISH)) {
+                    case "num":
+                        numeric[i] = true;
+
+                        break;
+                    case "desc":
+                        descending[i] = true;
+
+                        break;
+                    case "asc":
+                        break;
+                    default:
+                        throw new IllegalArgumentException(
+                                MessageFormat.format(
+                                        "Unsupported sort modifier {0}",
+                                        parts[j]));
+                }
+            }
+
+            indexes[i] = Arrays.asList(header).indexOf(parts[0]);
+
+            if (indexes[i] == -1) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Sort column {0} is not an output column", parts[0]));
+            }
+        }
+
+        return new Comparator<String[]>() {
+            @Override
+            public int compare(final String[] o1, final String[] o2) {
+                for (int i = 0; i < indexes.length; i++) {
+                    final int result = compareValues(o1[indexes[i]],
+                            o2[indexes[i]], numeric[i]);
+
+                    if (result != 0) {
+                        return descending[i] ? -result : result;
+                    }
+                }
+
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Compares two values.
+     *
+     * @param value1  first value
+     * @param value2  second value
+     * @param numeric whether values should be compared as numbers
+     *
+     * @return comparison result
+     */
+    private static int compareValues(final String value1, final String value2,
+            final boolean numeric) {
+        if (value1 == null || value2 == null) {
+            return value1 == null ? (value2 == null ? 0 : -1) : 1;
+        } else if (numeric) {
+            final double number1 = FilterExpression.parseNumber(value1);
+            final double number2 = FilterExpression.parseNumber(value2);
+
+            if (Double.isNaN(number1) || Double.isNaN(number2)) {
+                return Double.isNaN(number1)
+                        ? (Double.isNaN(number2) ? value1.compareTo(value2) : 1)
+                        : -1;
+            }
+
+            return Double.compare(number1, number2);
+        } else {
+            return value1.compareTo(value2);
+        }
+    }
+
+    /**
+     * Sequential reader of run file.
+     */
+    private static class RunReader {
+
+        /**
+         * Input stream.
+         */
+        private final DataInputStream input;
+        /**
+         * Index of the run.
+         */
+        private final int index;
+        /**
+         * Current row.
+         */
+        private String[] row;
+
+        /**
+         * Creates new instance of RunReader.
+         *
+         * @param file  run file
+         * @param index index of the run
+         *
+         * @throws IOException Thrown if problem occurred while opening file.
+         */
+        RunReader(final Path file, final int index) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file), 65_536));
+            this.index = index;
+        }
+
+        /**
+         * Reads next row.
+         *
+         * @return true if row was read, false at end of file
+         *
+         * @throws IOException Thrown if problem occurred while reading.
+         */
+        boolean next() throws IOException {
+            row = RunFile.readRow(input);
+
+            return row != null;
+        }
+
+        /**
+         * Closes the reader.
+         *
+         * @throws IOException Thrown if problem occurred while closing.
+         */
+        void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Aho-Corasick automaton that checks whether a value contains any of given
+ * keywords in single pass over the value. Transitions are stored in open
+ * addressing hash table keyed by state and character, transitions from the
+ * root state are stored in dense array. Empty keywords are ignored.
+ *
+ * @author fordfrog
+ */
+public class SubstringMatcher {
+
+    /**
+     * Marker of free slot in {@link #keys}.
+     */
+    private static final long FREE = -1;
+    /**
+     * Transitions from the root state indexed by character, 0 if there is no
+     * transition.
+     */
+    private final int[] rootTransitions = new int[Character.MAX_VALUE + 1];
+    /**
+     * Keys of transitions (state and character) from non-root states.
+     */
+    private final long[] keys;
+    /**
+     * Target states of transitions in {@link #keys}.
+     */
+    private final int[] targets;
+    /**
+     * Number of transitions in {@link #keys}.
+     */
+    private int transitionCount;
+    /**
+     * Failure links of states.
+     */
+    private int[] failures;
+    /**
+     * Whether any keyword ends in the state or in one of states on its
+     * failure chain.
+     */
+    private boolean[] outputs;
+    /**
+     * Number of states.
+     */
+    private int stateCount = 1;
+
+    /**
+     * Creates new instance of SubstringMatcher.
+     *
+     * @param keywords collection of keywords
+     */
+    public SubstringMatcher(final Collection<String> keywords) {
+        int totalLength = 0;
+
+        for (final String keyword : keywords) {
+            totalLength += keyword.length();
+        }
+
+        keys = new long[tableSize(totalLength)];
+        Arrays.fill(keys, FREE);
+        targets = new int[keys.length];
+        outputs = new boolean[totalLength + 1];
+
+        for (final String keyword : keywords) {
+            addKeyword(keyword);
+        }
+
+        computeFailures();
+    }
+
+    /**
+     * Checks whether the value contains any of the keywords.
+     *
+     * @param value value
+     *
+     * @return true if the value contains at least one keyword, otherwise false
+     */
+    public boolean matches(final CharSequence value) {
+        int state = 0;
+
+        for (int i = 0; i < value.length(); i++) {
+            state = next(state, value.charAt(i));
+
+            if (outputs[state]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns state after reading the character, following failure links if
+     * needed.
+     *
+     * @param state current state
+     * @param chr   character
+     *
+     * @return next state
+     */
+    private int next(final int state, final char chr) {
+        int current = state;
+
+        while (current != 0) {
+            final int target = getTransition(current, chr);
+
+            if (target != 0) {
+                return target;
+            }
+
+            current = failures[current];
+        }
+
+        return rootTransitions[chr];
+    }
+
+    /**
+     * Adds keyword to the trie.
+     *
+     * @param keyword keyword
+     */
+    private void addKeyword(final String keyword) {
+        if (keyword.isEmpty()) {
+            return;
+        }
+
+        int state = 0;
+
+        for (int i = 0; i < keyword.length(); i++) {
+            final char chr = keyword.charAt(i);
+            int target = state == 0 ? rootTransitions[chr]
+                    : getTransition(state, chr);
+
+            if (target == 0) {
+                target = stateCount++;
+
+                if (state == 0) {
+                    rootTransitions[chr] = target;
+                } else {
+                    putTransition(state, chr, target);
+                }
+            }
+
+            state = target;
+        }
+
+        outputs[state] = true;
+    }
+
+    /**
+     * Computes failure links of all states in breadth-first order and
+     * propagates outputs along failure links. Transitions are first grouped
+     * by source state so that children of each state can be enumerated.
+     */
+    private void computeFailures() {
+        failures = new int[stateCount];
+        outputs = Arrays.copyOf(outputs, stateCount);
+
+        final int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+
+        for (final int target : rootTransitions) {
+            if (target != 0) {
+                queue[tail++] = target;
+            }
+        }
+
+        final int[] childIndex = new int[stateCount + 1];
+
+        for (final long key : keys) {
+            if (key != FREE) {
+                childIndex[(int) (key >>> 16) + 1]++;
+            }
+        }
+
+        for (int i = 0; i < stateCount; i++) {
+            childIndex[i + 1] += childIndex[i];
+        }
+
+        final int[] positions = Arrays.copyOf(childIndex, stateCount);
+        final int[] childStates = new int[transitionCount];
+        final char[] childChars = new char[transitionCount];
+
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                final int position = positions[(int) (keys[i] >>> 16)]++;
+                childStates[position] = targets[i];
+                childChars[position] = (char) keys[i];
+            }
+        }
+
+        while (head < tail) {
+            final int state = queue[head++];
+
+            for (int i = childIndex[state]; i < childIndex[state + 1]; i++) {
+                final int child = childStates[i];
+                failures[child] = next(failures[state], childChars[i]);
+                outputs[child] |= outputs[failures[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /**
+     * Returns target of transition from non-root state.
+     *
+     * @param state state
+     * @param chr   character
+     *
+     * @return target state or 0 if there is no transition
+     */
+    private int getTransition(final int state, final char chr) {
+        final long key = ((long) state << 16) | chr;
+        final int mask = keys.length - 1;
+
+        for (int slot = hash(key) & mask;; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return targets[slot];
+            } else if (keys[slot] == FREE) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Stores transition from non-root state.
+     *
+     * @param state  state
+     * @param chr    character
+     * @param target target state
+     */
+    private void putTransition(final int state, final char chr,
+            final int target) {
+        final long key = ((long) state << 16) | chr;
+        final int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+
+        while (keys[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        targets[slot] = target;
+        transitionCount++;
+    }
+
+    /**
+     * Computes hash of transition key.
+     *
+     * @param key transition key
+     *
+     * @return hash
+     */
+    private static int hash(final long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+
+        return (int) hash;
+    }
+
+    /**
+     * Computes size of transition table so that load factor does not exceed
+     * one half.
+     *
+     * @param transitions maximum number of transitions
+     *
+     * @return table size (power of two)
+     */
+    private static int tableSize(final int transitions) {
+        int size = 16;
+
+        while (size < transitions * 2L) {
+            size <<= 1;
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+/**
+ * Scanner of XML characters recognizing element tags, so that position of
+ * elements can be found without parsing the document. Characters inside
+ * attribute values, comments, CDATA sections, processing instructions and
+ * document type declaration are not recognized as tags. Elements added by
+ * entities declared in document type declaration are not recognized.
+ *
+ * @author fordfrog
+ */
+class TagScanner {
+
+    /**
+     * Result of scanning character that is not significant.
+     */
+    static final int NONE = 0;
+    /**
+     * Result of scanning the first character of element name in start tag or
+     * empty element tag. The tag starts at the previous character.
+     */
+    static final int START = 1;
+    /**
+     * Result of scanning the last character of end tag or empty element tag.
+     */
+    static final int END = 2;
+    /**
+     * Scanner state: text content.
+     */
+    private static final int TEXT = 0;
+    /**
+     * Scanner state: after '&lt;'.
+     */
+    private static final int TAG = 1;
+    /**
+     * Scanner state: inside start tag.
+     */
+    private static final int START_TAG = 2;
+    /**
+     * Scanner state: inside attribute value.
+     */
+    private static final int ATTRIBUTE = 3;
+    /**
+     * Scanner state: inside end tag.
+     */
+    private static final int END_TAG = 4;
+    /**
+     * Scanner state: inside processing instruction.
+     */
+    private static final int INSTRUCTION = 5;
+    /**
+     * Scanner state: after '&lt;!'.
+     */
+    private static final int DECLARATION = 6;
+    /**
+     * Scanner state: inside comment.
+     */
+    private static final int COMMENT = 7;
+    /**
+     * Scanner state: inside CDATA section.
+     */
+    private static final int CDATA = 8;
+    /**
+     * Scanner state: inside document type declaration.
+     */
+    private static final int DOCTYPE = 9;
+    /**
+     * Characters following '&lt;!' used to recognize the declaration.
+     */
+    private final StringBuilder declaration = new StringBuilder(7);
+    /**
+     * Scanner state.
+     */
+    private int state = TEXT;
+    /**
+     * Quote character of current attribute value, or brackets depth of
+     * document type declaration.
+     */
+    private int quote;
+    /**
+     * Previous character.
+     */
+    private char previous;
+    /**
+     * Character before {@link #previous}.
+     */
+    private char beforePrevious;
+
+    /**
+     * Scans next character.
+     *
+     * @param chr character
+     *
+     * @return {@link #START}, {@link #END} or {@link #NONE}
+     */
+    int scan(final char chr) {
+        int result = NONE;
+
+        switch (state) {
+            case TEXT:
+                if (chr == '<') {
+                    state = TAG;
+                }
+
+                break;
+            case TAG:
+                if (chr == '/') {
+                    state = END_TAG;
+                } else if (chr == '?') {
+                    state = INSTRUCTION;
+                } else if (chr == '!') {
+                    declaration.setLength(0);
+                    state = DECLARATION;
+                } else {
+                    result = START;
+                    state = START_TAG;
+                }
+
+                break;
+            case START_TAG:
+                if (chr == '"' || chr == '\'') {
+                    quote = chr;
+                    state = ATTRIBUTE;
+                } else if (chr == '>') {
+                    if (previous == '/') {
+                        result = END;
+                    }
+
+                    state = TEXT;
+                }
+
+                break;
+            case ATTRIBUTE:
+                if (chr == quote) {
+                    state = START_TAG;
+                }
+
+                break;
+            case END_TAG:
+                if (chr == '>') {
+                    result = END;
+                    state = TEXT;
+                }
+
+                break;
+            case INSTRUCTION:
+                if (chr == '>' && previous == '?') {
+                    state = TEXT;
+                }
+
+                break;
+            case DECLARATION:
+                declaration.append(chr);
+
+                if ("--".contentEquals(declaration)
+                        || "[CDATA[".contentEquals(declaration)) {
+                    state = declaration.length() == 2 ? COMMENT : CDATA;
+                    // characters of the start cannot be part of the end
+                    previous = 0;
+
+                    return NONE;
+                } else if (declaration.length() == 7) {
+                    quote = 0;
+                    state = DOCTYPE;
+                }
+
+                break;
+            case COMMENT:
+                if (chr == '>' && previous == '-' && beforePrevious == '-') {
+                    state = TEXT;
+                }
+
+                break;
+            case CDATA:
+                if (chr == '>' && previous == ']' && beforePrevious == ']') {
+                    state = TEXT;
+                }
+
+                break;
+            case DOCTYPE:
+                if (chr == '[') {
+                    quote++;
+                } else if (chr == ']') {
+                    quote--;
+                } else if (chr == '>' && quote == 0) {
+                    state = TEXT;
+                }
+
+                break;
+            default:
+                throw new IllegalStateException("Unsupported state " + state);
+        }
+
+        beforePrevious = previous;
+        previous = chr;
+
+        return result;
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of values of single column. It is intended for columns with
+ * low number of distinct values. Values are looked up directly by their
+ * characters so no string is created if the value is already cached. Each
+ * cached value also holds precomputed result of filters and remappings that
+ * are defined on the column, so repeated values are resolved without
+ * evaluating the filters and remappings again.
+ * <p>
+ * The cache is direct mapped, value that hashes to an occupied slot replaces
+ * the value in that slot. If values of any of the filters or remappings are
+ * replaced, the cache is cleared so the new values are applied.
+ *
+ * @author fordfrog
+ */
+public class ValueCache {
+
+    /**
+     * Column name.
+     */
+    private final String column;
+    /**
+     * Filters defined on the column.
+     */
+    private final Collection<Filter> filters;
+    /**
+     * Remappings defined on the column.
+     */
+    private final Collection<Remapping> remappings;
+    /**
+     * Cache slots.
+     */
+    private final Entry[] entries;
+    /**
+     * Mask used to compute slot index from hash.
+     */
+    private final int mask;
+    /**
+     * Sum of versions of {@link #filters} and {@link #remappings} that the
+     * cached entries were computed with.
+     */
+    private long version = -1;
+
+    /**
+     * Creates new instance of ValueCache.
+     *
+     * @param column     column name
+     * @param maxSize    maximum number of cached values
+     * @param filters    optional filters, only filters defined on the column
+     *                   are used
+     * @param remappings optional remappings, only remappings defined on the
+     *                   column are used
+     */
+    public ValueCache(final String column, final int maxSize,
+            final Filters filters, final Remappings remappings) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException(
+                    "Cache size must be greater than zero.");
+        }
+
+        this.column = column;
+        this.filters = new ArrayList<>(1);
+        this.remappings = new ArrayList<>(1);
+
+        if (filters != null) {
+            for (final Filter filter : filters.getFilters()) {
+                if (column.equals(filter.getColumn())) {
+                    this.filters.add(filter);
+                }
+            }
+        }
+
+        if (remappings != null) {
+            for (final Remapping remapping : remappings.getRemappings()) {
+                if (column.equals(remapping.getColumn())) {
+                    this.remappings.add(remapping);
+                }
+            }
+        }
+
+        final int size = Integer.highestOneBit(Math.max(1, maxSize - 1)) << 1;
+        entries = new Entry[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Getter for {@link #column}.
+     *
+     * @return {@link #column}
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns cache entry for the characters, creating it if the value is not
+     * cached yet.
+     *
+     * @param chars characters
+     * @param start start index (inclusive)
+     * @param end   end index (exclusive)
+     *
+     * @return cache entry
+     */
+    public Entry get(final CharSequence chars, final int start, final int end) {
+        int hash = 0;
+
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+
+        final long currentVersion = getCurrentVersion();
+
+        if (currentVersion != version) {
+            Arrays.fill(entries, null);
+            version = currentVersion;
+        }
+
+        final int index = (hash ^ (hash >>> 16)) & mask;
+        final Entry entry = entries[index];
+
+        if (entry != null && entry.hash == hash
+                && entry.matches(chars, start, end)) {
+            return entry;
+        }
+
+        final Entry newEntry =
+                createEntry(chars.subSequence(start, end).toString(), hash);
+        entries[index] = newEntry;
+
+        return newEntry;
+    }
+
+    /**
+     * Computes sum of versions of {@link #filters} and {@link #remappings}.
+     * Versions only grow, so the sum changes whenever any of them is replaced.
+     *
+     * @return sum of versions
+     */
+    private long getCurrentVersion() {
+        long result = 0;
+
+        for (final Filter filter : filters) {
+            result += filter.getVersion();
+        }
+
+        for (final Remapping remapping : remappings) {
+            result += remapping.getVersion();
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates cache entry and evaluates filters and remappings for the value.
+     *
+     * @param value value
+     * @param hash  hash of the value
+     *
+     * @return cache entry
+     */
+    private Entry createEntry(final String value, final int hash) {
+        final Map<String, String> itemValues = new HashMap<>(2);
+        itemValues.put(column, value);
+
+        Filter rejectingFilter = null;
+
+        for (final Filter filter : filters) {
+            if (!filter.matchesFilter(itemValues)) {
+                rejectingFilter = filter;
+
+                break;
+            }
+        }
+
+        final List<Remapping> hits = new ArrayList<>(remappings.size());
+
+        for (final Remapping remapping : remappings) {
+            if (remapping.replaceValues(itemValues)) {
+                hits.add(remapping);
+            }
+        }
+
+        return new Entry(value, hash, rejectingFilter, hits.isEmpty() ? null
+                : itemValues.get(column), hits);
+    }
+
+    /**
+     * Cached value together with precomputed filter and remapping results.
+     */
+    public static class Entry {
+
+        /**
+         * Cached value.
+         */
+        private final String value;
+        /**
+         * Hash of the value.
+         */
+        private final int hash;
+        /**
+         * First filter that excludes items with the value, or null if the
+         * value matches all filters.
+         */
+        private final Filter rejectingFilter;
+        /**
+         * Value after remapping, or null if the value is not remapped.
+         */
+        private final String remappedValue;
+        /**
+         * Remappings that replaced the value.
+         */
+        private final List<Remapping> remapHits;
+
+        /**
+         * Creates new instance of Entry.
+         *
+         * @param value           cached value
+         * @param hash            hash of the value
+         * @param rejectingFilter first filter that excludes the value or null
+         * @param remappedValue   value after remapping or null
+         * @param remapHits       remappings that replaced the value
+         */
+        Entry(final String value, final int hash, final Filter rejectingFilter,
+                final String remappedValue, final List<Remapping> remapHits) {
+            this.value = value;
+            this.hash = hash;
+            this.rejectingFilter = rejectingFilter;
+            this.remappedValue = remappedValue;
+            this.remapHits = Collections.unmodifiableList(remapHits);
+        }
+
+        /**
+         * Getter for {@link #value}.
+         *
+         * @return {@link #value}
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Getter for {@link #rejectingFilter}.
+         *
+         * @return {@link #rejectingFilter}
+         */
+        public Filter getRejectingFilter() {
+            return rejectingFilter;
+        }
+
+        /**
+         * Getter for {@link #remappedValue}.
+         *
+         * @return {@link #remappedValue}
+         */
+        public String getRemappedValue() {
+            return remappedValue;
+        }
+
+        /**
+         * Getter for {@link #remapHits}.
+         *
+         * @return {@link #remapHits}
+         */
+        public List<Remapping> getRemapHits() {
+            return remapHits;
+        }
+
+        /**
+         * Checks whether the value equals to the characters.
+         *
+         * @param chars characters
+         * @param start start index (inclusive)
+         * @param end   end index (exclusive)
+         *
+         * @return true if the value equals to the characters, otherwise false
+         */
+        private boolean matches(final CharSequence chars, final int start,
+                final int end) {
+            if (value.length() != end - start) {
+                return false;
+            }
+
+            for (int i = start; i < end; i++) {
+                if (value.charAt(i - start) != chars.charAt(i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
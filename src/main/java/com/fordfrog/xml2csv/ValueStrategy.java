@@ -0,0 +1,134 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.text.MessageFormat;
+import java.util.Locale;
+
+/**
+ * Strategy of combining multiple values of single column within one item.
+ *
+ * @author fordfrog
+ */
+public class ValueStrategy {
+
+    /**
+     * Types of strategies.
+     */
+    public enum Type {
+
+        /**
+         * Value of the first element is used.
+         */
+        FIRST,
+        /**
+         * Value of the last element is used.
+         */
+        LAST,
+        /**
+         * Values of all elements are joined using delimiter.
+         */
+        JOIN,
+        /**
+         * Number of elements is used.
+         */
+        COUNT,
+        /**
+         * Distinct values are joined using delimiter in order of their first
+         * occurrence.
+         */
+        DISTINCT,
+        /**
+         * Each value produces separate row.
+         */
+        EXPLODE
+    }
+
+    /**
+     * Strategy that uses value of the first element.
+     */
+    public static final ValueStrategy FIRST =
+            new ValueStrategy(Type.FIRST, null);
+    /**
+     * Strategy type.
+     */
+    private final Type type;
+    /**
+     * Delimiter used by {@link Type#JOIN} and {@link Type#DISTINCT}.
+     */
+    private final String delimiter;
+
+    /**
+     * Creates new instance of ValueStrategy.
+     *
+     * @param type      strategy type
+     * @param delimiter delimiter used by {@link Type#JOIN} and
+     *                  {@link Type#DISTINCT}, ignored by other types
+     */
+    public ValueStrategy(final Type type, final String delimiter) {
+        this.type = type;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Parses strategy in format <code>type[:delimiter]</code>, e.g.
+     * <code>join:|</code>. Default delimiter is <code>, </code>.
+     *
+     * @param strategy strategy string
+     *
+     * @return parsed strategy
+     */
+    public static ValueStrategy parse(final String strategy) {
+        final int index = strategy.indexOf(':');
+        final String typeName = index == -1 ? strategy
+                : strategy.substring(0, index);
+        final Type type;
+
+        try {
+            type = Type.valueOf(typeName.trim().toUpperCase(Locale.ENGLISH));
+        } catch (final IllegalArgumentException ex) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                    "Unsupported value strategy {0}", typeName), ex);
+        }
+
+        return new ValueStrategy(type,
+                index == -1 ? ", " : strategy.substring(index + 1));
+    }
+
+    /**
+     * Getter for {@link #type}.
+     *
+     * @return {@link #type}
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Getter for {@link #delimiter}.
+     *
+     * @return {@link #delimiter}
+     */
+    public String getDelimiter() {
+        return delimiter;
+    }
+}
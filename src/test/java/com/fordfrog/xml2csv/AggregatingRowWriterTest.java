@@ -0,0 +1,93 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link AggregatingRowWriter}.
+ *
+ * @author fordfrog
+ */
+public class AggregatingRowWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String aggregate(final long memoryBudget) throws IOException {
+        final StringWriter writer = new StringWriter();
+        final Path tempDirectory = folder.getRoot().toPath();
+
+        try (final AggregatingRowWriter rowWriter = new AggregatingRowWriter(
+                new CsvRowWriter(writer, ','), new String[]{"k", "l"},
+                new String[]{"v"}, memoryBudget, tempDirectory)) {
+            rowWriter.writeHeader(new String[]{"v", "k", "l"});
+
+            for (int i = 0; i < 1_000; i++) {
+                rowWriter.writeRow(new String[]{i % 10 == 0 ? "x"
+                    : String.valueOf(i % 7 == 0 ? 0.5 : 1),
+                    "k" + i % 3, i % 2 == 0 ? "even" : null});
+            }
+        }
+
+        Assert.assertEquals(0, tempDirectory.toFile().list().length);
+
+        return writer.toString();
+    }
+
+    @Test
+    public void testAggregate() throws IOException {
+        final String expected = "\"k\",\"l\",\"count\",\"sum(v)\"\n"
+                + "\"k0\",,\"167\",\"155\"\n"
+                + "\"k0\",\"even\",\"167\",\"123.5\"\n"
+                + "\"k1\",,\"167\",\"155\"\n"
+                + "\"k1\",\"even\",\"166\",\"123.5\"\n"
+                + "\"k2\",,\"166\",\"154.5\"\n"
+                + "\"k2\",\"even\",\"167\",\"124.5\"\n";
+
+        Assert.assertEquals(expected, aggregate(1_024L * 1_024L));
+        Assert.assertEquals(expected, aggregate(300));
+        // nearly every row is spilled, so spill files are merged in passes
+        Assert.assertEquals(expected, aggregate(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownColumn() throws IOException {
+        try (final AggregatingRowWriter rowWriter = new AggregatingRowWriter(
+                new CsvRowWriter(new StringWriter(), ','), new String[]{"x"},
+                new String[0], 1_024, folder.getRoot().toPath())) {
+            rowWriter.writeHeader(new String[]{"k"});
+        }
+    }
+
+    @Test
+    public void testFormatNumber() {
+        Assert.assertEquals("3", AggregatingRowWriter.formatNumber(3.0));
+        Assert.assertEquals("-2.5", AggregatingRowWriter.formatNumber(-2.5));
+    }
+}
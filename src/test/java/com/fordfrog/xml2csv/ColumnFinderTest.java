@@ -21,8 +21,14 @@
  */
 package com.fordfrog.xml2csv;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import org.junit.Assert;
 import org.junit.Test;
@@ -43,4 +49,34 @@ public class ColumnFinderTest {
 
         Assert.assertEquals(expected, columns);
     }
+
+    @Test
+    public void testNamespaces() {
+        final String input = "<r xmlns:a=\"urn:a\"><i><a:v>1</a:v><v>2</v>"
+                + "</i></r>";
+
+        final List<String> columns = ColumnFinder.find(
+                new ByteArrayInputStream(input.getBytes(
+                        StandardCharsets.UTF_8)), "/r/i/",
+                Collections.singletonMap("p", "urn:a"));
+
+        Assert.assertEquals(Arrays.asList("p:v", "v"), columns);
+    }
+
+    @Test
+    public void testInvalidNamespace() throws IOException {
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        final PrintStream originalErr = System.err;
+        System.setErr(new PrintStream(errors, true, "UTF-8"));
+
+        try {
+            ColumnFinder.main(new String[]{"missing.xml", "/r/i", "urn:a"});
+        } finally {
+            System.setErr(originalErr);
+        }
+
+        Assert.assertEquals("Namespace must be specified as prefix=uri",
+                new String(errors.toByteArray(), StandardCharsets.UTF_8)
+                .trim());
+    }
 }
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link ComputedColumn}.
+ *
+ * @author fordfrog
+ */
+public class ComputedColumnTest {
+
+    @Test
+    public void testEvaluate() {
+        final Map<String, String> values = new HashMap<>(4);
+        values.put("a/b", "Hello");
+        values.put("d", "20200131");
+        values.put("n", "1234.5");
+
+        Assert.assertEquals("HELLO - x'y", evaluate(
+                "c=concat(upper(a/b), ' - ', 'x''y', missing)", values));
+        Assert.assertEquals("ell", evaluate("c=substring(a/b, 1, 4)", values));
+        Assert.assertEquals("lo", evaluate("c=substring(a/b, 3)", values));
+        Assert.assertEquals("", evaluate("c=substring(a/b, 9, 12)", values));
+        Assert.assertEquals("2020-01-31", evaluate(
+                "c=date(d, 'yyyyMMdd', \"yyyy-MM-dd\")", values));
+        Assert.assertEquals("1,234.50",
+                evaluate("c=number(n, '#,##0.00')", values));
+        Assert.assertNull(evaluate("c=number(a/b, '0')", values));
+        Assert.assertNull(evaluate("c=date(a/b, 'yyyyMMdd', 'yyyy')", values));
+        Assert.assertNull(evaluate("c=lower(missing)", values));
+        Assert.assertEquals("c", new ComputedColumn(" c = d").getName());
+    }
+
+    @Test
+    public void testSplitColumns() {
+        Assert.assertArrayEquals(new String[]{"a", "b=concat(a, ',', c)", "d"},
+                ComputedColumn.splitColumns("a,b=concat(a, ',', c),d"));
+        Assert.assertArrayEquals(new String[]{"a", "b"},
+                ComputedColumn.splitColumns("a,b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFunction() {
+        new ComputedColumn("c=reverse(a)");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidArguments() {
+        new ComputedColumn("c=substring(a)");
+    }
+
+    /**
+     * Compiles and evaluates computed column.
+     *
+     * @param definition column definition
+     * @param values     map of row columns and values
+     *
+     * @return computed value
+     */
+    private static String evaluate(final String definition,
+            final Map<String, String> values) {
+        return new ComputedColumn(definition).evaluate(values);
+    }
+}
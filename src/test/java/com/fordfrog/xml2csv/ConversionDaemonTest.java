@@ -0,0 +1,162 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link ConversionDaemon}.
+ *
+ * @author fordfrog
+ */
+public class ConversionDaemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private ConversionDaemon daemon;
+    private String responseBody;
+
+    @Before
+    public void setUp() throws IOException {
+        daemon = new ConversionDaemon(0, 2, 4);
+        daemon.start();
+    }
+
+    @After
+    public void tearDown() {
+        daemon.stop();
+    }
+
+    private int post(final String body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + daemon.getPort() + "/convert").
+                openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+
+        try (final OutputStream outputStream =
+                connection.getOutputStream()) {
+            outputStream.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        final int status = connection.getResponseCode();
+
+        try (final InputStream inputStream = status == 200
+                ? connection.getInputStream() : connection.getErrorStream()) {
+            final ByteArrayOutputStream response =
+                    new ByteArrayOutputStream();
+            int b;
+
+            while ((b = inputStream.read()) != -1) {
+                response.write(b);
+            }
+
+            responseBody = new String(response.toByteArray(),
+                    StandardCharsets.UTF_8);
+        }
+
+        return status;
+    }
+
+    @Test
+    public void testConvert() throws IOException {
+        final Path inputFile = folder.newFile("input.xml").toPath();
+        Files.write(inputFile, "<r><i><a>1</a></i><i><a>2</a></i></r>".
+                getBytes(StandardCharsets.UTF_8));
+
+        final Path valuesFile = folder.newFile("values.txt").toPath();
+        Files.write(valuesFile, "2\n".getBytes(StandardCharsets.UTF_8));
+
+        final Path outputFile = folder.getRoot().toPath().resolve("out.csv");
+        final String request = "--input\n" + inputFile + "\n--output\n"
+                + outputFile + "\n--item-name\n/r/i\n--columns\na\n"
+                + "--filter-column\na\n--filter-values\n" + valuesFile + "\n";
+
+        Assert.assertEquals(200, post(request));
+        Assert.assertEquals("\"a\"\n\"2\"\n", new String(
+                Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+
+        Files.write(valuesFile, "1\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(valuesFile, FileTime.
+                fromMillis(System.currentTimeMillis() + 10_000));
+
+        Assert.assertEquals(200, post(request));
+        Assert.assertEquals("\"a\"\n\"1\"\n", new String(
+                Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testConvertSubstringFilter() throws IOException {
+        final Path inputFile = folder.newFile("input.xml").toPath();
+        Files.write(inputFile, "<r><i><a>abc</a></i><i><a>xyz</a></i></r>".
+                getBytes(StandardCharsets.UTF_8));
+
+        final Path valuesFile = folder.newFile("values.txt").toPath();
+        Files.write(valuesFile, "b\n".getBytes(StandardCharsets.UTF_8));
+
+        final Path outputFile = folder.getRoot().toPath().resolve("out.csv");
+        final String request = "--input\n" + inputFile + "\n--output\n"
+                + outputFile + "\n--item-name\n/r/i\n--columns\na\n"
+                + "--filter-column\na\n--filter-values\n" + valuesFile
+                + "\n--filter-contains\n";
+
+        for (int i = 0; i < 2; i++) {
+            Assert.assertEquals(200, post(request));
+            Assert.assertEquals("\"a\"\n\"abc\"\n", new String(
+                    Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+        }
+
+        Files.write(valuesFile, "y\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(valuesFile, FileTime.
+                fromMillis(System.currentTimeMillis() + 10_000));
+
+        Assert.assertEquals(200, post(request));
+        Assert.assertEquals("\"a\"\n\"xyz\"\n", new String(
+                Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testInvalidRequest() throws IOException {
+        Assert.assertEquals(400, post(""));
+        Assert.assertEquals(400, post("--input\nin.xml\n"));
+        Assert.assertEquals(400, post("--input\n-\n--output\n-\n--columns\na\n"
+                + "--item-name\n/r/i\n"));
+        Assert.assertEquals(400, post("--filter-values\nvalues.txt\n"));
+        Assert.assertEquals("--filter-column must be specified first\n",
+                responseBody);
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Guards memory characteristics of the conversion. Bytes allocated per item
+ * are measured using thread allocation counters and heap retained during the
+ * conversion is sampled after garbage collection. Allocation threshold is
+ * roughly twice the values measured when the tests were written, so it fails
+ * on regressions like per-value copies, not on noise. Retained heap threshold
+ * leaves more room because heap usage reported after garbage collection
+ * depends on the collector, but it still fails once a few percent of the
+ * input are buffered.
+ *
+ * @author fordfrog
+ */
+public class ConvertorMemoryTest {
+
+    /**
+     * Number of items in generated input.
+     */
+    private static final int ITEMS = 50_000;
+    /**
+     * Output columns.
+     */
+    private static final String[] COLUMNS = {"id", "name", "country", "tag"};
+    /**
+     * Maximum number of bytes allocated per item. The conversions allocated
+     * 630 to 880 bytes per item when the test was written.
+     */
+    private static final long MAX_BYTES_PER_ITEM = 1_536;
+    /**
+     * Maximum heap retained during the conversion. The generated input has
+     * about 7.5MB, the conversion retained about 18KB when the test was
+     * written.
+     */
+    private static final long MAX_RETAINED_BYTES = 256L * 1_024L;
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writer that discards all output.
+     */
+    private static class NullWriter extends Writer {
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+        }
+
+        @Override
+        public void write(final int c) {
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Writer that discards all output and samples used heap after garbage
+     * collection every specified number of rows.
+     */
+    private static class HeapSamplingWriter extends NullWriter {
+
+        /**
+         * Number of rows between samples.
+         */
+        private final int interval;
+        /**
+         * Number of rows written.
+         */
+        private int rows;
+        /**
+         * Maximum sampled heap usage.
+         */
+        private long peak;
+
+        HeapSamplingWriter(final int interval) {
+            this.interval = interval;
+        }
+
+        @Override
+        public void write(final int c) {
+            if (c == '\n' && ++rows % interval == 0) {
+                peak = Math.max(peak, usedHeapAfterGc());
+            }
+        }
+    }
+
+    /**
+     * Generates input file with {@link #ITEMS} items.
+     *
+     * @return input file path
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private Path generateInput() throws IOException {
+        final Path file = folder.newFile("input.xml").toPath();
+        final String[] countries = {"CZ", "SK", "PL", "DE"};
+
+        try (final OutputStream outputStream =
+                new BufferedOutputStream(Files.newOutputStream(file));
+                final Writer writer = new OutputStreamWriter(outputStream,
+                        Charset.forName("UTF-8"))) {
+            writer.write("<root>");
+
+            for (int i = 0; i < ITEMS; i++) {
+                writer.write("<item><id>");
+                writer.write(String.valueOf(i));
+                writer.write("</id><name>  Name of item ");
+                writer.write(String.valueOf(i));
+                writer.write("  </name><country>");
+                writer.write(countries[i % countries.length]);
+                writer.write("</country><tag>first</tag><tag>second</tag>"
+                        + "<ignored><deep>value</deep></ignored></item>\n");
+            }
+
+            writer.write("</root>");
+        }
+
+        return file;
+    }
+
+    /**
+     * Converts the input file.
+     *
+     * @param input      input file path
+     * @param writer     output writer
+     * @param filters    filters or null
+     * @param remappings remappings or null
+     * @param trim       whether values should be trimmed
+     * @param join       whether multiple values should be joined
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private static void convert(final Path input, final Writer writer,
+            final Filters filters, final Remappings remappings,
+            final boolean trim, final boolean join) throws IOException {
+        try (final InputStream inputStream = Files.newInputStream(input)) {
+            Convertor.convert(inputStream, writer, COLUMNS, filters,
+                    remappings, ',', trim, join, "/root/item");
+        }
+    }
+
+    /**
+     * Converts the input file twice, first to warm up, and returns number of
+     * bytes allocated per item by the second conversion.
+     *
+     * @param input      input file path
+     * @param filters    filters or null
+     * @param remappings remappings or null
+     * @param trim       whether values should be trimmed
+     * @param join       whether multiple values should be joined
+     *
+     * @return allocated bytes per item
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private static long measureAllocation(final Path input,
+            final Filters filters, final Remappings remappings,
+            final boolean trim, final boolean join) throws IOException {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("thread allocation counters are not supported",
+                bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean)
+                .isThreadAllocatedMemoryEnabled());
+
+        final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) bean;
+        final long threadId = Thread.currentThread().getId();
+
+        convert(input, new NullWriter(), filters, remappings, trim, join);
+
+        final long before = threadBean.getThreadAllocatedBytes(threadId);
+        convert(input, new NullWriter(), filters, remappings, trim, join);
+        final long after = threadBean.getThreadAllocatedBytes(threadId);
+
+        return (after - before) / ITEMS;
+    }
+
+    /**
+     * Returns used heap after garbage collection.
+     *
+     * @return used heap in bytes
+     */
+    private static long usedHeapAfterGc() {
+        System.gc();
+
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+                .getUsed();
+    }
+
+    /**
+     * Creates filters including two of the four countries.
+     *
+     * @return filters
+     */
+    private static Filters createFilters() {
+        final Filter filter = new Filter();
+        filter.setColumn("country");
+        filter.setValues(Arrays.asList("CZ", "SK"));
+
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+
+        return filters;
+    }
+
+    /**
+     * Creates remappings of one of the countries.
+     *
+     * @return remappings
+     */
+    private static Remappings createRemappings() {
+        final Remapping remapping = new Remapping();
+        remapping.setColumn("country");
+        remapping.setMap(Collections.singletonMap("CZ", "Czechia"));
+
+        final Remappings remappings = new Remappings();
+        remappings.addRemapping(remapping);
+
+        return remappings;
+    }
+
+    @Test
+    public void testAllocationPlain() throws IOException {
+        final long bytes =
+                measureAllocation(generateInput(), null, null, false, false);
+        Assert.assertTrue("Allocated " + bytes + " bytes per item",
+                bytes <= MAX_BYTES_PER_ITEM);
+    }
+
+    @Test
+    public void testAllocationTrim() throws IOException {
+        final long bytes =
+                measureAllocation(generateInput(), null, null, true, false);
+        Assert.assertTrue("Allocated " + bytes + " bytes per item",
+                bytes <= MAX_BYTES_PER_ITEM);
+    }
+
+    @Test
+    public void testAllocationJoin() throws IOException {
+        final long bytes =
+                measureAllocation(generateInput(), null, null, false, true);
+        Assert.assertTrue("Allocated " + bytes + " bytes per item",
+                bytes <= MAX_BYTES_PER_ITEM);
+    }
+
+    @Test
+    public void testAllocationFilter() throws IOException {
+        final long bytes = measureAllocation(generateInput(), createFilters(),
+                null, false, false);
+        Assert.assertTrue("Allocated " + bytes + " bytes per item",
+                bytes <= MAX_BYTES_PER_ITEM);
+    }
+
+    @Test
+    public void testAllocationRemap() throws IOException {
+        final long bytes = measureAllocation(generateInput(), null,
+                createRemappings(), false, false);
+        Assert.assertTrue("Allocated " + bytes + " bytes per item",
+                bytes <= MAX_BYTES_PER_ITEM);
+    }
+
+    @Test
+    public void testRetainedHeap() throws IOException {
+        final Path input = generateInput();
+        final long baseline = usedHeapAfterGc();
+        final HeapSamplingWriter writer = new HeapSamplingWriter(ITEMS / 10);
+
+        convert(input, writer, createFilters(), createRemappings(), true,
+                true);
+
+        final long retained = writer.peak - baseline;
+
+        Assert.assertTrue("No heap sample was taken", writer.peak > 0);
+        Assert.assertTrue("Retained " + retained + " bytes",
+                retained <= MAX_RETAINED_BYTES);
+    }
+}
@@ -30,12 +30,25 @@ import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class ConvertorTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     String readFile(String path, Charset encoding)
             throws IOException {
         final byte[] encoded = Files.readAllBytes(Paths.get(this.getClass().
@@ -164,4 +177,681 @@ public class ConvertorTest {
 
         Assert.assertEquals(expected, writer.toString());
     }
+
+    @Test
+    public void testResumeFromCheckpoint() throws IOException {
+        final String input = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<x:r xmlns:x=\"urn:x\"><x:items>"
+                + "<i><v>\u017elu\u0165</v></i><i><v>2</v></i>"
+                + "<i><v>3</v></i><i><v>\u010d4</v></i><i><v>5</v></i>"
+                + "</x:items></x:r>";
+        final Path root = folder.getRoot().toPath();
+        final Path inputFile = root.resolve("input.xml");
+        final Path outputFile = root.resolve("output.csv");
+        final Path expectedFile = root.resolve("expected.csv");
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"v"});
+        settings.setItemName("/r/items/i");
+        settings.setCheckpointFile(root.resolve("checkpoint"));
+        settings.setCheckpointInterval(2);
+        settings.setResume(true);
+
+        // simulate failure in the middle of the fourth item
+        Files.write(inputFile, input.substring(0, input.indexOf("\u010d4"))
+                .getBytes(StandardCharsets.UTF_8));
+
+        try {
+            Convertor.convert(inputFile, outputFile, settings);
+            Assert.fail("Conversion of truncated input should fail");
+        } catch (final RuntimeException ex) {
+            Assert.assertTrue(Files.exists(settings.getCheckpointFile()));
+        }
+
+        Files.write(inputFile, input.getBytes(StandardCharsets.UTF_8));
+        Convertor.convert(inputFile, outputFile, settings);
+        Assert.assertFalse(Files.exists(settings.getCheckpointFile()));
+
+        settings.setCheckpointFile(null);
+        Convertor.convert(inputFile, expectedFile, settings);
+
+        Assert.assertEquals("\"v\"\n\"\u017elu\u0165\"\n\"2\"\n\"3\"\n"
+                + "\"\u010d4\"\n\"5\"\n", new String(Files.readAllBytes(
+                                expectedFile), StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(Files.readAllBytes(expectedFile),
+                Files.readAllBytes(outputFile));
+    }
+
+    @Test
+    public void testMetrics() {
+        final Filter filter = new Filter();
+        filter.setColumn("value1");
+        filter.setValues(Arrays.asList("a"));
+        filter.setExclude(true);
+
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+
+        final Remapping remapping = new Remapping();
+        remapping.setColumn("value2");
+        remapping.setMap(Collections.singletonMap("2 ", "two"));
+
+        final Remappings remappings = new Remappings();
+        remappings.addRemapping(remapping);
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"value1", "value2"});
+        settings.setFilters(filters);
+        settings.setRemappings(remappings);
+        settings.setItemName("/root/item");
+        settings.setMetrics(new ConversionMetrics());
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(this.getClass().getResourceAsStream(
+                "/input-multiple.xml"), new CsvRowWriter(writer, ','),
+                settings);
+
+        final ConversionMetrics metrics = settings.getMetrics();
+        Assert.assertEquals("\"value1\",\"value2\"\n\"1\",\"two\"\n",
+                writer.toString());
+        Assert.assertEquals(2, metrics.getItemsRead());
+        Assert.assertEquals(1, metrics.getRowsWritten());
+        Assert.assertEquals(1, metrics.getRowsFiltered());
+        Assert.assertTrue(metrics.getBytesRead() > 0);
+        Assert.assertEquals(Collections.singletonMap("value1", 1L),
+                metrics.getFilterRejections());
+        Assert.assertEquals(Collections.singletonMap("value2", 1L),
+                metrics.getRemapHits());
+    }
+
+    @Test
+    public void testConvertInternedValues() {
+        final String input = "<r><i><c> CZ </c><v>1</v></i><i><c>SK</c>"
+                + "<v>2</v></i><i><c>PL</c><v>3</v></i><i><c>CZ</c><c>SK</c>"
+                + "<v>4</v></i><i><c>CZ</c><v>5</v></i></r>";
+        final Filter filter = new Filter();
+        filter.setColumn("c");
+        filter.setValues(Arrays.asList("PL"));
+        filter.setExclude(true);
+
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+
+        final Remapping remapping = new Remapping();
+        remapping.setColumn("c");
+        remapping.setMap(Collections.singletonMap("CZ", "Czechia"));
+
+        final Remappings remappings = new Remappings();
+        remappings.addRemapping(remapping);
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"c", "v"});
+        settings.setFilters(filters);
+        settings.setRemappings(remappings);
+        settings.setTrim(true);
+        settings.setJoin(true);
+        settings.setItemName("/r/i");
+
+        final Writer expected = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(expected, ','),
+                settings);
+
+        settings.setInternColumns(new String[]{"c"});
+        settings.setInternCacheSize(2);
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"c\",\"v\"\n\"Czechia\",\"1\"\n"
+                + "\"SK\",\"2\"\n\"CZ, SK\",\"4\"\n\"Czechia\",\"5\"\n",
+                expected.toString());
+        Assert.assertEquals(expected.toString(), writer.toString());
+    }
+
+    @Test
+    public void testConvertEarlyRejection() {
+        final String input = "<r><i><h><k>a</k></h><v>1</v><v>1b</v></i>"
+                + "<i><v>2</v><h><k>b</k></h></i><i><h><k>c</k><x/></h>"
+                + "<v>3</v></i><i><v>4</v></i></r>";
+        final Filter filter = new Filter();
+        filter.setColumn("h/k");
+        filter.setValues(Arrays.asList("a", "b"));
+
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"h/k", "v"});
+        settings.setFilters(filters);
+        settings.setItemName("/r/i");
+        settings.setMetrics(new ConversionMetrics());
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"h/k\",\"v\"\n\"a\",\"1\"\n\"b\",\"2\"\n",
+                writer.toString());
+        Assert.assertEquals(4, settings.getMetrics().getItemsRead());
+        Assert.assertEquals(2, settings.getMetrics().getRowsFiltered());
+    }
+
+    @Test
+    public void testConvertFilterExpressions() {
+        final String input = "<r><i><k>a1</k><v>1</v></i><i><k>a2</k><v>20</v>"
+                + "</i><i><k>b</k><v>5</v></i><i><k>a3</k><v>x</v></i></r>";
+        final Filters filters = new Filters();
+        filters.addFilter(new ExpressionFilter("k starts with 'a'"));
+        filters.addFilter(new ExpressionFilter("v < 10 or k = 'a3'"));
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"k", "v"});
+        settings.setFilters(filters);
+        settings.setItemName("/r/i");
+        settings.setMetrics(new ConversionMetrics());
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"k\",\"v\"\n\"a1\",\"1\"\n\"a3\",\"x\"\n",
+                writer.toString());
+        Assert.assertEquals(Long.valueOf(1), settings.getMetrics()
+                .getFilterRejections().get("v < 10 or k = 'a3'"));
+    }
+
+    @Test
+    public void testConvertComputedColumns() {
+        final String input = "<r><i><k>a</k><v>1</v></i><i><k>b</k></i></r>";
+        final Remapping remapping = new Remapping();
+        remapping.setColumn("k");
+        remapping.setMap(Collections.singletonMap("a", "A"));
+
+        final Remappings remappings = new Remappings();
+        remappings.addRemapping(remapping);
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(ComputedColumn.splitColumns(
+                "k,label=concat(k,'-',v),n=number(v,'0.0')"));
+        settings.setRemappings(remappings);
+        settings.setItemName("/r/i");
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"k\",\"label\",\"n\"\n\"A\",\"A-1\",\"1.0\"\n"
+                + "\"b\",\"b-\",\n", writer.toString());
+    }
+
+    @Test
+    public void testConvertValueStrategies() {
+        final String input = "<r><i><a> x </a><a>y</a><a>x</a><b>1</b><b>2</b>"
+                + "<c>p</c><c>q</c></i><i><b>3</b></i></r>";
+        final Map<String, ValueStrategy> strategies = new HashMap<>(4);
+        strategies.put("a", ValueStrategy.parse("distinct:|"));
+        strategies.put("b", ValueStrategy.parse("explode"));
+        strategies.put("c", ValueStrategy.parse("last"));
+        strategies.put("n", ValueStrategy.parse("count"));
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"a", "b", "c", "n"});
+        settings.setItemName("/r/i");
+        settings.setTrim(true);
+        settings.setValueStrategies(strategies);
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"a\",\"b\",\"c\",\"n\"\n"
+                + "\"x|y\",\"1\",\"q\",\"0\"\n"
+                + "\"x|y\",\"2\",\"q\",\"0\"\n"
+                + ",\"3\",,\"0\"\n", writer.toString());
+
+        strategies.clear();
+        strategies.put("a", ValueStrategy.parse("count"));
+        settings.setJoin(true);
+        settings.setJoinDelimiter("/");
+
+        final Writer joinWriter = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(joinWriter, ','),
+                settings);
+
+        Assert.assertEquals("\"a\",\"b\",\"c\",\"n\"\n"
+                + "\"3\",\"1/2\",\"p/q\",\n\"0\",\"3\",,\n",
+                joinWriter.toString());
+    }
+
+    @Test
+    public void testConvertExplodeGroups() {
+        final String input = "<r><o><id>1</id>"
+                + "<l><i><s>A</s><q>2</q></i><i><s>B</s></i></l>"
+                + "<t><g>x</g></t><t><g>y</g></t><t><g>z</g></t></o>"
+                + "<o><id>2</id></o></r>";
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"id", "l/i/s", "l/i/q", "t/g"});
+        settings.setItemName("/r/o");
+        settings.setExplodeGroups(new String[]{"l/i", "t"});
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"id\",\"l/i/s\",\"l/i/q\",\"t/g\"\n"
+                + "\"1\",\"A\",\"2\",\"x\"\n"
+                + "\"1\",\"A\",\"2\",\"y\"\n"
+                + "\"1\",\"A\",\"2\",\"z\"\n"
+                + "\"1\",\"B\",,\"x\"\n"
+                + "\"1\",\"B\",,\"y\"\n"
+                + "\"1\",\"B\",,\"z\"\n"
+                + "\"2\",,,\n", writer.toString());
+
+        settings.setExplodeZip(true);
+
+        final Writer zipWriter = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(zipWriter, ','),
+                settings);
+
+        Assert.assertEquals("\"id\",\"l/i/s\",\"l/i/q\",\"t/g\"\n"
+                + "\"1\",\"A\",\"2\",\"x\"\n"
+                + "\"1\",\"B\",,\"y\"\n"
+                + "\"1\",,,\"z\"\n"
+                + "\"2\",,,\n", zipWriter.toString());
+
+        final Filter filter = new Filter();
+        filter.setColumn("l/i/s");
+        filter.setValues(Arrays.asList("B"));
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+        settings.setFilters(filters);
+        settings.setExplodeZip(false);
+        settings.setExplodeGroups(new String[]{"l/i"});
+
+        final Writer filterWriter = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(filterWriter, ','),
+                settings);
+
+        Assert.assertEquals("\"id\",\"l/i/s\",\"l/i/q\",\"t/g\"\n"
+                + "\"1\",\"B\",,\"x\"\n", filterWriter.toString());
+    }
+
+    @Test
+    public void testConvertMaxValueLength() {
+        final String input = "<r><i><a>  abcdef  </a><b><![CDATA[x\"yz]]>w</b>"
+                + "<c>long unused text</c></i></r>";
+        final Map<String, Integer> maxValueLengths = new HashMap<>(2);
+        maxValueLengths.put("b", 0);
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"a", "b"});
+        settings.setItemName("/r/i");
+        settings.setTrim(true);
+        settings.setMaxValueLength(3);
+        settings.setMaxValueLengths(maxValueLengths);
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"a\",\"b\"\n\"abc\",\"x\"\"yzw\"\n",
+                writer.toString());
+
+        maxValueLengths.put("b", 2);
+
+        final Writer truncatedWriter = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(truncatedWriter,
+                        ','), settings);
+
+        Assert.assertEquals("\"a\",\"b\"\n\"abc\",\"x\"\"\"\n",
+                truncatedWriter.toString());
+    }
+
+    @Test
+    public void testConvertNamespaces() {
+        final String input = "<s:Envelope xmlns:s=\"urn:soap\" "
+                + "xmlns:a=\"urn:a\" xmlns:b=\"urn:b\"><s:Body>"
+                + "<a:item><a:id>1</a:id><b:id>x</b:id><a:v>p</a:v></a:item>"
+                + "<b:item><a:id>2</a:id></b:item>"
+                + "<a:item><b:id>y</b:id><a:id>3</a:id></a:item>"
+                + "</s:Body></s:Envelope>";
+        final Map<String, String> namespaces = new HashMap<>(4);
+        namespaces.put("s", "urn:soap");
+        namespaces.put("x", "urn:a");
+        namespaces.put("y", "urn:b");
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"x:id", "y:id", "v"});
+        settings.setItemName("/s:Envelope/s:Body/x:item");
+        settings.setNamespaces(namespaces);
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"x:id\",\"y:id\",\"v\"\n"
+                + "\"1\",\"x\",\"p\"\n\"3\",\"y\",\n", writer.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConvertUnboundNamespace() {
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"x:id"});
+        settings.setItemName("/r/i");
+
+        Convertor.convert(new ByteArrayInputStream(
+                "<r/>".getBytes(StandardCharsets.UTF_8)),
+                new CsvRowWriter(new StringWriter(), ','), settings);
+    }
+
+    @Test
+    public void testConvertWildcardPaths() {
+        final String input = "<r><item><id>1</id><a><price>5</price></a></item>"
+                + "<g><item><id>2</id><b><c><price>6</price></c></b>"
+                + "<x><name>n2</name></x></item></g>"
+                + "<g><h><item><id>3</id><y><name>n3</name></y></item></h></g>"
+                + "<other><id>4</id></other></r>";
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"id", "//price", "*/name"});
+        settings.setItemName("//item");
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"id\",\"//price\",\"*/name\"\n"
+                + "\"1\",\"5\",\n\"2\",\"6\",\"n2\"\n\"3\",,\"n3\"\n",
+                writer.toString());
+
+        settings.setItemName("/r/*/item");
+
+        final Writer childWriter = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(childWriter, ','),
+                settings);
+
+        Assert.assertEquals("\"id\",\"//price\",\"*/name\"\n"
+                + "\"2\",\"6\",\"n2\"\n", childWriter.toString());
+    }
+
+    @Test
+    public void testConvertIndexed() throws IOException {
+        final StringBuilder sb = new StringBuilder(4_096);
+        sb.append("<r><g>");
+
+        for (int i = 0; i < 100; i++) {
+            if (i % 30 == 29) {
+                sb.append("</g><g>");
+            }
+
+            sb.append("<item><id>").append(i).append("</id><v>&#x20AC;")
+                    .append(i % 7).append("</v></item>");
+        }
+
+        sb.append("</g></r>");
+
+        final Path inputFile = folder.newFile("input.xml").toPath();
+        Files.write(inputFile, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"id", "v"});
+        settings.setItemName("/r/g/item");
+
+        final Filter filter = new Filter();
+        filter.setColumn("v");
+        filter.setValues(Arrays.asList("€3"));
+        filter.setExclude(true);
+
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+        settings.setFilters(filters);
+
+        final Path sequentialFile = folder.newFile("sequential.csv").toPath();
+        Convertor.convert(inputFile, sequentialFile, settings);
+
+        settings.setIndexFile(folder.getRoot().toPath().resolve("input.idx"));
+        settings.setThreads(4);
+
+        final Path indexedFile = folder.newFile("indexed.csv").toPath();
+        Convertor.convert(inputFile, indexedFile, settings);
+
+        Assert.assertArrayEquals(Files.readAllBytes(sequentialFile),
+                Files.readAllBytes(indexedFile));
+        Assert.assertEquals(4, folder.getRoot().list().length);
+
+        settings.setItemRangeStart(10);
+        settings.setItemRangeEnd(12);
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(inputFile, new CsvRowWriter(writer, ','), settings);
+
+        Assert.assertEquals("\"id\",\"v\"\n\"11\",\"€4\"\n",
+                writer.toString());
+
+        settings.setItemRangeStart(200);
+        settings.setItemRangeEnd(Long.MAX_VALUE);
+
+        final Writer emptyWriter = new StringWriter();
+        Convertor.convert(inputFile, new CsvRowWriter(emptyWriter, ','),
+                settings);
+
+        Assert.assertEquals("\"id\",\"v\"\n", emptyWriter.toString());
+    }
+
+    @Test
+    public void testConvertDocuments() {
+        final String input = "\uFEFF<?xml version=\"1.0\"?>\n<r><i><v>1</v>"
+                + "<v><![CDATA[</i></r>]]></v></i><!-- </r> --><i><v/></i></r>"
+                + "\n<?xml version=\"1.0\"?><r a=\"/>\"><i><v>2</v></i></r>"
+                + "<r><i><v>3</v></i></r>\n";
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"v"});
+        settings.setItemName("/r/i");
+        settings.setJoin(true);
+
+        final Writer writer = new StringWriter();
+        Convertor.convertDocuments(new ByteArrayInputStream(input.getBytes(
+                StandardCharsets.UTF_8)), new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"v\"\n\"1, </i></r>\"\n\n\"2\"\n\"3\"\n",
+                writer.toString());
+    }
+
+    @Test
+    public void testConvertNoMatchPossible() {
+        final Filter filter = new Filter();
+        filter.setColumn("value1");
+        filter.setValues(Collections.<String>emptySet());
+
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(this.getClass().getResourceAsStream(
+                "/input-simple.xml"), writer, new String[]{"value1"}, filters,
+                null, ',', false, false, "/root/item");
+
+        Assert.assertEquals("\"value1\"\n", writer.toString());
+    }
+
+    /**
+     * Creates input with specified number of items with values 0 to count - 1.
+     *
+     * @param count number of items
+     *
+     * @return input bytes
+     */
+    private static byte[] createItems(final int count) {
+        final StringBuilder sb = new StringBuilder(count * 20);
+        sb.append("<r>");
+
+        for (int i = 0; i < count; i++) {
+            sb.append("<i><v>").append(i).append("</v></i>");
+        }
+
+        return sb.append("</r>").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testConvertLimit() {
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"v"});
+        settings.setItemName("/r/i");
+        settings.setLimit(3);
+
+        final byte[] input = createItems(100_000);
+        final ByteArrayInputStream inputStream =
+                new ByteArrayInputStream(input);
+        final Writer writer = new StringWriter();
+        Convertor.convert(inputStream, new CsvRowWriter(writer, ','),
+                settings);
+
+        Assert.assertEquals("\"v\"\n\"0\"\n\"1\"\n\"2\"\n",
+                writer.toString());
+        // only the beginning of the input was read
+        Assert.assertTrue(inputStream.available() > input.length * 9 / 10);
+
+        final Writer explodeWriter = new StringWriter();
+        settings.setValueStrategies(Collections.singletonMap("v",
+                ValueStrategy.parse("explode")));
+        settings.setLimit(2);
+        Convertor.convert(new ByteArrayInputStream(
+                "<r><i><v>1</v><v>2</v><v>3</v></i></r>".getBytes(
+                        StandardCharsets.UTF_8)),
+                new CsvRowWriter(explodeWriter, ','), settings);
+
+        Assert.assertEquals("\"v\"\n\"1\"\n\"2\"\n",
+                explodeWriter.toString());
+    }
+
+    @Test
+    public void testConvertSampleRate() throws IOException {
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"v"});
+        settings.setItemName("/r/i");
+        settings.setSampleRate(0.1);
+        settings.setSampleSeed(42L);
+
+        final Writer writer = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(createItems(10_000)),
+                new CsvRowWriter(writer, ','), settings);
+
+        final String[] lines = writer.toString().split("\n");
+        Assert.assertTrue(lines.length > 800 && lines.length < 1_200);
+
+        for (int i = 2; i < lines.length; i++) {
+            Assert.assertTrue(Integer.parseInt(lines[i].replace("\"", ""))
+                    > Integer.parseInt(lines[i - 1].replace("\"", "")));
+        }
+
+        final Writer sameWriter = new StringWriter();
+        Convertor.convert(new ByteArrayInputStream(createItems(10_000)),
+                new CsvRowWriter(sameWriter, ','), settings);
+
+        Assert.assertEquals(writer.toString(), sameWriter.toString());
+    }
+
+    @Test
+    public void testConvertSampleSize() {
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"v"});
+        settings.setItemName("/r/i");
+        settings.setSampleSize(5);
+
+        // first numbers generated from consecutive seeds are correlated so
+        // the seeds are generated too
+        final Random seeds = new Random(1);
+        final int[] hits = new int[10];
+
+        for (int run = 0; run < 2_000; run++) {
+            settings.setSampleSeed(seeds.nextLong());
+
+            final Writer writer = new StringWriter();
+            Convertor.convert(new ByteArrayInputStream(createItems(10)),
+                    new CsvRowWriter(writer, ','), settings);
+
+            final String[] lines = writer.toString().split("\n");
+            Assert.assertEquals(6, lines.length);
+
+            for (int i = 1; i < lines.length; i++) {
+                final int value =
+                        Integer.parseInt(lines[i].replace("\"", ""));
+                hits[value]++;
+
+                if (i > 1) {
+                    Assert.assertTrue(value > Integer.parseInt(
+                            lines[i - 1].replace("\"", "")));
+                }
+            }
+        }
+
+        // each item is sampled with probability 1/2
+        for (final int hit : hits) {
+            Assert.assertTrue(hit > 850 && hit < 1_150);
+        }
+    }
+
+    @Test
+    public void testConvertSampleSizeWithFilter() {
+        final Collection<String> kept = new ArrayList<>(100);
+
+        for (int i = 0; i < 1_000; i += 10) {
+            kept.add(String.valueOf(i));
+        }
+
+        final Filter filter = new Filter();
+        filter.setColumn("v");
+        filter.setValues(kept);
+
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"v"});
+        settings.setItemName("/r/i");
+        settings.setFilters(filters);
+        settings.setSampleSize(50);
+
+        for (long seed = 1; seed <= 3; seed++) {
+            settings.setSampleSeed(seed);
+
+            final Writer writer = new StringWriter();
+            Convertor.convert(new ByteArrayInputStream(createItems(1_000)),
+                    new CsvRowWriter(writer, ','), settings);
+
+            final String[] lines = writer.toString().split("\n");
+            Assert.assertEquals(51, lines.length);
+
+            for (int i = 1; i < lines.length; i++) {
+                Assert.assertTrue(kept.contains(lines[i].replace("\"", "")));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConvertSampleSizeWithLimit() {
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"v"});
+        settings.setItemName("/r/i");
+        settings.setSampleSize(5);
+        settings.setLimit(5);
+
+        Convertor.convert(new ByteArrayInputStream(createItems(10)),
+                new CsvRowWriter(new StringWriter(), ','), settings);
+    }
 }
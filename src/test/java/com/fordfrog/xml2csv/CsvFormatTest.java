@@ -0,0 +1,92 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link CsvFormat}.
+ *
+ * @author fordfrog
+ */
+public class CsvFormatTest {
+
+    /**
+     * Formats row using both writer and string builder and checks that both
+     * produce the same output.
+     *
+     * @param format CSV format
+     * @param values row values
+     *
+     * @return formatted row
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private static String format(final CsvFormat format,
+            final String... values) throws IOException {
+        final StringWriter writer = new StringWriter();
+        format.writeRow(writer, values);
+
+        final StringBuilder sb = new StringBuilder();
+        format.appendRow(sb, values);
+
+        Assert.assertEquals(writer.toString(), sb.toString());
+
+        return sb.toString();
+    }
+
+    @Test
+    public void testAlways() throws IOException {
+        Assert.assertEquals("\"a\",,,\"b\"\"c\"\n", format(
+                new CsvFormat(','), "a", null, "", "b\"c"));
+    }
+
+    @Test
+    public void testMinimal() throws IOException {
+        final CsvFormat format =
+                new CsvFormat(';', CsvFormat.Quoting.MINIMAL, '\\');
+
+        Assert.assertEquals(
+                "plain;a,b;\"a;b\";\"a\"\"b\";\"a\nb\";\"a\rb\";;\n",
+                format(format, "plain", "a,b", "a;b", "a\"b", "a\nb", "a\rb",
+                        null, ""));
+        Assert.assertEquals("žluťoučký kůň;x\\y\n",
+                format(format, "žluťoučký kůň", "x\\y"));
+    }
+
+    @Test
+    public void testNever() throws IOException {
+        final CsvFormat format =
+                new CsvFormat('|', CsvFormat.Quoting.NEVER, '\\');
+
+        Assert.assertEquals("a\\|b|\"q\"|a\\nb\\rc|a\\\\b|\n",
+                format(format, "a|b", "\"q\"", "a\nb\rc", "a\\b", null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedQuoting() {
+        CsvFormat.Quoting.parse("sometimes");
+    }
+}
@@ -21,6 +21,8 @@
  */
 package com.fordfrog.xml2csv;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -55,5 +57,27 @@ public class CsvUtilsTest {
                 CsvUtils.parseValues("'test \"',test"));
         Assert.assertArrayEquals(new String[]{"test '", "test"},
                 CsvUtils.parseValues("'test \\'',test"));
+        Assert.assertArrayEquals(new String[]{"a", "b"},
+                CsvUtils.parseValues("a,b"));
+        Assert.assertArrayEquals(new String[]{"a", "", "b"},
+                CsvUtils.parseValues("a,,b"));
+    }
+
+    @Test
+    public void testWriteQuoted() throws IOException {
+        final String[] values = {null, "", "a", "\"", "a\"b\"\"c\""};
+        final String[] quoted =
+                {"", "", "\"a\"", "\"\"\"\"", "\"a\"\"b\"\"\"\"c\"\"\""};
+
+        for (int i = 0; i < values.length; i++) {
+            final StringWriter writer = new StringWriter();
+            CsvUtils.writeQuoted(writer, values[i]);
+            Assert.assertEquals(quoted[i], writer.toString());
+
+            final StringBuilder sb = new StringBuilder();
+            CsvUtils.appendQuoted(sb, values[i]);
+            Assert.assertEquals(quoted[i], sb.toString());
+            Assert.assertEquals(quoted[i], CsvUtils.quoteString(values[i]));
+        }
     }
 }
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link DedupingRowWriter}.
+ *
+ * @author fordfrog
+ */
+public class DedupingRowWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DedupingRowWriter dedupe(final long memoryBudget,
+            final boolean probabilistic, final StringWriter writer)
+            throws IOException {
+        final Path tempDirectory = folder.getRoot().toPath();
+
+        try (final DedupingRowWriter rowWriter = new DedupingRowWriter(
+                new CsvRowWriter(writer, ','), new String[]{"k", "l"},
+                memoryBudget, probabilistic, tempDirectory)) {
+            rowWriter.writeHeader(new String[]{"v", "k", "l"});
+
+            for (int i = 0; i < 10_000; i++) {
+                rowWriter.writeRow(new String[]{String.valueOf(i),
+                    String.valueOf(i % 3_000), i % 3_000 == 7 ? null : "x"});
+            }
+
+            return rowWriter;
+        } finally {
+            Assert.assertEquals(0, tempDirectory.toFile().list().length);
+        }
+    }
+
+    @Test
+    public void testExact() throws IOException {
+        for (final long memoryBudget : new long[]{1_024L * 1_024L, 256}) {
+            final StringWriter writer = new StringWriter();
+            final DedupingRowWriter rowWriter =
+                    dedupe(memoryBudget, false, writer);
+
+            Assert.assertEquals(7_000, rowWriter.getDroppedRows());
+
+            final String[] lines = writer.toString().split("\n");
+            Assert.assertEquals(3_001, lines.length);
+            Assert.assertEquals("\"v\",\"k\",\"l\"", lines[0]);
+            Assert.assertEquals("\"2999\",\"2999\",\"x\"", lines[3_000]);
+        }
+    }
+
+    @Test
+    public void testProbabilistic() throws IOException {
+        final DedupingRowWriter rowWriter =
+                dedupe(64L * 1_024L, true, new StringWriter());
+
+        Assert.assertTrue(rowWriter.getDroppedRows() >= 7_000);
+        Assert.assertTrue(rowWriter.getDroppedRows() < 7_010);
+    }
+
+    @Test
+    public void testHash() {
+        final int[] indexes = {0, 1};
+
+        Assert.assertNotEquals(
+                DedupingRowWriter.hash(new String[]{"ab", "c"}, indexes),
+                DedupingRowWriter.hash(new String[]{"a", "bc"}, indexes));
+        Assert.assertNotEquals(
+                DedupingRowWriter.hash(new String[]{"", "c"}, indexes),
+                DedupingRowWriter.hash(new String[]{null, "c"}, indexes));
+    }
+}
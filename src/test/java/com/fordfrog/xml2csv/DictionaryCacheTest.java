@@ -0,0 +1,64 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link DictionaryCache}.
+ *
+ * @author fordfrog
+ */
+public class DictionaryCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testGetMatcher() throws IOException {
+        final Path valuesFile = folder.newFile("values.txt").toPath();
+        Files.write(valuesFile, "b\n".getBytes(StandardCharsets.UTF_8));
+
+        final DictionaryCache cache = new DictionaryCache();
+        final SubstringMatcher matcher = cache.getMatcher(valuesFile);
+
+        Assert.assertTrue(matcher.matches("abc"));
+        Assert.assertSame(matcher, cache.getMatcher(valuesFile));
+
+        Files.write(valuesFile, "y\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(valuesFile, FileTime.
+                fromMillis(System.currentTimeMillis() + 10_000));
+
+        final SubstringMatcher reloaded = cache.getMatcher(valuesFile);
+        Assert.assertNotSame(matcher, reloaded);
+        Assert.assertFalse(reloaded.matches("abc"));
+        Assert.assertTrue(reloaded.matches("xyz"));
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link DictionaryReloader}.
+ *
+ * @author fordfrog
+ */
+public class DictionaryReloaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Replaces the file content atomically and moves its modification time so
+     * that the change is detected regardless of file system time resolution.
+     *
+     * @param file    file path
+     * @param content new content
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private void replace(final Path file, final String content)
+            throws IOException {
+        final Path temp = folder.newFile().toPath();
+        Files.write(temp, content.getBytes(Charset.forName("UTF-8")));
+        Files.setLastModifiedTime(temp, FileTime.fromMillis(
+                Files.getLastModifiedTime(file).toMillis() + 10_000L));
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        final Path valuesFile = folder.newFile("values.txt").toPath();
+        final Path mapFile = folder.newFile("map.csv").toPath();
+        Files.write(valuesFile, "CZ\n".getBytes(Charset.forName("UTF-8")));
+        Files.write(mapFile, "CZ,Czechia\n".getBytes(Charset.forName("UTF-8")));
+
+        final Filter filter = new Filter();
+        filter.setColumn("c");
+        filter.setValues(Main.loadValues(valuesFile));
+
+        final Remapping remapping = new Remapping();
+        remapping.setColumn("c");
+        remapping.setMap(Main.loadMap(mapFile));
+
+        try (final DictionaryReloader reloader = new DictionaryReloader(1)) {
+            reloader.watch(filter, valuesFile);
+            reloader.watch(remapping, mapFile);
+
+            Assert.assertEquals(0, reloader.reload());
+
+            replace(valuesFile, "SK\n");
+
+            Assert.assertEquals(1, reloader.reload());
+            Assert.assertEquals(Arrays.asList("SK"),
+                    Arrays.asList(filter.getValues().toArray()));
+            Assert.assertEquals(Collections.singletonMap("CZ", "Czechia"),
+                    remapping.getMap());
+
+            replace(mapFile, "SK,Slovakia\n");
+            Files.delete(valuesFile);
+
+            // missing file keeps previous values
+            Assert.assertEquals(1, reloader.reload());
+            Assert.assertEquals(Arrays.asList("SK"),
+                    Arrays.asList(filter.getValues().toArray()));
+            Assert.assertEquals(Collections.singletonMap("SK", "Slovakia"),
+                    remapping.getMap());
+        }
+    }
+
+    @Test
+    public void testConsistentSnapshot() throws InterruptedException {
+        final Filter filter = new Filter();
+        filter.setColumn("c");
+        filter.setSubstring(true);
+        filter.setValues(Arrays.asList("a"));
+
+        final Map<String, String> item = Collections.singletonMap("c", "ab");
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        final Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running.get()) {
+                    if (!filter.matchesFilter(item)) {
+                        failed.set(true);
+                    }
+                }
+            }
+        });
+        reader.start();
+
+        // both versions of the values match the item, so every check must
+        // pass while the values are being swapped
+        for (int i = 0; i < 10_000; i++) {
+            filter.setValues(Arrays.asList(i % 2 == 0 ? "b" : "a"));
+        }
+
+        running.set(false);
+        reader.join();
+
+        Assert.assertFalse(failed.get());
+    }
+}
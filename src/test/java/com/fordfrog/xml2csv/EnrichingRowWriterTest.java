@@ -0,0 +1,69 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link EnrichingRowWriter}.
+ *
+ * @author fordfrog
+ */
+public class EnrichingRowWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEnrich() throws IOException {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, "customer,name,region\n1,Alice,EU\n2,Bob,US\n"
+                .getBytes(Charset.forName("UTF-8")));
+
+        final StringWriter output = new StringWriter();
+        final EnrichingRowWriter writer;
+
+        try (final EnrichingRowWriter rowWriter = new EnrichingRowWriter(
+                new CsvRowWriter(output, ','),
+                new LookupIndex(file, "customer", null), "cust")) {
+            writer = rowWriter;
+            writer.writeHeader(new String[]{"order", "cust"});
+            writer.writeRow(new String[]{"o1", "2"});
+            writer.writeRow(new String[]{"o2", "3"});
+            writer.writeRow(new String[]{"o3", null});
+        }
+
+        Assert.assertEquals("\"order\",\"cust\",\"name\",\"region\"\n"
+                + "\"o1\",\"2\",\"Bob\",\"US\"\n"
+                + "\"o2\",\"3\",,\n"
+                + "\"o3\",,,\n", output.toString());
+        Assert.assertEquals(2, writer.getMissedRows());
+    }
+}
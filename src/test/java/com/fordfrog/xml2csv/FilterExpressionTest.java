@@ -0,0 +1,167 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link FilterExpression}.
+ *
+ * @author fordfrog
+ */
+public class FilterExpressionTest {
+
+    @Test
+    public void testComparisons() {
+        final Map<String, String> item = createItem("CZ", "15.5",
+                "2020-06-01", "Prague");
+
+        Assert.assertTrue(matches("country = 'CZ'", item));
+        Assert.assertFalse(matches("country != 'CZ'", item));
+        Assert.assertTrue(matches("country in ('SK', \"CZ\")", item));
+        Assert.assertTrue(matches("amount > 15", item));
+        Assert.assertFalse(matches("amount <= 15", item));
+        Assert.assertTrue(matches("amount between 15.5 and 20", item));
+        Assert.assertFalse(matches("amount < -1e3", item));
+        Assert.assertTrue(matches("created >= date '2020-06-01'", item));
+        Assert.assertTrue(matches("created between date '2020-01-01' and "
+                + "date '2020-12-31T23:59:59'", item));
+        Assert.assertFalse(matches("created < date '2020-06-01 00:00'", item));
+        Assert.assertTrue(matches("city starts with ('Brno', 'Pr')", item));
+        Assert.assertFalse(matches("city starts with 'Prague2'", item));
+        Assert.assertTrue(matches("city matches 'P.*e'", item));
+        Assert.assertFalse(matches("missing = ''", item));
+        Assert.assertFalse(matches("missing != 'x'", item));
+        Assert.assertTrue(matches("not missing = 'x'", item));
+        Assert.assertFalse(matches("city > 1", item));
+    }
+
+    @Test
+    public void testBooleanOperators() {
+        final Map<String, String> item = createItem("CZ", "5", "2020-06-01",
+                "Prague");
+
+        Assert.assertTrue(matches("country = 'CZ' and amount < 10", item));
+        Assert.assertFalse(matches("country = 'CZ' AND NOT amount < 10",
+                item));
+        Assert.assertTrue(matches(
+                "country = 'SK' or (city matches 'Pr.*' and amount = '5')",
+                item));
+        Assert.assertFalse(matches("not (country = 'CZ' or amount > 100)",
+                item));
+    }
+
+    @Test
+    public void testReordering() {
+        final FilterExpression expression = FilterExpression.compile(
+                "city matches '.*x.*' and country = 'SK'");
+        final Map<String, String> cz = createItem("CZ", "1", "", "Praha");
+        final Map<String, String> sk = createItem("SK", "1", "", "Bratislava");
+        final Map<String, String> skx = createItem("SK", "1", "", "xx");
+
+        for (int i = 0; i < 5_000; i++) {
+            Assert.assertFalse(expression.evaluate(i % 2 == 0 ? cz : sk));
+        }
+
+        Assert.assertTrue(expression.evaluate(skx));
+        Assert.assertEquals(2, expression.getColumns().size());
+    }
+
+    @Test
+    public void testNumberParsing() {
+        Assert.assertEquals(12.5, FilterExpression.parseNumber(" 12.5 "), 0);
+        Assert.assertEquals(-3, FilterExpression.parseNumber("-3"), 0);
+        Assert.assertEquals(1500, FilterExpression.parseNumber("1.5e3"), 0);
+        Assert.assertTrue(Double.isNaN(FilterExpression.parseNumber("")));
+        Assert.assertTrue(Double.isNaN(FilterExpression.parseNumber("1a")));
+        Assert.assertEquals(20200601000000L,
+                FilterExpression.parseDate("2020-06-01"));
+        Assert.assertEquals(20200601123000L,
+                FilterExpression.parseDate("2020-06-01T12:30"));
+        Assert.assertEquals(-1, FilterExpression.parseDate("2020-13-01"));
+        Assert.assertEquals(-1, FilterExpression.parseDate("June 2020"));
+        Assert.assertEquals(-1, FilterExpression.parseDate("2020-02-30"));
+        Assert.assertEquals(-1, FilterExpression.parseDate("2021-02-29"));
+        Assert.assertEquals(-1, FilterExpression.parseDate("2020-04-31"));
+        Assert.assertEquals(20200229000000L,
+                FilterExpression.parseDate("2020-02-29"));
+        Assert.assertEquals(20201231000000L,
+                FilterExpression.parseDate("2020-12-31"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExpression() {
+        FilterExpression.compile("country = 'CZ' and");
+    }
+
+    @Test
+    public void testExpressionFilter() {
+        final ExpressionFilter single = new ExpressionFilter("amount > 10");
+        Assert.assertEquals("amount", single.getColumn());
+        Assert.assertFalse(single.rejectsAll());
+
+        final ExpressionFilter multi =
+                new ExpressionFilter("amount > 10 or country = 'CZ'");
+        multi.setExclude(true);
+        Assert.assertNull(multi.getColumn());
+        Assert.assertFalse(multi.matchesFilter(
+                createItem("CZ", "1", "", "")));
+        Assert.assertTrue(multi.matchesFilter(createItem("SK", "1", "", "")));
+    }
+
+    /**
+     * Creates item values.
+     *
+     * @param country country
+     * @param amount  amount
+     * @param created creation date
+     * @param city    city
+     *
+     * @return map of item values
+     */
+    private static Map<String, String> createItem(final String country,
+            final String amount, final String created, final String city) {
+        final Map<String, String> item = new HashMap<>(4);
+        item.put("country", country);
+        item.put("amount", amount);
+        item.put("created", created);
+        item.put("city", city);
+
+        return item;
+    }
+
+    /**
+     * Compiles and evaluates the expression.
+     *
+     * @param expression expression
+     * @param item       item values
+     *
+     * @return result of the expression
+     */
+    private static boolean matches(final String expression,
+            final Map<String, String> item) {
+        return FilterExpression.compile(expression).evaluate(item);
+    }
+}
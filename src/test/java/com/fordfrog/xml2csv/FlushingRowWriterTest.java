@@ -0,0 +1,101 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link FlushingRowWriter}.
+ *
+ * @author fordfrog
+ */
+public class FlushingRowWriterTest {
+
+    /**
+     * Row writer recording flushed output.
+     */
+    private static class RecordingRowWriter extends CsvRowWriter {
+
+        private final StringWriter writer;
+        private volatile String flushed = "";
+
+        RecordingRowWriter(final StringWriter writer) {
+            super(writer, ',');
+            this.writer = writer;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            super.flush();
+            flushed = writer.toString();
+        }
+    }
+
+    @Test
+    public void testFlushRows() throws IOException {
+        final RecordingRowWriter target =
+                new RecordingRowWriter(new StringWriter());
+
+        try (final FlushingRowWriter rowWriter =
+                new FlushingRowWriter(target, 2, 0)) {
+            rowWriter.writeHeader(new String[]{"a"});
+            rowWriter.writeRow(new String[]{"1"});
+
+            Assert.assertEquals("\"a\"\n\"1\"\n", target.flushed);
+
+            rowWriter.writeRow(new String[]{"2"});
+
+            Assert.assertEquals("\"a\"\n\"1\"\n", target.flushed);
+
+            rowWriter.writeRow(new String[]{"3"});
+
+            Assert.assertEquals("\"a\"\n\"1\"\n\"2\"\n\"3\"\n", target.flushed);
+        }
+    }
+
+    @Test
+    public void testFlushInterval()
+            throws IOException, InterruptedException {
+        final RecordingRowWriter target =
+                new RecordingRowWriter(new StringWriter());
+
+        try (final FlushingRowWriter rowWriter =
+                new FlushingRowWriter(target, 0, 20)) {
+            rowWriter.writeHeader(new String[]{"a"});
+            rowWriter.writeRow(new String[]{"1"});
+
+            Assert.assertEquals("", target.flushed);
+
+            final long deadline = System.currentTimeMillis() + 5_000;
+
+            while (target.flushed.isEmpty()
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+
+            Assert.assertEquals("\"a\"\n\"1\"\n", target.flushed);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import javax.xml.stream.XMLStreamException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link ItemIndex}.
+ *
+ * @author fordfrog
+ */
+public class ItemIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String read(final InputStream inputStream,
+            final Charset charset) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[7];
+        int count;
+
+        try (final InputStream input = inputStream) {
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+        }
+
+        return new String(output.toByteArray(), charset);
+    }
+
+    private static ConvertorSettings createSettings(final String itemName) {
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setItemName(itemName);
+
+        return settings;
+    }
+
+    @Test
+    public void testOpenItems() throws IOException, XMLStreamException {
+        final String input = "﻿<?xml version=\"1.0\"?>\n<r xmlns=\"urn:r\">"
+                + "<g id=\"1\"><i>ä€</i><i><![CDATA[<x>]]></i></g>\n"
+                + "<!-- <i>no</i> --><g>\n<i\n a=\"&gt;\">😀</i>"
+                + "<h><i/></h></g></r>";
+        final Path inputFile = folder.newFile("input.xml").toPath();
+        Files.write(inputFile, input.getBytes(StandardCharsets.UTF_8));
+
+        final Path indexFile = folder.getRoot().toPath().resolve("input.idx");
+        final ConvertorSettings settings = createSettings("/r/g/i");
+        ItemIndex.build(indexFile, inputFile, settings);
+
+        try (final ItemIndex index =
+                ItemIndex.open(indexFile, inputFile, settings)) {
+            Assert.assertEquals(3, index.getItemCount());
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<r xmlns=\"urn:r\"><g><i>ä€</i></g></r>",
+                    read(index.openItems(inputFile, 0, 1),
+                            StandardCharsets.UTF_8));
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<r xmlns=\"urn:r\"><g><i><![CDATA[<x>]]></i></g>\n"
+                    + "<!-- <i>no</i> --><g>\n<i\n a=\"&gt;\">😀"
+                    + "</i></g></r>", read(index.openItems(inputFile, 1, 3),
+                            StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testRebuild() throws IOException, XMLStreamException {
+        final Path inputFile = folder.newFile("input.xml").toPath();
+        Files.write(inputFile, "<r><a><b/><b/></a><a/></r>".getBytes(
+                StandardCharsets.UTF_8));
+
+        final Path indexFile = folder.getRoot().toPath().resolve("input.idx");
+
+        try (final ItemIndex index = ItemIndex.open(indexFile, inputFile,
+                createSettings("/r/a"))) {
+            Assert.assertEquals(2, index.getItemCount());
+        }
+
+        try (final ItemIndex index = ItemIndex.open(indexFile, inputFile,
+                createSettings("//b"))) {
+            Assert.assertEquals(2, index.getItemCount());
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<r><a><b/></a></r>", read(
+                            index.openItems(inputFile, 1, 2),
+                            StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testSingleByteEncoding()
+            throws IOException, XMLStreamException {
+        final String input = "<?xml version=\"1.0\" encoding=\"ISO-8859-2\"?>"
+                + "<r><i>žluťoučký</i><i>kůň</i></r>";
+        final Path inputFile = folder.newFile("input.xml").toPath();
+        Files.write(inputFile, input.getBytes(Charset.forName("ISO-8859-2")));
+
+        final Path indexFile = folder.getRoot().toPath().resolve("input.idx");
+
+        try (final ItemIndex index = ItemIndex.open(indexFile, inputFile,
+                createSettings("/r/i"))) {
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"ISO-8859-2\""
+                    + "?><r><i>kůň</i></r>", read(
+                            index.openItems(inputFile, 1, 2),
+                            Charset.forName("ISO-8859-2")));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRange() throws IOException, XMLStreamException {
+        final Path inputFile = folder.newFile("input.xml").toPath();
+        Files.write(inputFile, "<r><i/></r>".getBytes(StandardCharsets.UTF_8));
+
+        try (final ItemIndex index = ItemIndex.open(
+                folder.getRoot().toPath().resolve("input.idx"), inputFile,
+                createSettings("/r/i"))) {
+            index.openItems(inputFile, 1, 1);
+        }
+    }
+
+    @Test
+    public void testNamespaces() throws IOException, XMLStreamException {
+        final Path inputFile = folder.newFile("input.xml").toPath();
+        Files.write(inputFile, ("<r xmlns:a=\"urn:a\" xmlns:b=\"urn:b\">"
+                + "<a:i/><b:i/><a:i/></r>").getBytes(StandardCharsets.UTF_8));
+
+        final Path indexFile = folder.getRoot().toPath().resolve("input.idx");
+        final ConvertorSettings settings = createSettings("/r/x:i");
+        settings.setNamespaces(Collections.singletonMap("x", "urn:a"));
+
+        try (final ItemIndex index =
+                ItemIndex.open(indexFile, inputFile, settings)) {
+            Assert.assertEquals(2, index.getItemCount());
+        }
+
+        settings.setNamespaces(Collections.singletonMap("x", "urn:b"));
+
+        try (final ItemIndex index =
+                ItemIndex.open(indexFile, inputFile, settings)) {
+            Assert.assertEquals(1, index.getItemCount());
+            Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<r xmlns:a=\"urn:a\" xmlns:b=\"urn:b\"><b:i/></r>",
+                    read(index.openItems(inputFile, 0, 1),
+                            StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link LookupIndex}.
+ *
+ * @author fordfrog
+ */
+public class LookupIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes reference file.
+     *
+     * @param content file content
+     *
+     * @return file path
+     *
+     * @throws IOException Thrown if IO problem occurred.
+     */
+    private Path writeReference(final String content) throws IOException {
+        final Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(Charset.forName("UTF-8")));
+
+        return file;
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        final LookupIndex index = new LookupIndex(writeReference(
+                "﻿name,id,segment\r\n"
+                + "\"Novák, Jan\",1,A\r\n"
+                + "\r\n"
+                + "Svoboda,2,\r\n"
+                + "Duplicate,1,B\r\n"
+                + "Short"), "id", null);
+
+        Assert.assertEquals(2, index.getSize());
+        Assert.assertArrayEquals(new String[]{"name", "segment"},
+                index.getColumns());
+        Assert.assertArrayEquals(new String[]{"Novák, Jan", "A"},
+                index.lookup("1"));
+        Assert.assertArrayEquals(new String[]{"Svoboda", null},
+                index.lookup("2"));
+        Assert.assertNull(index.lookup("3"));
+        Assert.assertNull(index.lookup(null));
+    }
+
+    @Test
+    public void testManyRows() throws IOException {
+        final StringBuilder sb = new StringBuilder(1_024 * 1_024);
+        sb.append("key,value\n");
+
+        for (int i = 0; i < 100_000; i++) {
+            sb.append('k').append(i).append(',').append(i * 2).append('\n');
+        }
+
+        final LookupIndex index = new LookupIndex(
+                writeReference(sb.toString()), "key",
+                new String[]{"value", "key"});
+
+        Assert.assertEquals(100_000, index.getSize());
+
+        for (int i = 0; i < 100_000; i += 997) {
+            Assert.assertArrayEquals(
+                    new String[]{String.valueOf(i * 2), "k" + i},
+                    index.lookup("k" + i));
+        }
+
+        Assert.assertNull(index.lookup("k100000"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingColumn() throws IOException {
+        new LookupIndex(writeReference("key,value\n"), "key",
+                new String[]{"other"});
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link ResultCache}.
+ *
+ * @author fordfrog
+ */
+public class ResultCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ConvertorSettings createSettings() {
+        final ConvertorSettings settings = new ConvertorSettings();
+        settings.setColumns(new String[]{"a", "b"});
+        settings.setItemName("/r/i");
+
+        return settings;
+    }
+
+    private Path write(final String name, final String content)
+            throws IOException {
+        return Files.write(folder.getRoot().toPath().resolve(name),
+                content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testComputeKey() throws IOException {
+        final Path inputFile = write("input.xml", "<r><i><a>1</a></i></r>");
+        final String key =
+                ResultCache.computeKey(inputFile, createSettings(), "");
+
+        Assert.assertEquals(key,
+                ResultCache.computeKey(inputFile, createSettings(), ""));
+        Assert.assertNotEquals(key,
+                ResultCache.computeKey(inputFile, createSettings(), "sort"));
+
+        final ConvertorSettings filtered = createSettings();
+        final Filter filter = new Filter();
+        filter.setColumn("a");
+        filter.setValues(Arrays.asList("1"));
+
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+        filtered.setFilters(filters);
+
+        Assert.assertNotEquals(key,
+                ResultCache.computeKey(inputFile, filtered, ""));
+
+        final ConvertorSettings columns = createSettings();
+        columns.setColumns(new String[]{"a,b"});
+
+        Assert.assertNotEquals(key,
+                ResultCache.computeKey(inputFile, columns, ""));
+
+        write("input.xml", "<r><i><a>2</a></i></r>");
+
+        Assert.assertNotEquals(key,
+                ResultCache.computeKey(inputFile, createSettings(), ""));
+    }
+
+    @Test
+    public void testComputeKeyFilterExpression() throws IOException {
+        final Path inputFile = write("input.xml", "<r><i><a>1</a></i></r>");
+        final String key = ResultCache.computeKey(inputFile,
+                createExpressionSettings("a = '1'"), "");
+
+        Assert.assertEquals(key, ResultCache.computeKey(inputFile,
+                createExpressionSettings("a = '1'"), ""));
+        Assert.assertNotEquals(key, ResultCache.computeKey(inputFile,
+                createExpressionSettings("a = '2'"), ""));
+        Assert.assertNotEquals(key,
+                ResultCache.computeKey(inputFile, createSettings(), ""));
+    }
+
+    private static ConvertorSettings createExpressionSettings(
+            final String expression) {
+        final Filters filters = new Filters();
+        filters.addFilter(new ExpressionFilter(expression));
+
+        final ConvertorSettings settings = createSettings();
+        settings.setFilters(filters);
+
+        return settings;
+    }
+
+    @Test
+    public void testFetchAndEvict() throws IOException {
+        final ResultCache cache =
+                new ResultCache(folder.getRoot().toPath().resolve("cache"), 10);
+        final Path outputFile = folder.getRoot().toPath().resolve("out.csv");
+
+        Assert.assertFalse(cache.fetch("k1", outputFile));
+
+        cache.store("k1", write("out.csv", "12345"));
+        cache.store("k2", write("out.csv", "abcde"));
+        write("out.csv", "");
+
+        Assert.assertTrue(cache.fetch("k1", outputFile));
+        Assert.assertEquals("12345", new String(
+                Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+
+        final Path cacheDirectory = folder.getRoot().toPath().resolve("cache");
+        Files.setLastModifiedTime(cacheDirectory.resolve("k2.csv"),
+                FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+        cache.store("k3", write("out.csv", "xyz"));
+
+        Assert.assertTrue(Files.exists(cacheDirectory.resolve("k1.csv")));
+        Assert.assertFalse(Files.exists(cacheDirectory.resolve("k2.csv")));
+        Assert.assertTrue(cache.fetch("k3", outputFile));
+
+        cache.store("k4", write("out.csv", "01234567890"));
+
+        Assert.assertFalse(cache.fetch("k4", outputFile));
+        Assert.assertEquals(2, cacheDirectory.toFile().list().length);
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link ShardedRowWriter}.
+ *
+ * @author fordfrog
+ */
+public class ShardedRowWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String INPUT = "<r><i><k>a</k><v>1</v></i>"
+            + "<i><k>b</k><v>2</v></i><i><k>a</k><v>3</v></i>"
+            + "<i><k>c/d</k><v>4</v></i><i><k>a</k><v>5</v></i></r>";
+
+    private void convert(final ShardedRowWriter rowWriter) throws IOException {
+        try {
+            Convertor.convert(new ByteArrayInputStream(INPUT.getBytes(
+                    StandardCharsets.UTF_8)), rowWriter, new String[]{"k", "v"},
+                    null, null, false, false, "/r/i");
+        } finally {
+            rowWriter.close();
+        }
+    }
+
+    private String read(final String fileName) throws IOException {
+        return new String(Files.readAllBytes(folder.getRoot().toPath().resolve(
+                fileName)), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMaxRows() throws IOException {
+        final Path output = new File(folder.getRoot(), "out.csv").toPath();
+
+        convert(new ShardedRowWriter(output, ',', 2, 0, null, 0, 1));
+
+        Assert.assertEquals("\"k\",\"v\"\n\"a\",\"1\"\n\"b\",\"2\"\n",
+                read("out-00000.csv"));
+        Assert.assertEquals("\"k\",\"v\"\n\"a\",\"3\"\n\"c/d\",\"4\"\n",
+                read("out-00001.csv"));
+        Assert.assertEquals("\"k\",\"v\"\n\"a\",\"5\"\n", read("out-00002.csv"));
+        Assert.assertFalse(Files.exists(output));
+    }
+
+    @Test
+    public void testMaxBytes() throws IOException {
+        final Path output = new File(folder.getRoot(), "out.csv").toPath();
+
+        // header has 8 bytes and each row 8 bytes
+        convert(new ShardedRowWriter(output, ',', 0, 32, null, 0, 1));
+
+        Assert.assertEquals("\"k\",\"v\"\n\"a\",\"1\"\n\"b\",\"2\"\n\"a\",\"3\"\n",
+                read("out-00000.csv"));
+        Assert.assertEquals("\"k\",\"v\"\n\"c/d\",\"4\"\n\"a\",\"5\"\n",
+                read("out-00001.csv"));
+    }
+
+    @Test
+    public void testPartitionByValue() throws IOException {
+        final Path output = new File(folder.getRoot(), "out.csv").toPath();
+
+        convert(new ShardedRowWriter(output, ',', 0, 0, "k", 0, 2));
+
+        Assert.assertEquals("\"k\",\"v\"\n\"a\",\"1\"\n\"a\",\"3\"\n\"a\",\"5\"\n",
+                read("out-a.csv"));
+        Assert.assertEquals("\"k\",\"v\"\n\"b\",\"2\"\n", read("out-b.csv"));
+        Assert.assertEquals("\"k\",\"v\"\n\"c/d\",\"4\"\n", read("out-c_d.csv"));
+    }
+
+    @Test
+    public void testPartitionByHash() throws IOException {
+        final Path output = new File(folder.getRoot(), "out.csv").toPath();
+
+        convert(new ShardedRowWriter(output, ',', 1, 0, "k", 1, 2));
+
+        Assert.assertEquals("\"k\",\"v\"\n\"a\",\"1\"\n", read(
+                "out-p0000-00000.csv"));
+        Assert.assertEquals("\"k\",\"v\"\n\"a\",\"5\"\n", read(
+                "out-p0000-00004.csv"));
+    }
+
+    @Test
+    public void testManyPartitions() throws IOException {
+        final Path output = new File(folder.getRoot(), "out.csv").toPath();
+        final int count = ShardedRowWriter.MAX_OPEN_PARTITIONS * 2 + 1;
+
+        try (final ShardedRowWriter rowWriter = new ShardedRowWriter(output,
+                ',', 2, 0, "k", 0, 2)) {
+            rowWriter.writeHeader(new String[]{"k", "v"});
+
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < count; i++) {
+                    rowWriter.writeRow(new String[]{"p" + i, "" + round});
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals("\"k\",\"v\"\n\"p" + i + "\",\"0\"\n\"p"
+                    + i + "\",\"1\"\n", read("out-p" + i + "-00000.csv"));
+            Assert.assertEquals("\"k\",\"v\"\n\"p" + i + "\",\"2\"\n",
+                    read("out-p" + i + "-00001.csv"));
+        }
+    }
+
+    @Test
+    public void testMetricsCountWrittenBytes() throws IOException {
+        final Path output = new File(folder.getRoot(), "out.csv").toPath();
+        final ConversionMetrics metrics = new ConversionMetrics();
+        final ShardedRowWriter rowWriter =
+                new ShardedRowWriter(output, ',', 0, 0, "k", 0, 2);
+        rowWriter.setMetrics(metrics);
+
+        convert(rowWriter);
+
+        Assert.assertEquals(read("out-a.csv").length()
+                + read("out-b.csv").length() + read("out-c_d.csv").length(),
+                metrics.getBytesWritten());
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link SortingRowWriter}.
+ *
+ * @author fordfrog
+ */
+public class SortingRowWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String sort(final long memoryBudget, final String[] sortColumns,
+            final String[][] rows) throws IOException {
+        final StringWriter writer = new StringWriter();
+        final Path tempDirectory = folder.getRoot().toPath();
+
+        try (final SortingRowWriter rowWriter = new SortingRowWriter(
+                new CsvRowWriter(writer, ','), sortColumns, memoryBudget,
+                tempDirectory)) {
+            rowWriter.writeHeader(new String[]{"k", "n"});
+
+            for (final String[] row : rows) {
+                rowWriter.writeRow(row);
+            }
+        }
+
+        Assert.assertEquals(0, tempDirectory.toFile().list().length);
+
+        return writer.toString();
+    }
+
+    @Test
+    public void testSort() throws IOException {
+        final String[][] rows = {{"b", "10"}, {"a", "9"}, {null, "x"},
+            {"b", "2"}, {"a\nmulti, \"line\"", "9"}, {"a", null}};
+
+        for (final long memoryBudget : new long[]{1_024L * 1_024L, 200}) {
+            Assert.assertEquals("\"k\",\"n\"\n,\"x\"\n\"a\",\"9\"\n\"a\",\n"
+                    + "\"a\nmulti, \"\"line\"\"\",\"9\"\n\"b\",\"10\"\n"
+                    + "\"b\",\"2\"\n",
+                    sort(memoryBudget, new String[]{"k"}, rows));
+            Assert.assertEquals("\"k\",\"n\"\n,\"x\"\n\"b\",\"10\"\n"
+                    + "\"a\",\"9\"\n\"a\nmulti, \"\"line\"\"\",\"9\"\n"
+                    + "\"b\",\"2\"\n\"a\",\n",
+                    sort(memoryBudget, new String[]{"n:num:desc"}, rows));
+        }
+    }
+
+    @Test
+    public void testSortManyRuns() throws IOException {
+        final Random random = new Random(1);
+        final String[][] rows = new String[5_000][];
+
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new String[]{String.valueOf(random.nextInt(1_000)),
+                String.valueOf(i)};
+        }
+
+        final String[] lines = sort(10_000, new String[]{"k:num", "n:num"},
+                rows).split("\n");
+        Assert.assertEquals(rows.length + 1, lines.length);
+
+        for (int i = 2; i < lines.length; i++) {
+            final String[] previous = CsvUtils.parseValues(lines[i - 1]);
+            final String[] current = CsvUtils.parseValues(lines[i]);
+            final int k1 = Integer.parseInt(previous[0]);
+            final int k2 = Integer.parseInt(current[0]);
+
+            Assert.assertTrue(k1 < k2 || k1 == k2 && Integer.parseInt(
+                    previous[1]) < Integer.parseInt(current[1]));
+        }
+    }
+
+    @Test
+    public void testSortMultiPassMerge() throws IOException {
+        final Random random = new Random(2);
+        final String[][] rows =
+                new String[SortingRowWriter.MAX_MERGE_RUNS * 20][];
+
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new String[]{String.valueOf(random.nextInt(50)),
+                String.valueOf(i)};
+        }
+
+        // every row is spilled to its own run
+        final String[] lines =
+                sort(2, new String[]{"k:num"}, rows).split("\n");
+        Assert.assertEquals(rows.length + 1, lines.length);
+
+        for (int i = 2; i < lines.length; i++) {
+            final String[] previous = CsvUtils.parseValues(lines[i - 1]);
+            final String[] current = CsvUtils.parseValues(lines[i]);
+            final int k1 = Integer.parseInt(previous[0]);
+            final int k2 = Integer.parseInt(current[0]);
+
+            Assert.assertTrue(k1 < k2 || k1 == k2 && Integer.parseInt(
+                    previous[1]) < Integer.parseInt(current[1]));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidModifier() throws IOException {
+        sort(1_024, new String[]{"k:up"}, new String[0][]);
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link SubstringMatcher}.
+ *
+ * @author fordfrog
+ */
+public class SubstringMatcherTest {
+
+    @Test
+    public void testMatches() {
+        final SubstringMatcher matcher = new SubstringMatcher(
+                Arrays.asList("he", "she", "his", "hers", "abcd", "bc", ""));
+
+        Assert.assertTrue(matcher.matches("ushers"));
+        Assert.assertTrue(matcher.matches("this"));
+        Assert.assertTrue(matcher.matches("abce"));
+        Assert.assertTrue(matcher.matches("he"));
+        Assert.assertFalse(matcher.matches("abd"));
+        Assert.assertFalse(matcher.matches("h"));
+        Assert.assertFalse(matcher.matches(""));
+        Assert.assertFalse(new SubstringMatcher(
+                Collections.<String>emptyList()).matches("anything"));
+    }
+
+    @Test
+    public void testMatchesLikeNaiveSearch() {
+        final Random random = new Random(42);
+        final List<String> keywords = new ArrayList<>(500);
+
+        for (int i = 0; i < 500; i++) {
+            keywords.add(randomString(random, 2 + random.nextInt(4)));
+        }
+
+        final SubstringMatcher matcher = new SubstringMatcher(keywords);
+
+        for (int i = 0; i < 2_000; i++) {
+            final String value = randomString(random, random.nextInt(12));
+            boolean expected = false;
+
+            for (final String keyword : keywords) {
+                expected |= value.contains(keyword);
+            }
+
+            Assert.assertEquals(value, expected, matcher.matches(value));
+        }
+    }
+
+    @Test
+    public void testSubstringFilter() {
+        final Filter filter = new Filter();
+        filter.setColumn("c");
+        filter.setValues(Arrays.asList("foo", "bar"));
+        filter.setSubstring(true);
+
+        Assert.assertTrue(filter.matchesFilter(
+                Collections.singletonMap("c", "a football")));
+        Assert.assertFalse(filter.matchesFilter(
+                Collections.singletonMap("c", "fo ba")));
+
+        filter.setExclude(true);
+        Assert.assertFalse(filter.matchesFilter(
+                Collections.singletonMap("c", "rebar")));
+    }
+
+    /**
+     * Generates random string from small alphabet.
+     *
+     * @param random random generator
+     * @param length string length
+     *
+     * @return random string
+     */
+    private static String randomString(final Random random,
+            final int length) {
+        final char[] chars = new char[length];
+
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(4));
+        }
+
+        return new String(chars);
+    }
+}
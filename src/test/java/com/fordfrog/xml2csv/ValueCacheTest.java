@@ -0,0 +1,119 @@
+/**
+ * Copyright 2012 Miroslav Šulc
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.fordfrog.xml2csv;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for {@link ValueCache}.
+ *
+ * @author fordfrog
+ */
+public class ValueCacheTest {
+
+    @Test
+    public void testLookup() {
+        final ValueCache cache = new ValueCache("c", 16, null, null);
+        final ValueCache.Entry entry =
+                cache.get(new StringBuilder(" CZ "), 1, 3);
+
+        Assert.assertEquals("CZ", entry.getValue());
+        Assert.assertSame(entry, cache.get(new StringBuilder("CZ"), 0, 2));
+        Assert.assertSame(entry.getValue(),
+                cache.get(new StringBuilder("xCZ"), 1, 3).getValue());
+        Assert.assertEquals("SK",
+                cache.get(new StringBuilder("SK"), 0, 2).getValue());
+        Assert.assertEquals("",
+                cache.get(new StringBuilder("SK"), 0, 0).getValue());
+    }
+
+    @Test
+    public void testPrecomputedResults() {
+        final Filter filter = new Filter();
+        filter.setColumn("c");
+        filter.setValues(Arrays.asList("CZ", "SK"));
+
+        final Filter otherFilter = new Filter();
+        otherFilter.setColumn("other");
+        otherFilter.setValues(Collections.<String>emptyList());
+
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+        filters.addFilter(otherFilter);
+
+        final Remapping remapping = new Remapping();
+        remapping.setColumn("c");
+        remapping.setMap(Collections.singletonMap("CZ", "Czechia"));
+
+        final Remappings remappings = new Remappings();
+        remappings.addRemapping(remapping);
+
+        final ValueCache cache = new ValueCache("c", 16, filters, remappings);
+
+        final ValueCache.Entry cz = cache.get("CZ", 0, 2);
+        Assert.assertNull(cz.getRejectingFilter());
+        Assert.assertEquals("Czechia", cz.getRemappedValue());
+        Assert.assertEquals(Arrays.asList(remapping), cz.getRemapHits());
+
+        final ValueCache.Entry sk = cache.get("SK", 0, 2);
+        Assert.assertNull(sk.getRejectingFilter());
+        Assert.assertNull(sk.getRemappedValue());
+
+        Assert.assertSame(filter, cache.get("PL", 0, 2).getRejectingFilter());
+    }
+
+    @Test
+    public void testSwappedDictionaries() {
+        final Filter filter = new Filter();
+        filter.setColumn("c");
+        filter.setValues(Arrays.asList("CZ"));
+
+        final Filters filters = new Filters();
+        filters.addFilter(filter);
+
+        final Remapping remapping = new Remapping();
+        remapping.setColumn("c");
+        remapping.setMap(Collections.singletonMap("CZ", "Czechia"));
+
+        final Remappings remappings = new Remappings();
+        remappings.addRemapping(remapping);
+
+        final ValueCache cache = new ValueCache("c", 16, filters, remappings);
+
+        Assert.assertNull(cache.get("CZ", 0, 2).getRejectingFilter());
+        Assert.assertEquals("Czechia",
+                cache.get("CZ", 0, 2).getRemappedValue());
+
+        filter.setValues(Arrays.asList("SK"));
+
+        Assert.assertSame(filter, cache.get("CZ", 0, 2).getRejectingFilter());
+        Assert.assertNull(cache.get("SK", 0, 2).getRejectingFilter());
+
+        remapping.setMap(Collections.singletonMap("SK", "Slovakia"));
+
+        Assert.assertEquals("Slovakia",
+                cache.get("SK", 0, 2).getRemappedValue());
+    }
+}